@@ -2,6 +2,7 @@ package com.bdir.dps.batch;
 
 import com.bdir.dps.mapper.HiveQueryRouterMapper;
 import com.bdir.dps.mapper.MySQLMapper;
+import com.bdir.dps.mapper.RealtimePartitionManager;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.*;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
@@ -12,11 +13,14 @@ import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -47,6 +51,9 @@ public class SensorDataBatchProcessor {
     @Autowired
     private HiveQueryRouterMapper hiveQueryRouterMapper;
 
+    @Autowired
+    private RealtimePartitionManager partitionManager;
+
     @Value("${batch.processing.chunk-size:1000}")
     private int chunkSize;
 
@@ -97,11 +104,34 @@ public class SensorDataBatchProcessor {
         }
     }
 
+    /**
+     * 启动完成后立即执行一次分区维护，新部署或在0点30分之后重启时当天的日分区也已存在，
+     * 数据不会写入p_future，之后拆分p_future时不需要移动数据
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        runPartitionMaintenance();
+    }
+
+    /**
+     * 实时表分区维护任务
+     * 每天凌晨0点30分执行，提前创建未来几天的日分区
+     */
+    @Scheduled(cron = "0 30 0 * * ?")
+    public void runPartitionMaintenance() {
+        try {
+            List<String> created = partitionManager.createFuturePartitions(LocalDate.now());
+            log.info("实时表分区维护完成，新建分区: {}", created);
+        } catch (Exception e) {
+            log.error("实时表分区维护失败", e);
+        }
+    }
+
     /**
      * 数据清理任务
-     * 每月1号凌晨4点执行
+     * 每天凌晨4点执行，按日分区删除过期数据
      */
-    @Scheduled(cron = "0 0 4 1 * ?")
+    @Scheduled(cron = "0 0 4 * * ?")
     public void runDataCleanup() {
         log.info("开始执行数据清理任务");
 
@@ -422,9 +452,15 @@ public class SensorDataBatchProcessor {
                     // 计算过期时间（90天前）
                     LocalDateTime expireTime = LocalDateTime.now().minusDays(retentionDays);
 
-                    // 删除MySQL中的过期数据
-                    int deletedCount = mysqlMapper.deleteSensorData(expireTime);
-                    log.info("从MySQL删除 {} 条过期数据", deletedCount);
+                    // 删除MySQL中的过期分区；表未分区时逐行删除
+                    if (partitionManager.queryPartitions().isEmpty()) {
+                        int deletedCount = mysqlMapper.deleteSensorData(expireTime);
+                        log.warn("实时表未分区，从MySQL逐行删除 {} 条过期数据", deletedCount);
+                        partitionManager.deleteRollupsBefore(expireTime);
+                    } else {
+                        List<String> dropped = partitionManager.dropPartitionsBefore(expireTime.toLocalDate());
+                        log.info("从MySQL删除 {} 个过期分区", dropped.size());
+                    }
 
                     // 删除Hive中的过期数据分区
                     deleteExpiredHivePartitions(expireTime);
@@ -0,0 +1,229 @@
+package com.bdir.dps.aggregate;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * 单个指标的部分聚合
+ * 保存非空值的条数、和、平方和、最小值、最大值，以及可选的等宽直方图草图。
+ * 任意两个部分聚合可以合并，合并后仍能精确计算平均值和标准差，
+ * 因此不同查询路由、不同时间桶和不同机器人的结果可以直接合并，而不需要对平均值再求平均
+ */
+public class PartialAggregate {
+
+    private long count;
+    private double sum;
+    private double sumSq;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private Sketch sketch;
+
+    public PartialAggregate() {
+    }
+
+    public PartialAggregate(long count, double sum, double sumSq, double min, double max) {
+        this.count = count;
+        if (count > 0) {
+            this.sum = sum;
+            this.sumSq = sumSq;
+            this.min = min;
+            this.max = max;
+        }
+    }
+
+    /**
+     * 带等宽直方图草图的空聚合
+     *
+     * @param binWidth 直方图的桶宽，桶的边界为binWidth的整数倍
+     */
+    public static PartialAggregate withSketch(double binWidth) {
+        PartialAggregate aggregate = new PartialAggregate();
+        aggregate.sketch = new Sketch(binWidth);
+        return aggregate;
+    }
+
+    /**
+     * 从查询结果的一行中读取部分聚合，列名为前缀加_count、_sum、_sum_sq、_min、_max；
+     * 没有平方和列时平方和为NaN，标准差不可用
+     */
+    public static PartialAggregate fromColumns(Map<String, Object> row, String prefix) {
+        long count = toLong(row.get(prefix + "_count"));
+        if (count == 0) {
+            return new PartialAggregate();
+        }
+        Object sumSq = row.get(prefix + "_sum_sq");
+        return new PartialAggregate(count, toDouble(row.get(prefix + "_sum")),
+                sumSq != null ? toDouble(sumSq) : Double.NaN,
+                toDouble(row.get(prefix + "_min")), toDouble(row.get(prefix + "_max")));
+    }
+
+    /**
+     * 加入一个值
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * 加入weight个相同的值
+     */
+    public void add(double value, long weight) {
+        if (weight <= 0) {
+            return;
+        }
+        count += weight;
+        sum += value * weight;
+        sumSq += value * value * weight;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        if (sketch != null) {
+            sketch.add(value, weight);
+        }
+    }
+
+    /**
+     * 合并另一个部分聚合；两边的草图桶宽不同或一边没有草图时，合并结果不保留草图
+     */
+    public PartialAggregate merge(PartialAggregate other) {
+        if (other == null) {
+            return this;
+        }
+        if (sketch != null) {
+            if (other.sketch != null && other.sketch.binWidth == sketch.binWidth) {
+                sketch.merge(other.sketch);
+            } else {
+                sketch = null;
+            }
+        }
+        if (other.count > 0) {
+            count += other.count;
+            sum += other.sum;
+            sumSq += other.sumSq;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        return this;
+    }
+
+    public PartialAggregate copy() {
+        PartialAggregate copy = new PartialAggregate(count, sum, sumSq, min, max);
+        if (sketch != null) {
+            copy.sketch = new Sketch(sketch.binWidth);
+            copy.sketch.merge(sketch);
+        }
+        return copy;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getSumSq() {
+        return sumSq;
+    }
+
+    /**
+     * 最小值，没有数据时为null
+     */
+    public Double getMin() {
+        return count > 0 ? min : null;
+    }
+
+    /**
+     * 最大值，没有数据时为null
+     */
+    public Double getMax() {
+        return count > 0 ? max : null;
+    }
+
+    /**
+     * 平均值，没有数据时为null
+     */
+    public Double getMean() {
+        return count > 0 ? sum / count : null;
+    }
+
+    /**
+     * 总体标准差，没有数据或平方和不可用时为null
+     */
+    public Double getStdDev() {
+        if (count == 0 || Double.isNaN(sumSq)) {
+            return null;
+        }
+        double mean = sum / count;
+        return Math.sqrt(Math.max(sumSq / count - mean * mean, 0));
+    }
+
+    public Sketch getSketch() {
+        return sketch;
+    }
+
+    /**
+     * 转换为接口返回的统计信息
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("count", count);
+        map.put("avg", getMean());
+        map.put("min", getMin());
+        map.put("max", getMax());
+        map.put("stdDev", getStdDev());
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return "PartialAggregate{count=" + count + ", mean=" + getMean() + ", min=" + getMin()
+                + ", max=" + getMax() + "}";
+    }
+
+    private static long toLong(Object value) {
+        return value != null ? ((Number) value).longValue() : 0;
+    }
+
+    private static double toDouble(Object value) {
+        return value != null ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * 等宽直方图草图，只保存有数据的桶，桶宽相同的草图可以合并
+     */
+    public static class Sketch {
+        private final double binWidth;
+        private final NavigableMap<Long, Long> bins = new TreeMap<>();
+
+        Sketch(double binWidth) {
+            if (!(binWidth > 0)) {
+                throw new IllegalArgumentException("桶宽必须大于0: " + binWidth);
+            }
+            this.binWidth = binWidth;
+        }
+
+        void add(double value, long weight) {
+            bins.merge((long) Math.floor(value / binWidth), weight, Long::sum);
+        }
+
+        void merge(Sketch other) {
+            other.bins.forEach((bin, binCount) -> bins.merge(bin, binCount, Long::sum));
+        }
+
+        public double getBinWidth() {
+            return binWidth;
+        }
+
+        /**
+         * 各桶的下边界和条数，按下边界升序
+         */
+        public NavigableMap<Double, Long> getBins() {
+            NavigableMap<Double, Long> result = new TreeMap<>();
+            bins.forEach((bin, binCount) -> result.put(bin * binWidth, binCount));
+            return result;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.bdir.dps.aggregate;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 按机器人和时间桶的传感器数据部分聚合
+ * 各查询路由都返回这种结果，同一机器人、同一时间桶的结果可以跨路由合并，
+ * 也可以去掉机器人或时间桶维度后合并为更粗的粒度
+ */
+public class SensorAggregate {
+
+    /**
+     * 部分聚合包含的指标
+     */
+    public static final List<String> METRICS = Arrays.asList("temperature", "humidity", "pressure");
+
+    private static final DateTimeFormatter BUCKET_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final String robotId;
+    private final LocalDateTime bucket;
+    private String robotName;
+    private String robotType;
+    private long dataCount;
+    private final Map<String, PartialAggregate> metrics = new LinkedHashMap<>();
+
+    public SensorAggregate(String robotId, LocalDateTime bucket) {
+        this.robotId = robotId;
+        this.bucket = bucket;
+        for (String metric : METRICS) {
+            metrics.put(metric, new PartialAggregate());
+        }
+    }
+
+    /**
+     * 从查询结果的一行中读取：robot_id、robot_name、robot_type、time_bucket、data_count，
+     * 以及每个指标的_count、_sum、_sum_sq、_min、_max列
+     */
+    public static SensorAggregate fromRow(Map<String, Object> row) {
+        Object robotId = row.get("robot_id");
+        Object bucket = row.get("time_bucket");
+        SensorAggregate aggregate = new SensorAggregate(robotId != null ? String.valueOf(robotId) : null,
+                bucket != null ? LocalDateTime.parse(String.valueOf(bucket), BUCKET_FORMATTER) : null);
+        aggregate.robotName = (String) row.get("robot_name");
+        aggregate.robotType = (String) row.get("robot_type");
+        Object dataCount = row.get("data_count");
+        aggregate.dataCount = dataCount != null ? ((Number) dataCount).longValue() : 0;
+        for (String metric : METRICS) {
+            aggregate.metrics.put(metric, PartialAggregate.fromColumns(row, metric));
+        }
+        return aggregate;
+    }
+
+    /**
+     * 合并同一分组的另一个部分聚合
+     */
+    public SensorAggregate merge(SensorAggregate other) {
+        if (robotId != null && robotId.equals(other.robotId)) {
+            if (robotName == null) {
+                robotName = other.robotName;
+            }
+            if (robotType == null) {
+                robotType = other.robotType;
+            }
+        }
+        dataCount += other.dataCount;
+        for (Map.Entry<String, PartialAggregate> entry : other.metrics.entrySet()) {
+            metrics.computeIfAbsent(entry.getKey(), k -> new PartialAggregate()).merge(entry.getValue());
+        }
+        return this;
+    }
+
+    /**
+     * 按分组键合并，分组键相同的部分聚合合并为一个，结果按分组首次出现的顺序排列
+     *
+     * @param robotKey 返回的部分聚合保留的机器人ID，为null时去掉机器人维度
+     * @param bucketKey 返回的部分聚合保留的时间桶，为null时去掉时间桶维度
+     */
+    public static List<SensorAggregate> combine(Collection<SensorAggregate> aggregates,
+                                                Function<SensorAggregate, String> robotKey,
+                                                Function<SensorAggregate, LocalDateTime> bucketKey) {
+        Map<List<Object>, SensorAggregate> groups = new LinkedHashMap<>();
+        for (SensorAggregate aggregate : aggregates) {
+            String robot = robotKey != null ? robotKey.apply(aggregate) : null;
+            LocalDateTime bucket = bucketKey != null ? bucketKey.apply(aggregate) : null;
+            groups.computeIfAbsent(Arrays.asList(robot, bucket), k -> new SensorAggregate(robot, bucket))
+                    .merge(aggregate);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    /**
+     * 合并为一个不分机器人和时间桶的部分聚合
+     */
+    public static SensorAggregate total(Collection<SensorAggregate> aggregates) {
+        SensorAggregate total = new SensorAggregate(null, null);
+        for (SensorAggregate aggregate : aggregates) {
+            total.merge(aggregate);
+        }
+        return total;
+    }
+
+    /**
+     * 转换为原先路由查询的结果格式：robotId、robotName、robotType、各指标的平均值、最大值、最小值和dataCount
+     */
+    public Map<String, Object> toRow() {
+        Map<String, Object> row = new HashMap<>();
+        row.put("robotId", robotId);
+        row.put("robotName", robotName);
+        row.put("robotType", robotType);
+        if (bucket != null) {
+            row.put("time", bucket.format(BUCKET_FORMATTER));
+        }
+        PartialAggregate temperature = getMetric("temperature");
+        row.put("avgTemperature", temperature.getMean());
+        row.put("maxTemperature", temperature.getMax());
+        row.put("minTemperature", temperature.getMin());
+        PartialAggregate humidity = getMetric("humidity");
+        row.put("avgHumidity", humidity.getMean());
+        row.put("maxHumidity", humidity.getMax());
+        row.put("minHumidity", humidity.getMin());
+        row.put("avgPressure", getMetric("pressure").getMean());
+        row.put("dataCount", dataCount);
+        return row;
+    }
+
+    public String getRobotId() {
+        return robotId;
+    }
+
+    public String getRobotName() {
+        return robotName;
+    }
+
+    public String getRobotType() {
+        return robotType;
+    }
+
+    /**
+     * 时间桶的开始时间，不分时间桶时为null
+     */
+    public LocalDateTime getBucket() {
+        return bucket;
+    }
+
+    public long getDataCount() {
+        return dataCount;
+    }
+
+    /**
+     * 指标的部分聚合，没有该指标时返回空的部分聚合
+     */
+    public PartialAggregate getMetric(String metric) {
+        PartialAggregate aggregate = metrics.get(metric);
+        return aggregate != null ? aggregate : new PartialAggregate();
+    }
+
+    public Map<String, PartialAggregate> getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "SensorAggregate{robotId=" + robotId + ", bucket=" + bucket + ", dataCount=" + dataCount
+                + ", metrics=" + metrics + "}";
+    }
+}
@@ -0,0 +1,49 @@
+package com.bdir.dps.aggregate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * 部分聚合的时间桶粒度
+ */
+public enum TimeBucket {
+    /**
+     * 不按时间分桶
+     */
+    NONE,
+    MINUTE,
+    HOUR,
+    DAY;
+
+    /**
+     * 时间所在桶的开始时间，NONE返回null
+     */
+    public LocalDateTime truncate(LocalDateTime time) {
+        switch (this) {
+            case MINUTE:
+                return time.truncatedTo(ChronoUnit.MINUTES);
+            case HOUR:
+                return time.truncatedTo(ChronoUnit.HOURS);
+            case DAY:
+                return time.truncatedTo(ChronoUnit.DAYS);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 按接口的时间间隔参数取粒度：minute、hour、day
+     */
+    public static TimeBucket fromInterval(String interval) {
+        switch (interval) {
+            case "minute":
+                return MINUTE;
+            case "hour":
+                return HOUR;
+            case "day":
+                return DAY;
+            default:
+                throw new IllegalArgumentException("不支持的时间间隔: " + interval);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.bdir.dps.common;
+
+/**
+ * 死信消息头
+ * 流处理写库失败的数据发送到死信主题时附带的失败信息，重放时据此还原原始主题
+ */
+public final class DeadLetterHeaders {
+
+    /**
+     * 默认死信主题
+     */
+    public static final String DEFAULT_TOPIC = "sensor-data-error";
+
+    /**
+     * 死信消息头的公共前缀，重放时去掉这些消息头，其余消息头（如内容类型、传感器类型）原样带回原始主题
+     */
+    public static final String PREFIX = "dlq-";
+
+    public static final String ORIGINAL_TOPIC = "dlq-original-topic";
+    public static final String ORIGINAL_PARTITION = "dlq-original-partition";
+    public static final String ORIGINAL_OFFSET = "dlq-original-offset";
+    public static final String EXCEPTION_CLASS = "dlq-exception-class";
+    public static final String EXCEPTION_MESSAGE = "dlq-exception-message";
+    public static final String ATTEMPTS = "dlq-attempts";
+    public static final String FAILED_AT = "dlq-failed-at";
+
+    private DeadLetterHeaders() {
+    }
+
+    public static boolean isDeadLetterHeader(String name) {
+        return name != null && name.startsWith(PREFIX);
+    }
+}
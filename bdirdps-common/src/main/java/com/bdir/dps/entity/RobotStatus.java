@@ -1,5 +1,6 @@
 package com.bdir.dps.entity;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import java.time.LocalDateTime;
@@ -41,7 +42,7 @@ public class RobotStatus {
     /**
      * 传感器数据
      */
-    private Map<String, Double> sensorData;
+    private SensorMetrics sensorData;
 
     /**
      * 任务状态
@@ -78,6 +79,15 @@ public class RobotStatus {
      */
     private LocalDateTime lastUpdateTime;
 
+    /**
+     * 设置传感器数据，普通Map转换为指标容器，JSON反序列化时直接构造指标容器
+     */
+    @JsonDeserialize(as = SensorMetrics.class)
+    public RobotStatus setSensorData(Map<String, Double> sensorData) {
+        this.sensorData = SensorMetrics.of(sensorData);
+        return this;
+    }
+
     /**
      * 位置内部类
      */
@@ -111,19 +121,30 @@ public class RobotStatus {
             return true;
         }
         // 检查其他传感器数据是否异常
-        return sensorData.entrySet().stream()
-                .anyMatch(entry -> {
-                    String key = entry.getKey();
-                    Double value = entry.getValue();
-                    // 简单的异常判断逻辑
-                    if (key.contains("temperature") && value > 100) {
-                        return true;
-                    }
-                    if (key.contains("pressure") && (value < 0 || value > 1000)) {
-                        return true;
-                    }
-                    return false;
-                });
+        if (sensorData.has(SensorMetrics.TEMPERATURE) && sensorData.getDouble(SensorMetrics.TEMPERATURE) > 100) {
+            return true;
+        }
+        if (sensorData.has(SensorMetrics.PRESSURE)) {
+            double pressure = sensorData.getDouble(SensorMetrics.PRESSURE);
+            if (pressure < 0 || pressure > 1000) {
+                return true;
+            }
+        }
+        // 不在固定槽位中的指标按名称匹配，如motor_temperature
+        for (Map.Entry<String, Double> entry : sensorData.getOverflow().entrySet()) {
+            String key = entry.getKey();
+            Double value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+            if (key.contains("temperature") && value > 100) {
+                return true;
+            }
+            if (key.contains("pressure") && (value < 0 || value > 1000)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.bdir.dps.entity;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import jakarta.validation.constraints.NotBlank;
@@ -47,7 +48,7 @@ public class SensorData {
     /**
      * 传感器数值
      */
-    private Map<String, Double> metrics;
+    private SensorMetrics metrics;
 
     /**
      * 位置信息
@@ -104,6 +105,15 @@ public class SensorData {
         }
     }
 
+    /**
+     * 设置传感器数值，普通Map转换为指标容器，JSON反序列化时直接构造指标容器
+     */
+    @JsonDeserialize(as = SensorMetrics.class)
+    public SensorData setMetrics(Map<String, Double> metrics) {
+        this.metrics = SensorMetrics.of(metrics);
+        return this;
+    }
+
     /**
      * 快速创建传感器数据
      */
@@ -130,7 +140,7 @@ public class SensorData {
      */
     public SensorData setMetricValue(String metricName, Double value) {
         if (this.metrics == null) {
-            this.metrics = new java.util.HashMap<>();
+            this.metrics = new SensorMetrics();
         }
         this.metrics.put(metricName, value);
         return this;
@@ -144,11 +154,8 @@ public class SensorData {
             return false;
         }
         // 检查数值是否在合理范围内
-        for (Map.Entry<String, Double> entry : metrics.entrySet()) {
-            Double value = entry.getValue();
-            if (value == null || Double.isNaN(value) || Double.isInfinite(value)) {
-                return false;
-            }
+        if (!metrics.allFinite()) {
+            return false;
         }
         return valid;
     }
@@ -0,0 +1,357 @@
+package com.bdir.dps.entity;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 传感器指标容器
+ * 常用指标存放在固定槽位的double数组中，用位掩码记录哪些槽位有值，
+ * 不常用的指标存放在按需创建的溢出Map中。
+ * 实现了Map接口，JSON序列化格式与普通Map相同；
+ * 热点路径应通过槽位常量读写，避免字符串查找和装箱
+ */
+public class SensorMetrics extends AbstractMap<String, Double> {
+
+    public static final int TEMPERATURE = 0;
+    public static final int HUMIDITY = 1;
+    public static final int PRESSURE = 2;
+    public static final int POSITION_X = 3;
+    public static final int POSITION_Y = 4;
+    public static final int POSITION_Z = 5;
+    public static final int VIBRATION = 6;
+    public static final int NOISE = 7;
+
+    private static final String[] SLOT_NAMES = {
+        "temperature",
+        "humidity",
+        "pressure",
+        "position_x",
+        "position_y",
+        "position_z",
+        "vibration",
+        "noise"
+    };
+
+    public static final int SLOT_COUNT = SLOT_NAMES.length;
+
+    private final double[] values = new double[SLOT_COUNT];
+
+    /**
+     * 已设置的槽位，包括值为null的槽位
+     */
+    private int presentMask;
+
+    /**
+     * 值为null的槽位
+     */
+    private int nullMask;
+
+    private Map<String, Double> overflow;
+
+    public SensorMetrics() {
+    }
+
+    public SensorMetrics(Map<String, Double> metrics) {
+        putAll(metrics);
+    }
+
+    /**
+     * 转换为指标容器，已经是指标容器时直接返回
+     */
+    public static SensorMetrics of(Map<String, Double> metrics) {
+        if (metrics == null || metrics instanceof SensorMetrics) {
+            return (SensorMetrics) metrics;
+        }
+        return new SensorMetrics(metrics);
+    }
+
+    /**
+     * 指标名称对应的槽位，不是固定槽位的指标返回-1
+     */
+    public static int slotOf(Object name) {
+        if (!(name instanceof String)) {
+            return -1;
+        }
+        switch ((String) name) {
+            case "temperature":
+                return TEMPERATURE;
+            case "humidity":
+                return HUMIDITY;
+            case "pressure":
+                return PRESSURE;
+            case "position_x":
+                return POSITION_X;
+            case "position_y":
+                return POSITION_Y;
+            case "position_z":
+                return POSITION_Z;
+            case "vibration":
+                return VIBRATION;
+            case "noise":
+                return NOISE;
+            default:
+                return -1;
+        }
+    }
+
+    public static String slotName(int slot) {
+        return SLOT_NAMES[slot];
+    }
+
+    /**
+     * 槽位是否有非null的值
+     */
+    public boolean has(int slot) {
+        return ((presentMask & ~nullMask) & (1 << slot)) != 0;
+    }
+
+    /**
+     * 槽位是否已设置，值可能为null
+     */
+    public boolean isPresent(int slot) {
+        return (presentMask & (1 << slot)) != 0;
+    }
+
+    /**
+     * 读取槽位的值，没有值时返回NaN
+     */
+    public double getDouble(int slot) {
+        return has(slot) ? values[slot] : Double.NaN;
+    }
+
+    public SensorMetrics setDouble(int slot, double value) {
+        int bit = 1 << slot;
+        values[slot] = value;
+        presentMask |= bit;
+        nullMask &= ~bit;
+        return this;
+    }
+
+    /**
+     * 不在固定槽位中的指标，只读
+     */
+    public Map<String, Double> getOverflow() {
+        return overflow == null ? Collections.emptyMap() : Collections.unmodifiableMap(overflow);
+    }
+
+    /**
+     * 全部指标都有值且为有限数值
+     */
+    public boolean allFinite() {
+        if (nullMask != 0) {
+            return false;
+        }
+        for (int mask = presentMask; mask != 0; mask &= mask - 1) {
+            if (!Double.isFinite(values[Integer.numberOfTrailingZeros(mask)])) {
+                return false;
+            }
+        }
+        if (overflow != null) {
+            for (Double value : overflow.values()) {
+                if (value == null || !Double.isFinite(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return Integer.bitCount(presentMask) + (overflow == null ? 0 : overflow.size());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            return isPresent(slot);
+        }
+        return overflow != null && overflow.containsKey(key);
+    }
+
+    @Override
+    public Double get(Object key) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            return slotValue(slot);
+        }
+        return overflow == null ? null : overflow.get(key);
+    }
+
+    @Override
+    public Double put(String key, Double value) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            if (overflow == null) {
+                overflow = new LinkedHashMap<>(4);
+            }
+            return overflow.put(key, value);
+        }
+
+        Double previous = slotValue(slot);
+        if (value == null) {
+            presentMask |= 1 << slot;
+            nullMask |= 1 << slot;
+        } else {
+            setDouble(slot, value);
+        }
+        return previous;
+    }
+
+    @Override
+    public Double remove(Object key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return overflow == null ? null : overflow.remove(key);
+        }
+        Double previous = slotValue(slot);
+        clearSlot(slot);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        presentMask = 0;
+        nullMask = 0;
+        if (overflow != null) {
+            overflow.clear();
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Double>> entrySet() {
+        return new EntrySet();
+    }
+
+    private Double slotValue(int slot) {
+        return has(slot) ? values[slot] : null;
+    }
+
+    private void clearSlot(int slot) {
+        presentMask &= ~(1 << slot);
+        nullMask &= ~(1 << slot);
+    }
+
+    private int nextPresentSlot(int from) {
+        int mask = from >= SLOT_COUNT ? 0 : presentMask & (-1 << from);
+        return mask == 0 ? SLOT_COUNT : Integer.numberOfTrailingZeros(mask);
+    }
+
+    /**
+     * 条目视图：先按槽位顺序遍历固定槽位，再遍历溢出Map
+     */
+    private final class EntrySet extends AbstractSet<Entry<String, Double>> {
+        @Override
+        public Iterator<Entry<String, Double>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return SensorMetrics.this.size();
+        }
+
+        @Override
+        public void clear() {
+            SensorMetrics.this.clear();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Double>> {
+        private int nextSlot = nextPresentSlot(0);
+        private int lastSlot = -1;
+        private Iterator<Entry<String, Double>> overflowIterator;
+
+        @Override
+        public boolean hasNext() {
+            return nextSlot < SLOT_COUNT || overflowIterator().hasNext();
+        }
+
+        @Override
+        public Entry<String, Double> next() {
+            if (nextSlot < SLOT_COUNT) {
+                lastSlot = nextSlot;
+                nextSlot = nextPresentSlot(nextSlot + 1);
+                return new SlotEntry(lastSlot);
+            }
+            if (!overflowIterator().hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastSlot = -1;
+            return overflowIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (lastSlot >= 0) {
+                clearSlot(lastSlot);
+                lastSlot = -1;
+            } else if (overflowIterator != null) {
+                overflowIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+
+        private Iterator<Entry<String, Double>> overflowIterator() {
+            if (overflowIterator == null) {
+                overflowIterator = overflow == null
+                        ? Collections.emptyIterator() : overflow.entrySet().iterator();
+            }
+            return overflowIterator;
+        }
+    }
+
+    /**
+     * 固定槽位的条目，setValue写回容器
+     */
+    private final class SlotEntry implements Entry<String, Double> {
+        private final int slot;
+
+        private SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return SLOT_NAMES[slot];
+        }
+
+        @Override
+        public Double getValue() {
+            return slotValue(slot);
+        }
+
+        @Override
+        public Double setValue(Double value) {
+            return put(SLOT_NAMES[slot], value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> entry = (Entry<?, ?>) o;
+            return getKey().equals(entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.bdir.dps.kafka;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 分区倾斜统计
+ * 按主题记录分区器为每个分区分配的消息数，倾斜度为最大分区消息数与各分区平均消息数之比，
+ * 1表示完全均匀，数值越大说明热点机器人越集中
+ */
+public class PartitionSkewMonitor {
+
+    private final Map<String, AtomicLongArray> partitionCounts = new ConcurrentHashMap<>();
+
+    public void record(String topic, int partition, int numPartitions) {
+        AtomicLongArray counts = partitionCounts.get(topic);
+        if (counts == null || counts.length() != numPartitions) {
+            // 分区数变化时重新开始统计
+            counts = partitionCounts.compute(topic, (t, current) ->
+                    current != null && current.length() == numPartitions
+                            ? current : new AtomicLongArray(numPartitions));
+        }
+        counts.incrementAndGet(partition);
+    }
+
+    /**
+     * 主题的倾斜度，没有数据时返回0
+     */
+    public double getSkew(String topic) {
+        AtomicLongArray counts = partitionCounts.get(topic);
+        return counts == null ? 0 : skew(counts);
+    }
+
+    /**
+     * 所有主题中最大的倾斜度
+     */
+    public double getMaxSkew() {
+        double max = 0;
+        for (AtomicLongArray counts : partitionCounts.values()) {
+            max = Math.max(max, skew(counts));
+        }
+        return max;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        partitionCounts.forEach((topic, counts) -> {
+            long total = 0;
+            int hottest = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                total += counts.get(i);
+                if (counts.get(i) > counts.get(hottest)) {
+                    hottest = i;
+                }
+            }
+            Map<String, Object> topicStats = new HashMap<>();
+            topicStats.put("records", total);
+            topicStats.put("partitions", counts.length());
+            topicStats.put("hottestPartition", hottest);
+            topicStats.put("skew", skew(counts));
+            stats.put(topic, topicStats);
+        });
+        return stats;
+    }
+
+    public void reset() {
+        partitionCounts.clear();
+    }
+
+    private static double skew(AtomicLongArray counts) {
+        long total = 0;
+        long max = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long count = counts.get(i);
+            total += count;
+            max = Math.max(max, count);
+        }
+        return total == 0 ? 0 : (double) max * counts.length() / total;
+    }
+}
@@ -0,0 +1,480 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.entity.SensorMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 传感器数据二进制编解码器
+ * 消息格式（schema 1）：
+ * <pre>
+ * 魔数(1) | schemaId(1) | 可选字段标记(varint)
+ * robotId | sensorId | sensorType                     变长字符串
+ * [dataId] [timestamp: 纪元微秒(8)]
+ * 指标数(varint) | 指标 { 字典ID(varint) [名称] | 数值(8) } ...
+ * [location] [unit] [precision] [status] [rawData] [valid] [remark]
+ * </pre>
+ * 常用指标名称编码为字典ID，不在字典中的指标以字典ID 0加名称内联编码；
+ * 数值按IEEE 754定长编码，不经过文本转换。
+ * 时间戳按UTC把LocalDateTime换算为纪元微秒，与JSON的本地时间语义一致。
+ * 指标字典只能在末尾追加，不能修改已有条目的顺序，否则旧消息无法正确解码
+ */
+public final class SensorDataCodec {
+
+    /**
+     * 消息内容类型头
+     */
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+
+    public static final String CONTENT_TYPE_BINARY = "application/x-sensor-data-v1";
+
+    public static final String CONTENT_TYPE_JSON = "application/json";
+
+    /**
+     * 魔数，JSON消息不会以该字节开头
+     */
+    public static final byte MAGIC = (byte) 0xB1;
+
+    public static final byte SCHEMA_ID = 1;
+
+    /**
+     * 指标字典，下标即字典ID，0保留给内联名称
+     */
+    private static final String[] METRIC_DICTIONARY = {
+        null,
+        "temperature",
+        "humidity",
+        "pressure",
+        "position_x",
+        "position_y",
+        "position_z",
+        "vibration",
+        "noise",
+        "voltage",
+        "current",
+        "speed",
+        "battery"
+    };
+
+    private static final Map<String, Integer> METRIC_IDS = new HashMap<>();
+
+    /**
+     * 字典ID对应的指标容器槽位，以及槽位对应的字典ID
+     */
+    private static final int[] DICTIONARY_SLOTS = new int[METRIC_DICTIONARY.length];
+
+    private static final int[] SLOT_DICTIONARY_IDS = new int[SensorMetrics.SLOT_COUNT];
+
+    static {
+        for (int i = 1; i < METRIC_DICTIONARY.length; i++) {
+            METRIC_IDS.put(METRIC_DICTIONARY[i], i);
+            DICTIONARY_SLOTS[i] = SensorMetrics.slotOf(METRIC_DICTIONARY[i]);
+        }
+        DICTIONARY_SLOTS[0] = -1;
+        for (int slot = 0; slot < SensorMetrics.SLOT_COUNT; slot++) {
+            Integer metricId = METRIC_IDS.get(SensorMetrics.slotName(slot));
+            if (metricId == null) {
+                throw new IllegalStateException("指标槽位不在字典中: " + SensorMetrics.slotName(slot));
+            }
+            SLOT_DICTIONARY_IDS[slot] = metricId;
+        }
+    }
+
+    private static final String DEFAULT_STATUS = "NORMAL";
+
+    /**
+     * 空值数值的编码，取一个不会由正常计算产生的NaN位模式
+     */
+    private static final long NULL_DOUBLE_BITS = 0x7ff8_0000_0000_deadL;
+
+    // 可选字段标记位
+    private static final int HAS_DATA_ID = 1;
+    private static final int HAS_TIMESTAMP = 1 << 1;
+    private static final int HAS_METRICS = 1 << 2;
+    private static final int HAS_LOCATION = 1 << 3;
+    private static final int HAS_UNIT = 1 << 4;
+    private static final int HAS_PRECISION = 1 << 5;
+    private static final int HAS_STATUS = 1 << 6;
+    private static final int HAS_RAW_DATA = 1 << 7;
+    private static final int HAS_VALID = 1 << 8;
+    private static final int HAS_REMARK = 1 << 9;
+
+    private SensorDataCodec() {
+    }
+
+    /**
+     * 编码传感器数据
+     */
+    public static byte[] encode(SensorData data) {
+        Writer out = new Writer(64 + (data.getMetrics() != null ? data.getMetrics().size() * 10 : 0));
+        encode(data, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * 把传感器数据编码到输出末尾
+     */
+    static void encode(SensorData data, Writer out) {
+        int flags = 0;
+        if (data.getDataId() != null) {
+            flags |= HAS_DATA_ID;
+        }
+        if (data.getTimestamp() != null) {
+            flags |= HAS_TIMESTAMP;
+        }
+        if (data.getMetrics() != null) {
+            flags |= HAS_METRICS;
+        }
+        if (data.getLocation() != null) {
+            flags |= HAS_LOCATION;
+        }
+        if (data.getUnit() != null) {
+            flags |= HAS_UNIT;
+        }
+        if (data.getPrecision() != null) {
+            flags |= HAS_PRECISION;
+        }
+        if (!DEFAULT_STATUS.equals(data.getStatus())) {
+            flags |= HAS_STATUS;
+        }
+        if (data.getRawData() != null) {
+            flags |= HAS_RAW_DATA;
+        }
+        if (!Boolean.TRUE.equals(data.getValid())) {
+            flags |= HAS_VALID;
+        }
+        if (data.getRemark() != null) {
+            flags |= HAS_REMARK;
+        }
+
+        out.writeByte(MAGIC);
+        out.writeByte(SCHEMA_ID);
+        out.writeVarInt(flags);
+        out.writeString(data.getRobotId());
+        out.writeString(data.getSensorId());
+        out.writeString(data.getSensorType());
+
+        if ((flags & HAS_DATA_ID) != 0) {
+            out.writeString(data.getDataId());
+        }
+        if ((flags & HAS_TIMESTAMP) != 0) {
+            out.writeLong(toEpochMicros(data.getTimestamp()));
+        }
+        if ((flags & HAS_METRICS) != 0) {
+            SensorMetrics metrics = data.getMetrics();
+            out.writeVarInt(metrics.size());
+            // 固定槽位直接按槽位编码，不经过条目视图
+            for (int slot = 0; slot < SensorMetrics.SLOT_COUNT; slot++) {
+                if (metrics.isPresent(slot)) {
+                    out.writeVarInt(SLOT_DICTIONARY_IDS[slot]);
+                    if (metrics.has(slot)) {
+                        out.writeDouble(metrics.getDouble(slot));
+                    } else {
+                        out.writeLong(NULL_DOUBLE_BITS);
+                    }
+                }
+            }
+            for (Map.Entry<String, Double> entry : metrics.getOverflow().entrySet()) {
+                Integer metricId = METRIC_IDS.get(entry.getKey());
+                if (metricId != null) {
+                    out.writeVarInt(metricId);
+                } else {
+                    out.writeVarInt(0);
+                    out.writeString(entry.getKey());
+                }
+                out.writeNullableDouble(entry.getValue());
+            }
+        }
+        if ((flags & HAS_LOCATION) != 0) {
+            SensorData.Location location = data.getLocation();
+            out.writeNullableDouble(location.getX());
+            out.writeNullableDouble(location.getY());
+            out.writeNullableDouble(location.getZ());
+            out.writeString(location.getCoordinateSystem());
+        }
+        if ((flags & HAS_UNIT) != 0) {
+            out.writeString(data.getUnit());
+        }
+        if ((flags & HAS_PRECISION) != 0) {
+            out.writeDouble(data.getPrecision());
+        }
+        if ((flags & HAS_STATUS) != 0) {
+            out.writeString(data.getStatus());
+        }
+        if ((flags & HAS_RAW_DATA) != 0) {
+            out.writeString(data.getRawData());
+        }
+        if ((flags & HAS_VALID) != 0) {
+            out.writeByte((byte) (data.getValid() == null ? 2 : 0));
+        }
+        if ((flags & HAS_REMARK) != 0) {
+            out.writeString(data.getRemark());
+        }
+    }
+
+    /**
+     * 解码传感器数据
+     *
+     * @throws IllegalArgumentException 魔数、schema或长度不正确时
+     */
+    public static SensorData decode(byte[] bytes) {
+        return decode(new Reader(bytes));
+    }
+
+    /**
+     * 从输入的当前位置解码一条传感器数据
+     */
+    static SensorData decode(Reader in) {
+        if (in.readByte() != MAGIC) {
+            throw new IllegalArgumentException("不是二进制传感器数据");
+        }
+        byte schemaId = in.readByte();
+        if (schemaId != SCHEMA_ID) {
+            throw new IllegalArgumentException("不支持的传感器数据schema: " + schemaId);
+        }
+        int flags = in.readVarInt();
+
+        SensorData data = new SensorData();
+        data.setRobotId(in.readString());
+        data.setSensorId(in.readString());
+        data.setSensorType(in.readString());
+
+        if ((flags & HAS_DATA_ID) != 0) {
+            data.setDataId(in.readString());
+        }
+        if ((flags & HAS_TIMESTAMP) != 0) {
+            data.setTimestamp(fromEpochMicros(in.readLong()));
+        }
+        if ((flags & HAS_METRICS) != 0) {
+            int count = in.readVarInt();
+            // 每个指标至少占9字节，据此校验指标数，避免损坏的消息导致大量分配
+            if (count < 0 || count > in.remaining() / 9) {
+                throw new IllegalArgumentException("指标数无效: " + count);
+            }
+            SensorMetrics metrics = new SensorMetrics();
+            for (int i = 0; i < count; i++) {
+                int metricId = in.readVarInt();
+                if (metricId >= METRIC_DICTIONARY.length) {
+                    throw new IllegalArgumentException("未知的指标字典ID: " + metricId);
+                }
+                int slot = DICTIONARY_SLOTS[metricId];
+                if (slot >= 0) {
+                    long bits = in.readLong();
+                    if (bits == NULL_DOUBLE_BITS) {
+                        metrics.put(METRIC_DICTIONARY[metricId], null);
+                    } else {
+                        metrics.setDouble(slot, Double.longBitsToDouble(bits));
+                    }
+                } else {
+                    String name = metricId == 0 ? in.readString() : METRIC_DICTIONARY[metricId];
+                    metrics.put(name, in.readNullableDouble());
+                }
+            }
+            data.setMetrics(metrics);
+        }
+        if ((flags & HAS_LOCATION) != 0) {
+            SensorData.Location location = new SensorData.Location();
+            location.setX(in.readNullableDouble());
+            location.setY(in.readNullableDouble());
+            location.setZ(in.readNullableDouble());
+            location.setCoordinateSystem(in.readString());
+            data.setLocation(location);
+        }
+        if ((flags & HAS_UNIT) != 0) {
+            data.setUnit(in.readString());
+        }
+        if ((flags & HAS_PRECISION) != 0) {
+            data.setPrecision(in.readNullableDouble());
+        }
+        if ((flags & HAS_STATUS) != 0) {
+            data.setStatus(in.readString());
+        }
+        if ((flags & HAS_RAW_DATA) != 0) {
+            data.setRawData(in.readString());
+        }
+        if ((flags & HAS_VALID) != 0) {
+            data.setValid(in.readByte() == 2 ? null : Boolean.FALSE);
+        }
+        if ((flags & HAS_REMARK) != 0) {
+            data.setRemark(in.readString());
+        }
+        return data;
+    }
+
+    /**
+     * 按内容类型头判断消息格式，没有内容类型头时按首字节判断
+     */
+    public static boolean isBinary(String contentType, byte[] bytes) {
+        if (contentType != null) {
+            return CONTENT_TYPE_BINARY.equals(contentType);
+        }
+        return bytes != null && bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    static long toEpochMicros(LocalDateTime timestamp) {
+        return Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), 1_000_000L),
+                timestamp.getNano() / 1000);
+    }
+
+    static LocalDateTime fromEpochMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * 可扩容的字节输出
+     */
+    static final class Writer {
+        private byte[] buffer;
+        private int position;
+
+        Writer(int initialCapacity) {
+            this.buffer = new byte[initialCapacity];
+        }
+
+        void ensure(int bytes) {
+            if (position + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + bytes));
+            }
+        }
+
+        void writeByte(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        void writeDouble(double value) {
+            writeLong(Double.doubleToRawLongBits(value));
+        }
+
+        void writeNullableDouble(Double value) {
+            writeLong(value == null ? NULL_DOUBLE_BITS : Double.doubleToRawLongBits(value));
+        }
+
+        /**
+         * 长度加1后写入，长度0表示null
+         */
+        void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    /**
+     * 字节输入
+     */
+    static final class Reader {
+        private final byte[] buffer;
+        private int position;
+
+        Reader(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int remaining() {
+            return buffer.length - position;
+        }
+
+        void require(int bytes) {
+            if (bytes > buffer.length - position) {
+                throw new IllegalArgumentException("传感器数据长度不足，位置: " + position + ", 需要: " + bytes);
+            }
+        }
+
+        byte readByte() {
+            require(1);
+            return buffer[position++];
+        }
+
+        int readVarInt() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                byte b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint过长，位置: " + position);
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("varint过长，位置: " + position);
+        }
+
+        long readLong() {
+            require(8);
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buffer[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        Double readNullableDouble() {
+            long bits = readLong();
+            return bits == NULL_DOUBLE_BITS ? null : Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            require(length);
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.utils.JsonUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Deserializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 传感器数据Kafka反序列化器
+ * 按内容类型头协商格式，没有内容类型头时按首字节区分二进制与JSON，
+ * 因此旧的JSON生产者无需改动即可与二进制生产者共用主题。
+ * 无法解析的消息记录日志后返回null，不抛出异常，避免单条坏消息阻塞消费
+ */
+@Slf4j
+public class SensorDataDeserializer implements Deserializer<SensorData> {
+
+    @Override
+    public SensorData deserialize(String topic, byte[] data) {
+        return deserialize(topic, null, data);
+    }
+
+    @Override
+    public SensorData deserialize(String topic, Headers headers, byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        try {
+            return decode(contentType(headers), data);
+        } catch (Exception e) {
+            log.error("传感器数据反序列化失败，主题: {}, 长度: {}", topic, data.length, e);
+            return null;
+        }
+    }
+
+    /**
+     * 按内容类型解码，JSON格式使用FastJSON解析。封包消息包含多条读数，需使用SensorDataEnvelopeCodec解码
+     */
+    public static SensorData decode(String contentType, byte[] data) {
+        if (SensorDataEnvelopeCodec.isEnvelope(contentType, data)) {
+            throw new IllegalArgumentException("传感器数据封包不能按单条解码");
+        }
+        if (SensorDataCodec.isBinary(contentType, data)) {
+            return SensorDataCodec.decode(data);
+        }
+        return JsonUtil.fromJson(new String(data, StandardCharsets.UTF_8), SensorData.class);
+    }
+
+    /**
+     * 读取内容类型头，没有时返回null
+     */
+    public static String contentType(Headers headers) {
+        if (headers == null) {
+            return null;
+        }
+        Header header = headers.lastHeader(SensorDataCodec.CONTENT_TYPE_HEADER);
+        return header == null || header.value() == null
+                ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+}
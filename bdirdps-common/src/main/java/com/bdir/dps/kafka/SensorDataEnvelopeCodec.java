@@ -0,0 +1,190 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.entity.SensorMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 传感器数据封包编解码器
+ * 把同一传感器的多条读数打包为一条Kafka消息，减少高频传感器的消息数和每条消息的固定开销。
+ * 封包格式（schema 1）：
+ * <pre>
+ * 魔数(1) | schemaId(1) | 读数条数(varint)
+ * 读数 { 类型(1) | 内容 } ...
+ *   类型0 完整读数：单条二进制格式（见SensorDataCodec）
+ *   类型1 增量读数：dataId | 时间戳差(zigzag varint，微秒) | 各指标数值与上一条的位异或(varint) ...
+ * </pre>
+ * 除dataId、时间戳和指标数值外其余字段都与上一条相同、指标集合相同且没有空值和非固定槽位指标时，
+ * 按增量读数编码，否则按完整读数编码。相邻读数数值接近时异或结果的高位为0，varint只需少量字节
+ */
+public final class SensorDataEnvelopeCodec {
+
+    public static final String CONTENT_TYPE_ENVELOPE = "application/x-sensor-data-batch-v1";
+
+    /**
+     * 魔数，与单条二进制格式和JSON都不冲突
+     */
+    public static final byte MAGIC = (byte) 0xB2;
+
+    public static final byte SCHEMA_ID = 1;
+
+    private static final byte FULL = 0;
+    private static final byte DELTA = 1;
+
+    private SensorDataEnvelopeCodec() {
+    }
+
+    /**
+     * 编码一组读数，调用方保证按时间顺序排列
+     */
+    public static byte[] encode(List<SensorData> readings) {
+        SensorDataCodec.Writer out = new SensorDataCodec.Writer(64 + readings.size() * 24);
+        out.writeByte(MAGIC);
+        out.writeByte(SCHEMA_ID);
+        out.writeVarInt(readings.size());
+
+        SensorData previous = null;
+        for (SensorData data : readings) {
+            if (previous != null && canDelta(previous, data)) {
+                out.writeByte(DELTA);
+                out.writeString(data.getDataId());
+                long delta = SensorDataCodec.toEpochMicros(data.getTimestamp())
+                        - SensorDataCodec.toEpochMicros(previous.getTimestamp());
+                out.writeVarLong((delta << 1) ^ (delta >> 63));
+                SensorMetrics metrics = data.getMetrics();
+                SensorMetrics previousMetrics = previous.getMetrics();
+                for (int slot = 0; slot < SensorMetrics.SLOT_COUNT; slot++) {
+                    if (metrics.has(slot)) {
+                        out.writeVarLong(Double.doubleToRawLongBits(metrics.getDouble(slot))
+                                ^ Double.doubleToRawLongBits(previousMetrics.getDouble(slot)));
+                    }
+                }
+            } else {
+                out.writeByte(FULL);
+                SensorDataCodec.encode(data, out);
+            }
+            previous = data;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码封包中的全部读数
+     *
+     * @throws IllegalArgumentException 魔数、schema或长度不正确时
+     */
+    public static List<SensorData> decode(byte[] bytes) {
+        SensorDataCodec.Reader in = new SensorDataCodec.Reader(bytes);
+        if (in.readByte() != MAGIC) {
+            throw new IllegalArgumentException("不是传感器数据封包");
+        }
+        byte schemaId = in.readByte();
+        if (schemaId != SCHEMA_ID) {
+            throw new IllegalArgumentException("不支持的传感器数据封包schema: " + schemaId);
+        }
+        int count = in.readVarInt();
+        // 每条读数至少占3字节，据此校验条数，避免损坏的消息导致大量分配
+        if (count < 0 || count > in.remaining() / 3) {
+            throw new IllegalArgumentException("封包读数条数无效: " + count);
+        }
+
+        List<SensorData> readings = new ArrayList<>(count);
+        SensorData previous = null;
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            SensorData data;
+            if (type == FULL) {
+                data = SensorDataCodec.decode(in);
+            } else if (type == DELTA && previous != null) {
+                data = decodeDelta(in, previous);
+            } else {
+                throw new IllegalArgumentException("封包读数类型无效: " + type + ", 序号: " + i);
+            }
+            readings.add(data);
+            previous = data;
+        }
+        return readings;
+    }
+
+    /**
+     * 按内容类型头判断是否为封包，没有内容类型头时按首字节判断
+     */
+    public static boolean isEnvelope(String contentType, byte[] bytes) {
+        if (contentType != null) {
+            return CONTENT_TYPE_ENVELOPE.equals(contentType);
+        }
+        return bytes != null && bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    private static SensorData decodeDelta(SensorDataCodec.Reader in, SensorData previous) {
+        SensorData data = new SensorData();
+        data.setRobotId(previous.getRobotId());
+        data.setSensorId(previous.getSensorId());
+        data.setSensorType(previous.getSensorType());
+        data.setDataId(in.readString());
+
+        long zigzag = in.readVarLong();
+        long delta = (zigzag >>> 1) ^ -(zigzag & 1);
+        data.setTimestamp(SensorDataCodec.fromEpochMicros(
+                SensorDataCodec.toEpochMicros(previous.getTimestamp()) + delta));
+
+        SensorMetrics previousMetrics = previous.getMetrics();
+        SensorMetrics metrics = new SensorMetrics();
+        for (int slot = 0; slot < SensorMetrics.SLOT_COUNT; slot++) {
+            if (previousMetrics.has(slot)) {
+                metrics.setDouble(slot, Double.longBitsToDouble(
+                        in.readVarLong() ^ Double.doubleToRawLongBits(previousMetrics.getDouble(slot))));
+            }
+        }
+        data.setMetrics(metrics);
+
+        SensorData.Location location = previous.getLocation();
+        if (location != null) {
+            data.setLocation(new SensorData.Location().setX(location.getX()).setY(location.getY())
+                    .setZ(location.getZ()).setCoordinateSystem(location.getCoordinateSystem()));
+        }
+        data.setUnit(previous.getUnit());
+        data.setPrecision(previous.getPrecision());
+        data.setStatus(previous.getStatus());
+        data.setRawData(previous.getRawData());
+        data.setValid(previous.getValid());
+        data.setRemark(previous.getRemark());
+        return data;
+    }
+
+    /**
+     * 能否相对上一条按增量编码
+     */
+    private static boolean canDelta(SensorData previous, SensorData data) {
+        if (previous.getTimestamp() == null || data.getTimestamp() == null) {
+            return false;
+        }
+        SensorMetrics metrics = data.getMetrics();
+        SensorMetrics previousMetrics = previous.getMetrics();
+        if (metrics == null || previousMetrics == null
+                || !metrics.getOverflow().isEmpty() || !previousMetrics.getOverflow().isEmpty()) {
+            return false;
+        }
+        for (int slot = 0; slot < SensorMetrics.SLOT_COUNT; slot++) {
+            // 空值槽位不能增量编码；两条的槽位集合必须相同
+            if (metrics.isPresent(slot) != metrics.has(slot)
+                    || previousMetrics.isPresent(slot) != previousMetrics.has(slot)
+                    || metrics.has(slot) != previousMetrics.has(slot)) {
+                return false;
+            }
+        }
+        return Objects.equals(previous.getRobotId(), data.getRobotId())
+                && Objects.equals(previous.getSensorId(), data.getSensorId())
+                && Objects.equals(previous.getSensorType(), data.getSensorType())
+                && Objects.equals(previous.getLocation(), data.getLocation())
+                && Objects.equals(previous.getUnit(), data.getUnit())
+                && Objects.equals(previous.getPrecision(), data.getPrecision())
+                && Objects.equals(previous.getStatus(), data.getStatus())
+                && Objects.equals(previous.getRawData(), data.getRawData())
+                && Objects.equals(previous.getValid(), data.getValid())
+                && Objects.equals(previous.getRemark(), data.getRemark());
+    }
+}
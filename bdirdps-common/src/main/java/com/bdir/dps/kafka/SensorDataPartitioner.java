@@ -0,0 +1,200 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.common.DeadLetterHeaders;
+import org.apache.kafka.clients.producer.Partitioner;
+import org.apache.kafka.clients.producer.internals.StickyPartitionCache;
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.utils.Utils;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 传感器数据分区器
+ * 传感器数据的key为robotId#sensorId，只按robotId选择分区，同一机器人的全部读数落在同一分区，
+ * 下游按机器人处理时无需跨分区汇合，且保持机器人内的顺序。
+ * 配置为热点的机器人按sensorId分散到相邻的若干分区，同一传感器的顺序不变。
+ * 热点机器人列表只在启动时读取，运行中变化会导致同一传感器的读数前后落在不同分区。
+ * 传感器主题为配置的sensor.partitioner.topic及其按类型拆分的topic-类型，死信主题等排除的主题除外；
+ * 其他主题有key时按key哈希，没有key时与Kafka内置分区器一样粘性地选择分区，批次满后再换分区
+ */
+public class SensorDataPartitioner implements Partitioner {
+
+    /**
+     * 默认的传感器数据主题，按类型拆分的主题为sensor-data-类型
+     */
+    public static final String TOPIC_PREFIX = "sensor-data";
+
+    /**
+     * 单主题模式下携带传感器类型的消息头
+     */
+    public static final String SENSOR_TYPE_HEADER = "sensor-type";
+
+    public static final char KEY_SEPARATOR = '#';
+
+    /**
+     * 热点机器人ID，逗号分隔
+     */
+    public static final String HOT_ROBOTS_CONFIG = "sensor.partitioner.hot-robots";
+
+    /**
+     * 每个热点机器人分散到的分区数
+     */
+    public static final String HOT_ROBOT_SPREAD_CONFIG = "sensor.partitioner.hot-robot-spread";
+
+    /**
+     * 传感器数据主题，默认为TOPIC_PREFIX
+     */
+    public static final String SENSOR_TOPIC_CONFIG = "sensor.partitioner.topic";
+
+    /**
+     * 与传感器主题同名前缀但不按机器人分区的主题，逗号分隔，默认为死信主题
+     */
+    public static final String EXCLUDED_TOPICS_CONFIG = "sensor.partitioner.excluded-topics";
+
+    /**
+     * 分区倾斜统计器实例，可选
+     */
+    public static final String SKEW_MONITOR_CONFIG = "sensor.partitioner.skew-monitor";
+
+    private static final int DEFAULT_HOT_ROBOT_SPREAD = 4;
+
+    private String sensorTopic = TOPIC_PREFIX;
+    private Set<String> excludedTopics = Collections.singleton(DeadLetterHeaders.DEFAULT_TOPIC);
+    private final StickyPartitionCache stickyPartitionCache = new StickyPartitionCache();
+    private Set<String> hotRobots = Collections.emptySet();
+    private int hotRobotSpread = DEFAULT_HOT_ROBOT_SPREAD;
+    private PartitionSkewMonitor skewMonitor;
+
+    /**
+     * 构造传感器数据的消息key
+     */
+    public static String key(String robotId, String sensorId) {
+        return robotId + KEY_SEPARATOR + sensorId;
+    }
+
+    @Override
+    public void configure(Map<String, ?> configs) {
+        Set<String> robots = stringSet(configs.get(HOT_ROBOTS_CONFIG));
+        if (robots != null) {
+            hotRobots = robots;
+        }
+
+        Object topic = configs.get(SENSOR_TOPIC_CONFIG);
+        if (topic != null && !topic.toString().isBlank()) {
+            sensorTopic = topic.toString().trim();
+        }
+        Set<String> excluded = stringSet(configs.get(EXCLUDED_TOPICS_CONFIG));
+        if (excluded != null) {
+            excludedTopics = excluded;
+        }
+
+        Object spread = configs.get(HOT_ROBOT_SPREAD_CONFIG);
+        if (spread != null) {
+            hotRobotSpread = Math.max(1, Integer.parseInt(spread.toString().trim()));
+        }
+
+        Object monitor = configs.get(SKEW_MONITOR_CONFIG);
+        if (monitor instanceof PartitionSkewMonitor) {
+            skewMonitor = (PartitionSkewMonitor) monitor;
+        }
+    }
+
+    /**
+     * 逗号分隔的字符串或列表，没有配置时返回null
+     */
+    private static Set<String> stringSet(Object value) {
+        Set<String> values = new HashSet<>();
+        if (value instanceof String) {
+            for (String item : ((String) value).split(",")) {
+                if (!item.isBlank()) {
+                    values.add(item.trim());
+                }
+            }
+        } else if (value instanceof List) {
+            for (Object item : (List<?>) value) {
+                values.add(String.valueOf(item).trim());
+            }
+        } else {
+            return null;
+        }
+        return values;
+    }
+
+    @Override
+    public int partition(String topic, Object key, byte[] keyBytes, Object value, byte[] valueBytes,
+                         Cluster cluster) {
+        if (!isSensorTopic(topic) || !(key instanceof String)) {
+            return keyBytes != null
+                    ? Utils.toPositive(Utils.murmur2(keyBytes)) % cluster.partitionCountForTopic(topic)
+                    : stickyPartitionCache.partition(topic, cluster);
+        }
+        int numPartitions = cluster.partitionCountForTopic(topic);
+        int partition = sensorPartition((String) key, numPartitions);
+        if (skewMonitor != null) {
+            skewMonitor.record(topic, partition, numPartitions);
+        }
+        return partition;
+    }
+
+    /**
+     * 是否为传感器数据主题：配置的主题本身或按类型拆分的主题，排除的主题除外
+     */
+    boolean isSensorTopic(String topic) {
+        if (excludedTopics.contains(topic)) {
+            return false;
+        }
+        return topic.equals(sensorTopic)
+                || (topic.length() > sensorTopic.length() + 1 && topic.startsWith(sensorTopic)
+                        && topic.charAt(sensorTopic.length()) == '-');
+    }
+
+    /**
+     * 没有key的消息所在批次已满时换到下一个粘性分区
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void onNewBatch(String topic, Cluster cluster, int prevPartition) {
+        stickyPartitionCache.nextPartition(topic, cluster, prevPartition);
+    }
+
+    /**
+     * 按robotId选择分区，热点机器人再按sensorId在相邻分区间分散
+     */
+    int sensorPartition(String key, int numPartitions) {
+        int separator = key.indexOf(KEY_SEPARATOR);
+        int robotEnd = separator < 0 ? key.length() : separator;
+        int base = Utils.toPositive(hash(key, 0, robotEnd)) % numPartitions;
+
+        int spread = Math.min(hotRobotSpread, numPartitions);
+        if (spread <= 1 || separator < 0 || hotRobots.isEmpty()
+                || !hotRobots.contains(key.substring(0, robotEnd))) {
+            return base;
+        }
+        int offset = Utils.toPositive(hash(key, separator + 1, key.length())) % spread;
+        return (base + offset) % numPartitions;
+    }
+
+    /**
+     * 对key的一段字符求哈希，不创建子串；末尾做一次混合，使相近的ID也能均匀分布
+     */
+    static int hash(String key, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    @Override
+    public void close() {
+    }
+}
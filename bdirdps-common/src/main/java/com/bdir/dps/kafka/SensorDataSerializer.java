@@ -0,0 +1,32 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.entity.SensorData;
+import org.apache.kafka.common.header.Headers;
+import org.apache.kafka.common.serialization.Serializer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 传感器数据Kafka序列化器
+ * 按二进制格式编码，并写入内容类型头供消费端协商格式
+ */
+public class SensorDataSerializer implements Serializer<SensorData> {
+
+    private static final byte[] CONTENT_TYPE =
+            SensorDataCodec.CONTENT_TYPE_BINARY.getBytes(StandardCharsets.UTF_8);
+
+    @Override
+    public byte[] serialize(String topic, SensorData data) {
+        return data == null ? null : SensorDataCodec.encode(data);
+    }
+
+    @Override
+    public byte[] serialize(String topic, Headers headers, SensorData data) {
+        if (data == null) {
+            return null;
+        }
+        headers.remove(SensorDataCodec.CONTENT_TYPE_HEADER);
+        headers.add(SensorDataCodec.CONTENT_TYPE_HEADER, CONTENT_TYPE);
+        return SensorDataCodec.encode(data);
+    }
+}
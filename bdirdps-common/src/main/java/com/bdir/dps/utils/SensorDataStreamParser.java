@@ -0,0 +1,160 @@
+package com.bdir.dps.utils;
+
+import com.bdir.dps.entity.SensorData;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 传感器数据流式解析器
+ * 逐条解析请求体中的传感器数据，不把整批数据读入内存。支持两种格式：
+ * JSON数组（[{...},{...}]）和NDJSON（每行一个JSON对象），可选gzip压缩。
+ * 解析时保留当前这条数据的原始字节，调用方无需修改数据时可以直接转发原始字节，
+ * 省去重新序列化。内存占用为单条数据加上解析器的预读缓冲区，与批次大小无关
+ */
+public class SensorDataStreamParser {
+
+    /**
+     * 单条数据回调
+     */
+    public interface ReadingHandler {
+        /**
+         * 处理一条数据
+         *
+         * @param data   解析出的数据
+         * @param raw    原始字节所在的缓冲区，仅在回调内有效
+         * @param offset 原始字节起始位置
+         * @param length 原始字节长度
+         * @return 返回false时停止解析
+         */
+        boolean onReading(SensorData data, byte[] raw, int offset, int length);
+    }
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final ObjectMapper objectMapper;
+    private final ObjectReader reader;
+
+    public SensorDataStreamParser(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.reader = objectMapper.readerFor(SensorData.class);
+    }
+
+    /**
+     * 解析输入流，直到输入结束或回调要求停止
+     *
+     * @param gzip 输入是否为gzip压缩
+     * @return 已交给回调的数据条数
+     * @throws JsonParseException 请求体格式错误时，此前的数据已交给回调
+     */
+    public long parse(InputStream input, boolean gzip, ReadingHandler handler) throws IOException {
+        RecordingInputStream recording = new RecordingInputStream(gzip ? new GZIPInputStream(input, 8192) : input);
+        long count = 0;
+        try (JsonParser parser = objectMapper.getFactory().createParser(recording)) {
+            JsonToken token = parser.nextToken();
+            boolean array = token == JsonToken.START_ARRAY;
+            if (array) {
+                token = parser.nextToken();
+            }
+
+            while (token != null && !(array && token == JsonToken.END_ARRAY)) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "传感器数据必须是JSON对象，实际为: " + token);
+                }
+                long start = parser.getTokenLocation().getByteOffset();
+                SensorData data = reader.readValue(parser);
+                long end = parser.getCurrentLocation().getByteOffset();
+
+                count++;
+                boolean proceed = handler.onReading(data, recording.buffer(), recording.indexOf(start),
+                        (int) (end - start));
+                recording.discardBefore(end);
+                if (!proceed) {
+                    break;
+                }
+                token = parser.nextToken();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 记录已读取字节的输入流，只保留尚未丢弃的部分
+     */
+    static final class RecordingInputStream extends FilterInputStream {
+        private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+        private int length;
+
+        /**
+         * buffer[0]在整个输入中的位置
+         */
+        private long base;
+
+        RecordingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                ensure(1);
+                buffer[length++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                ensure(n);
+                System.arraycopy(b, off, buffer, length, n);
+                length += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            throw new IOException("不支持skip");
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void ensure(int bytes) {
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+            }
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        int indexOf(long offset) {
+            return (int) (offset - base);
+        }
+
+        /**
+         * 丢弃offset之前的字节
+         */
+        void discardBefore(long offset) {
+            int drop = indexOf(offset);
+            System.arraycopy(buffer, drop, buffer, 0, length - drop);
+            length -= drop;
+            base = offset;
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.bdir.dps.validation;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.entity.SensorMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 传感器数据校验规则引擎
+ * 接入端和流处理端使用同一套规则。规则按传感器类型编译为按指标槽位索引的数组和位掩码，
+ * 校验时只按位遍历需要检查的槽位，不做按指标名称的查找；传感器类型不区分大小写，通过开放寻址表定位，
+ * 没有专属规则的类型使用通配规则。规则重新加载时整体替换编译结果，校验线程不加锁。
+ * 变化率规则需要同一传感器的上一条读数，只有配置了变化率规则的类型才会按机器人和传感器查找状态；
+ * 状态分段保存，传感器数超过上限时逐个淘汰最久未使用的传感器，其余传感器的状态不受影响
+ */
+@Slf4j
+public class SensorDataRuleEngine {
+
+    private static final int DEFAULT_MAX_RATE_STATES = 100000;
+
+    /**
+     * 变化率状态的分段数，2的幂
+     */
+    private static final int RATE_STATE_SEGMENTS = 16;
+
+    private static final int NO_RULE = -1;
+
+    private volatile CompiledRules compiled;
+
+    /**
+     * 按规则ID累计的拒绝数，重新加载后保留
+     */
+    private final Map<String, LongAdder> rejections = new ConcurrentHashMap<>();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder missingFields = new LongAdder();
+    private final LongAdder nonFinite = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    /**
+     * 变化率规则使用的上一条读数，按机器人ID和传感器ID的哈希分段
+     */
+    private final RateStateSegment[] rateSegments = new RateStateSegment[RATE_STATE_SEGMENTS];
+    private final LongAdder rateStateEvictions = new LongAdder();
+
+    public SensorDataRuleEngine() {
+        this(ValidationRule.defaultRules(), DEFAULT_MAX_RATE_STATES);
+    }
+
+    /**
+     * @param rules         初始规则
+     * @param maxRateStates 变化率状态的最大传感器数，超过时淘汰最久未使用的传感器
+     */
+    public SensorDataRuleEngine(List<ValidationRule> rules, int maxRateStates) {
+        int segmentCapacity = Math.max(1, (maxRateStates + RATE_STATE_SEGMENTS - 1) / RATE_STATE_SEGMENTS);
+        for (int i = 0; i < RATE_STATE_SEGMENTS; i++) {
+            rateSegments[i] = new RateStateSegment(segmentCapacity, rateStateEvictions);
+        }
+        this.compiled = compile(rules);
+    }
+
+    /**
+     * 重新编译并替换规则，正在执行的校验继续使用原来的规则
+     */
+    public void reload(List<ValidationRule> rules) {
+        CompiledRules previous = compiled;
+        compiled = compile(rules);
+        reloads.increment();
+        if (previous.rules.size() != rules.size()) {
+            log.info("校验规则已重新加载，规则数: {} -> {}", previous.rules.size(), rules.size());
+        }
+    }
+
+    /**
+     * 校验传感器数据：机器人ID、传感器ID和传感器类型不能为空，指标必须是有限数值，并满足该类型的规则
+     */
+    public boolean validate(SensorData data) {
+        if (data == null || isEmpty(data.getRobotId()) || isEmpty(data.getSensorId())
+                || isEmpty(data.getSensorType())) {
+            missingFields.increment();
+            return false;
+        }
+        SensorMetrics metrics = data.getMetrics();
+        if (metrics != null && !metrics.allFinite()) {
+            nonFinite.increment();
+            return false;
+        }
+
+        CompiledType type = compiled.lookup(data.getSensorType());
+        int slot = type.check(metrics);
+        if (slot != NO_RULE) {
+            return reject(type, slot, data);
+        }
+        if (type.rateMask != 0 && metrics != null && data.getTimestamp() != null) {
+            slot = rateState(data).check(type, metrics, toMicros(data.getTimestamp()));
+            if (slot != NO_RULE) {
+                return reject(type, slot + SensorMetrics.SLOT_COUNT * 2, data);
+            }
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private boolean reject(CompiledType type, int ruleIndex, SensorData data) {
+        type.counters[ruleIndex].increment();
+        if (log.isDebugEnabled()) {
+            log.debug("传感器数据未通过校验规则 {} - 机器人: {}, 传感器: {}, 指标: {}", type.ruleIds[ruleIndex],
+                    data.getRobotId(), data.getSensorId(), data.getMetrics());
+        }
+        return false;
+    }
+
+    private RateState rateState(SensorData data) {
+        RateKey key = new RateKey(data.getRobotId(), data.getSensorId());
+        RateStateSegment segment = rateSegments[(key.hash ^ (key.hash >>> 16)) & (RATE_STATE_SEGMENTS - 1)];
+        synchronized (segment) {
+            RateState state = segment.get(key);
+            if (state == null) {
+                state = new RateState();
+                segment.put(key, state);
+            }
+            return state;
+        }
+    }
+
+    private int rateStateCount() {
+        int count = 0;
+        for (RateStateSegment segment : rateSegments) {
+            synchronized (segment) {
+                count += segment.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 当前生效的规则
+     */
+    public List<ValidationRule> getRules() {
+        return compiled.rules;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        Map<String, Object> byRule = new HashMap<>();
+        long rejected = 0;
+        for (Map.Entry<String, LongAdder> entry : rejections.entrySet()) {
+            long count = entry.getValue().sum();
+            byRule.put(entry.getKey(), count);
+            rejected += count;
+        }
+        long missing = missingFields.sum();
+        long invalid = nonFinite.sum();
+        stats.put("rules", compiled.rules.size());
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected + missing + invalid);
+        stats.put("rejectedByRule", byRule);
+        stats.put("missingFields", missing);
+        stats.put("nonFinite", invalid);
+        stats.put("rateStates", rateStateCount());
+        stats.put("rateStateEvictions", rateStateEvictions.sum());
+        stats.put("reloads", reloads.sum());
+        return stats;
+    }
+
+    private CompiledRules compile(List<ValidationRule> rules) {
+        CompiledType wildcard = new CompiledType();
+        Map<String, List<ValidationRule>> typed = new LinkedHashMap<>();
+        for (ValidationRule rule : rules) {
+            if (SensorMetrics.slotOf(rule.getMetric()) < 0) {
+                log.warn("校验规则的指标不是固定槽位指标，已忽略: {}", rule);
+            } else if (ValidationRule.ALL_SENSOR_TYPES.equals(rule.getSensorType())) {
+                wildcard.apply(rule);
+            } else {
+                typed.computeIfAbsent(rule.getSensorType(), t -> new ArrayList<>()).add(rule);
+            }
+        }
+        // 专属规则在通配规则的基础上编译，同一指标同一校验类型时覆盖通配规则
+        Map<String, CompiledType> types = new HashMap<>();
+        typed.forEach((sensorType, typeRules) -> {
+            CompiledType type = wildcard.copy();
+            typeRules.forEach(type::apply);
+            types.put(sensorType, type);
+        });
+        return new CompiledRules(Collections.unmodifiableList(new ArrayList<>(rules)), wildcard, types);
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static long toMicros(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + timestamp.getNano() / 1000;
+    }
+
+    /**
+     * 编译后的全部规则，传感器类型使用线性探测的开放寻址表
+     */
+    private static final class CompiledRules {
+        private final List<ValidationRule> rules;
+        private final CompiledType wildcard;
+        private final String[] keys;
+        private final CompiledType[] values;
+        private final int mask;
+
+        private CompiledRules(List<ValidationRule> rules, CompiledType wildcard, Map<String, CompiledType> types) {
+            this.rules = rules;
+            this.wildcard = wildcard;
+            int capacity = Integer.highestOneBit(Math.max(types.size(), 1) * 2 + 1) << 1;
+            this.keys = new String[capacity];
+            this.values = new CompiledType[capacity];
+            this.mask = capacity - 1;
+            types.forEach((sensorType, type) -> {
+                int i = index(sensorType);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = sensorType;
+                values[i] = type;
+            });
+        }
+
+        /**
+         * 按传感器类型查找，键已在规则中转为大写；已是大写的类型不会产生新字符串
+         */
+        private CompiledType lookup(String sensorType) {
+            String key = sensorType.toUpperCase(Locale.ROOT);
+            for (int i = index(key); keys[i] != null; i = (i + 1) & mask) {
+                if (keys[i].equals(key)) {
+                    return values[i];
+                }
+            }
+            return wildcard;
+        }
+
+        private int index(String sensorType) {
+            int h = sensorType.hashCode();
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+
+    /**
+     * 单个传感器类型编译后的规则
+     * 规则下标：必填规则为槽位号，范围规则为SLOT_COUNT+槽位号，变化率规则为2*SLOT_COUNT+槽位号
+     */
+    private final class CompiledType {
+        private int requiredMask;
+        private int rangeMask;
+        private int rateMask;
+        private final double[] min = new double[SensorMetrics.SLOT_COUNT];
+        private final double[] max = new double[SensorMetrics.SLOT_COUNT];
+        private final double[] maxRate = new double[SensorMetrics.SLOT_COUNT];
+        private final String[] ruleIds = new String[SensorMetrics.SLOT_COUNT * 3];
+        private final LongAdder[] counters = new LongAdder[SensorMetrics.SLOT_COUNT * 3];
+
+        private void apply(ValidationRule rule) {
+            int slot = SensorMetrics.slotOf(rule.getMetric());
+            int bit = 1 << slot;
+            int index;
+            switch (rule.getCheck()) {
+                case REQUIRED:
+                    requiredMask |= bit;
+                    index = slot;
+                    break;
+                case RANGE:
+                    rangeMask |= bit;
+                    min[slot] = rule.getMin();
+                    max[slot] = rule.getMax();
+                    index = SensorMetrics.SLOT_COUNT + slot;
+                    break;
+                default:
+                    rateMask |= bit;
+                    maxRate[slot] = rule.getMaxPerSecond();
+                    index = SensorMetrics.SLOT_COUNT * 2 + slot;
+                    break;
+            }
+            ruleIds[index] = rule.getRuleId();
+            counters[index] = rejections.computeIfAbsent(rule.getRuleId(), id -> new LongAdder());
+        }
+
+        private CompiledType copy() {
+            CompiledType copy = new CompiledType();
+            copy.requiredMask = requiredMask;
+            copy.rangeMask = rangeMask;
+            copy.rateMask = rateMask;
+            System.arraycopy(min, 0, copy.min, 0, min.length);
+            System.arraycopy(max, 0, copy.max, 0, max.length);
+            System.arraycopy(maxRate, 0, copy.maxRate, 0, maxRate.length);
+            System.arraycopy(ruleIds, 0, copy.ruleIds, 0, ruleIds.length);
+            System.arraycopy(counters, 0, copy.counters, 0, counters.length);
+            return copy;
+        }
+
+        /**
+         * 检查必填和范围规则，返回未通过的规则下标，全部通过时返回-1
+         */
+        private int check(SensorMetrics metrics) {
+            for (int bits = requiredMask; bits != 0; bits &= bits - 1) {
+                int slot = Integer.numberOfTrailingZeros(bits);
+                if (metrics == null || !metrics.has(slot)) {
+                    return slot;
+                }
+            }
+            if (metrics == null) {
+                return NO_RULE;
+            }
+            for (int bits = rangeMask; bits != 0; bits &= bits - 1) {
+                int slot = Integer.numberOfTrailingZeros(bits);
+                // 未设置的指标为NaN，比较结果为false
+                double value = metrics.getDouble(slot);
+                if (value < min[slot] || value > max[slot]) {
+                    return SensorMetrics.SLOT_COUNT + slot;
+                }
+            }
+            return NO_RULE;
+        }
+    }
+
+    /**
+     * 变化率状态的键，不拼接字符串
+     */
+    private static final class RateKey {
+        private final String robotId;
+        private final String sensorId;
+        private final int hash;
+
+        private RateKey(String robotId, String sensorId) {
+            this.robotId = robotId;
+            this.sensorId = sensorId;
+            this.hash = robotId.hashCode() * 31 + sensorId.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RateKey)) {
+                return false;
+            }
+            RateKey other = (RateKey) o;
+            return hash == other.hash && robotId.equals(other.robotId) && sensorId.equals(other.sensorId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 变化率状态的一个分段，按访问顺序排列，超过容量时淘汰最久未使用的一个传感器。访问时对分段加锁
+     */
+    private static final class RateStateSegment extends LinkedHashMap<RateKey, RateState> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final transient LongAdder evictions;
+
+        private RateStateSegment(int capacity, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RateKey, RateState> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 单个传感器最近一条通过校验的读数
+     */
+    private static final class RateState {
+        private final double[] values = new double[SensorMetrics.SLOT_COUNT];
+        private int presentMask;
+        private long micros = Long.MIN_VALUE;
+
+        /**
+         * 检查变化率规则，返回未通过的槽位，全部通过时记录本条读数并返回-1。
+         * 时间戳不晚于上一条读数时无法计算变化率，不做检查也不记录
+         */
+        private synchronized int check(CompiledType type, SensorMetrics metrics, long timestampMicros) {
+            if (timestampMicros <= micros) {
+                return NO_RULE;
+            }
+            double seconds = micros == Long.MIN_VALUE ? 0 : (timestampMicros - micros) / 1_000_000.0;
+            int checkMask = type.rateMask & presentMask;
+            for (int bits = checkMask; bits != 0 && seconds > 0; bits &= bits - 1) {
+                int slot = Integer.numberOfTrailingZeros(bits);
+                double value = metrics.getDouble(slot);
+                if (Math.abs(value - values[slot]) / seconds > type.maxRate[slot]) {
+                    return slot;
+                }
+            }
+            for (int bits = type.rateMask; bits != 0; bits &= bits - 1) {
+                int slot = Integer.numberOfTrailingZeros(bits);
+                if (metrics.has(slot)) {
+                    values[slot] = metrics.getDouble(slot);
+                    presentMask |= 1 << slot;
+                }
+            }
+            micros = timestampMicros;
+            return NO_RULE;
+        }
+    }
+}
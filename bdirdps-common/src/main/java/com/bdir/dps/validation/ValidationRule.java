@@ -0,0 +1,172 @@
+package com.bdir.dps.validation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 传感器数据校验规则
+ * 规则保存在alert_rule表中，rule_type为VALIDATION，conditions字段的格式如：
+ * {"sensorType": "*", "check": "range", "metric": "temperature", "min": -50, "max": 150}、
+ * {"sensorType": "VIBRATION", "check": "rate", "metric": "vibration", "maxPerSecond": 20}、
+ * {"sensorType": "TEMPERATURE", "check": "required", "metric": "temperature"}。
+ * sensorType为*或缺省时适用于所有传感器类型；传感器类型不区分大小写，统一转为大写
+ */
+public class ValidationRule {
+
+    /**
+     * 适用于所有传感器类型
+     */
+    public static final String ALL_SENSOR_TYPES = "*";
+
+    /**
+     * 校验类型
+     */
+    public enum Check {
+        /**
+         * 指标必须有值
+         */
+        REQUIRED,
+        /**
+         * 指标有设置时必须在[min, max]范围内
+         */
+        RANGE,
+        /**
+         * 同一传感器相邻两条读数的指标每秒变化量不超过maxPerSecond
+         */
+        RATE
+    }
+
+    private final String ruleId;
+    private final String sensorType;
+    private final Check check;
+    private final String metric;
+    private final double min;
+    private final double max;
+    private final double maxPerSecond;
+
+    public ValidationRule(String ruleId, String sensorType, Check check, String metric,
+                          double min, double max, double maxPerSecond) {
+        this.ruleId = ruleId;
+        this.sensorType = sensorType == null || sensorType.isEmpty()
+                ? ALL_SENSOR_TYPES : sensorType.toUpperCase(Locale.ROOT);
+        this.check = check;
+        this.metric = metric;
+        this.min = min;
+        this.max = max;
+        this.maxPerSecond = maxPerSecond;
+    }
+
+    public static ValidationRule range(String ruleId, String sensorType, String metric, double min, double max) {
+        return new ValidationRule(ruleId, sensorType, Check.RANGE, metric, min, max, Double.NaN);
+    }
+
+    public static ValidationRule rate(String ruleId, String sensorType, String metric, double maxPerSecond) {
+        return new ValidationRule(ruleId, sensorType, Check.RATE, metric, Double.NaN, Double.NaN, maxPerSecond);
+    }
+
+    public static ValidationRule required(String ruleId, String sensorType, String metric) {
+        return new ValidationRule(ruleId, sensorType, Check.REQUIRED, metric, Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * 从alert_rule表的conditions字段解析规则
+     *
+     * @throws IllegalArgumentException 校验类型未知或缺少必需的参数
+     */
+    public static ValidationRule fromConditions(String ruleId, Map<String, Object> conditions) {
+        if (conditions == null) {
+            throw new IllegalArgumentException("规则缺少conditions: " + ruleId);
+        }
+        Object checkValue = conditions.get("check");
+        Object metricValue = conditions.get("metric");
+        if (checkValue == null || metricValue == null) {
+            throw new IllegalArgumentException("规则缺少check或metric: " + ruleId);
+        }
+        Check check;
+        try {
+            check = Check.valueOf(checkValue.toString().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("未知的校验类型: " + checkValue + ", 规则: " + ruleId);
+        }
+        Object sensorType = conditions.get("sensorType");
+        String metric = metricValue.toString();
+        String type = sensorType != null ? sensorType.toString() : ALL_SENSOR_TYPES;
+        switch (check) {
+            case RANGE:
+                return range(ruleId, type, metric,
+                        number(conditions, "min", Double.NEGATIVE_INFINITY, ruleId),
+                        number(conditions, "max", Double.POSITIVE_INFINITY, ruleId));
+            case RATE:
+                return rate(ruleId, type, metric, number(conditions, "maxPerSecond", Double.NaN, ruleId));
+            default:
+                return required(ruleId, type, metric);
+        }
+    }
+
+    /**
+     * 未配置任何规则时使用的默认规则，与原先硬编码的取值范围一致
+     */
+    public static List<ValidationRule> defaultRules() {
+        List<ValidationRule> rules = new ArrayList<>();
+        // 温度范围：-50到150摄氏度
+        rules.add(range("DEFAULT_TEMPERATURE_RANGE", ALL_SENSOR_TYPES, "temperature", -50, 150));
+        // 湿度范围：0到100%
+        rules.add(range("DEFAULT_HUMIDITY_RANGE", ALL_SENSOR_TYPES, "humidity", 0, 100));
+        // 气压范围：500到1500 hPa
+        rules.add(range("DEFAULT_PRESSURE_RANGE", ALL_SENSOR_TYPES, "pressure", 500, 1500));
+        return rules;
+    }
+
+    private static double number(Map<String, Object> conditions, String key, double defaultValue, String ruleId) {
+        Object value = conditions.get(key);
+        if (value == null) {
+            if (Double.isNaN(defaultValue)) {
+                throw new IllegalArgumentException("规则缺少" + key + ": " + ruleId);
+            }
+            return defaultValue;
+        }
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        try {
+            return Double.parseDouble(value.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("规则参数" + key + "不是数值: " + value + ", 规则: " + ruleId);
+        }
+    }
+
+    public String getRuleId() {
+        return ruleId;
+    }
+
+    public String getSensorType() {
+        return sensorType;
+    }
+
+    public Check getCheck() {
+        return check;
+    }
+
+    public String getMetric() {
+        return metric;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getMaxPerSecond() {
+        return maxPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return ruleId + "[" + sensorType + " " + check + " " + metric + "]";
+    }
+}
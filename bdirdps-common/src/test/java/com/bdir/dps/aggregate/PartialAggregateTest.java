@@ -0,0 +1,144 @@
+package com.bdir.dps.aggregate;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 部分聚合测试类
+ */
+class PartialAggregateTest {
+
+    /**
+     * 测试分段聚合后合并与整体聚合结果一致
+     */
+    @Test
+    void testMergeEqualsWhole() {
+        double[] values = {20.5, 22.0, 25.5, 19.0, 30.0, 27.5, 21.0};
+        PartialAggregate whole = new PartialAggregate();
+        PartialAggregate left = new PartialAggregate();
+        PartialAggregate right = new PartialAggregate();
+        for (int i = 0; i < values.length; i++) {
+            whole.add(values[i]);
+            (i < 2 ? left : right).add(values[i]);
+        }
+
+        PartialAggregate merged = left.copy().merge(right);
+        assertEquals(whole.getCount(), merged.getCount());
+        assertEquals(whole.getMean(), merged.getMean(), 1e-9);
+        assertEquals(whole.getStdDev(), merged.getStdDev(), 1e-9);
+        assertEquals(19.0, merged.getMin());
+        assertEquals(30.0, merged.getMax());
+        // 平均值按条数加权，不是两段平均值的平均
+        assertNotEquals((left.getMean() + right.getMean()) / 2, merged.getMean(), 1e-3);
+        assertEquals(2, left.getCount());
+    }
+
+    /**
+     * 测试空聚合与从查询结果读取
+     */
+    @Test
+    void testEmptyAndFromColumns() {
+        PartialAggregate empty = new PartialAggregate();
+        assertNull(empty.getMean());
+        assertNull(empty.getMin());
+        assertNull(empty.getStdDev());
+        assertEquals(0L, empty.toMap().get("count"));
+
+        Map<String, Object> row = new HashMap<>();
+        row.put("temperature_count", 4L);
+        row.put("temperature_sum", 100.0);
+        row.put("temperature_sum_sq", 2504.0);
+        row.put("temperature_min", 23.0);
+        row.put("temperature_max", 27.0);
+        row.put("humidity_count", 2);
+        row.put("humidity_sum", 120.0);
+        row.put("humidity_min", 55.0);
+        row.put("humidity_max", 65.0);
+
+        PartialAggregate temperature = PartialAggregate.fromColumns(row, "temperature");
+        assertEquals(25.0, temperature.getMean());
+        assertEquals(Math.sqrt(2504.0 / 4 - 625), temperature.getStdDev(), 1e-9);
+        // 没有平方和列时标准差不可用，其他统计值不受影响
+        PartialAggregate humidity = PartialAggregate.fromColumns(row, "humidity");
+        assertEquals(60.0, humidity.getMean());
+        assertNull(humidity.getStdDev());
+        assertEquals(0, PartialAggregate.fromColumns(row, "pressure").getCount());
+        assertEquals(4L, empty.merge(temperature).getCount());
+    }
+
+    /**
+     * 测试直方图草图按桶宽对齐，桶宽相同的草图可以合并
+     */
+    @Test
+    void testSketchMerge() {
+        PartialAggregate left = PartialAggregate.withSketch(5);
+        left.add(21.0);
+        left.add(24.0, 3);
+        PartialAggregate right = PartialAggregate.withSketch(5);
+        right.add(26.0, 2);
+        right.add(-1.0);
+
+        left.merge(right);
+        NavigableMap<Double, Long> bins = left.getSketch().getBins();
+        assertEquals(Arrays.asList(-5.0, 20.0, 25.0), Arrays.asList(bins.keySet().toArray(new Double[0])));
+        assertEquals(4L, bins.get(20.0));
+        assertEquals(2L, bins.get(25.0));
+        assertEquals(7, left.getCount());
+
+        // 桶宽不同或一边没有草图时不保留草图
+        assertNull(PartialAggregate.withSketch(5).merge(PartialAggregate.withSketch(2)).getSketch());
+        assertNull(PartialAggregate.withSketch(5).merge(new PartialAggregate()).getSketch());
+        assertThrows(IllegalArgumentException.class, () -> PartialAggregate.withSketch(0));
+    }
+
+    /**
+     * 测试按机器人和时间桶合并，以及去掉维度后合并为更粗的粒度
+     */
+    @Test
+    void testSensorAggregateCombine() {
+        LocalDateTime hour = LocalDateTime.of(2024, 1, 1, 10, 0);
+        List<SensorAggregate> partials = Arrays.asList(
+                aggregate("R001", hour, 10, 250.0),
+                aggregate("R001", hour.plusHours(1), 30, 900.0),
+                aggregate("R002", hour, 10, 300.0),
+                aggregate("R001", hour, 10, 270.0));
+
+        List<SensorAggregate> byRobotAndHour = SensorAggregate.combine(partials,
+                SensorAggregate::getRobotId, SensorAggregate::getBucket);
+        assertEquals(3, byRobotAndHour.size());
+        assertEquals(20, byRobotAndHour.get(0).getDataCount());
+        assertEquals(26.0, byRobotAndHour.get(0).getMetric("temperature").getMean());
+
+        List<SensorAggregate> byDay = SensorAggregate.combine(partials, null, p -> TimeBucket.DAY.truncate(p.getBucket()));
+        assertEquals(1, byDay.size());
+        assertNull(byDay.get(0).getRobotId());
+        assertEquals(hour.toLocalDate().atStartOfDay(), byDay.get(0).getBucket());
+        assertEquals(1720.0 / 60, byDay.get(0).getMetric("temperature").getMean(), 1e-9);
+
+        Map<String, Object> row = SensorAggregate.total(partials).toRow();
+        assertEquals(60L, row.get("dataCount"));
+        assertFalse(row.containsKey("time"));
+        assertThrows(IllegalArgumentException.class, () -> TimeBucket.fromInterval("week"));
+    }
+
+    private static SensorAggregate aggregate(String robotId, LocalDateTime hour, long count, double sum) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("robot_id", robotId);
+        row.put("time_bucket", hour.toString().replace('T', ' ') + ":00");
+        row.put("data_count", count);
+        row.put("temperature_count", count);
+        row.put("temperature_sum", sum);
+        row.put("temperature_sum_sq", sum * sum / count);
+        row.put("temperature_min", sum / count);
+        row.put("temperature_max", sum / count);
+        return SensorAggregate.fromRow(row);
+    }
+}
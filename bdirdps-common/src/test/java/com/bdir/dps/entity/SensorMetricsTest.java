@@ -0,0 +1,160 @@
+package com.bdir.dps.entity;
+
+import com.bdir.dps.kafka.SensorDataCodec;
+import com.bdir.dps.utils.JsonUtil;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传感器指标容器测试类
+ */
+class SensorMetricsTest {
+
+    /**
+     * 测试固定槽位与溢出指标的Map语义
+     */
+    @Test
+    void testMapSemantics() {
+        SensorMetrics metrics = new SensorMetrics();
+        assertTrue(metrics.isEmpty());
+
+        assertNull(metrics.put("temperature", 25.5));
+        assertEquals(25.5, metrics.put("temperature", 26.0));
+        metrics.put("motor_temperature", 70.0);
+        metrics.put("humidity", null);
+
+        assertEquals(3, metrics.size());
+        assertEquals(26.0, metrics.get("temperature"));
+        assertEquals(26.0, metrics.getDouble(SensorMetrics.TEMPERATURE));
+        assertTrue(metrics.containsKey("humidity"));
+        assertNull(metrics.get("humidity"));
+        assertFalse(metrics.has(SensorMetrics.HUMIDITY));
+        assertTrue(metrics.isPresent(SensorMetrics.HUMIDITY));
+        assertTrue(Double.isNaN(metrics.getDouble(SensorMetrics.PRESSURE)));
+        assertEquals(Map.of("motor_temperature", 70.0), metrics.getOverflow());
+
+        Map<String, Double> expected = new HashMap<>();
+        expected.put("temperature", 26.0);
+        expected.put("humidity", null);
+        expected.put("motor_temperature", 70.0);
+        assertEquals(expected, metrics);
+        assertEquals(metrics, expected);
+        assertEquals(expected.hashCode(), metrics.hashCode());
+
+        assertNull(metrics.remove("humidity"));
+        assertEquals(70.0, metrics.remove("motor_temperature"));
+        assertEquals(Map.of("temperature", 26.0), metrics);
+    }
+
+    /**
+     * 测试条目视图的遍历、写回和删除
+     */
+    @Test
+    void testEntryIteration() {
+        SensorMetrics metrics = new SensorMetrics();
+        metrics.put("custom", 1.0);
+        metrics.put("noise", 40.0);
+        metrics.put("temperature", 20.0);
+
+        Iterator<Map.Entry<String, Double>> iterator = metrics.entrySet().iterator();
+        Map.Entry<String, Double> first = iterator.next();
+        assertEquals("temperature", first.getKey());
+        first.setValue(21.0);
+        assertEquals("noise", iterator.next().getKey());
+        iterator.remove();
+        assertEquals("custom", iterator.next().getKey());
+        iterator.remove();
+        assertFalse(iterator.hasNext());
+
+        assertEquals(Map.of("temperature", 21.0), metrics);
+        assertEquals(List.of("temperature"), List.copyOf(metrics.keySet()));
+    }
+
+    /**
+     * 测试数值有效性检查
+     */
+    @Test
+    void testAllFinite() {
+        SensorMetrics metrics = new SensorMetrics().setDouble(SensorMetrics.PRESSURE, 1013.25);
+        assertTrue(metrics.allFinite());
+        metrics.put("custom", Double.POSITIVE_INFINITY);
+        assertFalse(metrics.allFinite());
+        metrics.remove("custom");
+        metrics.setDouble(SensorMetrics.NOISE, Double.NaN);
+        assertFalse(metrics.allFinite());
+        metrics.put("noise", null);
+        assertFalse(metrics.allFinite());
+    }
+
+    /**
+     * 测试普通Map设置到实体后转换为指标容器，JSON格式与普通Map一致
+     */
+    @Test
+    void testEntityConversionAndJson() {
+        Map<String, Double> plain = new LinkedHashMap<>();
+        plain.put("temperature", 25.5);
+        plain.put("custom", 1.0);
+        SensorData data = new SensorData().setMetrics(plain);
+        assertEquals(25.5, data.getMetrics().getDouble(SensorMetrics.TEMPERATURE));
+        assertSame(data.getMetrics(), SensorMetrics.of(data.getMetrics()));
+
+        String json = JsonUtil.toJson(data);
+        assertTrue(json.contains("\"metrics\":{\"temperature\":25.5,\"custom\":1.0}"), json);
+        assertEquals(plain, JsonUtil.fromJson(json, SensorData.class).getMetrics());
+
+        RobotStatus status = new RobotStatus().setSensorData(Map.of("pressure", 1200.0));
+        assertTrue(status.hasAbnormalMetrics());
+    }
+
+    /**
+     * 测试单条读数的内存分配明显少于HashMap
+     */
+    @Test
+    void testAllocationPerReading() {
+        long mapBytes = allocatedBytesPerReading(() -> {
+            Map<String, Double> metrics = new HashMap<>();
+            metrics.put("temperature", 25.5 + System.nanoTime() % 7);
+            metrics.put("humidity", 60.25 + System.nanoTime() % 5);
+            metrics.put("pressure", 1013.25 + System.nanoTime() % 3);
+            return metrics;
+        });
+        long slotBytes = allocatedBytesPerReading(() -> new SensorMetrics()
+                .setDouble(SensorMetrics.TEMPERATURE, 25.5 + System.nanoTime() % 7)
+                .setDouble(SensorMetrics.HUMIDITY, 60.25 + System.nanoTime() % 5)
+                .setDouble(SensorMetrics.PRESSURE, 1013.25 + System.nanoTime() % 3));
+        assertTrue(slotBytes * 2 < mapBytes, "SensorMetrics: " + slotBytes + "B, HashMap: " + mapBytes + "B");
+
+        // 二进制解码同样直接写入槽位
+        SensorData data = new SensorData().setMetrics(new SensorMetrics()
+                .setDouble(SensorMetrics.TEMPERATURE, 25.5)
+                .setDouble(SensorMetrics.HUMIDITY, 60.25));
+        byte[] encoded = SensorDataCodec.encode(data);
+        assertEquals(data.getMetrics(), SensorDataCodec.decode(encoded).getMetrics());
+    }
+
+    private static long allocatedBytesPerReading(Supplier<Object> reading) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int count = 100000;
+        Object[] sink = new Object[count];
+        for (int i = 0; i < count; i++) {
+            sink[i] = reading.get();
+        }
+        long before = threadBean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < count; i++) {
+            sink[i] = reading.get();
+        }
+        long allocated = threadBean.getCurrentThreadAllocatedBytes() - before;
+        assertNotNull(sink[count - 1]);
+        return allocated / count;
+    }
+}
@@ -0,0 +1,163 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.utils.JsonUtil;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传感器数据二进制编解码测试类
+ */
+class SensorDataCodecTest {
+
+    /**
+     * 测试全部字段编码后可完整还原
+     */
+    @Test
+    void testRoundTripAllFields() {
+        SensorData data = newSensorData();
+        data.setLocation(SensorData.Location.of(1.5, -2.25, 3.0).setCoordinateSystem("WGS84"));
+        data.setUnit("℃");
+        data.setPrecision(0.01);
+        data.setStatus("WARNING");
+        data.setRawData("raw-传感器");
+        data.setValid(false);
+        data.setRemark("备注");
+
+        assertEquals(data, SensorDataCodec.decode(SensorDataCodec.encode(data)));
+    }
+
+    /**
+     * 测试空字段和默认值的还原
+     */
+    @Test
+    void testRoundTripNullsAndDefaults() {
+        SensorData data = new SensorData();
+        data.setRobotId("R001");
+        data.setValid(null);
+        data.setStatus(null);
+        Map<String, Double> metrics = new HashMap<>();
+        metrics.put("temperature", null);
+        data.setMetrics(metrics);
+        data.setLocation(new SensorData.Location());
+
+        SensorData decoded = SensorDataCodec.decode(SensorDataCodec.encode(data));
+        assertEquals(data, decoded);
+        assertNull(decoded.getTimestamp());
+        assertNull(decoded.getMetrics().get("temperature"));
+
+        SensorData defaults = new SensorData();
+        SensorData decodedDefaults = SensorDataCodec.decode(SensorDataCodec.encode(defaults));
+        assertEquals("NORMAL", decodedDefaults.getStatus());
+        assertEquals(Boolean.TRUE, decodedDefaults.getValid());
+        assertNull(decodedDefaults.getMetrics());
+    }
+
+    /**
+     * 测试不在字典中的指标和特殊数值
+     */
+    @Test
+    void testUnknownMetricsAndSpecialValues() {
+        SensorData data = newSensorData();
+        data.getMetrics().put("custom_metric", 42.0);
+        data.getMetrics().put("nan", Double.NaN);
+        data.getMetrics().put("inf", Double.NEGATIVE_INFINITY);
+        data.getMetrics().put("tiny", Double.MIN_VALUE);
+
+        SensorData decoded = SensorDataCodec.decode(SensorDataCodec.encode(data));
+        assertEquals(data.getMetrics().keySet(), decoded.getMetrics().keySet());
+        assertEquals(42.0, decoded.getMetricValue("custom_metric"));
+        assertTrue(Double.isNaN(decoded.getMetricValue("nan")));
+        assertEquals(Double.NEGATIVE_INFINITY, decoded.getMetricValue("inf"));
+        assertEquals(Double.MIN_VALUE, decoded.getMetricValue("tiny"));
+    }
+
+    /**
+     * 测试时间戳保留微秒精度
+     */
+    @Test
+    void testTimestampMicrosecondPrecision() {
+        LocalDateTime timestamp = LocalDateTime.of(2026, 3, 1, 8, 30, 15, 123456789);
+        assertEquals(timestamp.withNano(123456000),
+                SensorDataCodec.fromEpochMicros(SensorDataCodec.toEpochMicros(timestamp)));
+
+        LocalDateTime beforeEpoch = LocalDateTime.of(1969, 12, 31, 23, 59, 59, 999999000);
+        assertEquals(beforeEpoch, SensorDataCodec.fromEpochMicros(SensorDataCodec.toEpochMicros(beforeEpoch)));
+    }
+
+    /**
+     * 测试反序列化器按内容类型头协商格式，兼容JSON生产者
+     */
+    @Test
+    void testDeserializerNegotiatesContentType() {
+        SensorData data = newSensorData();
+        SensorDataSerializer serializer = new SensorDataSerializer();
+        SensorDataDeserializer deserializer = new SensorDataDeserializer();
+
+        RecordHeaders headers = new RecordHeaders();
+        byte[] binary = serializer.serialize("sensor-data-temperature", headers, data);
+        assertEquals(SensorDataCodec.CONTENT_TYPE_BINARY, SensorDataDeserializer.contentType(headers));
+        assertEquals(data, deserializer.deserialize("sensor-data-temperature", headers, binary));
+
+        // 没有内容类型头时按首字节识别
+        assertEquals(data, deserializer.deserialize("sensor-data-temperature", binary));
+
+        byte[] json = JsonUtil.toJson(data).getBytes(StandardCharsets.UTF_8);
+        SensorData fromJson = deserializer.deserialize("sensor-data-temperature", new RecordHeaders(), json);
+        assertEquals(data.getDataId(), fromJson.getDataId());
+        assertEquals(data.getMetrics(), fromJson.getMetrics());
+
+        RecordHeaders jsonHeaders = new RecordHeaders();
+        jsonHeaders.add(SensorDataCodec.CONTENT_TYPE_HEADER,
+                SensorDataCodec.CONTENT_TYPE_JSON.getBytes(StandardCharsets.UTF_8));
+        assertEquals(data.getDataId(), deserializer.deserialize("sensor-data-temperature", jsonHeaders, json).getDataId());
+    }
+
+    /**
+     * 测试损坏的消息被拒绝，反序列化器返回null而不抛出异常
+     */
+    @Test
+    void testCorruptMessagesRejected() {
+        byte[] encoded = SensorDataCodec.encode(newSensorData());
+
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+        assertThrows(IllegalArgumentException.class, () -> SensorDataCodec.decode(truncated));
+
+        byte[] wrongSchema = encoded.clone();
+        wrongSchema[1] = 99;
+        assertThrows(IllegalArgumentException.class, () -> SensorDataCodec.decode(wrongSchema));
+
+        assertNull(new SensorDataDeserializer().deserialize("sensor-data-temperature", truncated));
+    }
+
+    /**
+     * 测试二进制格式明显小于JSON
+     */
+    @Test
+    void testBinarySmallerThanJson() {
+        SensorData data = newSensorData();
+        int binarySize = SensorDataCodec.encode(data).length;
+        int jsonSize = JsonUtil.toJson(data).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(binarySize * 2 < jsonSize, "二进制: " + binarySize + ", JSON: " + jsonSize);
+    }
+
+    private SensorData newSensorData() {
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("temperature", 25.5);
+        metrics.put("humidity", 60.25);
+        metrics.put("pressure", 1013.25);
+        SensorData data = SensorData.create("R001", "S001", "TEMPERATURE", metrics);
+        data.setDataId("R001-S001-1740817815123");
+        data.setTimestamp(LocalDateTime.of(2026, 3, 1, 8, 30, 15, 123456000));
+        return data;
+    }
+}
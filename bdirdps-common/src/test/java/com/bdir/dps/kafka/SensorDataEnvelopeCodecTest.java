@@ -0,0 +1,85 @@
+package com.bdir.dps.kafka;
+
+import com.bdir.dps.entity.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传感器数据封包编解码测试类
+ */
+class SensorDataEnvelopeCodecTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 3, 1, 8, 30, 15, 123456000);
+
+    /**
+     * 测试1000Hz连续读数按增量编码后可完整还原，且远小于逐条编码
+     */
+    @Test
+    void testDeltaRoundTrip() {
+        List<SensorData> readings = new ArrayList<>();
+        int separateSize = 0;
+        for (int i = 0; i < 1000; i++) {
+            SensorData data = reading(i, 25.5 + (i % 7) * 0.125, 60.25);
+            readings.add(data);
+            separateSize += SensorDataCodec.encode(data).length;
+        }
+
+        byte[] envelope = SensorDataEnvelopeCodec.encode(readings);
+        assertEquals(readings, SensorDataEnvelopeCodec.decode(envelope));
+        assertTrue(envelope.length * 2 < separateSize, "封包: " + envelope.length + ", 逐条: " + separateSize);
+    }
+
+    /**
+     * 测试字段或指标集合变化、空值和时间倒序时仍能正确还原
+     */
+    @Test
+    void testMixedReadingsRoundTrip() {
+        List<SensorData> readings = new ArrayList<>();
+        readings.add(reading(0, 25.5, 60.0));
+        readings.add(reading(1, 25.6, 60.0).setStatus("WARNING"));
+        readings.add(reading(2, 25.7, 60.0).setStatus("WARNING"));
+        readings.add(reading(3, 25.8, 60.0).setStatus("WARNING").setMetricValue("voltage", 12.0));
+        readings.add(reading(4, 25.9, 60.0).setStatus("WARNING").setMetricValue("humidity", null));
+        readings.add(reading(-5, -25.9, 61.0).setStatus("WARNING"));
+        readings.add(reading(6, 26.0, 61.0).setStatus("WARNING").setLocation(SensorData.Location.of(1, 2, 3)));
+        readings.add(reading(7, 26.1, 61.0).setStatus("WARNING").setLocation(SensorData.Location.of(1, 2, 3)));
+        readings.add(reading(8, 26.2, 61.0).setTimestamp(null));
+
+        assertEquals(readings, SensorDataEnvelopeCodec.decode(SensorDataEnvelopeCodec.encode(readings)));
+    }
+
+    /**
+     * 测试格式识别与损坏数据的拒绝
+     */
+    @Test
+    void testDetectionAndCorruption() {
+        byte[] envelope = SensorDataEnvelopeCodec.encode(List.of(reading(0, 25.5, 60.0), reading(1, 25.5, 60.0)));
+        assertTrue(SensorDataEnvelopeCodec.isEnvelope(null, envelope));
+        assertTrue(SensorDataEnvelopeCodec.isEnvelope(SensorDataEnvelopeCodec.CONTENT_TYPE_ENVELOPE, envelope));
+        assertFalse(SensorDataEnvelopeCodec.isEnvelope(null, SensorDataCodec.encode(reading(0, 25.5, 60.0))));
+        assertFalse(SensorDataCodec.isBinary(null, envelope));
+        assertThrows(IllegalArgumentException.class,
+                () -> SensorDataDeserializer.decode(SensorDataEnvelopeCodec.CONTENT_TYPE_ENVELOPE, envelope));
+
+        byte[] truncated = Arrays.copyOf(envelope, envelope.length - 3);
+        assertThrows(IllegalArgumentException.class, () -> SensorDataEnvelopeCodec.decode(truncated));
+    }
+
+    private static SensorData reading(int index, double temperature, double humidity) {
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("temperature", temperature);
+        metrics.put("humidity", humidity);
+        SensorData data = SensorData.create("R001", "S001", "TEMPERATURE", metrics);
+        data.setDataId("R001-S001-" + index);
+        data.setTimestamp(START.plusNanos(index * 1_000_000L));
+        return data;
+    }
+}
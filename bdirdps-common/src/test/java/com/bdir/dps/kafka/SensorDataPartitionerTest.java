@@ -0,0 +1,180 @@
+package com.bdir.dps.kafka;
+
+import org.apache.kafka.common.Cluster;
+import org.apache.kafka.common.Node;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.utils.Utils;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传感器数据分区器测试类
+ */
+class SensorDataPartitionerTest {
+
+    private static final int PARTITIONS = 12;
+
+    /**
+     * 测试同一机器人的不同传感器、不同类型主题都落在同一分区
+     */
+    @Test
+    void testRobotAffinity() {
+        SensorDataPartitioner partitioner = newPartitioner(Collections.emptyMap());
+        Cluster cluster = cluster("sensor-data-temperature", "sensor-data-humidity", "sensor-data");
+
+        for (int robot = 0; robot < 50; robot++) {
+            String robotId = "R" + robot;
+            Set<Integer> partitions = new HashSet<>();
+            for (String topic : new String[]{"sensor-data-temperature", "sensor-data-humidity", "sensor-data"}) {
+                for (int sensor = 0; sensor < 10; sensor++) {
+                    partitions.add(partition(partitioner, cluster, topic, SensorDataPartitioner.key(robotId, "S" + sensor)));
+                }
+            }
+            assertEquals(1, partitions.size(), robotId);
+        }
+    }
+
+    /**
+     * 测试热点机器人按传感器分散到相邻分区，且同一传感器始终在同一分区
+     */
+    @Test
+    void testHotRobotSpread() {
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(SensorDataPartitioner.HOT_ROBOTS_CONFIG, "R7, R8");
+        configs.put(SensorDataPartitioner.HOT_ROBOT_SPREAD_CONFIG, "3");
+        SensorDataPartitioner partitioner = newPartitioner(configs);
+        Cluster cluster = cluster("sensor-data");
+
+        int base = partition(newPartitioner(Collections.emptyMap()), cluster, "sensor-data",
+                SensorDataPartitioner.key("R7", "S0"));
+        Set<Integer> partitions = new HashSet<>();
+        for (int sensor = 0; sensor < 100; sensor++) {
+            String key = SensorDataPartitioner.key("R7", "S" + sensor);
+            int partition = partition(partitioner, cluster, "sensor-data", key);
+            assertEquals(partition, partition(partitioner, cluster, "sensor-data", key));
+            assertTrue((partition - base + PARTITIONS) % PARTITIONS < 3);
+            partitions.add(partition);
+        }
+        assertEquals(3, partitions.size());
+    }
+
+    /**
+     * 测试非传感器主题使用默认的key哈希分区
+     */
+    @Test
+    void testNonSensorTopicUsesDefaultHash() {
+        SensorDataPartitioner partitioner = newPartitioner(Collections.emptyMap());
+        Cluster cluster = cluster("robot-control");
+
+        int first = partition(partitioner, cluster, "robot-control", "R1#cmd");
+        assertEquals(first, partition(partitioner, cluster, "robot-control", "R1#cmd"));
+        byte[] keyBytes = "R1#cmd".getBytes(StandardCharsets.UTF_8);
+        assertEquals(Utils.toPositive(Utils.murmur2(keyBytes)) % PARTITIONS, first);
+    }
+
+    /**
+     * 测试没有key的消息粘性地留在同一分区，批次切换后才换分区
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    void testNullKeyIsSticky() {
+        SensorDataPartitioner partitioner = newPartitioner(Collections.emptyMap());
+        Cluster cluster = cluster("robot-control");
+
+        int sticky = partitioner.partition("robot-control", null, null, null, null, cluster);
+        assertTrue(sticky >= 0 && sticky < PARTITIONS);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(sticky, partitioner.partition("robot-control", null, null, null, null, cluster));
+        }
+
+        partitioner.onNewBatch("robot-control", cluster, sticky);
+        int next = partitioner.partition("robot-control", null, null, null, null, cluster);
+        assertNotEquals(sticky, next);
+        assertEquals(next, partitioner.partition("robot-control", null, null, null, null, cluster));
+    }
+
+    /**
+     * 测试死信主题虽与传感器主题同名前缀，但不按机器人分区
+     */
+    @Test
+    void testDeadLetterTopicIsNotSensorTopic() {
+        SensorDataPartitioner partitioner = newPartitioner(Collections.emptyMap());
+        assertTrue(partitioner.isSensorTopic("sensor-data"));
+        assertTrue(partitioner.isSensorTopic("sensor-data-temperature"));
+        assertFalse(partitioner.isSensorTopic("sensor-data-error"));
+        assertFalse(partitioner.isSensorTopic("sensor-data-"));
+        assertFalse(partitioner.isSensorTopic("sensor-datax"));
+
+        Cluster cluster = cluster("sensor-data-error");
+        String key = SensorDataPartitioner.key("R1", "S1");
+        assertEquals(Utils.toPositive(Utils.murmur2(key.getBytes(StandardCharsets.UTF_8))) % PARTITIONS,
+                partition(partitioner, cluster, "sensor-data-error", key));
+
+        Map<String, Object> configs = new HashMap<>();
+        configs.put(SensorDataPartitioner.SENSOR_TOPIC_CONFIG, "telemetry");
+        configs.put(SensorDataPartitioner.EXCLUDED_TOPICS_CONFIG, "telemetry-dlq, telemetry-retry");
+        partitioner = newPartitioner(configs);
+        assertTrue(partitioner.isSensorTopic("telemetry-temperature"));
+        assertFalse(partitioner.isSensorTopic("telemetry-dlq"));
+        assertFalse(partitioner.isSensorTopic("telemetry-retry"));
+        assertFalse(partitioner.isSensorTopic("sensor-data"));
+    }
+
+    /**
+     * 测试分区倾斜度统计
+     */
+    @Test
+    void testSkewMonitor() {
+        PartitionSkewMonitor monitor = new PartitionSkewMonitor();
+        assertEquals(0, monitor.getMaxSkew());
+
+        for (int partition = 0; partition < 4; partition++) {
+            monitor.record("sensor-data", partition, 4);
+        }
+        assertEquals(1.0, monitor.getSkew("sensor-data"), 1e-9);
+
+        for (int i = 0; i < 4; i++) {
+            monitor.record("sensor-data", 2, 4);
+        }
+        // 8条数据4个分区，最大分区5条
+        assertEquals(2.5, monitor.getSkew("sensor-data"), 1e-9);
+        assertEquals(2.5, monitor.getMaxSkew(), 1e-9);
+
+        SensorDataPartitioner partitioner = newPartitioner(
+                Collections.singletonMap(SensorDataPartitioner.SKEW_MONITOR_CONFIG, monitor));
+        partition(partitioner, cluster("sensor-data-noise"), "sensor-data-noise", "R1#S1");
+        assertTrue(monitor.getStats().containsKey("sensor-data-noise"));
+    }
+
+    private static SensorDataPartitioner newPartitioner(Map<String, ?> configs) {
+        SensorDataPartitioner partitioner = new SensorDataPartitioner();
+        partitioner.configure(configs);
+        return partitioner;
+    }
+
+    private static int partition(SensorDataPartitioner partitioner, Cluster cluster, String topic, String key) {
+        return partitioner.partition(topic, key, key.getBytes(StandardCharsets.UTF_8), null, null, cluster);
+    }
+
+    private static Cluster cluster(String... topics) {
+        Node node = new Node(0, "localhost", 9092);
+        List<PartitionInfo> partitions = new ArrayList<>();
+        for (String topic : topics) {
+            for (int i = 0; i < PARTITIONS; i++) {
+                partitions.add(new PartitionInfo(topic, i, node, new Node[]{node}, new Node[]{node}));
+            }
+        }
+        return new Cluster("test", Collections.singletonList(node), partitions,
+                Collections.emptySet(), Collections.emptySet());
+    }
+}
@@ -0,0 +1,127 @@
+package com.bdir.dps.utils;
+
+import com.bdir.dps.entity.SensorData;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传感器数据流式解析器测试类
+ */
+class SensorDataStreamParserTest {
+
+    private final SensorDataStreamParser parser = new SensorDataStreamParser(new ObjectMapper());
+
+    /**
+     * 测试JSON数组逐条解析，原始字节与请求体中的对象一致
+     */
+    @Test
+    void testParseArrayWithRawSlices() throws IOException {
+        String first = "{\"dataId\":\"D1\",\"robotId\":\"R001\",\"metrics\":{\"temperature\":25.5}}";
+        String second = "{ \"dataId\" : \"D2\", \"robotId\" : \"机器人\" }";
+        String body = " [ " + first + " ,\n" + second + " ] ";
+
+        List<String> dataIds = new ArrayList<>();
+        List<String> raws = new ArrayList<>();
+        long count = parser.parse(stream(body), false, (data, raw, offset, length) -> {
+            dataIds.add(data.getDataId());
+            raws.add(new String(raw, offset, length, StandardCharsets.UTF_8));
+            return true;
+        });
+
+        assertEquals(2, count);
+        assertEquals(List.of("D1", "D2"), dataIds);
+        assertEquals(List.of(first, second), raws);
+    }
+
+    /**
+     * 测试NDJSON与gzip压缩的请求体
+     */
+    @Test
+    void testParseGzipNdjson() throws IOException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            body.append("{\"dataId\":\"D").append(i).append("\",\"metrics\":{\"humidity\":").append(i).append("}}\n");
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(body.toString().getBytes(StandardCharsets.UTF_8));
+        }
+
+        List<Double> humidity = new ArrayList<>();
+        long count = parser.parse(new ByteArrayInputStream(compressed.toByteArray()), true,
+                (data, raw, offset, length) -> humidity.add(data.getMetricValue("humidity")));
+
+        assertEquals(100, count);
+        assertEquals(99.0, humidity.get(99));
+    }
+
+    /**
+     * 测试回调返回false时停止解析
+     */
+    @Test
+    void testHandlerStopsParsing() throws IOException {
+        String body = "[{\"dataId\":\"D1\"},{\"dataId\":\"D2\"},{\"dataId\":\"D3\"}]";
+        List<String> dataIds = new ArrayList<>();
+        long count = parser.parse(stream(body), false, (data, raw, offset, length) -> {
+            dataIds.add(data.getDataId());
+            return dataIds.size() < 2;
+        });
+        assertEquals(2, count);
+        assertEquals(List.of("D1", "D2"), dataIds);
+    }
+
+    /**
+     * 测试格式错误时抛出异常，此前的数据已处理
+     */
+    @Test
+    void testMalformedBody() {
+        List<String> dataIds = new ArrayList<>();
+        assertThrows(JsonParseException.class, () -> parser.parse(stream("[{\"dataId\":\"D1\"}, 42]"), false,
+                (data, raw, offset, length) -> dataIds.add(data.getDataId())));
+        assertEquals(List.of("D1"), dataIds);
+    }
+
+    /**
+     * 测试大批次解析时缓冲区不随批次增长
+     */
+    @Test
+    void testBufferBoundedForLargeBatch() throws IOException {
+        int readings = 50000;
+        byte[] element = "{\"dataId\":\"D\",\"robotId\":\"R001\",\"sensorId\":\"S001\",\"metrics\":{\"temperature\":25.5}},"
+                .getBytes(StandardCharsets.UTF_8);
+        List<InputStream> parts = new ArrayList<>();
+        parts.add(stream("["));
+        for (int i = 0; i < readings; i++) {
+            parts.add(new ByteArrayInputStream(element));
+        }
+        parts.add(stream("{\"dataId\":\"last\"}]"));
+
+        int[] maxBuffer = {0};
+        long count = parser.parse(new SequenceInputStream(Collections.enumeration(parts)), false,
+                (data, raw, offset, length) -> {
+                    maxBuffer[0] = Math.max(maxBuffer[0], raw.length);
+                    return true;
+                });
+
+        assertEquals(readings + 1, count);
+        assertTrue(maxBuffer[0] <= 64 * 1024, "缓冲区: " + maxBuffer[0]);
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
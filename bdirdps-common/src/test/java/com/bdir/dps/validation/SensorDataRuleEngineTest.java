@@ -0,0 +1,170 @@
+package com.bdir.dps.validation;
+
+import com.bdir.dps.entity.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 传感器数据校验规则引擎测试类
+ */
+class SensorDataRuleEngineTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    /**
+     * 测试默认规则与原先的取值范围一致，并按规则累计拒绝数
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testDefaultRanges() {
+        SensorDataRuleEngine engine = new SensorDataRuleEngine();
+
+        assertTrue(engine.validate(reading("temperature", "temperature", 25.0, TIME)));
+        assertFalse(engine.validate(reading("temperature", "temperature", 151.0, TIME)));
+        assertFalse(engine.validate(reading("humidity", "humidity", -1.0, TIME)));
+        assertTrue(engine.validate(reading("pressure", "pressure", 1013.0, TIME)));
+        assertFalse(engine.validate(reading("temperature", "temperature", Double.NaN, TIME)));
+        assertFalse(engine.validate(reading("", "temperature", 25.0, TIME)));
+
+        Map<String, Object> stats = engine.getStats();
+        Map<String, Object> byRule = (Map<String, Object>) stats.get("rejectedByRule");
+        assertEquals(1L, byRule.get("DEFAULT_TEMPERATURE_RANGE"));
+        assertEquals(1L, byRule.get("DEFAULT_HUMIDITY_RANGE"));
+        assertEquals(1L, stats.get("nonFinite"));
+        assertEquals(1L, stats.get("missingFields"));
+        assertEquals(2L, stats.get("accepted"));
+    }
+
+    /**
+     * 测试专属规则覆盖通配规则，其他类型仍使用通配规则
+     */
+    @Test
+    void testTypeRuleOverridesWildcard() {
+        SensorDataRuleEngine engine = new SensorDataRuleEngine(Arrays.asList(
+                ValidationRule.range("R1", "*", "temperature", -50, 150),
+                ValidationRule.range("R2", "furnace", "temperature", 0, 1200),
+                ValidationRule.required("R3", "furnace", "temperature")), 100);
+
+        assertTrue(engine.validate(reading("furnace", "temperature", 800.0, TIME)));
+        assertFalse(engine.validate(reading("temperature", "temperature", 800.0, TIME)));
+        assertFalse(engine.validate(reading("furnace", "humidity", 50.0, TIME)));
+        assertTrue(engine.validate(reading("humidity", "humidity", 50.0, TIME)));
+    }
+
+    /**
+     * 测试专属规则的传感器类型不区分大小写
+     */
+    @Test
+    void testTypeRuleCaseInsensitive() {
+        SensorDataRuleEngine engine = new SensorDataRuleEngine(Arrays.asList(
+                ValidationRule.range("R1", "vibration", "vibration", 0, 10),
+                ValidationRule.range("R2", "TEMPERATURE", "temperature", 0, 100)), 100);
+
+        assertEquals("VIBRATION", engine.getRules().get(0).getSensorType());
+        assertFalse(engine.validate(reading("VIBRATION", "vibration", 20.0, TIME)));
+        assertFalse(engine.validate(reading("vibration", "vibration", 20.0, TIME)));
+        assertTrue(engine.validate(reading("VIBRATION", "vibration", 5.0, TIME)));
+        assertFalse(engine.validate(reading("Temperature", "temperature", 120.0, TIME)));
+        // 其他类型没有规则
+        assertTrue(engine.validate(reading("HUMIDITY", "vibration", 20.0, TIME)));
+    }
+
+    /**
+     * 测试变化率规则按同一传感器的上一条通过的读数计算
+     */
+    @Test
+    void testRateOfChange() {
+        SensorDataRuleEngine engine = new SensorDataRuleEngine(Collections.singletonList(
+                ValidationRule.rate("R1", "*", "vibration", 10)), 100);
+
+        assertTrue(engine.validate(reading("vibration", "vibration", 1.0, TIME)));
+        // 0.5秒内变化20，每秒40
+        assertFalse(engine.validate(reading("vibration", "vibration", 21.0, TIME.plusNanos(500_000_000))));
+        // 与上一条通过的读数相隔1秒，变化5
+        assertTrue(engine.validate(reading("vibration", "vibration", 6.0, TIME.plusSeconds(1))));
+        // 其他传感器独立计算
+        SensorData other = reading("vibration", "vibration", 50.0, TIME.plusSeconds(1));
+        other.setSensorId("S2");
+        assertTrue(engine.validate(other));
+    }
+
+    /**
+     * 测试传感器数超过上限时逐个淘汰最久未使用的状态，常用传感器的状态保留
+     */
+    @Test
+    void testRateStatesEvictedOneAtATime() {
+        SensorDataRuleEngine engine = new SensorDataRuleEngine(Collections.singletonList(
+                ValidationRule.rate("R1", "*", "vibration", 10)), 16);
+
+        SensorData hot = reading("vibration", "vibration", 1.0, TIME);
+        assertTrue(engine.validate(hot));
+        for (int i = 0; i < 100; i++) {
+            SensorData data = reading("vibration", "vibration", 1.0, TIME);
+            data.setSensorId("S" + (i + 2));
+            assertTrue(engine.validate(data));
+            hot.setTimestamp(TIME.plusSeconds(i + 1));
+            assertTrue(engine.validate(hot));
+        }
+
+        // 常用传感器的状态仍在：0.5秒内变化20被拒绝
+        assertFalse(engine.validate(reading("vibration", "vibration", 21.0, TIME.plusSeconds(100).plusNanos(500_000_000))));
+        Map<String, Object> stats = engine.getStats();
+        // 淘汰后状态数保持在上限，不会整体清空
+        assertEquals(16, stats.get("rateStates"));
+        assertTrue((Long) stats.get("rateStateEvictions") > 0);
+    }
+
+    /**
+     * 测试重新加载后使用新规则，拒绝数按规则ID保留
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testReload() {
+        SensorDataRuleEngine engine = new SensorDataRuleEngine();
+        assertFalse(engine.validate(reading("temperature", "temperature", 200.0, TIME)));
+
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("check", "range");
+        conditions.put("metric", "temperature");
+        conditions.put("max", 300);
+        engine.reload(Collections.singletonList(ValidationRule.fromConditions("VALID001", conditions)));
+
+        assertTrue(engine.validate(reading("temperature", "temperature", 200.0, TIME)));
+        assertFalse(engine.validate(reading("temperature", "temperature", 301.0, TIME)));
+        Map<String, Object> byRule = (Map<String, Object>) engine.getStats().get("rejectedByRule");
+        assertEquals(1L, byRule.get("DEFAULT_TEMPERATURE_RANGE"));
+        assertEquals(1L, byRule.get("VALID001"));
+    }
+
+    /**
+     * 测试条件缺少参数或校验类型未知时解析失败
+     */
+    @Test
+    void testInvalidConditions() {
+        Map<String, Object> conditions = new HashMap<>();
+        conditions.put("check", "rate");
+        conditions.put("metric", "vibration");
+        assertThrows(IllegalArgumentException.class, () -> ValidationRule.fromConditions("V1", conditions));
+
+        conditions.put("check", "regex");
+        assertThrows(IllegalArgumentException.class, () -> ValidationRule.fromConditions("V1", conditions));
+    }
+
+    private static SensorData reading(String sensorType, String metric, double value, LocalDateTime timestamp) {
+        SensorData data = new SensorData();
+        data.setDataId("D1");
+        data.setRobotId("R1");
+        data.setSensorId("S1");
+        data.setSensorType(sensorType);
+        data.setTimestamp(timestamp);
+        data.setMetricValue(metric, value);
+        return data;
+    }
+}
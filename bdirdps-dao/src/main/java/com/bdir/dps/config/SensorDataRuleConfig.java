@@ -0,0 +1,114 @@
+package com.bdir.dps.config;
+
+import com.bdir.dps.mapper.MySQLMapper;
+import com.bdir.dps.utils.JsonUtil;
+import com.bdir.dps.validation.SensorDataRuleEngine;
+import com.bdir.dps.validation.ValidationRule;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 传感器数据校验规则配置
+ * 接入端和流处理端共用同一个规则引擎，规则从alert_rule表中rule_type为VALIDATION的记录加载，
+ * 按app.validation.reload-interval-ms定期重新加载；表中没有启用的校验规则时使用默认的取值范围。
+ * 定期加载只在app.validation.reload-enabled为true时启用，由做校验的接入端和流处理端开启，批处理等其他模块不加载
+ */
+@Configuration
+public class SensorDataRuleConfig {
+
+    @Value("${app.validation.reload-interval-ms:30000}")
+    private long reloadIntervalMs;
+
+    @Value("${app.validation.max-rate-states:100000}")
+    private int maxRateStates;
+
+    @Bean
+    public SensorDataRuleEngine sensorDataRuleEngine() {
+        return new SensorDataRuleEngine(ValidationRule.defaultRules(), maxRateStates);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.validation.reload-enabled", havingValue = "true")
+    public SensorDataRuleReloader sensorDataRuleReloader(SensorDataRuleEngine sensorDataRuleEngine,
+                                                         MySQLMapper mysqlMapper) {
+        return new SensorDataRuleReloader(sensorDataRuleEngine, mysqlMapper, reloadIntervalMs);
+    }
+
+    /**
+     * 校验规则加载器
+     * 规则内容没有变化时不重新编译；加载失败时保留当前规则
+     */
+    @Slf4j
+    public static class SensorDataRuleReloader implements DisposableBean {
+        private final SensorDataRuleEngine engine;
+        private final MySQLMapper mysqlMapper;
+        private final ScheduledExecutorService scheduler;
+        private volatile List<Map<String, Object>> loadedRows;
+
+        public SensorDataRuleReloader(SensorDataRuleEngine engine, MySQLMapper mysqlMapper, long reloadIntervalMs) {
+            this.engine = engine;
+            this.mysqlMapper = mysqlMapper;
+            reload();
+
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sensor-data-rule-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (reloadIntervalMs > 0) {
+                scheduler.scheduleWithFixedDelay(this::reload, reloadIntervalMs, reloadIntervalMs,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 从数据库加载规则，返回规则是否有变化
+         */
+        public synchronized boolean reload() {
+            List<Map<String, Object>> rows;
+            try {
+                rows = mysqlMapper.queryValidationRules();
+            } catch (Exception e) {
+                log.warn("加载校验规则失败，继续使用当前规则: {}", e.getMessage());
+                return false;
+            }
+            if (rows.equals(loadedRows)) {
+                return false;
+            }
+
+            List<ValidationRule> rules = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                String ruleId = String.valueOf(row.get("rule_id"));
+                try {
+                    rules.add(ValidationRule.fromConditions(ruleId,
+                            JsonUtil.fromJsonToMap(String.valueOf(row.get("conditions")))));
+                } catch (Exception e) {
+                    log.warn("校验规则无效，已忽略: {}, 原因: {}", ruleId, e.getMessage());
+                }
+            }
+            if (rules.isEmpty()) {
+                rules = ValidationRule.defaultRules();
+            }
+            engine.reload(rules);
+            loadedRows = rows;
+            log.info("已加载校验规则: {}", rules);
+            return true;
+        }
+
+        @Override
+        public void destroy() {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 跨MySQL和Hive的联合查询执行器
+ * 查询的时间范围跨过Hive的数据落地水位时，在水位处切分：水位之前的数据查Hive事实表，水位及之后的数据查MySQL实时表。
+ * 两段查询并行执行，各自返回按机器人和时间桶的部分聚合，在应用端合并，
+ * 总耗时接近较慢的一段而不是两段之和
+ */
+@Slf4j
+@Repository
+public class FederatedSensorQueryExecutor implements DisposableBean {
+
+    private final MySQLMapper mysqlMapper;
+    private final HiveQueryRouterMapper hiveMapper;
+    private final ExecutorService executor;
+    private final Timer mysqlLegLatency;
+    private final Timer hiveLegLatency;
+
+    @Autowired
+    public FederatedSensorQueryExecutor(MySQLMapper mysqlMapper,
+                                        HiveQueryRouterMapper hiveMapper,
+                                        ObjectProvider<MeterRegistry> meterRegistry,
+                                        @Value("${app.query.federated.threads:4}") int threads) {
+        this(mysqlMapper, hiveMapper, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry), threads);
+    }
+
+    FederatedSensorQueryExecutor(MySQLMapper mysqlMapper, HiveQueryRouterMapper hiveMapper,
+                                 MeterRegistry meterRegistry, int threads) {
+        this.mysqlMapper = mysqlMapper;
+        this.hiveMapper = hiveMapper;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "federated-query-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mysqlLegLatency = legTimer(meterRegistry, "mysql");
+        this.hiveLegLatency = legTimer(meterRegistry, "hive");
+    }
+
+    private static Timer legTimer(MeterRegistry meterRegistry, String leg) {
+        return Timer.builder("query_federated_leg_latency")
+                .description("Latency of one leg of a federated MySQL and Hive query")
+                .tag("leg", leg)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * 执行联合查询，两段的部分聚合按机器人和时间桶合并
+     *
+     * @param splitAt Hive数据落地水位，Hive查询[startTime, splitAt)，MySQL查询[splitAt, endTime)
+     */
+    public List<SensorAggregate> query(LocalDateTime startTime, LocalDateTime endTime, LocalDateTime splitAt,
+                                       List<String> robotIds, List<String> sensorTypes, TimeBucket bucket) {
+        if (!splitAt.isAfter(startTime) || !splitAt.isBefore(endTime)) {
+            throw new IllegalArgumentException("切分时间不在查询范围内: " + splitAt);
+        }
+        String hiveStart = startTime.format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+        String hiveEnd = splitAt.format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+
+        CompletableFuture<List<Map<String, Object>>> hiveLeg = CompletableFuture.supplyAsync(
+                () -> hiveLegLatency.record(() -> hiveMapper.queryPartials(SensorQueryRouter.Route.HIVE_FACT.name(),
+                        hiveStart, hiveEnd, robotIds, sensorTypes, bucket.name())),
+                executor);
+        List<Map<String, Object>> mysqlRows;
+        try {
+            mysqlRows = mysqlLegLatency.record(
+                    () -> mysqlMapper.queryRealtimePartials(splitAt, endTime, robotIds, sensorTypes, bucket));
+        } catch (RuntimeException e) {
+            hiveLeg.cancel(true);
+            throw e;
+        }
+        List<Map<String, Object>> hiveRows;
+        try {
+            hiveRows = hiveLeg.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        log.debug("联合查询: Hive {}条, MySQL {}条, 切分时间={}", hiveRows.size(), mysqlRows.size(), splitAt);
+
+        List<SensorAggregate> partials = new ArrayList<>(hiveRows.size() + mysqlRows.size());
+        for (Map<String, Object> row : hiveRows) {
+            partials.add(SensorAggregate.fromRow(row));
+        }
+        for (Map<String, Object> row : mysqlRows) {
+            partials.add(SensorAggregate.fromRow(row));
+        }
+        // 水位所在的时间桶两边都有数据
+        return SensorAggregate.combine(partials, SensorAggregate::getRobotId, SensorAggregate::getBucket);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -2,8 +2,15 @@ package com.bdir.dps.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.baomidou.mybatisplus.core.metadata.IPage;
+import com.bdir.dps.aggregate.SensorAggregate;
 import org.apache.ibatis.annotations.*;
 import org.apache.ibatis.jdbc.SQL;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.regex.Pattern;
@@ -22,7 +29,7 @@ public interface HiveQueryRouterMapper {
 
     /**
      * 智能路由查询
-     * 根据查询条件自动选择最优的查询引擎
+     * 在Hive事实表和物化视图之间选择；需要结合MySQL实时表的统计信息选择路由时使用SensorQueryRouter
      */
     @SelectProvider(type = SqlProvider.class, method = "routeQuery")
     @Results({
@@ -46,6 +53,23 @@ public interface HiveQueryRouterMapper {
         @Param("metrics") List<String> metrics
     );
 
+    /**
+     * 按机器人和时间桶查询各指标的部分聚合（非空值的条数、和、平方和、最小值、最大值），
+     * 时间范围包含开始时间，不包含结束时间，相邻的时间范围可以直接合并
+     *
+     * @param route SensorQueryRouter.Route中的HIVE_FACT或HIVE_MV
+     * @param bucket TimeBucket的名称，物化视图不支持MINUTE
+     */
+    @SelectProvider(type = SqlProvider.class, method = "partialQuery")
+    List<Map<String, Object>> queryPartials(
+        @Param("route") String route,
+        @Param("startTime") String startTime,
+        @Param("endTime") String endTime,
+        @Param("robotIds") List<String> robotIds,
+        @Param("sensorTypes") List<String> sensorTypes,
+        @Param("bucket") String bucket
+    );
+
     /**
      * 分页查询
      */
@@ -68,9 +92,18 @@ public interface HiveQueryRouterMapper {
         private static final Pattern TABLE_PATTERN = Pattern.compile("^[a-zA-Z_][a-zA-Z0-9_]*$");
         private static final Pattern COLUMN_PATTERN = Pattern.compile("^[a-zA-Z_][a-zA-Z0-9_]*$");
 
+        static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        /**
+         * 小时分区的开始时间（yyyy-MM-dd HH:00:00），与时间参数按字符串比较；
+         * hr分区值可能没有补零（如hr=9），补齐两位后字符串顺序才与时间顺序一致
+         */
+        static final String HOUR_START = "CONCAT(dt, ' ', LPAD(CAST(hr AS STRING), 2, '0'), ':00:00')";
+
         // 允许的指标列表
         private static final List<String> ALLOWED_METRICS = Arrays.asList(
-            "temperature", "humidity", "pressure", "light", "noise"
+            "temperature", "humidity", "pressure", "light", "noise",
+            "position_x", "position_y", "position_z", "data_count"
         );
 
         // 允许的表名列表
@@ -82,50 +115,152 @@ public interface HiveQueryRouterMapper {
         public String routeQuery(Map<String, Object> params) {
             String startTime = (String) params.get("startTime");
             String endTime = (String) params.get("endTime");
-            List<String> robotIds = (List<String>) params.get("robotIds");
-            List<String> sensorTypes = (List<String>) params.get("sensorTypes");
-            List<String> metrics = (List<String>) params.get("metrics");
+            List<String> robotIds = stringList(params, "robotIds");
+            List<String> sensorTypes = stringList(params, "sensorTypes");
+            List<String> metrics = stringList(params, "metrics");
 
             // 验证输入参数
+            validate(startTime, endTime, robotIds, sensorTypes, metrics);
+
+            // 路由决策逻辑：按整点对齐时使用小时物化视图，否则查询按小时分区的事实表
+            if (canUseMaterializedView(parseTime(startTime), parseTime(endTime), metrics)) {
+                return buildMVQuery(startTime, endTime, robotIds, sensorTypes, metrics);
+            }
+            return buildIncrementalQuery(startTime, endTime, robotIds, sensorTypes, metrics);
+        }
+
+        public String partialQuery(Map<String, Object> params) {
+            String route = (String) params.get("route");
+            String startTime = (String) params.get("startTime");
+            String endTime = (String) params.get("endTime");
+            List<String> robotIds = stringList(params, "robotIds");
+            List<String> sensorTypes = stringList(params, "sensorTypes");
+            String bucket = (String) params.get("bucket");
+            validate(startTime, endTime, robotIds, sensorTypes, null);
+
+            boolean mv;
+            switch (route) {
+                case "HIVE_MV":
+                    mv = true;
+                    break;
+                case "HIVE_FACT":
+                    mv = false;
+                    break;
+                default:
+                    throw new IllegalArgumentException("不支持的Hive路由: " + route);
+            }
+            String bucketExpression;
+            switch (bucket) {
+                case "NONE":
+                    bucketExpression = null;
+                    break;
+                case "MINUTE":
+                    if (mv) {
+                        throw new IllegalArgumentException("物化视图不支持按分钟分桶");
+                    }
+                    bucketExpression = "CONCAT(SUBSTR(CAST(event_time AS STRING), 1, 16), ':00')";
+                    break;
+                case "HOUR":
+                    bucketExpression = HOUR_START;
+                    break;
+                case "DAY":
+                    bucketExpression = "CONCAT(dt, ' 00:00:00')";
+                    break;
+                default:
+                    throw new IllegalArgumentException("不支持的时间桶: " + bucket);
+            }
+
+            return new SQL() {{
+                SELECT("robot_id");
+                if (bucketExpression != null) {
+                    SELECT(bucketExpression + " as time_bucket");
+                }
+                for (String metric : SensorAggregate.METRICS) {
+                    if (mv) {
+                        SELECT("SUM(" + metric + "_count) as " + metric + "_count");
+                        SELECT("SUM(" + metric + "_sum) as " + metric + "_sum");
+                        SELECT("SUM(" + metric + "_sum_sq) as " + metric + "_sum_sq");
+                        SELECT("MIN(" + metric + "_min) as " + metric + "_min");
+                        SELECT("MAX(" + metric + "_max) as " + metric + "_max");
+                    } else {
+                        SELECT("COUNT(" + metric + ") as " + metric + "_count");
+                        SELECT("SUM(" + metric + ") as " + metric + "_sum");
+                        SELECT("SUM(" + metric + " * " + metric + ") as " + metric + "_sum_sq");
+                        SELECT("MIN(" + metric + ") as " + metric + "_min");
+                        SELECT("MAX(" + metric + ") as " + metric + "_max");
+                    }
+                }
+                SELECT(mv ? "SUM(record_count) as data_count" : "COUNT(*) as data_count");
+                FROM(mv ? "sensor_hourly_mv" : "sensor_fact_orc");
+                // 分区裁剪
+                WHERE("dt >= SUBSTR(#{startTime}, 1, 10)");
+                WHERE("dt <= SUBSTR(#{endTime}, 1, 10)");
+                if (mv) {
+                    WHERE(HOUR_START + " >= #{startTime}");
+                    WHERE(HOUR_START + " < #{endTime}");
+                } else {
+                    WHERE("event_time >= #{startTime}");
+                    WHERE("event_time < #{endTime}");
+                }
+
+                if (robotIds != null && !robotIds.isEmpty()) {
+                    WHERE("robot_id IN " + buildInClause("robotIds", robotIds));
+                }
+                if (sensorTypes != null && !sensorTypes.isEmpty()) {
+                    WHERE("sensor_type IN " + buildInClause("sensorTypes", sensorTypes));
+                }
+
+                GROUP_BY(bucketExpression != null ? "robot_id, " + bucketExpression : "robot_id");
+            }}.toString();
+        }
+
+        /**
+         * 读取字符串列表参数；MyBatis传入的参数表不保留泛型信息，未检查的转换只在这里进行，
+         * 列表元素由validate逐个校验
+         */
+        @SuppressWarnings("unchecked")
+        private static List<String> stringList(Map<String, Object> params, String name) {
+            return (List<String>) params.get(name);
+        }
+
+        /**
+         * 验证查询参数
+         */
+        static void validate(String startTime, String endTime, List<String> robotIds,
+                             List<String> sensorTypes, List<String> metrics) {
             validateTimeRange(startTime, endTime);
             validateMetrics(metrics);
             validateRobotIds(robotIds);
             validateSensorTypes(sensorTypes);
+        }
 
-            // 计算时间范围（分钟）
-            long timeRangeMinutes = calculateTimeRangeMinutes(startTime, endTime);
-
-            // 路由决策逻辑
-            if (timeRangeMinutes <= 5) {
-                // 查询最近5分钟数据：使用MySQL实时表
-                return buildRealtimeQuery(startTime, endTime, robotIds, sensorTypes, metrics);
-            } else if (timeRangeMinutes <= 1440) {
-                // 查询24小时内数据：使用Hive增量表
-                return buildIncrementalQuery(startTime, endTime, robotIds, sensorTypes, metrics);
-            } else {
-                // 查询历史数据：使用Hive分区表
-                return buildHistoricalQuery(startTime, endTime, robotIds, sensorTypes, metrics);
+        /**
+         * 解析 yyyy-MM-dd HH:mm:ss 格式的时间
+         */
+        static LocalDateTime parseTime(String time) {
+            try {
+                return LocalDateTime.parse(time, TIME_FORMATTER);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("时间格式错误，应为 yyyy-MM-dd HH:mm:ss: " + time);
             }
         }
 
         /**
          * 验证时间范围参数
          */
-        private void validateTimeRange(String startTime, String endTime) {
+        private static void validateTimeRange(String startTime, String endTime) {
             if (startTime == null || endTime == null) {
                 throw new IllegalArgumentException("时间参数不能为空");
             }
-            // 验证时间格式 yyyy-MM-dd HH:mm:ss
-            if (!startTime.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}") ||
-                !endTime.matches("\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}")) {
-                throw new IllegalArgumentException("时间格式错误，应为 yyyy-MM-dd HH:mm:ss");
+            if (parseTime(startTime).isAfter(parseTime(endTime))) {
+                throw new IllegalArgumentException("开始时间不能晚于结束时间");
             }
         }
 
         /**
          * 验证指标参数
          */
-        private void validateMetrics(List<String> metrics) {
+        private static void validateMetrics(List<String> metrics) {
             if (metrics != null) {
                 for (String metric : metrics) {
                     if (!ALLOWED_METRICS.contains(metric.toLowerCase())) {
@@ -138,7 +273,7 @@ public interface HiveQueryRouterMapper {
         /**
          * 验证机器人ID参数
          */
-        private void validateRobotIds(List<String> robotIds) {
+        private static void validateRobotIds(List<String> robotIds) {
             if (robotIds != null) {
                 for (String robotId : robotIds) {
                     if (!robotId.matches("^[A-Z0-9_#-]+$")) {
@@ -151,64 +286,16 @@ public interface HiveQueryRouterMapper {
         /**
          * 验证传感器类型参数
          */
-        private void validateSensorTypes(List<String> sensorTypes) {
+        private static void validateSensorTypes(List<String> sensorTypes) {
             if (sensorTypes != null) {
                 for (String sensorType : sensorTypes) {
-                    if (!sensorType.matches("^[A-Z_]+$")) {
+                    if (!sensorType.matches("^[A-Za-z_]+$")) {
                         throw new IllegalArgumentException("非法的传感器类型格式: " + sensorType);
                     }
                 }
             }
         }
 
-        /**
-         * 构建实时查询SQL（MySQL）
-         */
-        private String buildRealtimeQuery(String startTime, String endTime,
-                                        List<String> robotIds, List<String> sensorTypes,
-                                        List<String> metrics) {
-            return new SQL() {{
-                SELECT("r.robot_id");
-                SELECT("r.robot_name");
-                SELECT("r.robot_type");
-
-                // 动态选择指标
-                if (metrics != null) {
-                    if (metrics.contains("temperature")) {
-                        SELECT("AVG(s.temperature) as avg_temperature");
-                        SELECT("MAX(s.temperature) as max_temperature");
-                        SELECT("MIN(s.temperature) as min_temperature");
-                    }
-                    if (metrics.contains("humidity")) {
-                        SELECT("AVG(s.humidity) as avg_humidity");
-                        SELECT("MAX(s.humidity) as max_humidity");
-                        SELECT("MIN(s.humidity) as min_humidity");
-                    }
-                    if (metrics.contains("pressure")) {
-                        SELECT("AVG(s.pressure) as avg_pressure");
-                    }
-                }
-
-                SELECT("COUNT(*) as data_count");
-
-                FROM("realtime_sensor_data s");
-                JOIN("dim_robot r ON s.robot_id = r.robot_id");
-
-                WHERE("s.event_time >= #{startTime}");
-                WHERE("s.event_time <= #{endTime}");
-
-                if (robotIds != null && !robotIds.isEmpty()) {
-                    WHERE("s.robot_id IN " + buildInClause("robotIds", robotIds));
-                }
-                if (sensorTypes != null && !sensorTypes.isEmpty()) {
-                    WHERE("s.sensor_type IN " + buildInClause("sensorTypes", sensorTypes));
-                }
-
-                GROUP_BY("s.robot_id, r.robot_name, r.robot_type");
-                ORDER_BY("s.robot_id");
-            }}.toString();
-        }
-
         /**
          * 构建增量查询SQL（Hive）
          */
@@ -256,26 +343,10 @@ public interface HiveQueryRouterMapper {
             }}.toString();
         }
 
-        /**
-         * 构建历史查询SQL（使用物化视图）
-         */
-        private String buildHistoricalQuery(String startTime, String endTime,
-                                          List<String> robotIds, List<String> sensorTypes,
-                                          List<String> metrics) {
-            // 检查是否可以使用物化视图
-            boolean canUseMV = canUseMaterializedView(metrics);
-
-            if (canUseMV) {
-                // 使用物化视图加速查询
-                return buildMVQuery(startTime, endTime, robotIds, sensorTypes, metrics);
-            } else {
-                // 回退到普通表查询
-                return buildIncrementalQuery(startTime, endTime, robotIds, sensorTypes, metrics);
-            }
-        }
-
         /**
          * 构建物化视图查询
+         * 物化视图按小时保存各指标的条数、和、平方和、最小值和最大值，平均值由和与条数计算；
+         * 只在时间范围按整点对齐时使用，结束时间所在的小时不包含在内
          */
         private String buildMVQuery(String startTime, String endTime,
                                   List<String> robotIds, List<String> sensorTypes,
@@ -287,14 +358,17 @@ public interface HiveQueryRouterMapper {
                     for (String metric : metrics) {
                         switch (metric.toLowerCase()) {
                             case "temperature":
-                                SELECT("SUM(avg_temp * record_count) / SUM(record_count) as avg_temperature");
-                                SELECT("MAX(max_temp) as max_temperature");
-                                SELECT("MIN(min_temp) as min_temperature");
+                                SELECT("SUM(temperature_sum) / SUM(temperature_count) as avg_temperature");
+                                SELECT("MAX(temperature_max) as max_temperature");
+                                SELECT("MIN(temperature_min) as min_temperature");
                                 break;
                             case "humidity":
-                                SELECT("SUM(avg_humidity * record_count) / SUM(record_count) as avg_humidity");
-                                SELECT("MAX(max_humidity) as max_humidity");
-                                SELECT("MIN(min_humidity) as min_humidity");
+                                SELECT("SUM(humidity_sum) / SUM(humidity_count) as avg_humidity");
+                                SELECT("MAX(humidity_max) as max_humidity");
+                                SELECT("MIN(humidity_min) as min_humidity");
+                                break;
+                            case "pressure":
+                                SELECT("SUM(pressure_sum) / SUM(pressure_count) as avg_pressure");
                                 break;
                         }
                     }
@@ -302,8 +376,10 @@ public interface HiveQueryRouterMapper {
 
                 SELECT("SUM(record_count) as data_count");
                 FROM("sensor_hourly_mv");
-                WHERE("dt >= DATE(#{startTime})");
-                WHERE("dt <= DATE(#{endTime})");
+                WHERE("dt >= SUBSTR(#{startTime}, 1, 10)");
+                WHERE("dt <= SUBSTR(#{endTime}, 1, 10)");
+                WHERE(HOUR_START + " >= #{startTime}");
+                WHERE(HOUR_START + " < #{endTime}");
 
                 if (robotIds != null && !robotIds.isEmpty()) {
                     WHERE("robot_id IN " + buildInClause("robotIds", robotIds));
@@ -320,7 +396,7 @@ public interface HiveQueryRouterMapper {
         /**
          * 辅助方法：构建IN子句（使用MyBatis参数化）
          */
-        private String buildInClause(String paramName, List<?&gt; values) {
+        private String buildInClause(String paramName, List<?> values) {
             StringBuilder sb = new StringBuilder("(");
             for (int i = 0; i < values.size(); i++) {
                 sb.append("#{").append(paramName).append("[").append(i).append("]}");
@@ -333,28 +409,23 @@ public interface HiveQueryRouterMapper {
         }
 
         /**
-         * 辅助方法：计算时间范围（分钟）
+         * 辅助方法：判断是否可以使用物化视图
          */
-        private long calculateTimeRangeMinutes(String startTime, String endTime) {
-            try {
-                // 简化实现，实际应该解析时间字符串计算差值
-                // 这里返回默认24小时
-                return 1440;
-            } catch (Exception e) {
-                // 如果解析失败，返回默认24小时
-                return 1440;
+        static boolean canUseMaterializedView(LocalDateTime startTime, LocalDateTime endTime, List<String> metrics) {
+            if (metrics == null || metrics.isEmpty() || !isHourAligned(startTime, endTime)) {
+                return false;
             }
+            // 物化视图只包含温度、湿度和压力指标
+            return metrics.stream().allMatch(m -> m.equals("data_count") || SensorAggregate.METRICS.contains(m));
         }
 
         /**
-         * 辅助方法：判断是否可以使用物化视图
+         * 时间范围是否由完整的小时组成；物化视图按小时聚合
          */
-        private boolean canUseMaterializedView(List<String> metrics) {
-            if (metrics == null || metrics.isEmpty()) {
-                return false;
-            }
-            // 物化视图只包含温度和湿度指标
-            return metrics.stream().allMatch(m -&gt; m.equals("temperature") || m.equals("humidity"));
+        static boolean isHourAligned(LocalDateTime startTime, LocalDateTime endTime) {
+            return endTime.isAfter(startTime)
+                    && startTime.equals(startTime.truncatedTo(ChronoUnit.HOURS))
+                    && endTime.equals(endTime.truncatedTo(ChronoUnit.HOURS));
         }
     }
 
@@ -1,20 +1,30 @@
 package com.bdir.dps.mapper;
 
+import com.bdir.dps.aggregate.PartialAggregate;
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
 import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.entity.SensorMetrics;
 import com.bdir.dps.entity.Robot;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.NonTransientDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * MySQL数据访问层
@@ -23,68 +33,513 @@ import java.util.*;
 @Repository
 public class MySQLMapper {
 
+    private static final String SENSOR_DATA_INSERT_PREFIX = "INSERT INTO realtime_sensor_data " +
+            "(data_id, robot_id, sensor_id, sensor_type, timestamp, " +
+            "temperature, humidity, pressure, position_x, position_y, position_z, status) VALUES ";
+
+    private static final String SENSOR_DATA_ROW_PLACEHOLDER = "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final int SENSOR_DATA_COLUMN_COUNT = 12;
+
+    static final String ROLLUP_MINUTE_TABLE = "sensor_rollup_minute";
+
+    static final String ROLLUP_HOUR_TABLE = "sensor_rollup_hour";
+
+    /**
+     * 汇总表中各指标对应的槽位，与SensorAggregate.METRICS的顺序一致
+     */
+    private static final int[] ROLLUP_METRIC_SLOTS = {
+            SensorMetrics.TEMPERATURE, SensorMetrics.HUMIDITY, SensorMetrics.PRESSURE
+    };
+
+    private static final String ROLLUP_MINUTE_UPSERT_SQL = rollupUpsertSql(ROLLUP_MINUTE_TABLE);
+
+    private static final String ROLLUP_HOUR_UPSERT_SQL = rollupUpsertSql(ROLLUP_HOUR_TABLE);
+
+    /**
+     * 汇总行按主键（时间桶、机器人ID、传感器类型）排序
+     */
+    private static final RowMapper<StreamOffset> STREAM_OFFSET_ROW_MAPPER = (rs, rowNum) -> new StreamOffset(
+            rs.getString("topic"), rs.getInt("partition_id"), rs.getLong("next_offset"), rs.getInt("next_index"),
+            rs.getLong("owner_epoch"));
+
+    private static final Comparator<List<Object>> ROLLUP_KEY_ORDER = Comparator
+            .comparing((List<Object> key) -> (LocalDateTime) key.get(0))
+            .thenComparing(key -> (String) key.get(1), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(key -> (String) key.get(2));
+
     @Autowired
     private JdbcTemplate mysqlJdbcTemplate;
 
     /**
-     * 插入传感器数据
+     * 批量插入时每条INSERT语句包含的行数
+     */
+    @Value("${mysql.bulk-insert.chunk-size:500}")
+    private int bulkInsertChunkSize = 500;
+
+    /**
+     * 批量写入时是否在同一事务中累加分钟和小时汇总表
      */
+    @Value("${mysql.rollup.enabled:true}")
+    private boolean rollupEnabled = true;
+
+    private final Map<Integer, String> multiRowInsertSqlCache = new ConcurrentHashMap<>();
+
+    private final LongAdder bulkInsertBatches = new LongAdder();
+    private final LongAdder bulkInsertRows = new LongAdder();
+    private final LongAdder bulkInsertNanos = new LongAdder();
+    private volatile double lastBulkInsertRowsPerSecond = 0;
+    private final LongAdder rollupRowsUpserted = new LongAdder();
+    private final LongAdder replayedRowsSkipped = new LongAdder();
+
+    public void setMysqlJdbcTemplate(JdbcTemplate mysqlJdbcTemplate) {
+        this.mysqlJdbcTemplate = mysqlJdbcTemplate;
+    }
+
+    /**
+     * 插入传感器数据，并在同一事务中累加汇总表
+     */
+    @Transactional
     public int insertSensorData(SensorData sensorData) {
         String sql = "INSERT INTO realtime_sensor_data " +
                 "(data_id, robot_id, sensor_id, sensor_type, timestamp, " +
                 "temperature, humidity, pressure, position_x, position_y, position_z, status) " +
                 "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
 
-        return mysqlJdbcTemplate.update(sql,
+        SensorMetrics metrics = sensorData.getMetrics();
+        int insertedCount = mysqlJdbcTemplate.update(sql,
                 sensorData.getDataId(),
                 sensorData.getRobotId(),
                 sensorData.getSensorId(),
                 sensorData.getSensorType(),
                 Timestamp.valueOf(sensorData.getTimestamp()),
-                sensorData.getMetrics().get("temperature"),
-                sensorData.getMetrics().get("humidity"),
-                sensorData.getMetrics().get("pressure"),
-                sensorData.getMetrics().get("position_x"),
-                sensorData.getMetrics().get("position_y"),
-                sensorData.getMetrics().get("position_z"),
+                metricValue(metrics, SensorMetrics.TEMPERATURE),
+                metricValue(metrics, SensorMetrics.HUMIDITY),
+                metricValue(metrics, SensorMetrics.PRESSURE),
+                metricValue(metrics, SensorMetrics.POSITION_X),
+                metricValue(metrics, SensorMetrics.POSITION_Y),
+                metricValue(metrics, SensorMetrics.POSITION_Z),
                 sensorData.getStatus()
         );
+        upsertSensorRollups(Collections.singletonList(sensorData));
+        return insertedCount;
     }
 
     /**
      * 批量插入传感器数据
+     * 按分块大小拼接多行VALUES语句，每条语句一次往返写入多行；缺失的指标写入NULL。
+     * 整批在同一事务中写入，失败时整批回滚，重试不会产生部分重复数据；
+     * 汇总表的累加在同一事务中，与明细数据一起提交或回滚。
+     * 至少一次消费重放已提交的批次时，数据ID已存在的数据不再写入明细，也不再累加到汇总表
      */
+    @Transactional
     public int batchInsertSensorData(List<SensorData> sensorDataList) {
-        String sql = "INSERT INTO realtime_sensor_data " +
-                "(data_id, robot_id, sensor_id, sensor_type, timestamp, " +
-                "temperature, humidity, pressure, position_x, position_y, position_z, status) " +
-                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        if (sensorDataList == null || sensorDataList.isEmpty()) {
+            return 0;
+        }
+
+        long startTime = System.nanoTime();
+        sensorDataList = excludePersisted(sensorDataList);
+        if (sensorDataList.isEmpty()) {
+            return 0;
+        }
+        int chunkSize = Math.max(1, bulkInsertChunkSize);
+        int total = sensorDataList.size();
+        int fullChunkRows = total / chunkSize * chunkSize;
+        int insertedCount = 0;
+
+        // 满块共用同一条语句，作为一个JDBC批次提交
+        if (fullChunkRows > 0) {
+            List<Object[]> batchArgs = new ArrayList<>(fullChunkRows / chunkSize);
+            for (int from = 0; from < fullChunkRows; from += chunkSize) {
+                batchArgs.add(toInsertArgs(sensorDataList, from, from + chunkSize));
+            }
+            insertedCount += sumUpdateCounts(
+                    mysqlJdbcTemplate.batchUpdate(multiRowInsertSql(chunkSize), batchArgs), chunkSize);
+        }
 
-        int[] updateCounts = mysqlJdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
-            @Override
-            public void setValues(PreparedStatement ps, int i) throws SQLException {
-                SensorData data = sensorDataList.get(i);
-                ps.setString(1, data.getDataId());
-                ps.setString(2, data.getRobotId());
-                ps.setString(3, data.getSensorId());
-                ps.setString(4, data.getSensorType());
-                ps.setTimestamp(5, Timestamp.valueOf(data.getTimestamp()));
-                ps.setDouble(6, data.getMetrics().get("temperature"));
-                ps.setDouble(7, data.getMetrics().get("humidity"));
-                ps.setDouble(8, data.getMetrics().get("pressure"));
-                ps.setDouble(9, data.getMetrics().get("position_x"));
-                ps.setDouble(10, data.getMetrics().get("position_y"));
-                ps.setDouble(11, data.getMetrics().get("position_z"));
-                ps.setString(12, data.getStatus());
+        // 剩余不足一块的数据单独一条语句
+        int remaining = total - fullChunkRows;
+        if (remaining > 0) {
+            List<Object[]> batchArgs = Collections.singletonList(toInsertArgs(sensorDataList, fullChunkRows, total));
+            insertedCount += sumUpdateCounts(
+                    mysqlJdbcTemplate.batchUpdate(multiRowInsertSql(remaining), batchArgs), remaining);
+        }
+
+        upsertSensorRollups(sensorDataList);
+
+        recordBulkInsert(total, System.nanoTime() - startTime);
+        return insertedCount;
+    }
+
+    /**
+     * 去掉数据ID已写入明细表的数据和批次内重复的数据，没有数据ID的数据保留。
+     * 按数据的时间范围限定查询，只读取可能包含这些数据的分区
+     */
+    private List<SensorData> excludePersisted(List<SensorData> sensorDataList) {
+        List<SensorData> withId = new ArrayList<>(sensorDataList.size());
+        LocalDateTime from = null;
+        LocalDateTime to = null;
+        for (SensorData data : sensorDataList) {
+            if (data.getDataId() == null || data.getTimestamp() == null) {
+                continue;
+            }
+            withId.add(data);
+            from = from == null || data.getTimestamp().isBefore(from) ? data.getTimestamp() : from;
+            to = to == null || data.getTimestamp().isAfter(to) ? data.getTimestamp() : to;
+        }
+        if (withId.isEmpty()) {
+            return sensorDataList;
+        }
+
+        Set<String> persisted = new HashSet<>();
+        int chunkSize = Math.max(1, bulkInsertChunkSize);
+        for (int start = 0; start < withId.size(); start += chunkSize) {
+            List<SensorData> chunk = withId.subList(start, Math.min(start + chunkSize, withId.size()));
+            StringBuilder sql = new StringBuilder("SELECT data_id FROM realtime_sensor_data " +
+                    "WHERE timestamp >= ? AND timestamp <= ? AND data_id IN (");
+            Object[] args = new Object[chunk.size() + 2];
+            args[0] = Timestamp.valueOf(from);
+            args[1] = Timestamp.valueOf(to);
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                args[i + 2] = chunk.get(i).getDataId();
+            }
+            sql.append(")");
+            persisted.addAll(mysqlJdbcTemplate.queryForList(sql.toString(), String.class, args));
+        }
+
+        List<SensorData> remaining = new ArrayList<>(sensorDataList.size());
+        for (SensorData data : sensorDataList) {
+            // 已写入的和本批次中已出现过的数据ID都跳过
+            if (data.getDataId() == null || data.getTimestamp() == null || persisted.add(data.getDataId())) {
+                remaining.add(data);
+            }
+        }
+        if (remaining.size() < sensorDataList.size()) {
+            replayedRowsSkipped.add(sensorDataList.size() - remaining.size());
+        }
+        return remaining;
+    }
+
+    /**
+     * 把一批数据按分钟和小时、机器人、传感器类型预聚合后累加到汇总表。
+     * 条数、和、平方和相加，最小值和最大值取较小和较大的一个；
+     * 按汇总表主键顺序写入，并发写入同一行时不会因加锁顺序不同而死锁
+     */
+    public void upsertSensorRollups(List<SensorData> sensorDataList) {
+        if (!rollupEnabled || sensorDataList == null || sensorDataList.isEmpty()) {
+            return;
+        }
+        List<Object[]> minuteArgs = rollupArgs(sensorDataList, ChronoUnit.MINUTES);
+        List<Object[]> hourArgs = rollupArgs(sensorDataList, ChronoUnit.HOURS);
+        mysqlJdbcTemplate.batchUpdate(ROLLUP_MINUTE_UPSERT_SQL, minuteArgs);
+        mysqlJdbcTemplate.batchUpdate(ROLLUP_HOUR_UPSERT_SQL, hourArgs);
+        rollupRowsUpserted.add(minuteArgs.size() + hourArgs.size());
+    }
+
+    /**
+     * 由明细数据重建[startTime, endTime)范围内的汇总行，用于开启汇总前已写入数据的回填，
+     * 以及绕过批量写入的数据的修复；时间范围需按小时对齐，重建的行覆盖原有的值
+     */
+    @Transactional
+    public int rebuildSensorRollups(LocalDateTime startTime, LocalDateTime endTime) {
+        if (!isAligned(startTime, ChronoUnit.HOURS) || !isAligned(endTime, ChronoUnit.HOURS)) {
+            throw new IllegalArgumentException("重建汇总的时间范围需按小时对齐: " + startTime + " ~ " + endTime);
+        }
+        int rows = 0;
+        for (String table : Arrays.asList(ROLLUP_MINUTE_TABLE, ROLLUP_HOUR_TABLE)) {
+            String bucketFormat = ROLLUP_MINUTE_TABLE.equals(table) ? "%Y-%m-%d %H:%i:00" : "%Y-%m-%d %H:00:00";
+            mysqlJdbcTemplate.update("DELETE FROM " + table + " WHERE bucket_time >= ? AND bucket_time < ?",
+                    Timestamp.valueOf(startTime), Timestamp.valueOf(endTime));
+
+            StringBuilder sql = new StringBuilder();
+            sql.append("INSERT INTO ").append(table).append(" (").append(rollupColumns()).append(") ");
+            sql.append("SELECT DATE_FORMAT(timestamp, ?) AS bucket, robot_id, sensor_type, COUNT(*)");
+            for (String metric : SensorAggregate.METRICS) {
+                sql.append(", COUNT(").append(metric).append("), COALESCE(SUM(").append(metric).append("), 0)");
+                sql.append(", COALESCE(SUM(").append(metric).append(" * ").append(metric).append("), 0)");
+                sql.append(", MIN(").append(metric).append("), MAX(").append(metric).append(")");
             }
+            sql.append(" FROM realtime_sensor_data WHERE timestamp >= ? AND timestamp < ?");
+            sql.append(" GROUP BY bucket, robot_id, sensor_type");
+            rows += mysqlJdbcTemplate.update(sql.toString(), bucketFormat,
+                    Timestamp.valueOf(startTime), Timestamp.valueOf(endTime));
+        }
+        return rows;
+    }
 
-            @Override
-            public int getBatchSize() {
-                return sensorDataList.size();
+    /**
+     * 按汇总表主键排序的预聚合参数，每个时间桶、机器人、传感器类型一行
+     */
+    private static List<Object[]> rollupArgs(List<SensorData> sensorDataList, ChronoUnit unit) {
+        Map<List<Object>, RollupRow> rows = new TreeMap<>(ROLLUP_KEY_ORDER);
+        for (SensorData data : sensorDataList) {
+            if (data.getTimestamp() == null) {
+                continue;
             }
+            List<Object> key = Arrays.asList(data.getTimestamp().truncatedTo(unit), data.getRobotId(),
+                    data.getSensorType() != null ? data.getSensorType() : "");
+            rows.computeIfAbsent(key, k -> new RollupRow()).add(data.getMetrics());
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(rows.size());
+        for (Map.Entry<List<Object>, RollupRow> entry : rows.entrySet()) {
+            List<Object> key = entry.getKey();
+            RollupRow row = entry.getValue();
+            Object[] args = new Object[4 + ROLLUP_METRIC_SLOTS.length * 5];
+            int p = 0;
+            args[p++] = Timestamp.valueOf((LocalDateTime) key.get(0));
+            args[p++] = key.get(1);
+            args[p++] = key.get(2);
+            args[p++] = row.dataCount;
+            for (PartialAggregate metric : row.metrics) {
+                args[p++] = metric.getCount();
+                args[p++] = metric.getSum();
+                args[p++] = metric.getSumSq();
+                args[p++] = new SqlParameterValue(Types.DOUBLE, metric.getMin());
+                args[p++] = new SqlParameterValue(Types.DOUBLE, metric.getMax());
+            }
+            batchArgs.add(args);
+        }
+        return batchArgs;
+    }
+
+    private static String rollupColumns() {
+        StringBuilder columns = new StringBuilder("bucket_time, robot_id, sensor_type, data_count");
+        for (String metric : SensorAggregate.METRICS) {
+            columns.append(", ").append(metric).append("_count, ").append(metric).append("_sum, ")
+                    .append(metric).append("_sum_sq, ").append(metric).append("_min, ")
+                    .append(metric).append("_max");
+        }
+        return columns.toString();
+    }
+
+    /**
+     * 汇总表的累加语句：主键已存在时条数和和值相加，最小值和最大值忽略NULL后比较
+     */
+    private static String rollupUpsertSql(String table) {
+        int columns = 4 + SensorAggregate.METRICS.size() * 5;
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO ").append(table).append(" (").append(rollupColumns()).append(") VALUES (");
+        for (int i = 0; i < columns; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ON DUPLICATE KEY UPDATE data_count = data_count + VALUES(data_count)");
+        for (String metric : SensorAggregate.METRICS) {
+            for (String suffix : Arrays.asList("_count", "_sum", "_sum_sq")) {
+                String column = metric + suffix;
+                sql.append(", ").append(column).append(" = ").append(column)
+                        .append(" + VALUES(").append(column).append(")");
+            }
+            for (String function : Arrays.asList("LEAST", "GREATEST")) {
+                String column = metric + ("LEAST".equals(function) ? "_min" : "_max");
+                sql.append(", ").append(column).append(" = ").append(function)
+                        .append("(COALESCE(").append(column).append(", VALUES(").append(column).append(")), ")
+                        .append("COALESCE(VALUES(").append(column).append("), ").append(column).append("))");
+            }
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 一个汇总行的预聚合结果
+     */
+    private static final class RollupRow {
+        private long dataCount;
+        private final PartialAggregate[] metrics = new PartialAggregate[ROLLUP_METRIC_SLOTS.length];
+
+        private RollupRow() {
+            for (int i = 0; i < metrics.length; i++) {
+                metrics[i] = new PartialAggregate();
+            }
+        }
+
+        private void add(SensorMetrics values) {
+            dataCount++;
+            for (int i = 0; i < ROLLUP_METRIC_SLOTS.length; i++) {
+                Double value = metricValue(values, ROLLUP_METRIC_SLOTS[i]);
+                if (value != null) {
+                    metrics[i].add(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * 批量插入传感器数据，并在同一事务中保存各分区的消费位置
+     * 数据和位置一起提交或一起回滚，消费端重启或重平衡后从保存的位置继续，已写入的数据不会重复写入。
+     * 写入前锁定各分区的位置行并核对所有权版本，分区已被重新认领时整个事务回滚，
+     * 回收超时后仍在写库的旧持有者不会在新持有者读取位置之后再写入数据
+     *
+     * @throws StreamFencedException 分区已被重新认领
+     */
+    @Transactional
+    public int batchInsertSensorData(List<SensorData> sensorDataList, String consumerGroup,
+                                     Collection<StreamOffset> offsets) {
+        checkStreamOwnership(consumerGroup, offsets);
+        int insertedCount = batchInsertSensorData(sensorDataList);
+        saveStreamOffsets(consumerGroup, offsets);
+        return insertedCount;
+    }
+
+    /**
+     * 锁定分区的位置行并核对所有权版本，按主键顺序加锁；锁持有到事务结束，
+     * 认领分区需等待正在进行的写入提交或回滚
+     */
+    private void checkStreamOwnership(String consumerGroup, Collection<StreamOffset> offsets) {
+        if (offsets == null || offsets.isEmpty()) {
+            return;
+        }
+        List<StreamOffset> ordered = new ArrayList<>(offsets);
+        ordered.sort(Comparator.comparing(StreamOffset::getTopic).thenComparingInt(StreamOffset::getPartition));
+        String sql = "SELECT owner_epoch FROM stream_consumer_offset " +
+                "WHERE consumer_group = ? AND topic = ? AND partition_id = ? FOR UPDATE";
+        for (StreamOffset offset : ordered) {
+            List<Long> epochs = mysqlJdbcTemplate.queryForList(sql, Long.class,
+                    consumerGroup, offset.getTopic(), offset.getPartition());
+            if (epochs.isEmpty() || epochs.get(0) != offset.getOwnerEpoch()) {
+                throw new StreamFencedException("分区 " + offset.getTopic() + "-" + offset.getPartition()
+                        + " 已被重新认领，当前所有权版本: " + (epochs.isEmpty() ? "无" : epochs.get(0))
+                        + "，写入方版本: " + offset.getOwnerEpoch());
+            }
+        }
+    }
+
+    /**
+     * 认领分区并读取保存的消费位置：所有权版本加一，之前的持有者此后的写入都会被拒绝。
+     * 正在写入该分区的事务提交或回滚后才能认领，读取到的是其提交后的位置。
+     * 没有保存过位置的分区也会建立位置行，下一条位移为-1
+     */
+    @Transactional
+    public StreamOffset claimStreamOffset(String consumerGroup, String topic, int partition) {
+        mysqlJdbcTemplate.update("INSERT INTO stream_consumer_offset " +
+                "(consumer_group, topic, partition_id, next_offset, next_index, owner_epoch) " +
+                "VALUES (?, ?, ?, -1, 0, 1) ON DUPLICATE KEY UPDATE owner_epoch = owner_epoch + 1",
+                consumerGroup, topic, partition);
+        return mysqlJdbcTemplate.queryForObject("SELECT topic, partition_id, next_offset, next_index, owner_epoch " +
+                        "FROM stream_consumer_offset WHERE consumer_group = ? AND topic = ? AND partition_id = ?",
+                STREAM_OFFSET_ROW_MAPPER, consumerGroup, topic, partition);
+    }
+
+    /**
+     * 保存消费位置，只向前推进：已保存的位置更新时保持不变
+     */
+    public void saveStreamOffsets(String consumerGroup, Collection<StreamOffset> offsets) {
+        if (offsets == null || offsets.isEmpty()) {
+            return;
+        }
+        // next_index先于next_offset赋值，比较时使用的是原来的next_offset
+        String sql = "INSERT INTO stream_consumer_offset " +
+                "(consumer_group, topic, partition_id, next_offset, next_index) VALUES (?, ?, ?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE " +
+                "next_index = IF(VALUES(next_offset) > next_offset OR " +
+                "(VALUES(next_offset) = next_offset AND VALUES(next_index) > next_index), " +
+                "VALUES(next_index), next_index), " +
+                "next_offset = GREATEST(next_offset, VALUES(next_offset))";
+
+        List<Object[]> batchArgs = new ArrayList<>(offsets.size());
+        for (StreamOffset offset : offsets) {
+            batchArgs.add(new Object[]{consumerGroup, offset.getTopic(), offset.getPartition(),
+                    offset.getNextOffset(), offset.getNextIndex()});
+        }
+        mysqlJdbcTemplate.batchUpdate(sql, batchArgs);
+    }
+
+    /**
+     * 查询消费组保存的消费位置，不包含已认领但尚未保存过位置的分区
+     */
+    public List<StreamOffset> queryStreamOffsets(String consumerGroup) {
+        String sql = "SELECT topic, partition_id, next_offset, next_index, owner_epoch FROM stream_consumer_offset " +
+                "WHERE consumer_group = ? AND next_offset >= 0";
+        return mysqlJdbcTemplate.query(sql, STREAM_OFFSET_ROW_MAPPER, consumerGroup);
+    }
+
+    /**
+     * 获取批量写入统计
+     */
+    public Map<String, Object> getBulkInsertStats() {
+        long rows = bulkInsertRows.sum();
+        long nanos = bulkInsertNanos.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chunkSize", bulkInsertChunkSize);
+        stats.put("batches", bulkInsertBatches.sum());
+        stats.put("rows", rows);
+        stats.put("rowsPerSecond", nanos > 0 ? rows * 1_000_000_000.0 / nanos : 0);
+        stats.put("lastRowsPerSecond", lastBulkInsertRowsPerSecond);
+        stats.put("rollupEnabled", rollupEnabled);
+        stats.put("rollupRowsUpserted", rollupRowsUpserted.sum());
+        stats.put("replayedRowsSkipped", replayedRowsSkipped.sum());
+        return stats;
+    }
+
+    private void recordBulkInsert(int rows, long elapsedNanos) {
+        bulkInsertBatches.increment();
+        bulkInsertRows.add(rows);
+        bulkInsertNanos.add(elapsedNanos);
+        lastBulkInsertRowsPerSecond = elapsedNanos > 0 ? rows * 1_000_000_000.0 / elapsedNanos : 0;
+    }
+
+    /**
+     * 多行INSERT语句，按行数缓存
+     */
+    private String multiRowInsertSql(int rows) {
+        return multiRowInsertSqlCache.computeIfAbsent(rows, count -> {
+            StringBuilder sql = new StringBuilder(SENSOR_DATA_INSERT_PREFIX.length() + count * 26);
+            sql.append(SENSOR_DATA_INSERT_PREFIX);
+            for (int i = 0; i < count; i++) {
+                sql.append(i == 0 ? SENSOR_DATA_ROW_PLACEHOLDER : "," + SENSOR_DATA_ROW_PLACEHOLDER);
+            }
+            return sql.toString();
         });
+    }
 
-        return Arrays.stream(updateCounts).sum();
+    /**
+     * 展开[from, to)范围内数据的参数，可能为空的值带上SQL类型，避免驱动逐个查询参数元数据
+     */
+    private Object[] toInsertArgs(List<SensorData> sensorDataList, int from, int to) {
+        Object[] args = new Object[(to - from) * SENSOR_DATA_COLUMN_COUNT];
+        int p = 0;
+        for (int i = from; i < to; i++) {
+            SensorData data = sensorDataList.get(i);
+            SensorMetrics metrics = data.getMetrics();
+            args[p++] = data.getDataId();
+            args[p++] = data.getRobotId();
+            args[p++] = data.getSensorId();
+            args[p++] = data.getSensorType();
+            args[p++] = new SqlParameterValue(Types.TIMESTAMP,
+                    data.getTimestamp() != null ? Timestamp.valueOf(data.getTimestamp()) : null);
+            args[p++] = new SqlParameterValue(Types.DOUBLE, metricValue(metrics, SensorMetrics.TEMPERATURE));
+            args[p++] = new SqlParameterValue(Types.DOUBLE, metricValue(metrics, SensorMetrics.HUMIDITY));
+            args[p++] = new SqlParameterValue(Types.DOUBLE, metricValue(metrics, SensorMetrics.PRESSURE));
+            args[p++] = new SqlParameterValue(Types.DOUBLE, metricValue(metrics, SensorMetrics.POSITION_X));
+            args[p++] = new SqlParameterValue(Types.DOUBLE, metricValue(metrics, SensorMetrics.POSITION_Y));
+            args[p++] = new SqlParameterValue(Types.DOUBLE, metricValue(metrics, SensorMetrics.POSITION_Z));
+            args[p++] = new SqlParameterValue(Types.VARCHAR, data.getStatus());
+        }
+        return args;
+    }
+
+    /**
+     * 按槽位读取指标，缺失时返回null写入NULL
+     */
+    private static Double metricValue(SensorMetrics metrics, int slot) {
+        return metrics != null && metrics.has(slot) ? metrics.getDouble(slot) : null;
+    }
+
+    /**
+     * 汇总影响行数，开启rewriteBatchedStatements时驱动可能返回SUCCESS_NO_INFO，按语句行数计
+     */
+    private static int sumUpdateCounts(int[] updateCounts, int rowsPerStatement) {
+        int sum = 0;
+        if (updateCounts == null) {
+            return sum;
+        }
+        for (int count : updateCounts) {
+            sum += count >= 0 ? count : rowsPerStatement;
+        }
+        return sum;
     }
 
     /**
@@ -186,13 +641,16 @@ public class MySQLMapper {
     }
 
     /**
-     * 聚合查询传感器数据
+     * 聚合查询传感器数据，时间范围包含开始和结束时间
+     * 分钟粒度读取分钟汇总表，其他粒度读取小时汇总表，只读取完整落在时间范围内的汇总时间桶；
+     * 首尾不足一个汇总时间桶的部分读取明细数据，结果与直接按明细数据聚合一致
      */
     public List<Map<String, Object>> queryAggregatedSensorData(LocalDateTime startTime,
                                                               LocalDateTime endTime,
                                                               String aggregationType,
                                                               List<String> robotIds) {
         String timeFormat;
+        ChronoUnit rollupUnit = ChronoUnit.HOURS;
         switch (aggregationType.toLowerCase()) {
             case "hourly":
                 timeFormat = "%Y-%m-%d %H:00:00";
@@ -205,8 +663,101 @@ public class MySQLMapper {
                 break;
             default:
                 timeFormat = "%Y-%m-%d %H:%i:00";
+                rollupUnit = ChronoUnit.MINUTES;
+        }
+        // 结束时间包含在内，结束时间所在的汇总时间桶总是不完整
+        LocalDateTime rollupStart = ceil(startTime, rollupUnit);
+        LocalDateTime rollupEnd = endTime.truncatedTo(rollupUnit);
+        if (!rollupEnabled || !rollupStart.isBefore(rollupEnd)) {
+            return queryAggregatedRawSensorData(startTime, endTime, timeFormat, robotIds);
         }
 
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT DATE_FORMAT(s.bucket_time, ?) as time_bucket, ");
+        params.add(timeFormat);
+        sql.append("s.robot_id as robot_id, ");
+        sql.append("SUM(s.data_count) as data_count");
+        for (String metric : SensorAggregate.METRICS) {
+            sql.append(", SUM(s.").append(metric).append("_sum) / NULLIF(SUM(s.").append(metric)
+                    .append("_count), 0) as avg_").append(metric);
+            sql.append(", MAX(s.").append(metric).append("_max) as max_").append(metric);
+            sql.append(", MIN(s.").append(metric).append("_min) as min_").append(metric);
+        }
+        sql.append(" FROM ");
+        appendRollupSource(sql, params, rollupUnit == ChronoUnit.MINUTES ? ROLLUP_MINUTE_TABLE : ROLLUP_HOUR_TABLE,
+                startTime, rollupStart, rollupEnd, endTime, true, robotIds, null);
+        sql.append(" GROUP BY time_bucket, robot_id ");
+        sql.append("ORDER BY time_bucket DESC, robot_id");
+
+        return mysqlJdbcTemplate.queryForList(sql.toString(), params.toArray());
+    }
+
+    /**
+     * 汇总表与明细数据合并的数据源，别名为s：[rollupStart, rollupEnd)内读取汇总行，
+     * [startTime, rollupStart)和[rollupEnd, endTime)内读取明细数据，每条明细数据视为一条只有一行数据的汇总行。
+     * 列与汇总表一致：bucket_time、robot_id、data_count以及各指标的条数、和、平方和、最小值、最大值
+     *
+     * @param endInclusive 是否包含结束时间
+     */
+    private static void appendRollupSource(StringBuilder sql, List<Object> params, String rollupTable,
+                                           LocalDateTime startTime, LocalDateTime rollupStart,
+                                           LocalDateTime rollupEnd, LocalDateTime endTime, boolean endInclusive,
+                                           List<String> robotIds, List<String> sensorTypes) {
+        sql.append("(SELECT bucket_time, robot_id, data_count");
+        for (String metric : SensorAggregate.METRICS) {
+            for (String suffix : Arrays.asList("_count", "_sum", "_sum_sq", "_min", "_max")) {
+                sql.append(", ").append(metric).append(suffix);
+            }
+        }
+        sql.append(" FROM ").append(rollupTable).append(" WHERE bucket_time >= ? AND bucket_time < ?");
+        params.add(Timestamp.valueOf(rollupStart));
+        params.add(Timestamp.valueOf(rollupEnd));
+        appendFilters(sql, params, robotIds, sensorTypes);
+
+        sql.append(" UNION ALL SELECT timestamp, robot_id, 1");
+        for (String metric : SensorAggregate.METRICS) {
+            sql.append(", IF(").append(metric).append(" IS NULL, 0, 1), ").append(metric)
+                    .append(", ").append(metric).append(" * ").append(metric)
+                    .append(", ").append(metric).append(", ").append(metric);
+        }
+        sql.append(" FROM realtime_sensor_data WHERE ((timestamp >= ? AND timestamp < ?) OR (timestamp >= ? AND timestamp ")
+                .append(endInclusive ? "<=" : "<").append(" ?))");
+        params.add(Timestamp.valueOf(startTime));
+        params.add(Timestamp.valueOf(rollupStart));
+        params.add(Timestamp.valueOf(rollupEnd));
+        params.add(Timestamp.valueOf(endTime));
+        appendFilters(sql, params, robotIds, sensorTypes);
+        sql.append(") s");
+    }
+
+    private static void appendFilters(StringBuilder sql, List<Object> params, List<String> robotIds,
+                                      List<String> sensorTypes) {
+        if (robotIds != null && !robotIds.isEmpty()) {
+            sql.append(" AND robot_id IN (");
+            for (int i = 0; i < robotIds.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                params.add(robotIds.get(i));
+            }
+            sql.append(")");
+        }
+        if (sensorTypes != null && !sensorTypes.isEmpty()) {
+            sql.append(" AND sensor_type IN (");
+            for (int i = 0; i < sensorTypes.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+                params.add(sensorTypes.get(i));
+            }
+            sql.append(")");
+        }
+    }
+
+    /**
+     * 未开启汇总表时直接按明细数据分组聚合
+     */
+    private List<Map<String, Object>> queryAggregatedRawSensorData(LocalDateTime startTime,
+                                                                   LocalDateTime endTime,
+                                                                   String timeFormat,
+                                                                   List<String> robotIds) {
         StringBuilder sql = new StringBuilder();
         sql.append("SELECT DATE_FORMAT(timestamp, ?) as time_bucket, ");
         sql.append("robot_id, ");
@@ -244,6 +795,145 @@ public class MySQLMapper {
         return mysqlJdbcTemplate.queryForList(sql.toString(), params.toArray());
     }
 
+    /**
+     * 按机器人和时间桶查询实时表中各指标的部分聚合（非空值的条数、和、平方和、最小值、最大值），
+     * 时间范围包含开始时间，不包含结束时间，相邻的时间范围可以直接合并。
+     * 完整覆盖的小时（不按分钟分桶时）或分钟读取汇总表，首尾不足一个汇总时间桶的部分读取明细数据
+     */
+    public List<Map<String, Object>> queryRealtimePartials(LocalDateTime startTime,
+                                                           LocalDateTime endTime,
+                                                           List<String> robotIds,
+                                                           List<String> sensorTypes,
+                                                           TimeBucket bucket) {
+        String bucketFormat;
+        switch (bucket) {
+            case MINUTE:
+                bucketFormat = "%Y-%m-%d %H:%i:00";
+                break;
+            case HOUR:
+                bucketFormat = "%Y-%m-%d %H:00:00";
+                break;
+            case DAY:
+                bucketFormat = "%Y-%m-%d 00:00:00";
+                break;
+            default:
+                bucketFormat = null;
+        }
+
+        ChronoUnit rollupUnit = rollupUnit(startTime, endTime, bucket);
+        String rollupTable = rollupUnit == null ? null
+                : rollupUnit == ChronoUnit.HOURS ? ROLLUP_HOUR_TABLE : ROLLUP_MINUTE_TABLE;
+        String timeColumn = rollupTable != null ? "s.bucket_time" : "s.timestamp";
+
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT s.robot_id AS robot_id, MAX(r.robot_name) AS robot_name, MAX(r.robot_type) AS robot_type, ");
+        if (bucketFormat != null) {
+            sql.append("DATE_FORMAT(").append(timeColumn).append(", ?) AS time_bucket, ");
+            params.add(bucketFormat);
+        }
+        for (String metric : SensorAggregate.METRICS) {
+            if (rollupTable != null) {
+                sql.append("SUM(s.").append(metric).append("_count) AS ").append(metric).append("_count, ");
+                sql.append("SUM(s.").append(metric).append("_sum) AS ").append(metric).append("_sum, ");
+                sql.append("SUM(s.").append(metric).append("_sum_sq) AS ").append(metric).append("_sum_sq, ");
+                sql.append("MIN(s.").append(metric).append("_min) AS ").append(metric).append("_min, ");
+                sql.append("MAX(s.").append(metric).append("_max) AS ").append(metric).append("_max, ");
+            } else {
+                sql.append("COUNT(s.").append(metric).append(") AS ").append(metric).append("_count, ");
+                sql.append("SUM(s.").append(metric).append(") AS ").append(metric).append("_sum, ");
+                sql.append("SUM(s.").append(metric).append(" * s.").append(metric).append(") AS ")
+                        .append(metric).append("_sum_sq, ");
+                sql.append("MIN(s.").append(metric).append(") AS ").append(metric).append("_min, ");
+                sql.append("MAX(s.").append(metric).append(") AS ").append(metric).append("_max, ");
+            }
+        }
+        sql.append(rollupTable != null ? "SUM(s.data_count) AS data_count " : "COUNT(*) AS data_count ");
+        if (rollupTable != null) {
+            sql.append("FROM ");
+            appendRollupSource(sql, params, rollupTable, startTime, ceil(startTime, rollupUnit),
+                    endTime.truncatedTo(rollupUnit), endTime, false, robotIds, sensorTypes);
+            sql.append(" LEFT JOIN dim_robot r ON s.robot_id = r.robot_id");
+        } else {
+            sql.append("FROM realtime_sensor_data s LEFT JOIN dim_robot r ON s.robot_id = r.robot_id ");
+            sql.append("WHERE s.timestamp >= ? AND s.timestamp < ?");
+            params.add(Timestamp.valueOf(startTime));
+            params.add(Timestamp.valueOf(endTime));
+
+            if (robotIds != null && !robotIds.isEmpty()) {
+                sql.append(" AND s.robot_id IN (");
+                for (int i = 0; i < robotIds.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                    params.add(robotIds.get(i));
+                }
+                sql.append(")");
+            }
+
+            if (sensorTypes != null && !sensorTypes.isEmpty()) {
+                sql.append(" AND s.sensor_type IN (");
+                for (int i = 0; i < sensorTypes.size(); i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                    params.add(sensorTypes.get(i));
+                }
+                sql.append(")");
+            }
+        }
+
+        sql.append(bucketFormat != null ? " GROUP BY s.robot_id, time_bucket" : " GROUP BY s.robot_id");
+
+        return mysqlJdbcTemplate.queryForList(sql.toString(), params.toArray());
+    }
+
+    /**
+     * 查询[startTime, endTime)时读取的汇总表粒度：不按分钟分桶且包含完整的小时时为小时，
+     * 否则包含完整的分钟时为分钟，都不包含时返回null，只扫描明细数据
+     */
+    public ChronoUnit rollupUnit(LocalDateTime startTime, LocalDateTime endTime, TimeBucket bucket) {
+        if (!rollupEnabled) {
+            return null;
+        }
+        if (bucket != TimeBucket.MINUTE && ceil(startTime, ChronoUnit.HOURS).isBefore(endTime.truncatedTo(ChronoUnit.HOURS))) {
+            return ChronoUnit.HOURS;
+        }
+        if (ceil(startTime, ChronoUnit.MINUTES).isBefore(endTime.truncatedTo(ChronoUnit.MINUTES))) {
+            return ChronoUnit.MINUTES;
+        }
+        return null;
+    }
+
+    private static boolean isAligned(LocalDateTime time, ChronoUnit unit) {
+        return time.equals(time.truncatedTo(unit));
+    }
+
+    /**
+     * 不早于time的第一个时间桶开始时间
+     */
+    private static LocalDateTime ceil(LocalDateTime time, ChronoUnit unit) {
+        LocalDateTime truncated = time.truncatedTo(unit);
+        return truncated.equals(time) ? time : truncated.plus(1, unit);
+    }
+
+    /**
+     * 查询实时表的统计信息：行数取自information_schema中的估计值，不扫描表；
+     * 最早数据时间通过时间索引读取
+     */
+    public RealtimeTableStats queryRealtimeTableStats() {
+        Long rows = mysqlJdbcTemplate.queryForObject("SELECT TABLE_ROWS FROM information_schema.TABLES " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'realtime_sensor_data'", Long.class);
+        Timestamp oldest = mysqlJdbcTemplate.queryForObject(
+                "SELECT MIN(timestamp) FROM realtime_sensor_data", Timestamp.class);
+        return new RealtimeTableStats(rows != null ? rows : 0, oldest != null ? oldest.toLocalDateTime() : null);
+    }
+
+    /**
+     * 查询启用的传感器数据校验规则
+     */
+    public List<Map<String, Object>> queryValidationRules() {
+        String sql = "SELECT rule_id, conditions FROM alert_rule WHERE rule_type = 'VALIDATION' AND enable_flag = 1 " +
+                "ORDER BY rule_id";
+        return mysqlJdbcTemplate.queryForList(sql);
+    }
+
     /**
      * 删除过期数据
      */
@@ -252,6 +942,94 @@ public class MySQLMapper {
         return mysqlJdbcTemplate.update(sql, Timestamp.valueOf(endTime));
     }
 
+    /**
+     * 分区的消费位置：下一条待消费消息的位移，以及封包消息中下一条待写入读数的序号；
+     * 所有权版本在每次认领分区时加一，写入位置时用于拒绝已失去分区的持有者
+     */
+    public static class StreamOffset {
+        private final String topic;
+        private final int partition;
+        private final long nextOffset;
+        private final int nextIndex;
+        private final long ownerEpoch;
+
+        public StreamOffset(String topic, int partition, long nextOffset, int nextIndex) {
+            this(topic, partition, nextOffset, nextIndex, 0);
+        }
+
+        public StreamOffset(String topic, int partition, long nextOffset, int nextIndex, long ownerEpoch) {
+            this.topic = topic;
+            this.partition = partition;
+            this.nextOffset = nextOffset;
+            this.nextIndex = nextIndex;
+            this.ownerEpoch = ownerEpoch;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public long getNextOffset() {
+            return nextOffset;
+        }
+
+        public int getNextIndex() {
+            return nextIndex;
+        }
+
+        public long getOwnerEpoch() {
+            return ownerEpoch;
+        }
+
+        @Override
+        public String toString() {
+            return topic + "-" + partition + "@" + nextOffset + (nextIndex > 0 ? "#" + nextIndex : "");
+        }
+    }
+
+    /**
+     * 分区已被重新认领，写入方已不是分区的持有者
+     */
+    public static class StreamFencedException extends NonTransientDataAccessException {
+
+        private static final long serialVersionUID = 1L;
+
+        public StreamFencedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * 实时表的统计信息
+     */
+    public static class RealtimeTableStats {
+        private final long rows;
+        private final LocalDateTime oldest;
+
+        public RealtimeTableStats(long rows, LocalDateTime oldest) {
+            this.rows = rows;
+            this.oldest = oldest;
+        }
+
+        /**
+         * 估计的行数
+         */
+        public long getRows() {
+            return rows;
+        }
+
+        /**
+         * 最早一条数据的时间，表为空时为null
+         */
+        public LocalDateTime getOldest() {
+            return oldest;
+        }
+    }
+
     /**
      * Robot实体类RowMapper
      */
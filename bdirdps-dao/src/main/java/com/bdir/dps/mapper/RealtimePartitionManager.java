@@ -0,0 +1,238 @@
+package com.bdir.dps.mapper;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实时传感器数据表的RANGE分区管理
+ * 实时表按TO_DAYS(时间)分区，每天一个分区，命名为p加日期（如p20240101），最后是VALUES LESS THAN MAXVALUE的p_future。
+ * 提前若干天拆分p_future创建未来的日分区，保证新数据写入的总是空的p_future之前的日分区，拆分时不需要移动数据；
+ * 过期数据按整个分区删除，只修改元数据，不逐行删除，不会长时间锁表或产生大量undo日志；
+ * 分钟和小时汇总表随之删除同一时间之前的汇总行，汇总表不会保留明细已删除的时间范围
+ */
+@Slf4j
+@Repository
+public class RealtimePartitionManager {
+
+    static final String TABLE = "realtime_sensor_data";
+    static final String FUTURE_PARTITION = "p_future";
+
+    /**
+     * TO_DAYS('1970-01-01')
+     */
+    private static final long TO_DAYS_EPOCH = 719528;
+
+    /**
+     * 删除过期汇总行时每条DELETE语句删除的行数，避免长时间持有行锁
+     */
+    static final int ROLLUP_DELETE_CHUNK = 10000;
+
+    private static final DateTimeFormatter PARTITION_NAME_FORMATTER = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+
+    private final JdbcTemplate mysqlJdbcTemplate;
+    private final int daysAhead;
+
+    @Autowired
+    public RealtimePartitionManager(JdbcTemplate mysqlJdbcTemplate,
+                                    @Value("${mysql.partition.days-ahead:7}") int daysAhead) {
+        this.mysqlJdbcTemplate = mysqlJdbcTemplate;
+        this.daysAhead = daysAhead;
+    }
+
+    /**
+     * 查询实时表的分区，按分区顺序排列；表未分区时返回空列表
+     */
+    public List<RangePartition> queryPartitions() {
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION, TABLE_ROWS FROM information_schema.PARTITIONS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                "ORDER BY PARTITION_ORDINAL_POSITION";
+        return mysqlJdbcTemplate.query(sql, (rs, rowNum) -> {
+            String description = rs.getString("PARTITION_DESCRIPTION");
+            return new RangePartition(rs.getString("PARTITION_NAME"),
+                    "MAXVALUE".equalsIgnoreCase(description) ? null : Long.valueOf(description.trim()),
+                    rs.getLong("TABLE_ROWS"));
+        }, TABLE);
+    }
+
+    /**
+     * 拆分p_future，创建到today之后daysAhead天为止的日分区
+     *
+     * @return 新创建的分区名称
+     */
+    public List<String> createFuturePartitions(LocalDate today) {
+        List<RangePartition> partitions = queryPartitions();
+        RangePartition future = null;
+        Long maxBound = null;
+        for (RangePartition partition : partitions) {
+            if (partition.getUpperBound() == null) {
+                future = partition;
+            } else if (maxBound == null || partition.getUpperBound() > maxBound) {
+                maxBound = partition.getUpperBound();
+            }
+        }
+        if (future == null || !FUTURE_PARTITION.equals(future.getName())) {
+            throw new IllegalStateException("实时表没有" + FUTURE_PARTITION + "分区，无法创建日分区");
+        }
+
+        // 已有分区覆盖到maxBound之前的一天，从下一天开始创建
+        LocalDate from = maxBound != null ? fromDays(maxBound) : today;
+        LocalDate to = today.plusDays(daysAhead);
+        List<String> created = new ArrayList<>();
+        if (from.isAfter(to)) {
+            return created;
+        }
+        if (future.getRows() > 0) {
+            // p_future中已有数据时拆分需要移动这些数据，通常是维护任务中断了几天
+            log.warn("{}中约有 {} 行数据，拆分分区时需要移动这些数据", FUTURE_PARTITION, future.getRows());
+        }
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("ALTER TABLE ").append(TABLE).append(" REORGANIZE PARTITION ").append(FUTURE_PARTITION)
+                .append(" INTO (");
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            String name = partitionName(day);
+            sql.append("PARTITION ").append(name).append(" VALUES LESS THAN (").append(toDays(day.plusDays(1)))
+                    .append("), ");
+            created.add(name);
+        }
+        sql.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN MAXVALUE)");
+        mysqlJdbcTemplate.execute(sql.toString());
+        log.info("实时表新建日分区 {} 个: {} ~ {}", created.size(), created.get(0), created.get(created.size() - 1));
+        return created;
+    }
+
+    /**
+     * 删除数据全部早于cutoff的分区，即上界不超过cutoff当天的分区；部分数据未过期的分区保留到整天过期。
+     * 汇总表删除最后一个被删除分区的上界之前的汇总行
+     *
+     * @return 删除的分区名称
+     */
+    public List<String> dropPartitionsBefore(LocalDate cutoff) {
+        long cutoffDays = toDays(cutoff);
+        List<String> expired = new ArrayList<>();
+        long rows = 0;
+        long droppedBound = 0;
+        for (RangePartition partition : queryPartitions()) {
+            if (partition.getUpperBound() != null && partition.getUpperBound() <= cutoffDays) {
+                expired.add(partition.getName());
+                rows += partition.getRows();
+                droppedBound = Math.max(droppedBound, partition.getUpperBound());
+            }
+        }
+        if (expired.isEmpty()) {
+            return expired;
+        }
+
+        mysqlJdbcTemplate.execute("ALTER TABLE " + TABLE + " DROP PARTITION " + String.join(", ", expired));
+        log.info("实时表删除 {} 之前的分区 {} 个，约 {} 行: {}", cutoff, expired.size(), rows, expired);
+        deleteRollupsBefore(fromDays(droppedBound).atStartOfDay());
+        return expired;
+    }
+
+    /**
+     * 分块删除分钟和小时汇总表中时间桶整体早于cutoff的汇总行；实时表未分区、逐行删除明细数据时也需调用
+     *
+     * @return 删除的汇总行数
+     */
+    public int deleteRollupsBefore(LocalDateTime cutoff) {
+        int deleted = 0;
+        for (String table : Arrays.asList(MySQLMapper.ROLLUP_MINUTE_TABLE, MySQLMapper.ROLLUP_HOUR_TABLE)) {
+            ChronoUnit unit = MySQLMapper.ROLLUP_MINUTE_TABLE.equals(table) ? ChronoUnit.MINUTES : ChronoUnit.HOURS;
+            Timestamp before = Timestamp.valueOf(cutoff.truncatedTo(unit));
+            String sql = "DELETE FROM " + table + " WHERE bucket_time < ? ORDER BY bucket_time LIMIT "
+                    + ROLLUP_DELETE_CHUNK;
+            int chunk;
+            do {
+                chunk = mysqlJdbcTemplate.update(sql, before);
+                deleted += chunk;
+            } while (chunk >= ROLLUP_DELETE_CHUNK);
+        }
+        if (deleted > 0) {
+            log.info("汇总表删除 {} 之前的汇总行 {} 行", cutoff, deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * 获取分区统计信息
+     */
+    public Map<String, Object> getPartitionStats() {
+        List<RangePartition> partitions = queryPartitions();
+        List<Map<String, Object>> details = new ArrayList<>(partitions.size());
+        for (RangePartition partition : partitions) {
+            Map<String, Object> detail = new HashMap<>();
+            detail.put("name", partition.getName());
+            detail.put("lessThan", partition.getUpperBound() != null
+                    ? fromDays(partition.getUpperBound()).toString() : "MAXVALUE");
+            detail.put("rows", partition.getRows());
+            details.add(detail);
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("partitionCount", partitions.size());
+        stats.put("daysAhead", daysAhead);
+        stats.put("partitions", details);
+        return stats;
+    }
+
+    static String partitionName(LocalDate day) {
+        return day.format(PARTITION_NAME_FORMATTER);
+    }
+
+    /**
+     * 与MySQL的TO_DAYS(date)一致
+     */
+    static long toDays(LocalDate date) {
+        return date.toEpochDay() + TO_DAYS_EPOCH;
+    }
+
+    static LocalDate fromDays(long days) {
+        return LocalDate.ofEpochDay(days - TO_DAYS_EPOCH);
+    }
+
+    /**
+     * RANGE分区：名称、上界（TO_DAYS值，不包含；MAXVALUE时为null）和估计行数
+     */
+    public static class RangePartition {
+        private final String name;
+        private final Long upperBound;
+        private final long rows;
+
+        public RangePartition(String name, Long upperBound, long rows) {
+            this.name = name;
+            this.upperBound = upperBound;
+            this.rows = rows;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Long getUpperBound() {
+            return upperBound;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        @Override
+        public String toString() {
+            return "RangePartition{name=" + name + ", upperBound=" + upperBound + ", rows=" + rows + "}";
+        }
+    }
+}
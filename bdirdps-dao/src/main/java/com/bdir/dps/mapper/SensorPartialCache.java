@@ -0,0 +1,226 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按小时缓存的传感器数据部分聚合
+ * 统计类接口把查询范围拆成完整的小时和首尾不足一小时的部分：已结束超过app.query.partial-cache.settle-minutes的小时
+ * 视为不再变化，按查询条件和小时缓存其部分聚合；缺失的连续小时合并为一次按小时分桶的查询，首尾部分直接查询。
+ * 相同或重叠范围的统计请求只需查询未缓存的小时，再在应用端合并。
+ * 只有路由完整覆盖查询范围的结果才会缓存；缓存条目在app.query.partial-cache.ttl-minutes后过期，
+ * 迟到的数据最多在一个过期周期后体现在统计结果中
+ */
+@Repository
+public class SensorPartialCache {
+
+    private final SensorQueryRouter router;
+    private final int maxEntries;
+    private final Duration settle;
+    private final Duration ttl;
+
+    private final Map<CacheKey, CacheEntry> cache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder incomplete = new LongAdder();
+
+    @Autowired
+    public SensorPartialCache(SensorQueryRouter router,
+                              @Value("${app.query.partial-cache.max-entries:20000}") int maxEntries,
+                              @Value("${app.query.partial-cache.settle-minutes:10}") long settleMinutes,
+                              @Value("${app.query.partial-cache.ttl-minutes:60}") long ttlMinutes) {
+        this.router = router;
+        this.maxEntries = maxEntries;
+        this.settle = Duration.ofMinutes(settleMinutes);
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.cache = new LinkedHashMap<CacheKey, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheEntry> eldest) {
+                return size() > SensorPartialCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * 查询时间范围内按机器人和小时的部分聚合；首尾不足一小时的部分按其所在的小时分桶，
+     * 只包含查询范围内的数据
+     */
+    public List<SensorAggregate> hourly(LocalDateTime start, LocalDateTime end, List<String> robotIds,
+                                        List<String> sensorTypes) {
+        LocalDateTime firstHour = start.truncatedTo(ChronoUnit.HOURS);
+        if (firstHour.isBefore(start)) {
+            firstHour = firstHour.plusHours(1);
+        }
+        LocalDateTime lastHour = end.truncatedTo(ChronoUnit.HOURS);
+        if (!firstHour.isBefore(lastHour)) {
+            return query(start, end, robotIds, sensorTypes);
+        }
+
+        List<SensorAggregate> result = new ArrayList<>();
+        if (start.isBefore(firstHour)) {
+            result.addAll(query(start, firstHour, robotIds, sensorTypes));
+        }
+
+        String filter = filterKey(robotIds, sensorTypes);
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime settledBefore = now.minus(settle);
+        LocalDateTime missingFrom = null;
+        for (LocalDateTime hour = firstHour; hour.isBefore(lastHour); hour = hour.plusHours(1)) {
+            boolean settled = !hour.plusHours(1).isAfter(settledBefore);
+            List<SensorAggregate> cached = null;
+            if (settled) {
+                CacheKey key = new CacheKey(filter, hour);
+                synchronized (cache) {
+                    CacheEntry entry = cache.get(key);
+                    if (entry != null && entry.expiresAt.isAfter(now)) {
+                        cached = entry.partials;
+                    } else if (entry != null) {
+                        cache.remove(key);
+                    }
+                }
+            }
+            if (cached != null) {
+                hits.increment();
+                if (missingFrom != null) {
+                    result.addAll(load(missingFrom, hour, robotIds, sensorTypes, filter, now));
+                    missingFrom = null;
+                }
+                result.addAll(cached);
+            } else {
+                misses.increment();
+                if (missingFrom == null) {
+                    missingFrom = hour;
+                }
+            }
+        }
+        if (missingFrom != null) {
+            result.addAll(load(missingFrom, lastHour, robotIds, sensorTypes, filter, now));
+        }
+
+        if (lastHour.isBefore(end)) {
+            result.addAll(query(lastHour, end, robotIds, sensorTypes));
+        }
+        return result;
+    }
+
+    /**
+     * 查询连续的若干小时，路由完整覆盖时缓存其中已经不再变化的小时；没有数据的小时缓存为空列表
+     */
+    private List<SensorAggregate> load(LocalDateTime from, LocalDateTime to, List<String> robotIds,
+                                       List<String> sensorTypes, String filter, LocalDateTime now) {
+        queries.increment();
+        SensorQueryRouter.PartialResult loaded = router.queryPartialResult(from, to, robotIds, sensorTypes,
+                TimeBucket.HOUR);
+        List<SensorAggregate> partials = loaded.getPartials();
+        if (!loaded.isComplete()) {
+            incomplete.increment();
+            return partials;
+        }
+        LocalDateTime settledBefore = now.minus(settle);
+        LocalDateTime expiresAt = now.plus(ttl);
+        Map<LocalDateTime, List<SensorAggregate>> byHour = new HashMap<>();
+        for (SensorAggregate partial : partials) {
+            byHour.computeIfAbsent(partial.getBucket(), k -> new ArrayList<>()).add(partial);
+        }
+        synchronized (cache) {
+            for (LocalDateTime hour = from; hour.isBefore(to); hour = hour.plusHours(1)) {
+                if (!hour.plusHours(1).isAfter(settledBefore)) {
+                    cache.put(new CacheKey(filter, hour), new CacheEntry(
+                            Collections.unmodifiableList(byHour.getOrDefault(hour, Collections.emptyList())),
+                            expiresAt));
+                }
+            }
+        }
+        return partials;
+    }
+
+    private List<SensorAggregate> query(LocalDateTime from, LocalDateTime to, List<String> robotIds,
+                                        List<String> sensorTypes) {
+        queries.increment();
+        return router.queryPartials(from, to, robotIds, sensorTypes, TimeBucket.HOUR);
+    }
+
+    /**
+     * 查询条件的缓存键，与ID的顺序和重复无关
+     */
+    private static String filterKey(List<String> robotIds, List<String> sensorTypes) {
+        return (robotIds == null ? "*" : String.join(",", new TreeSet<>(robotIds)))
+                + "|" + (sensorTypes == null ? "*" : String.join(",", new TreeSet<>(sensorTypes)));
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (cache) {
+            stats.put("entries", cache.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMinutes", ttl.toMinutes());
+        stats.put("incompleteLoads", incomplete.sum());
+        stats.put("hourHits", hits.sum());
+        stats.put("hourMisses", misses.sum());
+        stats.put("queries", queries.sum());
+        return stats;
+    }
+
+    private static class CacheEntry {
+        private final List<SensorAggregate> partials;
+        private final LocalDateTime expiresAt;
+
+        CacheEntry(List<SensorAggregate> partials, LocalDateTime expiresAt) {
+            this.partials = partials;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class CacheKey {
+        private final String filter;
+        private final LocalDateTime hour;
+
+        CacheKey(String filter, LocalDateTime hour) {
+            this.filter = filter;
+            this.hour = hour;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey that = (CacheKey) o;
+            return filter.equals(that.filter) && hour.equals(that.hour);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * filter.hashCode() + hour.hashCode();
+        }
+    }
+}
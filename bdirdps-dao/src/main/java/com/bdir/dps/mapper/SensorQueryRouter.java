@@ -0,0 +1,496 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 传感器数据查询路由
+ * 按查询的时间范围和各数据源的统计信息估计每条路由的代价，在能完整覆盖时间范围的路由中选择代价最低的：
+ * MySQL实时表只保留最近的数据，Hive事实表按小时分区且数据落地有延迟，Hive物化视图按小时聚合、只能查询整点对齐的范围；
+ * 时间范围跨过Hive落地水位时，可由FederatedSensorQueryExecutor在水位处切分后并行查询两边再合并。
+ * 每条路由都返回按机器人和时间桶的部分聚合SensorAggregate，时间范围包含开始时间，不包含结束时间。
+ * 统计信息按app.query.router.stats-refresh-ms缓存；代价估计按每次查询的实际耗时持续校准，
+ * 路由选择次数、估计耗时和实际耗时都注册到MeterRegistry
+ */
+@Slf4j
+@Repository
+public class SensorQueryRouter {
+
+    /**
+     * 查询路由
+     */
+    public enum Route {
+        MYSQL_REALTIME, HIVE_MV, HIVE_FACT, FEDERATED
+    }
+
+    static final String FACT_TABLE = "sensor_fact_orc";
+
+    private static final Pattern PARTITION_PATTERN = Pattern.compile("dt=(\\d{4}-\\d{2}-\\d{2})/hr=(\\d{1,2})");
+
+    /**
+     * 代价模型的初始参数，实际耗时与估计的偏差由校准系数修正
+     */
+    static final double MYSQL_BASE_MS = 5;
+    static final double MYSQL_ROWS_PER_MS = 5000;
+    /**
+     * 汇总表每个时间桶的估计行数，即同时上报的机器人和传感器类型组合数
+     */
+    static final double MYSQL_ROLLUP_ROWS_PER_BUCKET = 50;
+    static final double HIVE_FACT_BASE_MS = 3000;
+    static final double HIVE_FACT_PARTITION_MS = 200;
+    static final double HIVE_MV_BASE_MS = 1000;
+    static final double HIVE_MV_HOUR_MS = 2;
+
+    /**
+     * 校准系数的平滑因子和取值范围
+     */
+    private static final double CALIBRATION_ALPHA = 0.2;
+    private static final double MIN_CALIBRATION = 0.1;
+    private static final double MAX_CALIBRATION = 10;
+
+    private final MySQLMapper mysqlMapper;
+    private final HiveQueryRouterMapper hiveMapper;
+    private final FederatedSensorQueryExecutor federatedExecutor;
+    private final long statsRefreshMs;
+
+    private static final Comparator<SensorAggregate> PARTIAL_ORDER = Comparator
+            .comparing(SensorAggregate::getRobotId, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(SensorAggregate::getBucket, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Map<Route, Counter> selected = new EnumMap<>(Route.class);
+    private final Map<Route, Timer> actualLatency = new EnumMap<>(Route.class);
+    private final Map<Route, Timer> estimatedLatency = new EnumMap<>(Route.class);
+    private final Map<Route, double[]> calibration = new EnumMap<>(Route.class);
+
+    private volatile SourceStats sourceStats;
+
+    @Autowired
+    public SensorQueryRouter(MySQLMapper mysqlMapper,
+                             HiveQueryRouterMapper hiveMapper,
+                             FederatedSensorQueryExecutor federatedExecutor,
+                             ObjectProvider<MeterRegistry> meterRegistry,
+                             @Value("${app.query.router.stats-refresh-ms:60000}") long statsRefreshMs) {
+        this(mysqlMapper, hiveMapper, federatedExecutor, meterRegistry.getIfAvailable(() -> Metrics.globalRegistry),
+                statsRefreshMs);
+    }
+
+    SensorQueryRouter(MySQLMapper mysqlMapper, HiveQueryRouterMapper hiveMapper,
+                      FederatedSensorQueryExecutor federatedExecutor, MeterRegistry meterRegistry,
+                      long statsRefreshMs) {
+        this.mysqlMapper = mysqlMapper;
+        this.hiveMapper = hiveMapper;
+        this.federatedExecutor = federatedExecutor;
+        this.statsRefreshMs = statsRefreshMs;
+
+        for (Route route : Route.values()) {
+            double[] factor = {1.0};
+            calibration.put(route, factor);
+            selected.put(route, Counter.builder("query_route_selected_total")
+                    .description("Sensor data queries served by each route")
+                    .tag("route", route.name())
+                    .register(meterRegistry));
+            actualLatency.put(route, Timer.builder("query_route_latency")
+                    .description("Actual latency of sensor data queries per route")
+                    .tag("route", route.name())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+            estimatedLatency.put(route, Timer.builder("query_route_estimated_latency")
+                    .description("Calibrated cost estimate of the selected route")
+                    .tag("route", route.name())
+                    .register(meterRegistry));
+            Gauge.builder("query_route_calibration", factor, f -> f[0])
+                    .description("Ratio of actual to estimated latency used to correct the cost model")
+                    .tag("route", route.name())
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * 查询时间范围内按机器人聚合的传感器数据，参数和结果格式与HiveQueryRouterMapper.routeQuery一致
+     */
+    public List<Map<String, Object>> query(String startTime, String endTime, List<String> robotIds,
+                                           List<String> sensorTypes, List<String> metrics) {
+        HiveQueryRouterMapper.SqlProvider.validate(startTime, endTime, robotIds, sensorTypes, metrics);
+        List<SensorAggregate> partials = queryPartials(HiveQueryRouterMapper.SqlProvider.parseTime(startTime),
+                HiveQueryRouterMapper.SqlProvider.parseTime(endTime), robotIds, sensorTypes, TimeBucket.NONE);
+        List<Map<String, Object>> rows = new ArrayList<>(partials.size());
+        for (SensorAggregate partial : partials) {
+            rows.add(partial.toRow());
+        }
+        return rows;
+    }
+
+    /**
+     * 查询时间范围内按机器人和时间桶的部分聚合，结果按机器人ID和时间桶排序
+     */
+    public List<SensorAggregate> queryPartials(LocalDateTime start, LocalDateTime end, List<String> robotIds,
+                                               List<String> sensorTypes, TimeBucket bucket) {
+        return queryPartialResult(start, end, robotIds, sensorTypes, bucket).getPartials();
+    }
+
+    /**
+     * 查询时间范围内的部分聚合，并返回所选路由是否完整覆盖查询范围
+     */
+    PartialResult queryPartialResult(LocalDateTime start, LocalDateTime end, List<String> robotIds,
+                                     List<String> sensorTypes, TimeBucket bucket) {
+        String startTime = start.format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+        String endTime = end.format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+        HiveQueryRouterMapper.SqlProvider.validate(startTime, endTime, robotIds, sensorTypes, null);
+
+        RouteDecision decision = chooseRoute(start, end, bucket);
+        log.debug("查询路由: {} ~ {}, 路由={}, 估计耗时={}ms, 完整覆盖={}",
+                startTime, endTime, decision.getRoute(), (long) decision.getEstimatedMs(), decision.isComplete());
+
+        long begin = System.nanoTime();
+        List<SensorAggregate> partials;
+        if (decision.getRoute() == Route.FEDERATED) {
+            partials = federatedExecutor.query(start, end, decision.getSplitAt(), robotIds, sensorTypes, bucket);
+        } else {
+            List<Map<String, Object>> rows = decision.getRoute() == Route.MYSQL_REALTIME
+                    ? mysqlMapper.queryRealtimePartials(start, end, robotIds, sensorTypes, bucket)
+                    : hiveMapper.queryPartials(decision.getRoute().name(), startTime, endTime, robotIds, sensorTypes,
+                            bucket.name());
+            partials = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                partials.add(SensorAggregate.fromRow(row));
+            }
+        }
+        recordActual(decision, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin));
+        partials.sort(PARTIAL_ORDER);
+        return new PartialResult(partials, decision.isComplete());
+    }
+
+    /**
+     * 选择路由：优先选择能完整覆盖时间范围的路由中估计代价最低的；
+     * 没有能完整覆盖的路由时选择覆盖时间最长的
+     */
+    RouteDecision chooseRoute(LocalDateTime start, LocalDateTime end, TimeBucket bucket) {
+        SourceStats stats = currentStats();
+        List<RouteDecision> candidates = new ArrayList<>(4);
+
+        LocalDateTime mysqlFrom = stats.mysqlOldest != null ? min(max(start, stats.mysqlOldest), end) : end;
+        candidates.add(new RouteDecision(Route.MYSQL_REALTIME,
+                calibrated(Route.MYSQL_REALTIME,
+                        mysqlCost(stats, mysqlFrom, end, mysqlMapper.rollupUnit(start, end, bucket))),
+                stats.mysqlOldest != null && !start.isBefore(stats.mysqlOldest),
+                Duration.between(mysqlFrom, end)));
+
+        LocalDateTime watermark = stats.hiveWatermark();
+        LocalDateTime hiveTo = watermark != null ? min(end, watermark) : end;
+        boolean hiveComplete = !end.isAfter(hiveTo);
+        Duration hiveCoverage = hiveTo.isAfter(start) ? Duration.between(start, hiveTo) : Duration.ZERO;
+        candidates.add(new RouteDecision(Route.HIVE_FACT,
+                calibrated(Route.HIVE_FACT, factCost(stats, start, end)), hiveComplete, hiveCoverage));
+
+        // 跨过落地水位且MySQL从水位起的数据完整时，两边并行查询，耗时取较慢的一边
+        if (watermark != null && watermark.isAfter(start) && watermark.isBefore(end)
+                && stats.mysqlOldest != null && !stats.mysqlOldest.isAfter(watermark)) {
+            double legs = Math.max(calibrated(Route.HIVE_FACT, factCost(stats, start, watermark)),
+                    calibrated(Route.MYSQL_REALTIME,
+                            mysqlCost(stats, watermark, end, mysqlMapper.rollupUnit(watermark, end, bucket))));
+            candidates.add(new RouteDecision(Route.FEDERATED, calibrated(Route.FEDERATED, legs), true,
+                    Duration.between(start, end), watermark));
+        }
+
+        if (bucket != TimeBucket.MINUTE && HiveQueryRouterMapper.SqlProvider.isHourAligned(start, end)) {
+            long hours = ChronoUnit.HOURS.between(start, end);
+            candidates.add(new RouteDecision(Route.HIVE_MV,
+                    calibrated(Route.HIVE_MV, HIVE_MV_BASE_MS + hours * HIVE_MV_HOUR_MS),
+                    hiveComplete, hiveCoverage));
+        }
+
+        RouteDecision best = null;
+        for (RouteDecision candidate : candidates) {
+            if (candidate.isComplete()
+                    && (best == null || candidate.getEstimatedMs() < best.getEstimatedMs())) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            for (RouteDecision candidate : candidates) {
+                if (best == null || candidate.coverage.compareTo(best.coverage) > 0) {
+                    best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 记录实际耗时并更新该路由的校准系数
+     */
+    void recordActual(RouteDecision decision, long actualMs) {
+        Route route = decision.getRoute();
+        selected.get(route).increment();
+        actualLatency.get(route).record(actualMs, TimeUnit.MILLISECONDS);
+        estimatedLatency.get(route).record((long) decision.getEstimatedMs(), TimeUnit.MILLISECONDS);
+
+        double[] factor = calibration.get(route);
+        double uncalibrated = decision.getEstimatedMs() / factor[0];
+        if (uncalibrated > 0) {
+            double ratio = Math.max(actualMs, 1) / uncalibrated;
+            synchronized (factor) {
+                factor[0] = Math.min(MAX_CALIBRATION, Math.max(MIN_CALIBRATION,
+                        factor[0] + CALIBRATION_ALPHA * (ratio - factor[0])));
+            }
+        }
+    }
+
+    /**
+     * MySQL的估计代价：读取汇总表时完整的时间桶按桶数估计行数，首尾不足一个时间桶的部分按明细数据估计，
+     * 不超过全部扫描明细数据的行数
+     *
+     * @param rollupUnit 可用的汇总表粒度，为null时扫描明细数据
+     */
+    private static double mysqlCost(SourceStats stats, LocalDateTime from, LocalDateTime to, ChronoUnit rollupUnit) {
+        double rows = stats.mysqlRowsPerMinute * Duration.between(from, to).toMillis() / 60_000.0;
+        if (rollupUnit != null) {
+            LocalDateTime rollupFrom = from.truncatedTo(rollupUnit);
+            if (rollupFrom.isBefore(from)) {
+                rollupFrom = rollupFrom.plus(1, rollupUnit);
+            }
+            LocalDateTime rollupTo = max(rollupFrom, to.truncatedTo(rollupUnit));
+            double edgeRows = stats.mysqlRowsPerMinute * (Duration.between(from, rollupFrom).toMillis()
+                    + Duration.between(rollupTo, to).toMillis()) / 60_000.0;
+            rows = Math.min(rows, edgeRows
+                    + Math.max(rollupUnit.between(rollupFrom, rollupTo), 1) * MYSQL_ROLLUP_ROWS_PER_BUCKET);
+        }
+        return MYSQL_BASE_MS + rows / MYSQL_ROWS_PER_MS;
+    }
+
+    private static double factCost(SourceStats stats, LocalDateTime from, LocalDateTime to) {
+        return HIVE_FACT_BASE_MS + stats.hivePartitionsBetween(from, to) * HIVE_FACT_PARTITION_MS;
+    }
+
+    private double calibrated(Route route, double estimatedMs) {
+        return estimatedMs * calibration.get(route)[0];
+    }
+
+    /**
+     * Hive事实表中已落地数据的截止时间，即最后一个小时分区的结束时间；统计信息不可用时为null
+     */
+    public LocalDateTime getHiveWatermark() {
+        return currentStats().hiveWatermark();
+    }
+
+    /**
+     * MySQL实时表中最早一条数据的时间；表为空或统计信息不可用时为null
+     */
+    public LocalDateTime getMysqlOldest() {
+        return currentStats().mysqlOldest;
+    }
+
+    /**
+     * 获取路由统计信息
+     */
+    public Map<String, Object> getStats() {
+        SourceStats stats = currentStats();
+        Map<String, Object> result = new HashMap<>();
+        Map<String, Object> routes = new HashMap<>();
+        for (Route route : Route.values()) {
+            Map<String, Object> routeStats = new HashMap<>();
+            routeStats.put("selected", (long) selected.get(route).count());
+            routeStats.put("meanLatencyMs", actualLatency.get(route).mean(TimeUnit.MILLISECONDS));
+            routeStats.put("meanEstimatedMs", estimatedLatency.get(route).mean(TimeUnit.MILLISECONDS));
+            routeStats.put("calibration", calibration.get(route)[0]);
+            routes.put(route.name(), routeStats);
+        }
+        result.put("routes", routes);
+        result.put("mysqlRows", stats.mysqlRows);
+        result.put("mysqlOldest", stats.mysqlOldest);
+        result.put("hivePartitions", stats.hivePartitions != null ? stats.hivePartitions.size() : null);
+        result.put("hiveWatermark", stats.hiveWatermark());
+        return result;
+    }
+
+    /**
+     * 统计信息过期时重新加载；单个数据源加载失败时沿用上次的统计信息
+     */
+    private SourceStats currentStats() {
+        SourceStats stats = sourceStats;
+        if (stats == null || System.currentTimeMillis() - stats.loadedAt >= statsRefreshMs) {
+            synchronized (this) {
+                stats = sourceStats;
+                if (stats == null || System.currentTimeMillis() - stats.loadedAt >= statsRefreshMs) {
+                    stats = loadStats(stats);
+                    sourceStats = stats;
+                }
+            }
+        }
+        return stats;
+    }
+
+    private SourceStats loadStats(SourceStats previous) {
+        SourceStats stats = new SourceStats();
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            MySQLMapper.RealtimeTableStats table = mysqlMapper.queryRealtimeTableStats();
+            stats.mysqlRows = table.getRows();
+            stats.mysqlOldest = table.getOldest();
+            if (table.getOldest() != null) {
+                long minutes = Math.max(Duration.between(table.getOldest(), now).toMinutes(), 1);
+                stats.mysqlRowsPerMinute = (double) table.getRows() / minutes;
+            }
+        } catch (Exception e) {
+            log.warn("加载MySQL实时表统计信息失败: {}", e.getMessage());
+            if (previous != null) {
+                stats.mysqlRows = previous.mysqlRows;
+                stats.mysqlOldest = previous.mysqlOldest;
+                stats.mysqlRowsPerMinute = previous.mysqlRowsPerMinute;
+            }
+        }
+
+        try {
+            NavigableSet<LocalDateTime> partitions = new TreeSet<>();
+            for (String partition : hiveMapper.getTablePartitions(FACT_TABLE)) {
+                Matcher matcher = PARTITION_PATTERN.matcher(partition);
+                if (matcher.find()) {
+                    partitions.add(LocalDate.parse(matcher.group(1)).atTime(Integer.parseInt(matcher.group(2)), 0));
+                }
+            }
+            stats.hivePartitions = partitions;
+        } catch (Exception e) {
+            log.warn("加载Hive分区信息失败: {}", e.getMessage());
+            if (previous != null) {
+                stats.hivePartitions = previous.hivePartitions;
+            }
+        }
+        return stats;
+    }
+
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static LocalDateTime min(LocalDateTime a, LocalDateTime b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    /**
+     * 数据源统计信息
+     */
+    private static class SourceStats {
+        private final long loadedAt = System.currentTimeMillis();
+        private long mysqlRows;
+        private LocalDateTime mysqlOldest;
+        private double mysqlRowsPerMinute;
+        /**
+         * Hive事实表的小时分区，未加载成功时为null
+         */
+        private NavigableSet<LocalDateTime> hivePartitions;
+
+        LocalDateTime hiveWatermark() {
+            if (hivePartitions == null) {
+                return null;
+            }
+            return hivePartitions.isEmpty() ? LocalDateTime.MIN : hivePartitions.last().plusHours(1);
+        }
+
+        int hivePartitionsBetween(LocalDateTime start, LocalDateTime end) {
+            if (hivePartitions == null) {
+                return (int) Math.max(ChronoUnit.HOURS.between(start, end), 1);
+            }
+            return hivePartitions.subSet(start.truncatedTo(ChronoUnit.HOURS), true, end, true).size();
+        }
+    }
+
+    /**
+     * 部分聚合查询结果
+     */
+    static class PartialResult {
+        private final List<SensorAggregate> partials;
+        private final boolean complete;
+
+        PartialResult(List<SensorAggregate> partials, boolean complete) {
+            this.partials = partials;
+            this.complete = complete;
+        }
+
+        List<SensorAggregate> getPartials() {
+            return partials;
+        }
+
+        /**
+         * 查询所用路由的数据是否完整覆盖查询的时间范围，不完整的结果不能缓存
+         */
+        boolean isComplete() {
+            return complete;
+        }
+    }
+
+    /**
+     * 路由选择结果
+     */
+    static class RouteDecision {
+        private final Route route;
+        private final double estimatedMs;
+        private final boolean complete;
+        private final Duration coverage;
+        private final LocalDateTime splitAt;
+
+        RouteDecision(Route route, double estimatedMs, boolean complete, Duration coverage) {
+            this(route, estimatedMs, complete, coverage, null);
+        }
+
+        RouteDecision(Route route, double estimatedMs, boolean complete, Duration coverage, LocalDateTime splitAt) {
+            this.route = route;
+            this.estimatedMs = estimatedMs;
+            this.complete = complete;
+            this.coverage = coverage;
+            this.splitAt = splitAt;
+        }
+
+        Route getRoute() {
+            return route;
+        }
+
+        double getEstimatedMs() {
+            return estimatedMs;
+        }
+
+        /**
+         * 联合查询的切分时间，其他路由为null
+         */
+        LocalDateTime getSplitAt() {
+            return splitAt;
+        }
+
+        /**
+         * 路由的数据是否完整覆盖查询的时间范围
+         */
+        boolean isComplete() {
+            return complete;
+        }
+
+        @Override
+        public String toString() {
+            return route + "(" + (long) estimatedMs + "ms" + (complete ? "" : ", partial") + ")";
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 联合查询执行器测试类
+ */
+@ExtendWith(MockitoExtension.class)
+class FederatedSensorQueryExecutorTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime SPLIT = LocalDateTime.of(2024, 1, 1, 20, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+    @Mock
+    private MySQLMapper mysqlMapper;
+
+    @Mock
+    private HiveQueryRouterMapper hiveMapper;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private FederatedSensorQueryExecutor executor;
+
+    @BeforeEach
+    void setUp() {
+        executor = new FederatedSensorQueryExecutor(mysqlMapper, hiveMapper, registry, 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    /**
+     * 测试按水位切分查询两边，并按条数加权合并平均值
+     */
+    @Test
+    void testSplitAndMerge() {
+        when(hiveMapper.queryPartials("HIVE_FACT", "2024-01-01 00:00:00", "2024-01-01 20:00:00", null, null, "NONE"))
+                .thenReturn(Arrays.asList(
+                        partial("R001", null, 100, 100, 2000.0, 42000.0, 10.0, 30.0),
+                        partial("R002", null, 10, 10, 500.0, 25000.0, 50.0, 50.0)));
+        when(mysqlMapper.queryRealtimePartials(SPLIT, END, null, null, TimeBucket.NONE))
+                .thenReturn(Collections.singletonList(
+                        partial("R001", "焊接机器人A号", 300, 250, 10000.0, 420000.0, 5.0, 60.0)));
+
+        List<SensorAggregate> partials = executor.query(START, END, SPLIT, null, null, TimeBucket.NONE);
+
+        assertEquals(2, partials.size());
+        Map<String, Object> r1 = partials.get(0).toRow();
+        assertEquals("R001", r1.get("robotId"));
+        assertEquals("焊接机器人A号", r1.get("robotName"));
+        assertEquals(400L, r1.get("dataCount"));
+        // (2000 + 10000) / (100 + 250)，不是两段平均值的平均
+        assertEquals(12000.0 / 350, (double) r1.get("avgTemperature"), 1e-9);
+        assertEquals(5.0, r1.get("minTemperature"));
+        assertEquals(60.0, r1.get("maxTemperature"));
+        assertNull(r1.get("avgHumidity"));
+        assertEquals(50.0, partials.get(1).toRow().get("avgTemperature"));
+        assertEquals(Math.sqrt(462000.0 / 350 - Math.pow(12000.0 / 350, 2)),
+                partials.get(0).getMetric("temperature").getStdDev(), 1e-9);
+    }
+
+    /**
+     * 测试两段并行执行，总耗时接近较慢的一段
+     */
+    @Test
+    void testLegsRunInParallel() {
+        when(hiveMapper.queryPartials(any(), any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(400);
+            return Collections.emptyList();
+        });
+        when(mysqlMapper.queryRealtimePartials(any(), any(), any(), any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(400);
+            return Collections.emptyList();
+        });
+
+        long begin = System.nanoTime();
+        executor.query(START, END, SPLIT, null, null, TimeBucket.NONE);
+        long elapsedMs = (System.nanoTime() - begin) / 1_000_000;
+
+        assertTrue(elapsedMs < 750, "elapsed " + elapsedMs + "ms");
+        assertEquals(1, registry.get("query_federated_leg_latency").tag("leg", "hive").timer().count());
+        assertEquals(1, registry.get("query_federated_leg_latency").tag("leg", "mysql").timer().count());
+    }
+
+    /**
+     * 测试一段失败时整个查询失败，不返回不完整的结果
+     */
+    @Test
+    void testLegFailure() {
+        when(hiveMapper.queryPartials(any(), any(), any(), any(), any(), any())).thenThrow(new IllegalStateException("hive down"));
+        when(mysqlMapper.queryRealtimePartials(any(), any(), any(), any(), any())).thenReturn(Collections.emptyList());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> executor.query(START, END, SPLIT, null, null, TimeBucket.NONE));
+        assertEquals("hive down", e.getMessage());
+        assertThrows(IllegalArgumentException.class, () -> executor.query(START, END, START, null, null, TimeBucket.NONE));
+    }
+
+    private static Map<String, Object> partial(String robotId, String robotName, long dataCount,
+                                               long temperatureCount, double temperatureSum, double temperatureSumSq,
+                                               double temperatureMin, double temperatureMax) {
+        Map<String, Object> row = new HashMap<>();
+        row.put("robot_id", robotId);
+        row.put("robot_name", robotName);
+        row.put("data_count", dataCount);
+        row.put("temperature_count", temperatureCount);
+        row.put("temperature_sum", temperatureSum);
+        row.put("temperature_sum_sq", temperatureSumSq);
+        row.put("temperature_min", temperatureMin);
+        row.put("temperature_max", temperatureMax);
+        row.put("humidity_count", 0L);
+        return row;
+    }
+}
@@ -5,13 +5,17 @@ import com.bdir.dps.entity.Robot;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -69,12 +73,14 @@ class MySQLMapperTest {
     }
 
     /**
-     * 测试批量插入传感器数据
+     * 测试批量插入传感器数据：明细数据一条多行INSERT，分钟和小时汇总表各一次累加
      */
     @Test
+    @SuppressWarnings("unchecked")
     void testBatchInsertSensorData() {
-        // 准备测试数据
+        // 准备测试数据，5条数据在同一分钟内
         List<SensorData> sensorDataList = new ArrayList<>();
+        LocalDateTime baseTime = LocalDateTime.of(2024, 1, 1, 10, 5, 30);
 
         for (int i = 0; i < 5; i++) {
             SensorData sensorData = new SensorData();
@@ -82,7 +88,7 @@ class MySQLMapperTest {
             sensorData.setRobotId("R001");
             sensorData.setSensorId("S001");
             sensorData.setSensorType("TEMPERATURE");
-            sensorData.setTimestamp(LocalDateTime.now());
+            sensorData.setTimestamp(baseTime.plusSeconds(i));
 
             Map<String, Double> metrics = new HashMap<>();
             metrics.put("temperature", 25.0 + i);
@@ -99,7 +105,128 @@ class MySQLMapperTest {
 
         // 验证结果
         assertEquals(5, result);
-        verify(mysqlJdbcTemplate, times(1)).batchUpdate(anyString(), any(List.class));
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<Object[]>> args = ArgumentCaptor.forClass(List.class);
+        verify(mysqlJdbcTemplate, times(3)).batchUpdate(sql.capture(), args.capture());
+
+        // 明细数据
+        assertTrue(sql.getAllValues().get(0).startsWith("INSERT INTO realtime_sensor_data "));
+        assertEquals(1, args.getAllValues().get(0).size());
+        assertEquals(5 * 12, args.getAllValues().get(0).get(0).length);
+
+        // 分钟汇总：一个时间桶，条数5，温度和为135
+        assertTrue(sql.getAllValues().get(1).startsWith("INSERT INTO sensor_rollup_minute "));
+        assertTrue(sql.getAllValues().get(1).contains("ON DUPLICATE KEY UPDATE data_count = data_count + VALUES(data_count)"));
+        assertRollupRow(args.getAllValues().get(1), LocalDateTime.of(2024, 1, 1, 10, 5));
+
+        // 小时汇总
+        assertTrue(sql.getAllValues().get(2).startsWith("INSERT INTO sensor_rollup_hour "));
+        assertRollupRow(args.getAllValues().get(2), LocalDateTime.of(2024, 1, 1, 10, 0));
+    }
+
+    /**
+     * 测试关闭汇总后批量插入只写明细数据
+     */
+    @Test
+    void testBatchInsertSensorData_RollupDisabled() {
+        ReflectionTestUtils.setField(mySQLMapper, "rollupEnabled", false);
+
+        SensorData sensorData = new SensorData();
+        sensorData.setDataId("test-1");
+        sensorData.setRobotId("R001");
+        sensorData.setSensorId("S001");
+        sensorData.setSensorType("TEMPERATURE");
+        sensorData.setTimestamp(LocalDateTime.of(2024, 1, 1, 10, 5, 30));
+
+        when(mysqlJdbcTemplate.batchUpdate(anyString(), any(List.class))).thenReturn(new int[]{1});
+
+        assertEquals(1, mySQLMapper.batchInsertSensorData(Collections.singletonList(sensorData)));
+        verify(mysqlJdbcTemplate).queryForList(startsWith("SELECT data_id FROM realtime_sensor_data "),
+                eq(String.class), any(Object[].class));
+        verify(mysqlJdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO realtime_sensor_data "), any(List.class));
+        verifyNoMoreInteractions(mysqlJdbcTemplate);
+    }
+
+    /**
+     * 测试重放的批次中已写入的数据和批次内重复的数据不再写入明细，也不再累加到汇总表
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchInsertSensorData_SkipsReplayedRows() {
+        LocalDateTime baseTime = LocalDateTime.of(2024, 1, 1, 10, 5, 0);
+        List<SensorData> sensorDataList = new ArrayList<>();
+        for (String dataId : Arrays.asList("batch-0", "batch-1", "batch-1", "batch-2")) {
+            SensorData sensorData = new SensorData();
+            sensorData.setDataId(dataId);
+            sensorData.setRobotId("R001");
+            sensorData.setSensorId("S001");
+            sensorData.setSensorType("TEMPERATURE");
+            sensorData.setTimestamp(baseTime.plusSeconds(sensorDataList.size()));
+            sensorDataList.add(sensorData);
+        }
+
+        when(mysqlJdbcTemplate.queryForList(startsWith("SELECT data_id FROM realtime_sensor_data "),
+                eq(String.class), any(Object[].class))).thenReturn(Collections.singletonList("batch-0"));
+        when(mysqlJdbcTemplate.batchUpdate(anyString(), any(List.class))).thenReturn(new int[]{2});
+
+        assertEquals(2, mySQLMapper.batchInsertSensorData(sensorDataList));
+
+        ArgumentCaptor<Object[]> lookup = ArgumentCaptor.forClass(Object[].class);
+        verify(mysqlJdbcTemplate).queryForList(anyString(), eq(String.class), lookup.capture());
+        assertEquals(Timestamp.valueOf(baseTime), lookup.getValue()[0]);
+        assertEquals(Timestamp.valueOf(baseTime.plusSeconds(3)), lookup.getValue()[1]);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<List<Object[]>> args = ArgumentCaptor.forClass(List.class);
+        verify(mysqlJdbcTemplate, times(3)).batchUpdate(sql.capture(), args.capture());
+        Object[] inserted = args.getAllValues().get(0).get(0);
+        assertEquals(2 * 12, inserted.length);
+        assertEquals("batch-1", inserted[0]);
+        assertEquals("batch-2", inserted[12]);
+        // 汇总只累加新写入的两条
+        assertEquals(2L, args.getAllValues().get(1).get(0)[3]);
+        assertEquals(2L, mySQLMapper.getBulkInsertStats().get("replayedRowsSkipped"));
+    }
+
+    /**
+     * 测试精确一次写入时分区已被重新认领，拒绝写入数据和位置
+     */
+    @Test
+    void testBatchInsertWithPositions_Fenced() {
+        SensorData sensorData = new SensorData();
+        sensorData.setDataId("test-1");
+        sensorData.setRobotId("R001");
+        sensorData.setSensorId("S001");
+        sensorData.setSensorType("TEMPERATURE");
+        sensorData.setTimestamp(LocalDateTime.of(2024, 1, 1, 10, 5, 30));
+
+        when(mysqlJdbcTemplate.queryForList(contains("FOR UPDATE"), eq(Long.class), any(Object[].class)))
+                .thenReturn(Collections.singletonList(3L));
+
+        List<MySQLMapper.StreamOffset> positions = Collections.singletonList(
+                new MySQLMapper.StreamOffset("sensor-data-temperature", 0, 11, 0, 2));
+        assertThrows(MySQLMapper.StreamFencedException.class, () ->
+                mySQLMapper.batchInsertSensorData(Collections.singletonList(sensorData), "group", positions));
+        verify(mysqlJdbcTemplate, never()).batchUpdate(anyString(), any(List.class));
+    }
+
+    /**
+     * 校验汇总累加参数：时间桶、机器人ID、传感器类型、条数，之后为温度的条数、和、平方和、最小值、最大值
+     */
+    private static void assertRollupRow(List<Object[]> rows, LocalDateTime bucket) {
+        assertEquals(1, rows.size());
+        Object[] row = rows.get(0);
+        assertEquals(Timestamp.valueOf(bucket), row[0]);
+        assertEquals("R001", row[1]);
+        assertEquals("TEMPERATURE", row[2]);
+        assertEquals(5L, row[3]);
+        assertEquals(5L, row[4]);
+        assertEquals(135.0, (Double) row[5], 1e-9);
+        assertEquals(3655.0, (Double) row[6], 1e-9);
+        assertEquals(25.0, ((SqlParameterValue) row[7]).getValue());
+        assertEquals(29.0, ((SqlParameterValue) row[8]).getValue());
+        // 湿度没有值
+        assertEquals(0L, row[9]);
     }
 
     /**
@@ -367,6 +494,47 @@ class MySQLMapperTest {
         assertTrue((Long) results.get(0).get("data_count") > 0);
     }
 
+    /**
+     * 测试聚合查询只读取完整的汇总时间桶，首尾不足一个时间桶的部分读取明细数据
+     */
+    @Test
+    void testQueryAggregatedSensorData_PartialEdgesFromRawData() {
+        LocalDateTime startTime = LocalDateTime.of(2024, 1, 1, 10, 30);
+        LocalDateTime endTime = LocalDateTime.of(2024, 1, 1, 15, 20);
+        when(mysqlJdbcTemplate.queryForList(anyString(), any(Object[].class))).thenReturn(Collections.emptyList());
+
+        mySQLMapper.queryAggregatedSensorData(startTime, endTime, "daily", Collections.singletonList("R001"));
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<Object[]> params = ArgumentCaptor.forClass(Object[].class);
+        verify(mysqlJdbcTemplate).queryForList(sql.capture(), params.capture());
+        assertTrue(sql.getValue().contains("FROM sensor_rollup_hour WHERE bucket_time >= ? AND bucket_time < ?"));
+        assertTrue(sql.getValue().contains("UNION ALL"));
+        assertTrue(sql.getValue().contains("OR (timestamp >= ? AND timestamp <= ?)"));
+        assertArrayEquals(new Object[]{"%Y-%m-%d",
+                Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 11, 0)),
+                Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 15, 0)), "R001",
+                Timestamp.valueOf(startTime), Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 11, 0)),
+                Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 15, 0)), Timestamp.valueOf(endTime), "R001"},
+                params.getValue());
+    }
+
+    /**
+     * 测试时间范围内没有完整的汇总时间桶时直接按明细数据聚合
+     */
+    @Test
+    void testQueryAggregatedSensorData_NoCompleteBucket() {
+        when(mysqlJdbcTemplate.queryForList(anyString(), any(Object[].class))).thenReturn(Collections.emptyList());
+
+        mySQLMapper.queryAggregatedSensorData(LocalDateTime.of(2024, 1, 1, 10, 10),
+                LocalDateTime.of(2024, 1, 1, 10, 50), "hourly", null);
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(mysqlJdbcTemplate).queryForList(sql.capture(), any(Object[].class));
+        assertTrue(sql.getValue().contains("FROM realtime_sensor_data WHERE timestamp BETWEEN ? AND ?"));
+        assertFalse(sql.getValue().contains("sensor_rollup"));
+    }
+
     /**
      * 测试数据删除
      */
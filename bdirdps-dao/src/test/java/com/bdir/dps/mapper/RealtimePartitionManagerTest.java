@@ -0,0 +1,137 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.mapper.RealtimePartitionManager.RangePartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 实时表分区管理测试类
+ */
+@ExtendWith(MockitoExtension.class)
+class RealtimePartitionManagerTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 3, 10);
+
+    @Mock
+    private JdbcTemplate mysqlJdbcTemplate;
+
+    private RealtimePartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        manager = new RealtimePartitionManager(mysqlJdbcTemplate, 2);
+    }
+
+    /**
+     * 测试TO_DAYS换算与MySQL一致
+     */
+    @Test
+    void testToDays() {
+        assertEquals(733321, RealtimePartitionManager.toDays(LocalDate.of(2007, 10, 7)));
+        assertEquals(TODAY, RealtimePartitionManager.fromDays(RealtimePartitionManager.toDays(TODAY)));
+        assertEquals("p20240310", RealtimePartitionManager.partitionName(TODAY));
+    }
+
+    /**
+     * 测试从已有分区的下一天起拆分p_future，创建到提前天数为止的日分区
+     */
+    @Test
+    void testCreateFuturePartitions() {
+        mockPartitions(
+                new RangePartition("p_current", RealtimePartitionManager.toDays(TODAY.minusDays(5)), 1000),
+                new RangePartition("p20240309", RealtimePartitionManager.toDays(TODAY), 500),
+                new RangePartition("p20240310", RealtimePartitionManager.toDays(TODAY.plusDays(1)), 10),
+                new RangePartition("p_future", null, 0));
+
+        List<String> created = manager.createFuturePartitions(TODAY);
+
+        assertEquals(Arrays.asList("p20240311", "p20240312"), created);
+        verify(mysqlJdbcTemplate).execute("ALTER TABLE realtime_sensor_data REORGANIZE PARTITION p_future INTO ("
+                + "PARTITION p20240311 VALUES LESS THAN (" + RealtimePartitionManager.toDays(TODAY.plusDays(2)) + "), "
+                + "PARTITION p20240312 VALUES LESS THAN (" + RealtimePartitionManager.toDays(TODAY.plusDays(3)) + "), "
+                + "PARTITION p_future VALUES LESS THAN MAXVALUE)");
+
+        // 已经创建到提前天数时不再修改表结构
+        clearInvocations(mysqlJdbcTemplate);
+        mockPartitions(
+                new RangePartition("p20240312", RealtimePartitionManager.toDays(TODAY.plusDays(3)), 0),
+                new RangePartition("p_future", null, 0));
+        assertTrue(manager.createFuturePartitions(TODAY).isEmpty());
+        verify(mysqlJdbcTemplate, never()).execute(anyString());
+    }
+
+    /**
+     * 测试没有p_future分区时不能创建日分区
+     */
+    @Test
+    void testCreateWithoutFuturePartition() {
+        mockPartitions(new RangePartition("p20240310", RealtimePartitionManager.toDays(TODAY.plusDays(1)), 0));
+        assertThrows(IllegalStateException.class, () -> manager.createFuturePartitions(TODAY));
+    }
+
+    /**
+     * 测试只删除数据全部过期的分区
+     */
+    @Test
+    void testDropPartitionsBefore() {
+        mockPartitions(
+                new RangePartition("p_current", RealtimePartitionManager.toDays(TODAY.minusDays(5)), 1000),
+                new RangePartition("p20240305", RealtimePartitionManager.toDays(TODAY.minusDays(4)), 100),
+                new RangePartition("p20240306", RealtimePartitionManager.toDays(TODAY.minusDays(3)), 100),
+                new RangePartition("p_future", null, 0));
+
+        List<String> dropped = manager.dropPartitionsBefore(TODAY.minusDays(4));
+
+        assertEquals(Arrays.asList("p_current", "p20240305"), dropped);
+        verify(mysqlJdbcTemplate).execute("ALTER TABLE realtime_sensor_data DROP PARTITION p_current, p20240305");
+        // 汇总表删除到最后一个被删除分区的上界
+        Timestamp bound = Timestamp.valueOf(TODAY.minusDays(4).atStartOfDay());
+        verify(mysqlJdbcTemplate).update(startsWith("DELETE FROM sensor_rollup_minute WHERE bucket_time < ?"), eq(bound));
+        verify(mysqlJdbcTemplate).update(startsWith("DELETE FROM sensor_rollup_hour WHERE bucket_time < ?"), eq(bound));
+
+        clearInvocations(mysqlJdbcTemplate);
+        mockPartitions(new RangePartition("p_future", null, 0));
+        assertTrue(manager.dropPartitionsBefore(TODAY).isEmpty());
+        verify(mysqlJdbcTemplate, never()).execute(anyString());
+        verify(mysqlJdbcTemplate, never()).update(anyString(), any(Object[].class));
+    }
+
+    /**
+     * 测试过期汇总行分块删除，直到不足一块为止；时间桶按各自的粒度整体过期
+     */
+    @Test
+    void testDeleteRollupsBefore() {
+        LocalDateTime cutoff = TODAY.atTime(10, 30, 15);
+        when(mysqlJdbcTemplate.update(startsWith("DELETE FROM sensor_rollup_minute"), any(Object[].class)))
+                .thenReturn(RealtimePartitionManager.ROLLUP_DELETE_CHUNK, 5);
+        when(mysqlJdbcTemplate.update(startsWith("DELETE FROM sensor_rollup_hour"), any(Object[].class)))
+                .thenReturn(3);
+
+        assertEquals(RealtimePartitionManager.ROLLUP_DELETE_CHUNK + 8, manager.deleteRollupsBefore(cutoff));
+        verify(mysqlJdbcTemplate, times(2)).update(startsWith("DELETE FROM sensor_rollup_minute"),
+                eq(Timestamp.valueOf(TODAY.atTime(10, 30))));
+        verify(mysqlJdbcTemplate).update(startsWith("DELETE FROM sensor_rollup_hour"),
+                eq(Timestamp.valueOf(TODAY.atTime(10, 0))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockPartitions(RangePartition... partitions) {
+        when(mysqlJdbcTemplate.query(anyString(), any(RowMapper.class), eq("realtime_sensor_data")))
+                .thenReturn(Arrays.asList(partitions));
+    }
+}
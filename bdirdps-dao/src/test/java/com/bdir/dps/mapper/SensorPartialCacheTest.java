@@ -0,0 +1,139 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 按小时缓存的部分聚合测试类
+ */
+@ExtendWith(MockitoExtension.class)
+class SensorPartialCacheTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    @Mock
+    private SensorQueryRouter router;
+
+    private SensorPartialCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SensorPartialCache(router, 1000, 10, 60);
+        // 每个小时返回一个部分聚合，时间桶为查询范围内的各小时
+        lenient().when(router.queryPartials(any(), any(), any(), any(), eq(TimeBucket.HOUR)))
+                .thenAnswer(invocation -> hourlyPartials(invocation.getArgument(0), invocation.getArgument(1)));
+        lenient().when(router.queryPartialResult(any(), any(), any(), any(), eq(TimeBucket.HOUR)))
+                .thenAnswer(invocation -> new SensorQueryRouter.PartialResult(
+                        hourlyPartials(invocation.getArgument(0), invocation.getArgument(1)), true));
+    }
+
+    private static List<SensorAggregate> hourlyPartials(LocalDateTime start, LocalDateTime end) {
+        List<SensorAggregate> partials = new ArrayList<>();
+        for (LocalDateTime hour = start.truncatedTo(ChronoUnit.HOURS); hour.isBefore(end); hour = hour.plusHours(1)) {
+            partials.add(new SensorAggregate("R001", hour));
+        }
+        return partials;
+    }
+
+    /**
+     * 测试首尾不足一小时的部分直接查询，完整的小时只在首次查询时加载
+     */
+    @Test
+    void testSettledHoursAreCached() {
+        LocalDateTime start = DAY.plusMinutes(30);
+        LocalDateTime end = DAY.plusHours(6).plusMinutes(15);
+
+        List<SensorAggregate> first = cache.hourly(start, end, Arrays.asList("R002", "R001"), null);
+        assertEquals(7, first.size());
+        verify(router).queryPartials(start, DAY.plusHours(1), Arrays.asList("R002", "R001"), null, TimeBucket.HOUR);
+        verify(router).queryPartialResult(DAY.plusHours(1), DAY.plusHours(6), Arrays.asList("R002", "R001"), null,
+                TimeBucket.HOUR);
+        verify(router).queryPartials(DAY.plusHours(6), end, Arrays.asList("R002", "R001"), null, TimeBucket.HOUR);
+
+        // 机器人ID顺序不同的相同条件命中缓存，只查询未缓存的首尾两个小时
+        clearInvocations(router);
+        List<SensorAggregate> second = cache.hourly(DAY, DAY.plusHours(7), Arrays.asList("R001", "R002"), null);
+        assertEquals(7, second.size());
+        verify(router).queryPartialResult(DAY, DAY.plusHours(1), Arrays.asList("R001", "R002"), null,
+                TimeBucket.HOUR);
+        verify(router).queryPartialResult(DAY.plusHours(6), DAY.plusHours(7), Arrays.asList("R001", "R002"), null,
+                TimeBucket.HOUR);
+        verifyNoMoreInteractions(router);
+
+        assertEquals(7, cache.getStats().get("entries"));
+        assertEquals(5L, cache.getStats().get("hourHits"));
+    }
+
+    /**
+     * 测试缓存中间的空洞合并为一次查询，没有数据的小时也被缓存
+     */
+    @Test
+    void testMissingRunsAndEmptyHours() {
+        when(router.queryPartialResult(DAY.plusHours(2), DAY.plusHours(3), null, null, TimeBucket.HOUR))
+                .thenReturn(new SensorQueryRouter.PartialResult(Collections.emptyList(), true));
+        assertTrue(cache.hourly(DAY.plusHours(2), DAY.plusHours(3), null, null).isEmpty());
+
+        clearInvocations(router);
+        List<SensorAggregate> partials = cache.hourly(DAY, DAY.plusHours(5), null, null);
+        assertEquals(4, partials.size());
+        verify(router).queryPartialResult(DAY, DAY.plusHours(2), null, null, TimeBucket.HOUR);
+        verify(router).queryPartialResult(DAY.plusHours(3), DAY.plusHours(5), null, null, TimeBucket.HOUR);
+        verifyNoMoreInteractions(router);
+    }
+
+    /**
+     * 测试尚未结束或刚结束的小时不缓存
+     */
+    @Test
+    void testRecentHoursAreNotCached() {
+        LocalDateTime hour = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+        cache.hourly(hour, hour.plusHours(2), null, null);
+        cache.hourly(hour, hour.plusHours(2), null, null);
+        verify(router, times(2)).queryPartialResult(hour, hour.plusHours(2), null, null, TimeBucket.HOUR);
+        assertEquals(0, cache.getStats().get("entries"));
+    }
+
+    /**
+     * 测试路由未完整覆盖查询范围时结果不缓存，数据补齐后重新查询
+     */
+    @Test
+    void testIncompleteResultsAreNotCached() {
+        when(router.queryPartialResult(DAY, DAY.plusHours(3), null, null, TimeBucket.HOUR))
+                .thenReturn(new SensorQueryRouter.PartialResult(Collections.emptyList(), false))
+                .thenReturn(new SensorQueryRouter.PartialResult(hourlyPartials(DAY, DAY.plusHours(3)), true));
+
+        assertTrue(cache.hourly(DAY, DAY.plusHours(3), null, null).isEmpty());
+        assertEquals(0, cache.getStats().get("entries"));
+        assertEquals(1L, cache.getStats().get("incompleteLoads"));
+
+        assertEquals(3, cache.hourly(DAY, DAY.plusHours(3), null, null).size());
+        assertEquals(3, cache.getStats().get("entries"));
+    }
+
+    /**
+     * 测试缓存条目过期后重新查询，迟到的数据得以体现
+     */
+    @Test
+    void testExpiredHoursAreReloaded() {
+        cache = new SensorPartialCache(router, 1000, 10, 0);
+        cache.hourly(DAY, DAY.plusHours(2), null, null);
+        cache.hourly(DAY, DAY.plusHours(2), null, null);
+        verify(router, times(2)).queryPartialResult(DAY, DAY.plusHours(2), null, null, TimeBucket.HOUR);
+    }
+}
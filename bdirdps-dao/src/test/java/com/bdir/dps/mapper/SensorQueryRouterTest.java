@@ -0,0 +1,183 @@
+package com.bdir.dps.mapper;
+
+import com.bdir.dps.aggregate.TimeBucket;
+import com.bdir.dps.mapper.SensorQueryRouter.Route;
+import com.bdir.dps.mapper.SensorQueryRouter.RouteDecision;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 传感器数据查询路由测试类
+ */
+@ExtendWith(MockitoExtension.class)
+class SensorQueryRouterTest {
+
+    private static final List<String> ALL_METRICS = Arrays.asList("temperature", "humidity", "pressure");
+
+    @Mock
+    private MySQLMapper mysqlMapper;
+
+    @Mock
+    private HiveQueryRouterMapper hiveMapper;
+
+    @Mock
+    private FederatedSensorQueryExecutor federatedExecutor;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    private SensorQueryRouter router;
+
+    @BeforeEach
+    void setUp() {
+        // MySQL保留最近6小时，Hive已落地到2小时前
+        lenient().when(mysqlMapper.queryRealtimeTableStats())
+                .thenReturn(new MySQLMapper.RealtimeTableStats(360_000, now.minusHours(6)));
+        List<String> partitions = new ArrayList<>();
+        LocalDateTime last = now.truncatedTo(ChronoUnit.HOURS).minusHours(3);
+        for (int i = 0; i < 24 * 10; i++) {
+            LocalDateTime hour = last.minusHours(i);
+            partitions.add(String.format("dt=%s/hr=%02d", hour.toLocalDate(), hour.getHour()));
+        }
+        lenient().when(hiveMapper.getTablePartitions("sensor_fact_orc")).thenReturn(partitions);
+        router = new SensorQueryRouter(mysqlMapper, hiveMapper, federatedExecutor, registry, 60_000);
+    }
+
+    /**
+     * 测试最近的数据只在MySQL中完整，路由到MySQL实时表
+     */
+    @Test
+    void testRecentRangeUsesMySQL() {
+        RouteDecision decision = router.chooseRoute(now.minusMinutes(5), now, TimeBucket.NONE);
+        assertEquals(Route.MYSQL_REALTIME, decision.getRoute());
+        assertTrue(decision.isComplete());
+
+        // 最近24小时超出MySQL的保留范围，也超过Hive的落地水位，在水位处切分后联合查询
+        decision = router.chooseRoute(now.minusDays(1), now, TimeBucket.NONE);
+        assertEquals(Route.FEDERATED, decision.getRoute());
+        assertTrue(decision.isComplete());
+        assertEquals(router.getHiveWatermark(), decision.getSplitAt());
+        assertEquals(now.truncatedTo(ChronoUnit.HOURS).minusHours(2), decision.getSplitAt());
+    }
+
+    /**
+     * 测试MySQL与Hive之间有数据缺口时不能联合查询，选择覆盖时间更长的路由
+     */
+    @Test
+    void testGapBetweenStores() {
+        when(mysqlMapper.queryRealtimeTableStats())
+                .thenReturn(new MySQLMapper.RealtimeTableStats(10_000, now.minusMinutes(30)));
+        RouteDecision decision = router.chooseRoute(now.minusDays(1), now, TimeBucket.NONE);
+        assertEquals(Route.HIVE_FACT, decision.getRoute());
+        assertFalse(decision.isComplete());
+    }
+
+    /**
+     * 测试历史数据按是否能使用物化视图在事实表和物化视图之间选择
+     */
+    @Test
+    void testHistoricalRange() {
+        LocalDateTime day = now.toLocalDate().minusDays(5).atStartOfDay();
+        assertEquals(Route.HIVE_MV, router.chooseRoute(day, day.plusDays(2), TimeBucket.NONE).getRoute());
+        assertEquals(Route.HIVE_MV, router.chooseRoute(day, day.plusDays(2), TimeBucket.HOUR).getRoute());
+        // 物化视图没有分钟粒度，也不能覆盖不按小时对齐的范围
+        assertEquals(Route.HIVE_FACT, router.chooseRoute(day, day.plusDays(2), TimeBucket.MINUTE).getRoute());
+        assertEquals(Route.HIVE_FACT, router.chooseRoute(day.plusMinutes(30), day.plusDays(2),
+                TimeBucket.NONE).getRoute());
+    }
+
+    /**
+     * 测试MySQL能读取汇总表时按时间桶数估计代价
+     */
+    @Test
+    void testRollupLowersMySQLCost() {
+        LocalDateTime start = now.truncatedTo(ChronoUnit.HOURS).minusHours(5);
+        LocalDateTime end = now.truncatedTo(ChronoUnit.HOURS);
+        double rawEstimate = router.chooseRoute(start, end, TimeBucket.HOUR).getEstimatedMs();
+
+        when(mysqlMapper.rollupUnit(start, end, TimeBucket.HOUR)).thenReturn(ChronoUnit.HOURS);
+        RouteDecision decision = router.chooseRoute(start, end, TimeBucket.HOUR);
+        assertEquals(Route.MYSQL_REALTIME, decision.getRoute());
+        assertEquals(SensorQueryRouter.MYSQL_BASE_MS
+                + 5 * SensorQueryRouter.MYSQL_ROLLUP_ROWS_PER_BUCKET / SensorQueryRouter.MYSQL_ROWS_PER_MS,
+                decision.getEstimatedMs(), 1e-9);
+        assertTrue(decision.getEstimatedMs() < rawEstimate);
+    }
+
+    /**
+     * 测试按选中的路由执行查询并记录指标
+     */
+    @Test
+    void testQueryDispatch() {
+        when(mysqlMapper.queryRealtimePartials(any(), any(), any(), any(), any()))
+                .thenReturn(Collections.singletonList(Map.of("robot_id", "R001", "data_count", 3L,
+                        "temperature_count", 3L, "temperature_sum", 75.0, "temperature_sum_sq", 1875.0,
+                        "temperature_min", 25.0, "temperature_max", 25.0)));
+        String end = now.format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+        String start = now.minusMinutes(5).format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+
+        List<Map<String, Object>> rows = router.query(start, end, Collections.singletonList("R001"), null, ALL_METRICS);
+        assertEquals(1, rows.size());
+        assertEquals("R001", rows.get(0).get("robotId"));
+        assertEquals(25.0, rows.get(0).get("avgTemperature"));
+        assertEquals(3L, rows.get(0).get("dataCount"));
+        verify(hiveMapper, never()).queryPartials(any(), any(), any(), any(), any(), any());
+        assertEquals(1, registry.get("query_route_selected_total").tag("route", "MYSQL_REALTIME").counter().count());
+
+        String historical = now.minusDays(3).format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+        router.query(historical, now.minusDays(2).format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER),
+                null, null, ALL_METRICS);
+        verify(hiveMapper).queryPartials(eq("HIVE_FACT"), eq(historical), any(), isNull(), isNull(), eq("NONE"));
+
+        String crossing = now.minusDays(1).format(HiveQueryRouterMapper.SqlProvider.TIME_FORMATTER);
+        router.query(crossing, end, null, null, ALL_METRICS);
+        verify(federatedExecutor).query(now.minusDays(1), now, router.getHiveWatermark(), null, null, TimeBucket.NONE);
+
+        assertThrows(IllegalArgumentException.class, () -> router.query(end, start, null, null, ALL_METRICS));
+        assertThrows(IllegalArgumentException.class,
+                () -> router.query(start, end, null, null, Collections.singletonList("x; DROP TABLE")));
+    }
+
+    /**
+     * 测试实际耗时持续高于估计时调高该路由的估计
+     */
+    @Test
+    void testCalibration() {
+        LocalDateTime start = now.minusMinutes(5);
+        RouteDecision first = router.chooseRoute(start, now, TimeBucket.NONE);
+        for (int i = 0; i < 20; i++) {
+            router.recordActual(router.chooseRoute(start, now, TimeBucket.NONE), 1000);
+        }
+        RouteDecision calibrated = router.chooseRoute(start, now, TimeBucket.NONE);
+        assertTrue(calibrated.getEstimatedMs() > first.getEstimatedMs() * 5);
+        assertEquals(20, registry.get("query_route_latency").tag("route", "MYSQL_REALTIME").timer().count());
+    }
+
+    /**
+     * 测试统计信息加载失败时Hive视为完整，与原先只查Hive的行为一致
+     */
+    @Test
+    void testStatsUnavailable() {
+        when(mysqlMapper.queryRealtimeTableStats()).thenThrow(new RuntimeException("down"));
+        when(hiveMapper.getTablePartitions("sensor_fact_orc")).thenThrow(new RuntimeException("down"));
+        RouteDecision decision = router.chooseRoute(now.minusMinutes(5), now, TimeBucket.NONE);
+        assertEquals(Route.HIVE_FACT, decision.getRoute());
+        assertTrue(decision.isComplete());
+        assertNull(router.getHiveWatermark());
+    }
+}
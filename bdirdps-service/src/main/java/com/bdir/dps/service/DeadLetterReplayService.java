@@ -0,0 +1,195 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.common.DeadLetterHeaders;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 死信重放服务
+ * 从死信主题读取写库失败的传感器数据，按消息头中的原始主题重新发送，交由流处理重新写库；
+ * 除死信消息头外的消息头（内容类型、传感器类型等）随消息一起重发。
+ * 重放进度由独立的消费组记录，同一时刻只允许一个重放任务
+ */
+@Slf4j
+@Service
+public class DeadLetterReplayService {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(1000);
+
+    /**
+     * 等待重发确认的超时时间（秒）
+     */
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    @Autowired
+    private ConsumerFactory<String, String> consumerFactory;
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Value("${stream.processing.dead-letter-topic:" + DeadLetterHeaders.DEFAULT_TOPIC + "}")
+    private String deadLetterTopic;
+
+    @Value("${dead-letter.replay.group-id:sensor-data-error-replay}")
+    private String replayGroupId;
+
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
+
+    /**
+     * 重放死信数据
+     *
+     * @param maxRecords 本次最多重放的条数
+     * @return 重放结果统计，已有重放任务在执行时返回null
+     */
+    public Map<String, Object> replay(int maxRecords) {
+        if (!replaying.compareAndSet(false, true)) {
+            return null;
+        }
+
+        try {
+            return doReplay(Math.max(1, maxRecords));
+        } finally {
+            replaying.set(false);
+        }
+    }
+
+    private Map<String, Object> doReplay(int maxRecords) {
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxRecords);
+
+        int replayed = 0;
+        int skipped = 0;
+        int failed = 0;
+
+        try (Consumer<String, String> consumer =
+                     consumerFactory.createConsumer(replayGroupId, null, "-replay", overrides)) {
+            // 直接分配全部分区，避免等待消费组重平衡；起始位置为重放消费组已提交的位移
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (PartitionInfo info : consumer.partitionsFor(deadLetterTopic)) {
+                partitions.add(new TopicPartition(info.topic(), info.partition()));
+            }
+            consumer.assign(partitions);
+
+            int remaining = maxRecords;
+            while (remaining > 0) {
+                ConsumerRecords<String, String> records = consumer.poll(POLL_TIMEOUT);
+                if (records.isEmpty()) {
+                    break;
+                }
+
+                Map<TopicPartition, OffsetAndMetadata> commitOffsets = new HashMap<>();
+                boolean sendFailed = false;
+
+                for (TopicPartition partition : records.partitions()) {
+                    List<ConsumerRecord<String, String>> partitionRecords = records.records(partition);
+                    List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>();
+                    List<ConsumerRecord<String, String>> sentRecords = new ArrayList<>();
+                    long nextOffset = -1;
+
+                    for (ConsumerRecord<String, String> record : partitionRecords) {
+                        if (remaining <= 0) {
+                            break;
+                        }
+                        remaining--;
+
+                        String originalTopic = headerValue(record, DeadLetterHeaders.ORIGINAL_TOPIC);
+                        if (originalTopic == null) {
+                            // 缺少原始主题的消息无法重放，跳过
+                            log.warn("死信消息缺少原始主题，跳过: offset={}", record.offset());
+                            skipped++;
+                            futures.add(CompletableFuture.completedFuture(null));
+                        } else {
+                            futures.add(kafkaTemplate.send(replayRecord(originalTopic, record)));
+                        }
+                        sentRecords.add(record);
+                    }
+
+                    // 按顺序等待发送结果，只提交连续成功（或跳过）的位移
+                    for (int i = 0; i < futures.size(); i++) {
+                        try {
+                            SendResult<String, String> result = futures.get(i).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                            if (result != null) {
+                                replayed++;
+                            }
+                            nextOffset = sentRecords.get(i).offset() + 1;
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            failed += futures.size() - i;
+                            sendFailed = true;
+                            break;
+                        } catch (Exception e) {
+                            log.error("重放死信消息失败: offset={}", sentRecords.get(i).offset(), e);
+                            failed += futures.size() - i;
+                            sendFailed = true;
+                            break;
+                        }
+                    }
+
+                    if (nextOffset >= 0) {
+                        commitOffsets.put(partition, new OffsetAndMetadata(nextOffset));
+                    }
+                    if (sendFailed) {
+                        break;
+                    }
+                }
+
+                if (!commitOffsets.isEmpty()) {
+                    consumer.commitSync(commitOffsets);
+                }
+                if (sendFailed) {
+                    break;
+                }
+            }
+        }
+
+        log.info("死信重放完成，重放: {}, 跳过: {}, 失败: {}", replayed, skipped, failed);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("deadLetterTopic", deadLetterTopic);
+        result.put("replayed", replayed);
+        result.put("skipped", skipped);
+        result.put("failed", failed);
+        return result;
+    }
+
+    /**
+     * 发往原始主题的消息：保留键、值和死信消息头以外的消息头
+     */
+    static ProducerRecord<String, String> replayRecord(String originalTopic, ConsumerRecord<String, String> record) {
+        ProducerRecord<String, String> replay = new ProducerRecord<>(originalTopic, record.key(), record.value());
+        for (Header header : record.headers()) {
+            if (!DeadLetterHeaders.isDeadLetterHeader(header.key())) {
+                replay.headers().add(header.key(), header.value());
+            }
+        }
+        return replay;
+    }
+
+    private static String headerValue(ConsumerRecord<String, String> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+}
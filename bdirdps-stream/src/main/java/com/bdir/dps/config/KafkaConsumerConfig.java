@@ -2,6 +2,7 @@ package com.bdir.dps.config;
 
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -40,6 +41,20 @@ public class KafkaConsumerConfig {
     @Value("${spring.kafka.consumer.max-poll-interval-ms:300000}")
     private int maxPollIntervalMs;
 
+    /**
+     * 分区分配策略，默认增量协作式分配，重平衡时只回收需要迁移的分区。
+     * 从eager策略切换时需先滚动部署为"RangeAssignor,CooperativeStickyAssignor"，再部署为仅协作式策略
+     */
+    @Value("${spring.kafka.consumer.partition-assignment-strategy:org.apache.kafka.clients.consumer.CooperativeStickyAssignor}")
+    private String partitionAssignmentStrategy;
+
+    /**
+     * 静态成员ID前缀，设置后各消费通道使用固定的group.instance.id，
+     * 在session超时内重启的实例不触发重平衡
+     */
+    @Value("${spring.kafka.consumer.group-instance-id:}")
+    private String groupInstanceId;
+
     /**
      * 配置消费者属性
      */
@@ -53,9 +68,9 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, enableAutoCommit);
         props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, autoOffsetReset);
 
-        // 反序列化配置
+        // 反序列化配置，消息体保留原始字节，由处理逻辑按内容类型解码
         props.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
-        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        props.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
 
         // 拉取配置
         props.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, maxPollRecords);
@@ -63,6 +78,9 @@ public class KafkaConsumerConfig {
         props.put(ConsumerConfig.HEARTBEAT_INTERVAL_MS_CONFIG, heartbeatIntervalMs);
         props.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollIntervalMs);
 
+        // 重平衡配置
+        props.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, partitionAssignmentStrategy);
+
         // 性能优化配置
         props.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, 1024);
         props.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, 500);
@@ -75,11 +93,12 @@ public class KafkaConsumerConfig {
     }
 
     /**
-     * 创建Kafka消费者实例
+     * 创建Kafka消费者工厂
+     * KafkaConsumer非线程安全，每个消费通道需要独立的实例
      */
     @Bean
-    public KafkaConsumer<String, String> kafkaConsumer() {
-        return new KafkaConsumer<>(kafkaConsumerProperties());
+    public SensorDataConsumerFactory sensorDataConsumerFactory() {
+        return new SensorDataConsumerFactory(kafkaConsumerProperties(), groupInstanceId);
     }
 
     /**
@@ -90,6 +109,43 @@ public class KafkaConsumerConfig {
         return new SensorDataConsumerConfig();
     }
 
+    /**
+     * 传感器数据消费者工厂类
+     */
+    public static class SensorDataConsumerFactory {
+        private final Properties baseProperties;
+        private final String groupInstanceId;
+
+        public SensorDataConsumerFactory(Properties baseProperties) {
+            this(baseProperties, null);
+        }
+
+        /**
+         * @param groupInstanceId 静态成员ID前缀，为空时使用动态成员
+         */
+        public SensorDataConsumerFactory(Properties baseProperties, String groupInstanceId) {
+            this.baseProperties = baseProperties;
+            this.groupInstanceId = groupInstanceId;
+        }
+
+        /**
+         * 创建消费者实例，clientId用于区分各消费通道，配置了静态成员ID前缀时同时作为成员ID后缀
+         */
+        public KafkaConsumer<String, byte[]> createConsumer(String clientId) {
+            Properties props = new Properties();
+            props.putAll(baseProperties);
+            props.put(ConsumerConfig.CLIENT_ID_CONFIG, clientId);
+            if (groupInstanceId != null && !groupInstanceId.isEmpty()) {
+                props.put(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, groupInstanceId + "-" + clientId);
+            }
+            return new KafkaConsumer<>(props);
+        }
+
+        public String getGroupId() {
+            return baseProperties.getProperty(ConsumerConfig.GROUP_ID_CONFIG);
+        }
+    }
+
     /**
      * 传感器数据消费者配置类
      */
@@ -0,0 +1,100 @@
+package com.bdir.dps.config;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.kafka.support.ProducerListener;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Kafka投递审计
+ * 成功的投递每秒最多抽样记录若干条，失败的投递全部记录并附带异常。
+ * 审计日志使用独立的日志名称，由logback-spring.xml中的异步appender输出，
+ * 回调在生产者I/O线程上执行，不等待日志写出
+ */
+public class KafkaDeliveryAuditor<K, V> implements ProducerListener<K, V> {
+
+    /**
+     * 审计日志名称
+     */
+    public static final String AUDIT_LOGGER = "com.bdir.dps.kafka.audit";
+
+    private static final Logger audit = LoggerFactory.getLogger(AUDIT_LOGGER);
+
+    private final String producer;
+    private final int successSamplesPerSecond;
+    private final LongSupplier clock;
+
+    private final AtomicLong currentSecond = new AtomicLong();
+    private final AtomicInteger samplesThisSecond = new AtomicInteger();
+
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder sampledSuccesses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param producer                生产者名称
+     * @param successSamplesPerSecond 每秒最多记录的成功投递数，0表示不记录成功投递
+     */
+    public KafkaDeliveryAuditor(String producer, int successSamplesPerSecond) {
+        this(producer, successSamplesPerSecond, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock 毫秒时钟，测试时注入
+     */
+    KafkaDeliveryAuditor(String producer, int successSamplesPerSecond, LongSupplier clock) {
+        this.producer = producer;
+        this.successSamplesPerSecond = Math.max(0, successSamplesPerSecond);
+        this.clock = clock;
+    }
+
+    @Override
+    public void onSuccess(ProducerRecord<K, V> record, RecordMetadata metadata) {
+        successes.increment();
+        if (trySample()) {
+            // 抽样计数不受日志级别影响，日志关闭时只计数不输出
+            sampledSuccesses.increment();
+            audit.info("消息发送成功 - Producer: {}, Topic: {}, Partition: {}, Offset: {}, Key: {}",
+                    producer, record.topic(), metadata.partition(), metadata.offset(), record.key());
+        }
+    }
+
+    @Override
+    public void onError(ProducerRecord<K, V> record, RecordMetadata metadata, Exception exception) {
+        failures.increment();
+        audit.error("消息发送失败 - Producer: {}, Topic: {}, Partition: {}, Key: {}",
+                producer, record.topic(), record.partition(), record.key(), exception);
+    }
+
+    /**
+     * 按秒限流的抽样，不加锁；跨秒时可能多放行少量日志
+     */
+    boolean trySample() {
+        if (successSamplesPerSecond == 0) {
+            return false;
+        }
+        long second = clock.getAsLong() / 1000;
+        long current = currentSecond.get();
+        if (second != current && currentSecond.compareAndSet(current, second)) {
+            samplesThisSecond.set(0);
+        }
+        return samplesThisSecond.incrementAndGet() <= successSamplesPerSecond;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("successes", successes.sum());
+        stats.put("sampledSuccesses", sampledSuccesses.sum());
+        stats.put("failures", failures.sum());
+        stats.put("successSamplesPerSecond", successSamplesPerSecond);
+        return stats;
+    }
+}
@@ -0,0 +1,342 @@
+package com.bdir.dps.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * Kafka消息发送工具类
+ * 批量发送返回一个汇总的Future，包含每条消息的发送结果；在途消息字节数超过上限时发送线程等待，
+ * 超过等待时间的消息直接记为失败。按调用方指定的投递保证选择生产者
+ */
+@Slf4j
+public class KafkaMessageSender {
+
+    /**
+     * 投递保证
+     */
+    public enum DeliveryGuarantee {
+        /**
+         * 默认生产者
+         */
+        DEFAULT,
+        /**
+         * 高吞吐生产者：acks=1，不重试
+         */
+        FAST,
+        /**
+         * 可靠生产者：acks=all，幂等，持续重试
+         */
+        RELIABLE
+    }
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final KafkaTemplate<String, String> highPerformanceKafkaTemplate;
+    private final KafkaTemplate<String, String> reliableKafkaTemplate;
+
+    private final Semaphore inFlightBytes;
+    private final int maxInFlightBytes;
+    private final long maxBlockMs;
+
+    public KafkaMessageSender(KafkaTemplate<String, String> kafkaTemplate,
+                              KafkaTemplate<String, String> highPerformanceKafkaTemplate,
+                              KafkaTemplate<String, String> reliableKafkaTemplate,
+                              int maxInFlightBytes, long maxBlockMs) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.highPerformanceKafkaTemplate = highPerformanceKafkaTemplate;
+        this.reliableKafkaTemplate = reliableKafkaTemplate;
+        this.maxInFlightBytes = Math.max(1, maxInFlightBytes);
+        this.inFlightBytes = new Semaphore(this.maxInFlightBytes);
+        this.maxBlockMs = maxBlockMs;
+    }
+
+    /**
+     * 同步发送消息
+     */
+    public boolean sendSync(String topic, String key, String message) {
+        try {
+            kafkaTemplate.send(topic, key, message).get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("同步发送消息被中断 - Topic: {}, Key: {}", topic, key);
+            return false;
+        } catch (Exception e) {
+            log.error("同步发送消息失败 - Topic: {}, Key: {}", topic, key, e);
+            return false;
+        }
+    }
+
+    /**
+     * 异步发送消息
+     */
+    public CompletableFuture<SendResult<String, String>> sendAsync(String topic, String key, String message) {
+        return kafkaTemplate.send(topic, key, message).whenComplete((result, error) -> {
+            if (error != null) {
+                log.error("异步消息发送失败 - Topic: {}, Key: {}", topic, key, error);
+            } else if (log.isDebugEnabled()) {
+                log.debug("异步消息发送成功 - Topic: {}, Partition: {}, Offset: {}",
+                        topic, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+            }
+        });
+    }
+
+    /**
+     * 批量发送同一主题的消息，使用默认生产者，等待全部消息完成
+     */
+    public CompletableFuture<BatchSendResult> sendBatch(String topic, Map<String, String> messages) {
+        return sendBatch(topic, messages, DeliveryGuarantee.DEFAULT, false);
+    }
+
+    /**
+     * 批量发送同一主题的消息
+     */
+    public CompletableFuture<BatchSendResult> sendBatch(String topic, Map<String, String> messages,
+                                                        DeliveryGuarantee guarantee, boolean failFast) {
+        List<ProducerRecord<String, String>> records = new ArrayList<>(messages.size());
+        messages.forEach((key, message) -> records.add(new ProducerRecord<>(topic, key, message)));
+        return sendBatch(records, guarantee, failFast);
+    }
+
+    /**
+     * 批量发送消息
+     *
+     * @param guarantee 投递保证，决定使用的生产者
+     * @param failFast  为true时遇到第一条失败即停止发送后续消息，汇总Future以BatchSendException失败；
+     *                  为false时发送全部消息，汇总Future在全部消息完成后返回每条消息的结果
+     */
+    public CompletableFuture<BatchSendResult> sendBatch(List<ProducerRecord<String, String>> records,
+                                                        DeliveryGuarantee guarantee, boolean failFast) {
+        CompletableFuture<BatchSendResult> aggregate = new CompletableFuture<>();
+        if (records.isEmpty()) {
+            aggregate.complete(new BatchSendResult(new RecordResult[0]));
+            return aggregate;
+        }
+
+        KafkaTemplate<String, String> template = templateFor(guarantee);
+        RecordResult[] results = new RecordResult[records.size()];
+        AtomicInteger remaining = new AtomicInteger(records.size());
+        AtomicBoolean failed = new AtomicBoolean(false);
+
+        for (int i = 0; i < records.size(); i++) {
+            if (failFast && failed.get()) {
+                break;
+            }
+            int index = i;
+            ProducerRecord<String, String> record = records.get(i);
+            send(template, record, (metadata, error) -> {
+                results[index] = new RecordResult(index, record, metadata, error);
+                if (error != null && failed.compareAndSet(false, true) && failFast) {
+                    aggregate.completeExceptionally(new BatchSendException(index, record, error));
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    aggregate.complete(new BatchSendResult(results));
+                }
+            });
+        }
+        return aggregate;
+    }
+
+    /**
+     * 发送带回调的消息
+     */
+    public void sendWithCallback(String topic, String key, String message,
+                                 BiConsumer<SendResult<String, String>, Throwable> callback) {
+        kafkaTemplate.send(topic, key, message).whenComplete(callback);
+    }
+
+    /**
+     * 在途消息字节数，按键和值的UTF-8长度计算
+     */
+    public long getInFlightBytes() {
+        return maxInFlightBytes - inFlightBytes.availablePermits();
+    }
+
+    private KafkaTemplate<String, String> templateFor(DeliveryGuarantee guarantee) {
+        if (guarantee == DeliveryGuarantee.FAST) {
+            return highPerformanceKafkaTemplate;
+        }
+        if (guarantee == DeliveryGuarantee.RELIABLE) {
+            return reliableKafkaTemplate;
+        }
+        return kafkaTemplate;
+    }
+
+    /**
+     * 占用在途字节后发送一条消息，确认或失败后归还；回调恰好调用一次
+     */
+    private void send(KafkaTemplate<String, String> template, ProducerRecord<String, String> record,
+                      BiConsumer<RecordMetadata, Throwable> callback) {
+        int bytes = Math.min(utf8Length(record.key()) + utf8Length(record.value()), maxInFlightBytes);
+        try {
+            if (!inFlightBytes.tryAcquire(bytes, maxBlockMs, TimeUnit.MILLISECONDS)) {
+                callback.accept(null, new TimeoutException("在途消息字节数超过上限 " + maxInFlightBytes
+                        + "，等待 " + maxBlockMs + "ms 后仍无空闲"));
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.accept(null, e);
+            return;
+        }
+
+        CompletableFuture<SendResult<String, String>> future;
+        try {
+            future = template.send(record);
+        } catch (Exception e) {
+            inFlightBytes.release(bytes);
+            callback.accept(null, e);
+            return;
+        }
+        future.whenComplete((result, error) -> {
+            inFlightBytes.release(bytes);
+            callback.accept(error == null ? result.getRecordMetadata() : null, error);
+        });
+    }
+
+    /**
+     * 字符串的UTF-8字节数，不做编码
+     */
+    static int utf8Length(CharSequence value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 单条消息的发送结果
+     */
+    public static final class RecordResult {
+        private final int index;
+        private final ProducerRecord<String, String> record;
+        private final RecordMetadata metadata;
+        private final Throwable error;
+
+        RecordResult(int index, ProducerRecord<String, String> record, RecordMetadata metadata, Throwable error) {
+            this.index = index;
+            this.record = record;
+            this.metadata = metadata;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public ProducerRecord<String, String> getRecord() {
+            return record;
+        }
+
+        public RecordMetadata getMetadata() {
+            return metadata;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * 批量发送结果，按发送顺序排列
+     */
+    public static final class BatchSendResult {
+        private final List<RecordResult> results;
+        private final int failureCount;
+
+        BatchSendResult(RecordResult[] results) {
+            this.results = Collections.unmodifiableList(Arrays.asList(results));
+            int failures = 0;
+            for (RecordResult result : results) {
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+            }
+            this.failureCount = failures;
+        }
+
+        public List<RecordResult> getResults() {
+            return results;
+        }
+
+        public int getSuccessCount() {
+            return results.size() - failureCount;
+        }
+
+        public int getFailureCount() {
+            return failureCount;
+        }
+
+        public boolean isAllSucceeded() {
+            return failureCount == 0;
+        }
+
+        public List<RecordResult> getFailures() {
+            List<RecordResult> failures = new ArrayList<>(failureCount);
+            for (RecordResult result : results) {
+                if (!result.isSuccess()) {
+                    failures.add(result);
+                }
+            }
+            return failures;
+        }
+    }
+
+    /**
+     * 快速失败模式下的批量发送失败
+     */
+    public static class BatchSendException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final transient ProducerRecord<String, String> record;
+
+        public BatchSendException(int index, ProducerRecord<String, String> record, Throwable cause) {
+            super("批量发送第 " + index + " 条消息失败 - Topic: " + record.topic() + ", Key: " + record.key(), cause);
+            this.index = index;
+            this.record = record;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public ProducerRecord<String, String> getRecord() {
+            return record;
+        }
+    }
+}
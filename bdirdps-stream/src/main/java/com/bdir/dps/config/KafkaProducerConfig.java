@@ -1,20 +1,19 @@
 package com.bdir.dps.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
-import org.apache.kafka.clients.producer.ProducerRecord;
-import org.apache.kafka.clients.producer.RecordMetadata;
 import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
-import org.springframework.kafka.support.ProducerListener;
-import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.support.CompositeProducerListener;
 import org.springframework.kafka.support.converter.StringJsonMessageConverter;
-import org.springframework.util.concurrent.ListenableFuture;
-import org.springframework.util.concurrent.ListenableFutureCallback;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -59,6 +58,37 @@ public class KafkaProducerConfig {
     @Value("${spring.kafka.producer.enable-idempotence:true}")
     private boolean enableIdempotence;
 
+    @Value("${app.kafka.sender.max-in-flight-bytes:33554432}")
+    private int senderMaxInFlightBytes;
+
+    @Value("${app.kafka.sender.max-block-ms:1000}")
+    private long senderMaxBlockMs;
+
+    @Value("${app.kafka.audit.success-samples-per-second:1}")
+    private int auditSuccessSamplesPerSecond;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public KafkaProducerConfig(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 生产者监控，没有MeterRegistry Bean时注册到全局注册表
+     */
+    @Bean
+    public KafkaProducerMonitor kafkaProducerMonitor() {
+        return new KafkaProducerMonitor(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry));
+    }
+
+    /**
+     * 默认生产者的投递审计
+     */
+    @Bean
+    public KafkaDeliveryAuditor<String, String> kafkaDeliveryAuditor() {
+        return new KafkaDeliveryAuditor<>("default", auditSuccessSamplesPerSecond);
+    }
+
     /**
      * 配置生产者工厂
      */
@@ -103,26 +133,9 @@ public class KafkaProducerConfig {
         // 设置消息转换器
         kafkaTemplate.setMessageConverter(new StringJsonMessageConverter());
 
-        // 设置生产者监听器
-        kafkaTemplate.setProducerListener(new ProducerListener<String, String>() {
-            @Override
-            public void onSuccess(ProducerRecord<String, String> producerRecord, RecordMetadata recordMetadata) {
-                System.out.println(String.format("消息发送成功 - Topic: %s, Partition: %d, Offset: %d, Key: %s",
-                        producerRecord.topic(),
-                        recordMetadata.partition(),
-                        recordMetadata.offset(),
-                        producerRecord.key()));
-            }
-
-            @Override
-            public void onError(ProducerRecord<String, String> producerRecord, Exception exception) {
-                System.err.println(String.format("消息发送失败 - Topic: %s, Key: %s, Error: %s",
-                        producerRecord.topic(),
-                        producerRecord.key(),
-                        exception.getMessage()));
-                exception.printStackTrace();
-            }
-        });
+        // 设置生产者监听器：监控指标和投递审计
+        kafkaTemplate.setProducerListener(new CompositeProducerListener<>(
+                kafkaProducerMonitor().instrument("default", producerFactory()), kafkaDeliveryAuditor()));
 
         return kafkaTemplate;
     }
@@ -165,6 +178,8 @@ public class KafkaProducerConfig {
     public KafkaTemplate<String, String> highPerformanceKafkaTemplate() {
         KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(highPerformanceProducerFactory());
         kafkaTemplate.setMessageConverter(new StringJsonMessageConverter());
+        kafkaTemplate.setProducerListener(
+                kafkaProducerMonitor().instrument("highPerformance", highPerformanceProducerFactory()));
         return kafkaTemplate;
     }
 
@@ -206,6 +221,8 @@ public class KafkaProducerConfig {
     public KafkaTemplate<String, String> reliableKafkaTemplate() {
         KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(reliableProducerFactory());
         kafkaTemplate.setMessageConverter(new StringJsonMessageConverter());
+        kafkaTemplate.setProducerListener(
+                kafkaProducerMonitor().instrument("reliable", reliableProducerFactory()));
         return kafkaTemplate;
     }
 
@@ -238,121 +255,25 @@ public class KafkaProducerConfig {
     public KafkaTemplate<String, String> transactionalKafkaTemplate() {
         KafkaTemplate<String, String> kafkaTemplate = new KafkaTemplate<>(transactionalProducerFactory());
         kafkaTemplate.setMessageConverter(new StringJsonMessageConverter());
+        kafkaTemplate.setProducerListener(
+                kafkaProducerMonitor().instrument("transactional", transactionalProducerFactory()));
         return kafkaTemplate;
     }
 
     /**
-     * Kafka消息发送工具类
+     * Kafka消息发送工具类，按投递保证在默认、高吞吐和可靠生产者之间选择
      */
     @Bean
     public KafkaMessageSender kafkaMessageSender() {
-        return new KafkaMessageSender(kafkaTemplate());
-    }
-}
-
-/**
- * Kafka消息发送工具类
- */
-class KafkaMessageSender {
-    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(KafkaMessageSender.class);
-
-    private final KafkaTemplate<String, String> kafkaTemplate;
-
-    public KafkaMessageSender(KafkaTemplate<String, String> kafkaTemplate) {
-        this.kafkaTemplate = kafkaTemplate;
-    }
-
-    /**
-     * 同步发送消息
-     */
-    public boolean sendSync(String topic, String key, String message) {
-        try {
-            kafkaTemplate.send(topic, key, message).get();
-            return true;
-        } catch (Exception e) {
-            log.error("同步发送消息失败 - Topic: {}, Key: {}", topic, key, e);
-            return false;
-        }
-    }
-
-    /**
-     * 异步发送消息
-     */
-    public void sendAsync(String topic, String key, String message) {
-        ListenableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, key, message);
-
-        future.addCallback(new ListenableFutureCallback<SendResult<String, String>>() {
-            @Override
-            public void onSuccess(SendResult<String, String> result) {
-                log.debug("异步消息发送成功 - Topic: {}, Partition: {}, Offset: {}",
-                        topic, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
-            }
-
-            @Override
-            public void onFailure(Throwable ex) {
-                log.error("异步消息发送失败 - Topic: {}, Key: {}", topic, key, ex);
-            }
-        });
+        return new KafkaMessageSender(kafkaTemplate(), highPerformanceKafkaTemplate(), reliableKafkaTemplate(),
+                senderMaxInFlightBytes, senderMaxBlockMs);
     }
 
     /**
-     * 批量发送消息
+     * Kafka原生生产者配置
      */
-    public void sendBatch(String topic, Map<String, String> messages) {
-        messages.forEach((key, message) -> sendAsync(topic, key, message));
-    }
-
-    /**
-     * 发送带回调的消息
-     */
-    public void sendWithCallback(String topic, String key, String message,
-                                 org.springframework.util.concurrent.ListenableFutureCallback<SendResult<String, String>> callback) {
-        ListenableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, key, message);
-        future.addCallback(callback);
-    }
-}
-
-/**
- * Kafka生产者监控器
- */
-class KafkaProducerMonitor {
-    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(KafkaProducerMonitor.class);
-
-    private long messagesSent = 0;
-    private long messagesAcked = 0;
-    private long messagesFailed = 0;
-    private long bytesSent = 0;
-
-    public synchronized void recordMessageSent(String message) {
-        messagesSent++;
-        bytesSent += message.getBytes().length;
-    }
-
-    public synchronized void recordMessageAcked() {
-        messagesAcked++;
-    }
-
-    public synchronized void recordMessageFailed() {
-        messagesFailed++;
-    }
-
-    public synchronized Map<String, Object> getStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("messagesSent", messagesSent);
-        stats.put("messagesAcked", messagesAcked);
-        stats.put("messagesFailed", messagesFailed);
-        stats.put("bytesSent", bytesSent);
-        stats.put("successRate", messagesSent > 0 ? (double) messagesAcked / messagesSent * 100 : 0);
-        return stats;
-    }
-
-    public synchronized void reset() {
-        messagesSent = 0;
-        messagesAcked = 0;
-        messagesFailed = 0;
-        bytesSent = 0;
-    }
-}
+    private Map<String, Object> kafkaProducerProperties() {
+        Map<String, Object> props = new HashMap<>();
 
         // 基本配置
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
@@ -430,4 +351,4 @@ class KafkaProducerMonitor {
             return PREFIX + sensorType.toLowerCase();
         }
     }
-}
\ No newline at end of file
+}
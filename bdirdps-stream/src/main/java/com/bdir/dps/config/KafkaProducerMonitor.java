@@ -0,0 +1,211 @@
+package com.bdir.dps.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Timer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.springframework.kafka.core.MicrometerProducerListener;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.ProducerListener;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka生产者监控器
+ * 通过ProducerListener在确认回调中按主题累计发送条数、失败条数、序列化后的字节数和确认延迟，
+ * 通过ProducerFactory监听器绑定生产者自身的指标，并由其计算批次填充率和记录排队时间。
+ * 计数器基于Micrometer的LongAdder实现，发送路径上没有锁；字节数取自RecordMetadata中的序列化大小，
+ * 不重新编码消息
+ */
+public class KafkaProducerMonitor {
+
+    private static final String PRODUCER_METRICS_GROUP = "producer-metrics";
+
+    private static final int DEFAULT_BATCH_SIZE = 16384;
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Instrumentation<?, ?>> instrumentations = new ConcurrentHashMap<>();
+
+    public KafkaProducerMonitor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * 为一个生产者工厂及其模板创建监控，返回的监听器需设置到KafkaTemplate上
+     *
+     * @param producer 生产者名称，作为producer标签
+     * @param factory  生产者工厂，用于绑定生产者自身的指标，其batch.size配置用于计算批次填充率
+     */
+    public <K, V> ProducerListener<K, V> instrument(String producer, ProducerFactory<K, V> factory) {
+        Object batchSize = factory.getConfigurationProperties().get(ProducerConfig.BATCH_SIZE_CONFIG);
+        Instrumentation<K, V> instrumentation = new Instrumentation<>(producer,
+                batchSize != null ? Integer.parseInt(batchSize.toString()) : DEFAULT_BATCH_SIZE);
+        instrumentations.put(producer, instrumentation);
+        factory.addListener(instrumentation);
+        factory.addListener(new MicrometerProducerListener<>(meterRegistry,
+                Collections.singletonList(Tag.of("producer", producer))));
+        return instrumentation;
+    }
+
+    /**
+     * 按生产者和主题汇总的统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        instrumentations.forEach((producer, instrumentation) -> stats.put(producer, instrumentation.getStats()));
+        return stats;
+    }
+
+    /**
+     * 单个生产者的监控
+     */
+    private final class Instrumentation<K, V> implements ProducerListener<K, V>, ProducerFactory.Listener<K, V> {
+        private final String producer;
+        private final int batchSize;
+        private final Map<String, TopicMeters> topics = new ConcurrentHashMap<>();
+        private final Map<String, Producer<K, V>> producers = new ConcurrentHashMap<>();
+
+        private Instrumentation(String producer, int batchSize) {
+            this.producer = producer;
+            this.batchSize = batchSize;
+            Gauge.builder("kafka_producer_batch_fill_ratio", this, Instrumentation::batchFillRatio)
+                    .description("Average record batch size divided by batch.size")
+                    .tag("producer", producer)
+                    .register(meterRegistry);
+            Gauge.builder("kafka_producer_record_queue_time_avg", this,
+                            instrumentation -> instrumentation.producerMetric("record-queue-time-avg"))
+                    .description("Average time record batches spent in the send buffer")
+                    .tag("producer", producer)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+
+        @Override
+        public void onSuccess(ProducerRecord<K, V> record, RecordMetadata metadata) {
+            TopicMeters meters = meters(record.topic());
+            meters.acked.increment();
+            meters.bytes.increment(Math.max(metadata.serializedKeySize(), 0)
+                    + Math.max(metadata.serializedValueSize(), 0));
+            // 调用方未指定时间戳时，RecordMetadata中的时间戳是生产者发送时分配的
+            if (record.timestamp() == null && metadata.hasTimestamp()) {
+                meters.ackLatency.record(Math.max(System.currentTimeMillis() - metadata.timestamp(), 0),
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public void onError(ProducerRecord<K, V> record, RecordMetadata metadata, Exception exception) {
+            meters(record.topic()).failed.increment();
+        }
+
+        @Override
+        public void producerAdded(String id, Producer<K, V> producer) {
+            producers.put(id, producer);
+        }
+
+        @Override
+        public void producerRemoved(String id, Producer<K, V> producer) {
+            producers.remove(id);
+        }
+
+        private TopicMeters meters(String topic) {
+            TopicMeters meters = topics.get(topic);
+            return meters != null ? meters : topics.computeIfAbsent(topic, TopicMeters::new);
+        }
+
+        private double batchFillRatio() {
+            double batchSizeAvg = producerMetric("batch-size-avg");
+            return batchSize > 0 && !Double.isNaN(batchSizeAvg) ? batchSizeAvg / batchSize : Double.NaN;
+        }
+
+        /**
+         * 各生产者实例指标的平均值，没有生产者或指标时返回NaN
+         */
+        private double producerMetric(String name) {
+            double sum = 0;
+            int count = 0;
+            for (Producer<K, V> instance : producers.values()) {
+                for (Map.Entry<MetricName, ? extends Metric> entry : instance.metrics().entrySet()) {
+                    MetricName metricName = entry.getKey();
+                    if (name.equals(metricName.name()) && PRODUCER_METRICS_GROUP.equals(metricName.group())) {
+                        Object value = entry.getValue().metricValue();
+                        if (value instanceof Number && !Double.isNaN(((Number) value).doubleValue())) {
+                            sum += ((Number) value).doubleValue();
+                            count++;
+                        }
+                    }
+                }
+            }
+            return count > 0 ? sum / count : Double.NaN;
+        }
+
+        private Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            Map<String, Object> topicStats = new HashMap<>();
+            topics.forEach((topic, meters) -> topicStats.put(topic, meters.getStats()));
+            stats.put("topics", topicStats);
+            stats.put("batchFillRatio", batchFillRatio());
+            stats.put("recordQueueTimeAvgMs", producerMetric("record-queue-time-avg"));
+            return stats;
+        }
+
+        /**
+         * 单个主题的指标
+         */
+        private final class TopicMeters {
+            private final Counter acked;
+            private final Counter failed;
+            private final Counter bytes;
+            private final Timer ackLatency;
+
+            private TopicMeters(String topic) {
+                acked = Counter.builder("kafka_producer_records_acked_total")
+                        .description("Records acknowledged by the broker")
+                        .tags("producer", producer, "topic", topic)
+                        .register(meterRegistry);
+                failed = Counter.builder("kafka_producer_records_failed_total")
+                        .description("Records that failed to send")
+                        .tags("producer", producer, "topic", topic)
+                        .register(meterRegistry);
+                bytes = Counter.builder("kafka_producer_record_bytes_total")
+                        .description("Serialized key and value bytes of acknowledged records")
+                        .tags("producer", producer, "topic", topic)
+                        .baseUnit("bytes")
+                        .register(meterRegistry);
+                ackLatency = Timer.builder("kafka_producer_ack_latency")
+                        .description("Time from send until broker acknowledgement")
+                        .tags("producer", producer, "topic", topic)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(meterRegistry);
+            }
+
+            private Map<String, Object> getStats() {
+                long ackedCount = (long) acked.count();
+                long failedCount = (long) failed.count();
+                Map<String, Object> stats = new HashMap<>();
+                stats.put("messagesAcked", ackedCount);
+                stats.put("messagesFailed", failedCount);
+                stats.put("bytesSent", (long) bytes.count());
+                stats.put("successRate", ackedCount + failedCount > 0
+                        ? (double) ackedCount / (ackedCount + failedCount) * 100 : 0);
+                stats.put("ackLatencyMeanMs", ackLatency.mean(TimeUnit.MILLISECONDS));
+                stats.put("ackLatencyMaxMs", ackLatency.max(TimeUnit.MILLISECONDS));
+                return stats;
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.bdir.dps.service;
+
+/**
+ * 数据处理异常
+ * 写库重试耗尽、分区已被重新认领或写库任务被中断时抛出，对应数据的位移保持未提交
+ */
+class DataProcessingException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DataProcessingException(String message) {
+        super(message);
+    }
+
+    public DataProcessingException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,197 @@
+package com.bdir.dps.service;
+
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分区位移跟踪器
+ * 记录已进入缓冲区但尚未写库的位移，可提交位移为最小的未完成位移；
+ * 没有未完成位移时为已处理的最大位移+1。
+ * 消费通道线程登记位移，写库线程在批次写入成功后确认位移。
+ * 封包消息的多条读数共用一个位移，每条读数各登记一次，全部确认后该位移才算完成
+ */
+class PartitionOffsetTracker {
+
+    private final TopicPartition partition;
+
+    // 精确一次模式下认领分区时取得的所有权版本，保存位置时核对
+    private final long ownerEpoch;
+
+    /**
+     * 已登记、尚未写库确认的位移及其登记次数
+     */
+    private final ConcurrentSkipListMap<Long, Integer> pendingOffsets = new ConcurrentSkipListMap<>();
+    private final AtomicLong pendingCount = new AtomicLong(0);
+
+    // 已处理的最大位移，仅消费通道线程写入
+    private volatile long highestProcessed = -1;
+
+    // 上次提交的位移，仅消费通道线程访问
+    private long committedOffset = -1;
+
+    // 缓冲区已满时被拒收的消息及其首条未缓冲读数的序号，仅消费通道线程访问
+    private long partialOffset = -1;
+    private int partialIndex;
+
+    // 有数据未能写库也未进入死信主题，该分区需回退到已提交（精确一次模式为保存）的位置重新消费
+    private volatile boolean failed = false;
+
+    PartitionOffsetTracker(TopicPartition partition) {
+        this(partition, -1);
+    }
+
+    /**
+     * @param committedOffset 分区已提交的位移，未提交过时为-1
+     */
+    PartitionOffsetTracker(TopicPartition partition, long committedOffset) {
+        this(partition, committedOffset, 0);
+    }
+
+    /**
+     * @param ownerEpoch 精确一次模式下认领分区时取得的所有权版本
+     */
+    PartitionOffsetTracker(TopicPartition partition, long committedOffset, long ownerEpoch) {
+        this.partition = partition;
+        this.committedOffset = committedOffset;
+        this.ownerEpoch = ownerEpoch;
+    }
+
+    TopicPartition getPartition() {
+        return partition;
+    }
+
+    long getOwnerEpoch() {
+        return ownerEpoch;
+    }
+
+    /**
+     * 处理前登记位移，登记后直到确认前都会阻止该位移被提交
+     */
+    void register(long offset) {
+        while (true) {
+            Integer refs = pendingOffsets.putIfAbsent(offset, 1);
+            if (refs == null) {
+                pendingCount.incrementAndGet();
+                return;
+            }
+            if (pendingOffsets.replace(offset, refs, refs + 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 撤销一次登记，用于下游拒收后回退重新拉取的消息
+     */
+    void release(long offset) {
+        dereference(offset);
+    }
+
+    /**
+     * 标记消息已处理完毕（已进入缓冲区或无需写库）
+     */
+    void advance(long offset) {
+        if (offset > highestProcessed) {
+            highestProcessed = offset;
+        }
+    }
+
+    /**
+     * 确认位移对应的数据已持久化
+     */
+    void complete(long offset) {
+        dereference(offset);
+    }
+
+    private void dereference(long offset) {
+        while (true) {
+            Integer refs = pendingOffsets.get(offset);
+            if (refs == null) {
+                return;
+            }
+            if (refs == 1) {
+                if (pendingOffsets.remove(offset, refs)) {
+                    pendingCount.decrementAndGet();
+                    return;
+                }
+            } else if (pendingOffsets.replace(offset, refs, refs - 1)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 记录被拒收消息的处理进度，回退重新拉取时从该读数继续
+     *
+     * @param index 首条未进入缓冲区的读数序号，该读数已经过去重检查
+     */
+    void markPartial(long offset, int index) {
+        partialOffset = offset;
+        partialIndex = index;
+    }
+
+    /**
+     * 取出并清除消息的处理进度，不是上次被拒收的消息时返回-1
+     */
+    int takeResumeIndex(long offset) {
+        if (offset != partialOffset) {
+            return -1;
+        }
+        partialOffset = -1;
+        return partialIndex;
+    }
+
+    /**
+     * 当前可提交的位移（下一条待消费消息的位移），没有可提交位移时返回-1
+     */
+    long committableOffset() {
+        long highest = highestProcessed;
+        Long firstPending = pendingOffsets.ceilingKey(Long.MIN_VALUE);
+        if (firstPending != null && firstPending <= highest) {
+            return firstPending;
+        }
+        return highest >= 0 ? highest + 1 : -1;
+    }
+
+    /**
+     * 取出比上次提交更新的可提交位移并记为已提交，没有新位移时返回-1
+     */
+    long nextCommitOffset() {
+        long offset = committableOffset();
+        if (offset <= committedOffset) {
+            return -1;
+        }
+        committedOffset = offset;
+        return offset;
+    }
+
+    /**
+     * 提交失败时回滚，下次重新提交
+     */
+    void commitFailed(long offset) {
+        if (committedOffset == offset) {
+            committedOffset = -1;
+        }
+    }
+
+    /**
+     * 标记有数据未能持久化，此后该跟踪器下的数据不再写库
+     */
+    void fail() {
+        failed = true;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    long getCommittedOffset() {
+        return committedOffset;
+    }
+
+    long getPendingCount() {
+        return pendingCount.get();
+    }
+}
@@ -0,0 +1,147 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 待写库的数据批次
+ * 除数据外还记录每条数据来源的分区位移，批次写库成功后统一确认。
+ * 封包消息的读数还记录该读数之后的续读序号，用于精确一次模式下保存消费位置；
+ * 进入缓冲区的时间用于统计拉取到写库的延迟
+ */
+class SensorDataBatch {
+
+    private final List<SensorData> records;
+    private PartitionOffsetTracker[] trackers;
+    private long[] offsets;
+    private int[] nextIndexes;
+    private long[] bufferedNanos;
+
+    SensorDataBatch(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        this.records = new ArrayList<>(capacity);
+        this.trackers = new PartitionOffsetTracker[capacity];
+        this.offsets = new long[capacity];
+        this.nextIndexes = new int[capacity];
+        this.bufferedNanos = new long[capacity];
+    }
+
+    /**
+     * 添加一条数据，该数据是来源消息的最后一条
+     *
+     * @param tracker 来源分区的位移跟踪器，非Kafka来源的数据为null
+     */
+    void add(SensorData data, PartitionOffsetTracker tracker, long offset) {
+        add(data, tracker, offset, 0);
+    }
+
+    /**
+     * 添加一条数据
+     *
+     * @param tracker   来源分区的位移跟踪器，非Kafka来源的数据为null
+     * @param nextIndex 来源消息中下一条读数的序号，该数据是消息的最后一条时为0
+     */
+    void add(SensorData data, PartitionOffsetTracker tracker, long offset, int nextIndex) {
+        add(data, tracker, offset, nextIndex, System.nanoTime());
+    }
+
+    /**
+     * 添加一条数据
+     *
+     * @param bufferedNanos 数据进入缓冲区时的System.nanoTime()
+     */
+    void add(SensorData data, PartitionOffsetTracker tracker, long offset, int nextIndex, long bufferedNanos) {
+        int index = records.size();
+        if (index == trackers.length) {
+            trackers = Arrays.copyOf(trackers, index * 2);
+            offsets = Arrays.copyOf(offsets, index * 2);
+            nextIndexes = Arrays.copyOf(nextIndexes, index * 2);
+            this.bufferedNanos = Arrays.copyOf(this.bufferedNanos, index * 2);
+        }
+        records.add(data);
+        trackers[index] = tracker;
+        offsets[index] = offset;
+        nextIndexes[index] = nextIndex;
+        this.bufferedNanos[index] = bufferedNanos;
+    }
+
+    /**
+     * 批次中的数据，只读使用
+     */
+    List<SensorData> getRecords() {
+        return records;
+    }
+
+    /**
+     * 数据来源分区的位移跟踪器，非Kafka来源的数据为null
+     */
+    PartitionOffsetTracker getTracker(int index) {
+        return trackers[index];
+    }
+
+    long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * 来源消息中下一条读数的序号，0表示该数据是消息的最后一条
+     */
+    int getNextIndex(int index) {
+        return nextIndexes[index];
+    }
+
+    /**
+     * 数据进入缓冲区时的System.nanoTime()
+     */
+    long getBufferedNanos(int index) {
+        return bufferedNanos[index];
+    }
+
+    int size() {
+        return records.size();
+    }
+
+    boolean isEmpty() {
+        return records.isEmpty();
+    }
+
+    /**
+     * 批次已持久化，确认其中全部位移
+     */
+    void acknowledge() {
+        acknowledge(0, records.size());
+    }
+
+    /**
+     * 确认[from, to)范围内数据的位移，用于部分写入成功的批次
+     */
+    void acknowledge(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (trackers[i] != null) {
+                trackers[i].complete(offsets[i]);
+            }
+        }
+    }
+
+    /**
+     * 批次未能持久化，将其中数据的来源分区标记为失败，由消费通道回退后重新消费
+     */
+    void fail() {
+        for (int i = 0; i < records.size(); i++) {
+            if (trackers[i] != null) {
+                trackers[i].fail();
+            }
+        }
+    }
+
+    /**
+     * 清空批次以便复用
+     */
+    void clear() {
+        Arrays.fill(trackers, 0, records.size(), null);
+        records.clear();
+    }
+}
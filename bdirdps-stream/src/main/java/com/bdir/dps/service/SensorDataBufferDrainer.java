@@ -0,0 +1,180 @@
+package com.bdir.dps.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 缓冲区刷新线程
+ * 独占环形缓冲区的消费端，按批量大小或时间间隔将数据交给写入端，
+ * 同一时刻只有一个刷新在执行，不会堆积重复的刷新任务
+ */
+@Slf4j
+class SensorDataBufferDrainer implements Runnable {
+
+    /**
+     * 空闲时的最长休眠时间
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * 批量写入端
+     * 写库成功后由写入端确认批次中的位移，失败时不确认，位移保持未提交；
+     * 抛出异常时批次中数据的来源分区被标记为失败
+     */
+    interface BatchSink {
+        void flush(SensorDataBatch batch);
+    }
+
+    /**
+     * 刷新屏障：target之前写入的数据全部刷新后完成
+     */
+    private static final class FlushRequest {
+        private final long target;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private FlushRequest(long target) {
+            this.target = target;
+        }
+    }
+
+    private final SensorDataRingBuffer ringBuffer;
+    private final BatchSink sink;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    // 复用的批次列表，仅刷新线程访问
+    private final SensorDataBatch batch;
+    private final ConcurrentLinkedQueue<FlushRequest> flushRequests = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean running = true;
+    private volatile boolean parked = false;
+    private volatile Thread drainerThread;
+
+    SensorDataBufferDrainer(SensorDataRingBuffer ringBuffer, BatchSink sink, int batchSize, long flushIntervalMillis) {
+        this.ringBuffer = ringBuffer;
+        this.sink = sink;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.batch = new SensorDataBatch(batchSize);
+    }
+
+    /**
+     * 启动刷新线程
+     */
+    void start() {
+        Thread thread = new Thread(this, "sensor-buffer-drainer");
+        drainerThread = thread;
+        thread.start();
+    }
+
+    /**
+     * 缓冲区积累到一个批次时唤醒刷新线程，由生产者调用
+     */
+    void signal() {
+        if (parked && ringBuffer.size() >= batchSize) {
+            LockSupport.unpark(drainerThread);
+        }
+    }
+
+    /**
+     * 请求刷新当前已写入的全部数据
+     */
+    CompletableFuture<Void> requestFlush() {
+        FlushRequest request = new FlushRequest(ringBuffer.producerPosition());
+        flushRequests.add(request);
+        Thread thread = drainerThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return request.future;
+    }
+
+    /**
+     * 停止刷新线程，剩余数据刷新完成后返回
+     */
+    void stop(long timeoutMillis) {
+        running = false;
+        Thread thread = drainerThread;
+        if (thread == null) {
+            return;
+        }
+        LockSupport.unpark(thread);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        log.info("缓冲区刷新线程已启动，批量大小: {}", batchSize);
+        long batchStartNanos = 0;
+
+        while (running || !ringBuffer.isEmpty()) {
+            int drained = ringBuffer.drainTo(batch, batchSize - batch.size());
+            long now = System.nanoTime();
+            if (!batch.isEmpty() && batchStartNanos == 0) {
+                batchStartNanos = now;
+            }
+
+            FlushRequest request = flushRequests.peek();
+            boolean barrierReached = request != null && ringBuffer.consumerPosition() >= request.target;
+
+            if (batch.size() >= batchSize
+                    || (!batch.isEmpty() && now - batchStartNanos >= flushIntervalNanos)
+                    || barrierReached) {
+                flushBatch();
+                batchStartNanos = 0;
+                continue;
+            }
+
+            if (drained == 0 && request != null) {
+                // 等待已占位的生产者完成写入
+                Thread.onSpinWait();
+            } else if (drained == 0) {
+                parked = true;
+                long parkNanos = batch.isEmpty()
+                        ? IDLE_PARK_NANOS
+                        : Math.min(IDLE_PARK_NANOS, flushIntervalNanos - (now - batchStartNanos));
+                LockSupport.parkNanos(this, Math.max(parkNanos, 1));
+                parked = false;
+            }
+        }
+
+        flushBatch();
+        FlushRequest request;
+        while ((request = flushRequests.poll()) != null) {
+            request.future.complete(null);
+        }
+        log.info("缓冲区刷新线程已退出");
+    }
+
+    /**
+     * 刷新当前批次并完成已到达的刷新屏障
+     */
+    private void flushBatch() {
+        long flushedPosition = ringBuffer.consumerPosition();
+        if (!batch.isEmpty()) {
+            try {
+                sink.flush(batch);
+            } catch (Exception e) {
+                // 批次不会再被写入，位移不会确认，来源分区回退后重新消费，否则位移提交会一直停滞
+                batch.fail();
+                log.error("刷新缓冲区数据失败，数据量: {}，来源分区将回退重新消费", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+
+        FlushRequest request;
+        while ((request = flushRequests.peek()) != null && request.target <= flushedPosition) {
+            flushRequests.poll();
+            request.future.complete(null);
+        }
+    }
+}
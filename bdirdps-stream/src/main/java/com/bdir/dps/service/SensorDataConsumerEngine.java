@@ -0,0 +1,803 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.config.KafkaConsumerConfig.SensorDataConsumerFactory;
+import com.bdir.dps.mapper.MySQLMapper.StreamOffset;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 分区并行消费引擎
+ * 启动多个消费通道，每个通道独占一个KafkaConsumer和一个线程，分区由消费组协调分配。
+ * 同一分区只会被一个通道按顺序处理，从而保证同一key（robotId#sensorId）的数据有序。
+ * 通道的消费者异常退出后按指数退避重建并重新订阅，引擎停止前通道不会永久退出。
+ * 重平衡使用协作式分配，只有迁移的分区被回收：回收前等待这些分区已缓冲的数据写库并提交位移，
+ * 其余分区照常消费；新分配的分区在分配时即建立位移跟踪器并读取已提交位移。
+ * 位移按分区跟踪，只有写库成功的数据对应的位移才会被提交（至少一次语义），
+ * 写库重试耗尽的分区回退到已提交的位移重新消费。
+ * 配置了位置存储时为精确一次模式：消费位置与数据在同一事务中写入MySQL，分区分配后认领分区并从保存的位置继续，
+ * 认领后之前持有者的写入被拒绝，写库失败的分区回退到保存的位置重新消费；提交到Kafka的位移仅用于积压监控
+ */
+@Slf4j
+class SensorDataConsumerEngine {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    /**
+     * 吞吐量统计窗口（毫秒）
+     */
+    private static final long RATE_WINDOW_MS = 1000;
+
+    /**
+     * 通道异常退出时等待缓冲区刷新的最长时间（毫秒）
+     */
+    private static final long DEFAULT_FLUSH_TIMEOUT_MS = 10000;
+
+    /**
+     * 回收分区时检查其数据是否已写库的间隔（毫秒）
+     */
+    private static final long REVOKE_CHECK_MS = 5;
+
+    /**
+     * 通道异常退出后重建消费者的初始退避间隔和上限（毫秒）
+     */
+    private static final long RESTART_BACKOFF_MS = 1000;
+    private static final long MAX_RESTART_BACKOFF_MS = 60000;
+
+    /**
+     * 退避期间检查引擎是否已停止的间隔（毫秒）
+     */
+    private static final long RESTART_CHECK_MS = 100;
+
+    /**
+     * 读取保存的消费位置失败后的重试间隔（毫秒）
+     */
+    private static final long RESTORE_RETRY_MS = 1000;
+
+    /**
+     * 消息处理回调，在消费通道线程内调用
+     */
+    interface RecordHandler {
+        /**
+         * 进入缓冲区的消息在写库成功后由写入端确认位移；无需写库的消息（无效、重复等）
+         * 直接返回true，位移随之可提交
+         *
+         * @return 下游缓冲区已满无法接收时返回false，通道将回退位移并暂停分区
+         */
+        boolean handle(PartitionOffsetTracker tracker, ConsumerRecord<String, byte[]> record);
+    }
+
+    /**
+     * 与写库数据在同一事务中保存的消费位置
+     */
+    interface PositionStore {
+        /**
+         * 认领分区并查询保存的位置，认领后之前持有者（包括回退前的本通道）的写入被拒绝。
+         * 没有保存过位置的分区下一条位移为-1，或不包含在结果中
+         */
+        Map<TopicPartition, StreamOffset> load(Collection<TopicPartition> partitions);
+    }
+
+    /**
+     * 分区积压回调，在消费通道线程内调用
+     */
+    interface LagListener {
+        /**
+         * 通道的分区积压快照，约每秒一次；通道关闭时为空
+         */
+        void onLag(int laneId, Map<TopicPartition, Long> lag);
+    }
+
+    private final SensorDataConsumerFactory consumerFactory;
+    private final List<String> topics;
+    private final RecordHandler recordHandler;
+
+    /**
+     * 精确一次模式的位置存储，至少一次模式为null
+     */
+    private final PositionStore positionStore;
+
+    /**
+     * 下游恢复接收能力的判断条件，满足时恢复被暂停的分区
+     */
+    private final BooleanSupplier resumeCondition;
+
+    /**
+     * 请求下游刷新已缓冲的数据，关闭前等待其完成后再提交位移
+     */
+    private final Supplier<CompletableFuture<Void>> flushRequester;
+
+    private LagListener lagListener;
+
+    private final List<ConsumerLane> lanes = new ArrayList<>();
+    private final List<Thread> laneThreads = new ArrayList<>();
+    private volatile boolean running = false;
+    private volatile long stopDeadline = 0;
+
+    SensorDataConsumerEngine(SensorDataConsumerFactory consumerFactory, List<String> topics,
+                             RecordHandler recordHandler, BooleanSupplier resumeCondition,
+                             Supplier<CompletableFuture<Void>> flushRequester) {
+        this(consumerFactory, topics, recordHandler, resumeCondition, flushRequester, null);
+    }
+
+    /**
+     * @param positionStore 精确一次模式的位置存储，为null时使用至少一次模式
+     */
+    SensorDataConsumerEngine(SensorDataConsumerFactory consumerFactory, List<String> topics,
+                             RecordHandler recordHandler, BooleanSupplier resumeCondition,
+                             Supplier<CompletableFuture<Void>> flushRequester, PositionStore positionStore) {
+        this.consumerFactory = consumerFactory;
+        this.topics = topics;
+        this.recordHandler = recordHandler;
+        this.resumeCondition = resumeCondition;
+        this.flushRequester = flushRequester;
+        this.positionStore = positionStore;
+    }
+
+    /**
+     * 设置分区积压回调，需在启动前设置
+     */
+    void setLagListener(LagListener lagListener) {
+        this.lagListener = lagListener;
+    }
+
+    /**
+     * 启动消费通道
+     *
+     * @param consumerThreads 通道数量，小于等于0时按订阅主题的分区总数自动确定
+     */
+    void start(int consumerThreads) {
+        int laneCount = consumerThreads > 0 ? consumerThreads : countPartitions();
+        running = true;
+
+        for (int i = 0; i < laneCount; i++) {
+            ConsumerLane lane = new ConsumerLane(i, consumerFactory.createConsumer(laneClientId(i)));
+            Thread thread = new Thread(lane, "sensor-consumer-lane-" + i);
+            lanes.add(lane);
+            laneThreads.add(thread);
+            thread.start();
+        }
+
+        log.info("分区并行消费引擎已启动，消费通道数: {}, 订阅主题: {}, 精确一次: {}",
+                laneCount, topics, positionStore != null);
+    }
+
+    /**
+     * 停止所有消费通道，等待各通道提交位移并关闭消费者
+     */
+    void stop(long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        stopDeadline = deadline;
+        running = false;
+        lanes.forEach(lane -> lane.consumer.wakeup());
+
+        for (Thread thread : laneThreads) {
+            try {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("分区并行消费引擎已停止");
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    private static String laneClientId(int laneId) {
+        return "sensor-stream-lane-" + laneId;
+    }
+
+    /**
+     * 异常退出、尚未重建消费者的通道数
+     */
+    int getDeadLanes() {
+        int dead = 0;
+        for (ConsumerLane lane : lanes) {
+            if (running && !lane.isAlive()) {
+                dead++;
+            }
+        }
+        return dead;
+    }
+
+    /**
+     * 获取各消费通道的统计信息
+     */
+    List<Map<String, Object>> getLaneStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(lanes.size());
+        for (ConsumerLane lane : lanes) {
+            stats.add(lane.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 统计订阅主题的分区总数
+     */
+    private int countPartitions() {
+        try (KafkaConsumer<String, byte[]> probe = consumerFactory.createConsumer("sensor-stream-probe")) {
+            int total = 0;
+            for (String topic : topics) {
+                List<PartitionInfo> partitions = probe.partitionsFor(topic);
+                total += partitions != null ? partitions.size() : 0;
+            }
+            return Math.max(total, 1);
+        }
+    }
+
+    /**
+     * 消费通道
+     * 所有对KafkaConsumer的访问都在通道线程内完成，其余线程只读取快照
+     */
+    class ConsumerLane implements Runnable, ConsumerRebalanceListener {
+        private final int laneId;
+        private final String clientId;
+
+        // 异常退出后重建，其他线程只调用wakeup
+        private volatile KafkaConsumer<String, byte[]> consumer;
+        private volatile boolean alive = true;
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder restarts = new LongAdder();
+
+        // 当前分配分区的位移跟踪器，仅通道线程修改
+        private final Map<TopicPartition, PartitionOffsetTracker> trackers = new ConcurrentHashMap<>();
+
+        // 精确一次模式下尚未恢复到保存位置的分区，保持暂停，仅通道线程访问
+        private final Set<TopicPartition> unrestored = new HashSet<>();
+        private long nextRestoreAttempt = 0;
+
+        private final LongAdder recordsConsumed = new LongAdder();
+        private final LongAdder backpressureEvents = new LongAdder();
+        private final LongAdder commitFailures = new LongAdder();
+        private final LongAdder rewinds = new LongAdder();
+        private final LongAdder partitionsAssigned = new LongAdder();
+        private final LongAdder partitionsRevoked = new LongAdder();
+        private volatile long lastRevokeMillis = 0;
+        private volatile boolean backpressured = false;
+        private volatile Map<TopicPartition, Long> lagSnapshot = Collections.emptyMap();
+        private volatile double throughput = 0;
+        private volatile long lastPollTime = 0;
+        private long rateWindowStart = System.currentTimeMillis();
+        private long rateWindowCount = 0;
+
+        ConsumerLane(int laneId, KafkaConsumer<String, byte[]> consumer) {
+            this.laneId = laneId;
+            this.clientId = laneClientId(laneId);
+            this.consumer = consumer;
+        }
+
+        boolean isAlive() {
+            return alive;
+        }
+
+        int getLaneId() {
+            return laneId;
+        }
+
+        /**
+         * 运行消费通道，消费者异常退出时按指数退避重建消费者并重新订阅，直到引擎停止
+         */
+        @Override
+        public void run() {
+            log.info("消费通道 {} 已启动", laneId);
+            long backoffMillis = RESTART_BACKOFF_MS;
+            try {
+                while (running) {
+                    long startTime = System.currentTimeMillis();
+                    if (consume() || !running) {
+                        return;
+                    }
+                    failures.increment();
+                    alive = false;
+                    // 消费者运行过一段时间后再次失败时，退避间隔从头开始
+                    if (System.currentTimeMillis() - startTime >= MAX_RESTART_BACKOFF_MS) {
+                        backoffMillis = RESTART_BACKOFF_MS;
+                    }
+                    while (running && !alive) {
+                        log.warn("消费通道 {} 异常退出，{}ms后重建消费者", laneId, backoffMillis);
+                        sleepWhileRunning(backoffMillis);
+                        backoffMillis = Math.min(backoffMillis * 2, MAX_RESTART_BACKOFF_MS);
+                        if (!running) {
+                            return;
+                        }
+                        try {
+                            consumer = consumerFactory.createConsumer(clientId);
+                            restarts.increment();
+                            alive = true;
+                        } catch (Exception e) {
+                            log.error("消费通道 {} 重建消费者失败", laneId, e);
+                        }
+                    }
+                }
+            } finally {
+                alive = false;
+                if (lagListener != null) {
+                    lagListener.onLag(laneId, Collections.emptyMap());
+                }
+                log.info("消费通道 {} 已关闭", laneId);
+            }
+        }
+
+        /**
+         * 订阅并消费直到引擎停止或出现异常，退出前提交已写库数据的位移并关闭消费者
+         *
+         * @return 引擎停止时返回true，异常退出时返回false
+         */
+        private boolean consume() {
+            consumer.subscribe(topics, this);
+            boolean stopped = false;
+            try {
+                while (running) {
+                    rewindFailedPartitions();
+                    resumeIfPossible();
+
+                    ConsumerRecords<String, byte[]> records = consumer.poll(POLL_TIMEOUT);
+                    int handledCount = 0;
+
+                    for (TopicPartition partition : records.partitions()) {
+                        if (unrestored.contains(partition)) {
+                            continue;
+                        }
+                        PartitionOffsetTracker tracker = trackers.computeIfAbsent(partition, PartitionOffsetTracker::new);
+                        if (tracker.isFailed()) {
+                            continue;
+                        }
+
+                        for (ConsumerRecord<String, byte[]> record : records.records(partition)) {
+                            if (!backpressured) {
+                                tracker.register(record.offset());
+                                if (recordHandler.handle(tracker, record)) {
+                                    tracker.advance(record.offset());
+                                    handledCount++;
+                                    continue;
+                                }
+                                tracker.release(record.offset());
+                            }
+                            // 缓冲区已满：回退到未处理的位置，下次恢复后重新拉取
+                            applyBackpressure();
+                            consumer.seek(partition, record.offset());
+                            break;
+                        }
+                    }
+
+                    updateStats(handledCount);
+                    commitCompletedAsync();
+                }
+                stopped = true;
+            } catch (WakeupException e) {
+                stopped = !running;
+                if (running) {
+                    log.error("消费通道 {} 被意外唤醒", laneId, e);
+                }
+            } catch (Exception e) {
+                log.error("消费通道 {} 异常", laneId, e);
+            } finally {
+                try {
+                    awaitFlush();
+                    commitCompletedSync(trackers.keySet());
+                } catch (Exception e) {
+                    log.warn("消费通道 {} 关闭前提交位移失败", laneId, e);
+                } finally {
+                    closeQuietly();
+                }
+            }
+            return stopped;
+        }
+
+        /**
+         * 关闭消费者并清除分区状态，重建的消费者重新加入消费组后重新分配分区
+         */
+        private void closeQuietly() {
+            try {
+                consumer.close();
+            } catch (Exception e) {
+                log.warn("消费通道 {} 关闭消费者失败", laneId, e);
+            }
+            removeTrackers(new ArrayList<>(trackers.keySet()));
+            unrestored.clear();
+            backpressured = false;
+        }
+
+        /**
+         * 休眠指定时间，引擎停止时提前返回
+         */
+        private void sleepWhileRunning(long millis) {
+            long deadline = System.currentTimeMillis() + millis;
+            long remaining;
+            while (running && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(Math.min(remaining, RESTART_CHECK_MS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 为新分配的分区建立位移跟踪器；精确一次模式下从保存的位置开始消费。
+         * 协作式分配下只包含新增的分区，可能为空
+         */
+        @Override
+        public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+            if (partitions.isEmpty()) {
+                return;
+            }
+            log.info("消费通道 {} 分配到分区: {}", laneId, partitions);
+            partitionsAssigned.add(partitions.size());
+            if (positionStore != null) {
+                unrestored.addAll(partitions);
+                consumer.pause(partitions);
+                nextRestoreAttempt = 0;
+                restorePositions();
+            } else {
+                warmTrackers(partitions);
+            }
+        }
+
+        /**
+         * 分区被回收前等待其已缓冲的数据写库并提交位移，新的消费者从提交的位移继续，不重放已写库的数据。
+         * 等待超时仍未写库的数据由新的消费者重新拉取；精确一次模式下这些数据不再写入。
+         * 协作式分配下只包含需要迁移的分区，可能为空
+         */
+        @Override
+        public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+            if (partitions.isEmpty()) {
+                return;
+            }
+            log.info("消费通道 {} 回收分区: {}", laneId, partitions);
+            long startTime = System.currentTimeMillis();
+            partitionsRevoked.add(partitions.size());
+            awaitWritten(partitions);
+            commitCompletedSync(partitions);
+            removeTrackers(partitions);
+            lastRevokeMillis = System.currentTimeMillis() - startTime;
+        }
+
+        /**
+         * 分区已被其他消费者接管，不能再提交位移
+         */
+        @Override
+        public void onPartitionsLost(Collection<TopicPartition> partitions) {
+            log.warn("消费通道 {} 丢失分区: {}", laneId, partitions);
+            removeTrackers(partitions);
+        }
+
+        private void removeTrackers(Collection<TopicPartition> partitions) {
+            for (TopicPartition partition : partitions) {
+                PartitionOffsetTracker tracker = trackers.remove(partition);
+                if (tracker != null && positionStore != null) {
+                    tracker.fail();
+                }
+            }
+            unrestored.removeAll(partitions);
+        }
+
+        /**
+         * 建立新分配分区的位移跟踪器，以已提交的位移为基准，避免首次提交重复提交相同位移
+         */
+        private void warmTrackers(Collection<TopicPartition> partitions) {
+            Map<TopicPartition, OffsetAndMetadata> committed;
+            try {
+                committed = consumer.committed(new HashSet<>(partitions));
+            } catch (Exception e) {
+                log.warn("消费通道 {} 读取已提交位移失败: {}", laneId, partitions, e);
+                committed = Collections.emptyMap();
+            }
+            for (TopicPartition partition : partitions) {
+                OffsetAndMetadata offset = committed.get(partition);
+                trackers.put(partition, new PartitionOffsetTracker(partition, offset != null ? offset.offset() : -1));
+            }
+        }
+
+        /**
+         * 把有数据写库失败的分区回退到保存的位置（至少一次模式为已提交的位移），
+         * 失败跟踪器下仍在缓冲区中的数据不再写库
+         */
+        private void rewindFailedPartitions() {
+            for (Map.Entry<TopicPartition, PartitionOffsetTracker> entry : trackers.entrySet()) {
+                TopicPartition partition = entry.getKey();
+                if (entry.getValue().isFailed() && unrestored.add(partition)) {
+                    rewinds.increment();
+                    log.warn("消费通道 {} 分区 {} 有数据写库失败，回退到保存的位置重新消费", laneId, partition);
+                    consumer.pause(Collections.singleton(partition));
+                    nextRestoreAttempt = 0;
+                }
+            }
+            if (!unrestored.isEmpty()) {
+                restorePositions();
+            }
+        }
+
+        /**
+         * 读取保存的位置并定位，失败时分区保持暂停，稍后重试。
+         * 没有保存过位置的分区（至少一次模式下为全部分区）从Kafka中提交的位移开始，
+         * 回退的分区没有提交过位移时从头开始
+         */
+        private void restorePositions() {
+            long now = System.currentTimeMillis();
+            if (now < nextRestoreAttempt) {
+                return;
+            }
+            Map<TopicPartition, StreamOffset> positions = Collections.emptyMap();
+            if (positionStore != null) {
+                try {
+                    positions = positionStore.load(unrestored);
+                } catch (Exception e) {
+                    nextRestoreAttempt = now + RESTORE_RETRY_MS;
+                    log.warn("消费通道 {} 读取保存的消费位置失败，{}ms后重试: {}", laneId, RESTORE_RETRY_MS, unrestored, e);
+                    return;
+                }
+            }
+
+            for (TopicPartition partition : unrestored) {
+                boolean rewinding = trackers.containsKey(partition);
+                PartitionOffsetTracker tracker;
+                StreamOffset position = positions.get(partition);
+                long ownerEpoch = position != null ? position.getOwnerEpoch() : 0;
+                if (position != null && position.getNextOffset() >= 0) {
+                    tracker = new PartitionOffsetTracker(partition, -1, ownerEpoch);
+                    consumer.seek(partition, position.getNextOffset());
+                    if (position.getNextIndex() > 0) {
+                        tracker.markPartial(position.getNextOffset(), position.getNextIndex());
+                    }
+                } else {
+                    OffsetAndMetadata committed = consumer.committed(Collections.singleton(partition)).get(partition);
+                    // 至少一次模式以已提交的位移为基准，避免重复提交相同位移
+                    tracker = new PartitionOffsetTracker(partition,
+                            positionStore == null && committed != null ? committed.offset() : -1, ownerEpoch);
+                    position = null;
+                    if (committed != null) {
+                        consumer.seek(partition, committed.offset());
+                    } else if (rewinding) {
+                        consumer.seekToBeginning(Collections.singleton(partition));
+                    }
+                }
+                trackers.put(partition, tracker);
+                log.info("消费通道 {} 分区 {} 从位置 {} 开始消费", laneId, partition,
+                        position != null ? position : "Kafka已提交位移");
+            }
+            if (!backpressured) {
+                consumer.resume(unrestored);
+            }
+            unrestored.clear();
+        }
+
+        /**
+         * 暂停本通道的全部分区，继续poll以维持消费组成员身份
+         */
+        private void applyBackpressure() {
+            if (!backpressured) {
+                backpressured = true;
+                backpressureEvents.increment();
+                log.debug("消费通道 {} 下游缓冲区已满，暂停分区拉取", laneId);
+            }
+            // 暂停期间新分配的分区也需要暂停
+            consumer.pause(consumer.assignment());
+        }
+
+        /**
+         * 下游有空闲容量时恢复被暂停的分区
+         */
+        private void resumeIfPossible() {
+            if (backpressured && resumeCondition.getAsBoolean()) {
+                Set<TopicPartition> paused = new HashSet<>(consumer.paused());
+                paused.removeAll(unrestored);
+                consumer.resume(paused);
+                backpressured = false;
+                log.debug("消费通道 {} 恢复分区拉取", laneId);
+            }
+        }
+
+        /**
+         * 收集指定分区中新的可提交位移
+         */
+        private Map<TopicPartition, OffsetAndMetadata> collectCommittable(Collection<TopicPartition> partitions) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                PartitionOffsetTracker tracker = trackers.get(partition);
+                // 失败的跟踪器中被丢弃的数据也会确认位移，不能提交
+                if (tracker == null || tracker.isFailed()) {
+                    continue;
+                }
+                long offset = tracker.nextCommitOffset();
+                if (offset >= 0) {
+                    offsets.put(partition, new OffsetAndMetadata(offset));
+                }
+            }
+            return offsets;
+        }
+
+        /**
+         * 异步提交已写库数据的位移，失败时回滚以便下次重试
+         */
+        private void commitCompletedAsync() {
+            Map<TopicPartition, OffsetAndMetadata> offsets = collectCommittable(trackers.keySet());
+            if (offsets.isEmpty()) {
+                return;
+            }
+            consumer.commitAsync(offsets, (committed, exception) -> {
+                if (exception != null) {
+                    commitFailures.increment();
+                    log.warn("消费通道 {} 异步提交位移失败: {}", laneId, committed, exception);
+                    rollbackCommitted(offsets);
+                }
+            });
+        }
+
+        /**
+         * 同步提交已写库数据的位移，用于分区回收和关闭前
+         */
+        private void commitCompletedSync(Collection<TopicPartition> partitions) {
+            Map<TopicPartition, OffsetAndMetadata> offsets = collectCommittable(partitions);
+            if (offsets.isEmpty()) {
+                return;
+            }
+            try {
+                try {
+                    consumer.commitSync(offsets);
+                } catch (WakeupException e) {
+                    // 关闭时的wakeup可能尚未被poll消耗，重试一次
+                    consumer.commitSync(offsets);
+                }
+                log.info("消费通道 {} 已提交位移: {}", laneId, offsets);
+            } catch (Exception e) {
+                commitFailures.increment();
+                rollbackCommitted(offsets);
+                log.warn("消费通道 {} 同步提交位移失败", laneId, e);
+            }
+        }
+
+        private void rollbackCommitted(Map<TopicPartition, OffsetAndMetadata> offsets) {
+            for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+                PartitionOffsetTracker tracker = trackers.get(entry.getKey());
+                if (tracker != null) {
+                    tracker.commitFailed(entry.getValue().offset());
+                }
+            }
+        }
+
+        /**
+         * 请求下游刷新并等待指定分区已缓冲的数据写库结束，不等待其他分区的数据
+         */
+        private void awaitWritten(Collection<TopicPartition> partitions) {
+            if (!hasPending(partitions)) {
+                return;
+            }
+            long deadline = System.currentTimeMillis() + DEFAULT_FLUSH_TIMEOUT_MS;
+            CompletableFuture<Void> flush = flushRequester.get();
+            while (hasPending(partitions)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    log.warn("消费通道 {} 等待回收分区的数据写库超时，未写库数据的位移不会提交: {}", laneId, partitions);
+                    return;
+                }
+                try {
+                    flush.get(Math.min(remaining, REVOKE_CHECK_MS), TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    // 继续检查这些分区是否已写完
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    log.warn("消费通道 {} 等待缓冲区刷新失败，未写库数据的位移不会提交", laneId, e);
+                    return;
+                }
+            }
+        }
+
+        private boolean hasPending(Collection<TopicPartition> partitions) {
+            for (TopicPartition partition : partitions) {
+                PartitionOffsetTracker tracker = trackers.get(partition);
+                // 失败跟踪器的位移不会提交，不需要等待
+                if (tracker != null && !tracker.isFailed() && tracker.getPendingCount() > 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * 关闭前等待下游刷新已缓冲的数据，使其位移能在关闭前提交
+         */
+        private void awaitFlush() {
+            long deadline = stopDeadline > 0 ? stopDeadline : System.currentTimeMillis() + DEFAULT_FLUSH_TIMEOUT_MS;
+            long timeoutMillis = Math.max(1, deadline - System.currentTimeMillis());
+            try {
+                flushRequester.get().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("消费通道 {} 等待缓冲区刷新失败，未写库数据的位移不会提交", laneId, e);
+            }
+        }
+
+        /**
+         * 更新吞吐量和分区积压快照
+         */
+        private void updateStats(int polledCount) {
+            long now = System.currentTimeMillis();
+            lastPollTime = now;
+            recordsConsumed.add(polledCount);
+
+            rateWindowCount += polledCount;
+            long elapsed = now - rateWindowStart;
+            if (elapsed >= RATE_WINDOW_MS) {
+                throughput = rateWindowCount * 1000.0 / elapsed;
+                rateWindowStart = now;
+                rateWindowCount = 0;
+
+                Map<TopicPartition, Long> lag = new HashMap<>();
+                for (TopicPartition partition : consumer.assignment()) {
+                    OptionalLong partitionLag = consumer.currentLag(partition);
+                    if (partitionLag.isPresent()) {
+                        lag.put(partition, partitionLag.getAsLong());
+                    }
+                }
+                lagSnapshot = lag;
+                if (lagListener != null) {
+                    lagListener.onLag(laneId, lag);
+                }
+            }
+        }
+
+        Map<String, Object> getStats() {
+            Map<TopicPartition, Long> lag = lagSnapshot;
+            Map<String, Long> partitionLag = new TreeMap<>();
+            long totalLag = 0;
+            for (Map.Entry<TopicPartition, Long> entry : lag.entrySet()) {
+                partitionLag.put(entry.getKey().toString(), entry.getValue());
+                totalLag += entry.getValue();
+            }
+
+            Map<String, Long> committedOffsets = new TreeMap<>();
+            long pendingOffsets = 0;
+            for (PartitionOffsetTracker tracker : trackers.values()) {
+                committedOffsets.put(tracker.getPartition().toString(), tracker.getCommittedOffset());
+                pendingOffsets += tracker.getPendingCount();
+            }
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("laneId", laneId);
+            stats.put("alive", alive);
+            stats.put("failures", failures.sum());
+            stats.put("restarts", restarts.sum());
+            stats.put("recordsConsumed", recordsConsumed.sum());
+            stats.put("throughput", throughput);
+            stats.put("backpressured", backpressured);
+            stats.put("backpressureEvents", backpressureEvents.sum());
+            stats.put("totalLag", totalLag);
+            stats.put("partitionLag", partitionLag);
+            stats.put("pendingOffsets", pendingOffsets);
+            stats.put("committedOffsets", committedOffsets);
+            stats.put("commitFailures", commitFailures.sum());
+            stats.put("rewinds", rewinds.sum());
+            stats.put("partitionsAssigned", partitionsAssigned.sum());
+            stats.put("partitionsRevoked", partitionsRevoked.sum());
+            stats.put("lastRevokeMillis", lastRevokeMillis);
+            stats.put("lastPollTime", lastPollTime);
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.common.DeadLetterHeaders;
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.kafka.SensorDataCodec;
+import com.bdir.dps.kafka.SensorDataPartitioner;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Headers;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 死信发送器
+ * 消息体为JSON格式的原始传感器数据，附带内容类型和传感器类型消息头，失败信息放在死信消息头中，便于按原始主题重放。
+ * 死信是至少一次投递，同一条数据可能重复出现，处理死信时按原始主题、分区和位移消息头去重
+ */
+class SensorDataDeadLetterPublisher implements SensorDataRetryHandler.DeadLetterSink {
+
+    /**
+     * 等待死信发送确认的超时时间（秒）
+     */
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    /**
+     * 异常信息最大长度
+     */
+    private static final int MAX_MESSAGE_LENGTH = 1000;
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final String deadLetterTopic;
+
+    SensorDataDeadLetterPublisher(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper,
+                                  String deadLetterTopic) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.objectMapper = objectMapper;
+        this.deadLetterTopic = deadLetterTopic;
+    }
+
+    @Override
+    public void publish(SensorData data, TopicPartition source, long offset, int attempts, Exception cause)
+            throws Exception {
+        String key = data.getRobotId() + "#" + data.getSensorId();
+        ProducerRecord<String, String> record = new ProducerRecord<>(deadLetterTopic, key,
+                objectMapper.writeValueAsString(data));
+
+        Headers headers = record.headers();
+        addHeader(headers, SensorDataCodec.CONTENT_TYPE_HEADER, SensorDataCodec.CONTENT_TYPE_JSON);
+        if (data.getSensorType() != null) {
+            addHeader(headers, SensorDataPartitioner.SENSOR_TYPE_HEADER, data.getSensorType());
+        }
+        if (source != null) {
+            addHeader(headers, DeadLetterHeaders.ORIGINAL_TOPIC, source.topic());
+            addHeader(headers, DeadLetterHeaders.ORIGINAL_PARTITION, String.valueOf(source.partition()));
+            addHeader(headers, DeadLetterHeaders.ORIGINAL_OFFSET, String.valueOf(offset));
+        }
+        addHeader(headers, DeadLetterHeaders.EXCEPTION_CLASS, cause.getClass().getName());
+        addHeader(headers, DeadLetterHeaders.EXCEPTION_MESSAGE, truncate(String.valueOf(cause.getMessage())));
+        addHeader(headers, DeadLetterHeaders.ATTEMPTS, String.valueOf(attempts));
+        addHeader(headers, DeadLetterHeaders.FAILED_AT, Instant.now().toString());
+
+        kafkaTemplate.send(record).get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static void addHeader(Headers headers, String name, String value) {
+        headers.add(name, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String truncate(String message) {
+        return message.length() > MAX_MESSAGE_LENGTH ? message.substring(0, MAX_MESSAGE_LENGTH) : message;
+    }
+}
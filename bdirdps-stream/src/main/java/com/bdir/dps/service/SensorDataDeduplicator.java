@@ -0,0 +1,278 @@
+package com.bdir.dps.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * 时间窗口去重器
+ * 由若干代布隆过滤器轮转组成：写库成功的数据ID写入当前代，查询覆盖全部代，
+ * 每隔 窗口/(代数-1) 淘汰最老的一代，因此至少记住最近一个窗口内的数据ID。
+ * 内存在构造时按窗口内预计数据量和误判率预算一次性分配，不随数据量增长；
+ * 当前代写满时提前轮转以保证误判率，此时实际窗口会缩短。
+ * 数据ID在写库成功后才记录，重复数据与首次出现的数据同时在缓冲区中时不会被识别
+ */
+@Slf4j
+class SensorDataDeduplicator {
+
+    /**
+     * 过滤器代数
+     */
+    private static final int GENERATIONS = 4;
+
+    private static final int MAX_HASH_FUNCTIONS = 16;
+
+    /**
+     * 单代布隆过滤器，位数组为2的幂
+     */
+    private static final class Generation {
+        private final AtomicLongArray bits;
+        private final AtomicLong insertions = new AtomicLong(0);
+
+        private Generation(int words) {
+            this.bits = new AtomicLongArray(words);
+        }
+
+        private void clear() {
+            for (int i = 0; i < bits.length(); i++) {
+                bits.set(i, 0L);
+            }
+            insertions.set(0);
+        }
+    }
+
+    private final long windowMillis;
+    private final long sliceMillis;
+    private final long capacityPerGeneration;
+    private final double falsePositiveRate;
+    private final int hashFunctions;
+    private final long bitMask;
+    private final LongSupplier clock;
+
+    /**
+     * 按写入先后排列的各代过滤器，current指向当前写入的一代
+     */
+    private final Generation[] generations = new Generation[GENERATIONS];
+    private volatile int current = 0;
+    private volatile long rotateAt;
+    private final ReentrantLock rotateLock = new ReentrantLock();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder rotations = new LongAdder();
+    private final LongAdder capacityRotations = new LongAdder();
+
+    /**
+     * @param windowMillis          去重时间窗口
+     * @param expectedIdsPerWindow  窗口内预计的数据量
+     * @param falsePositiveRate     误判率预算（新数据被误判为重复的概率）
+     */
+    SensorDataDeduplicator(long windowMillis, long expectedIdsPerWindow, double falsePositiveRate) {
+        this(windowMillis, expectedIdsPerWindow, falsePositiveRate, System::currentTimeMillis);
+    }
+
+    SensorDataDeduplicator(long windowMillis, long expectedIdsPerWindow, double falsePositiveRate, LongSupplier clock) {
+        if (windowMillis <= 0 || expectedIdsPerWindow <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("去重参数无效: window=" + windowMillis
+                    + ", expectedIds=" + expectedIdsPerWindow + ", falsePositiveRate=" + falsePositiveRate);
+        }
+        this.windowMillis = windowMillis;
+        this.sliceMillis = Math.max(1, windowMillis / (GENERATIONS - 1));
+        this.capacityPerGeneration = Math.max(1, (expectedIdsPerWindow + GENERATIONS - 2) / (GENERATIONS - 1));
+        this.falsePositiveRate = falsePositiveRate;
+        this.clock = clock;
+
+        // 查询时检查全部代，单代误判率取预算的1/代数
+        double generationRate = falsePositiveRate / GENERATIONS;
+        double ln2 = Math.log(2);
+        long requiredBits = (long) Math.ceil(-capacityPerGeneration * Math.log(generationRate) / (ln2 * ln2));
+        long bitCount = Math.max(64, Long.highestOneBit(requiredBits - 1) << 1);
+        if (bitCount > (long) Integer.MAX_VALUE * 64) {
+            throw new IllegalArgumentException("去重过滤器过大，请降低预计数据量或放宽误判率");
+        }
+        this.bitMask = bitCount - 1;
+        this.hashFunctions = (int) Math.max(1, Math.min(MAX_HASH_FUNCTIONS,
+                Math.round(-Math.log(generationRate) / ln2)));
+
+        for (int i = 0; i < GENERATIONS; i++) {
+            generations[i] = new Generation((int) (bitCount / 64));
+        }
+        this.rotateAt = clock.getAsLong() + sliceMillis;
+
+        log.info("去重器已初始化，窗口: {}ms, 窗口内预计数据量: {}, 误判率预算: {}, 哈希函数: {}, 内存: {}KB",
+                windowMillis, expectedIdsPerWindow, falsePositiveRate, hashFunctions, getMemoryBytes() / 1024);
+    }
+
+    /**
+     * 判断数据ID是否在窗口内出现过，只查询不记录；
+     * 数据写库成功后才通过{@link #record(String)}记录，写库失败后重新消费的数据不会被误判为重复
+     */
+    boolean isDuplicate(String dataId) {
+        rotateIfNeeded();
+
+        // 双重哈希生成k个位置，h2取奇数保证在2的幂长度的位数组上不提前循环
+        long h1 = hash64(dataId);
+        long h2 = Long.rotateLeft(h1, 32) | 1;
+
+        int currentIndex = current;
+        boolean duplicate = false;
+        for (int g = 0; g < GENERATIONS && !duplicate; g++) {
+            duplicate = contains(generations[(currentIndex - g + GENERATIONS) % GENERATIONS], h1, h2);
+        }
+
+        if (duplicate) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return duplicate;
+    }
+
+    /**
+     * 记录已持久化的数据ID，写入当前代
+     */
+    void record(String dataId) {
+        rotateIfNeeded();
+
+        long h1 = hash64(dataId);
+        long h2 = Long.rotateLeft(h1, 32) | 1;
+
+        // 较老的代中已有时不再写入，窗口从首次写库算起
+        int currentIndex = current;
+        for (int g = 1; g < GENERATIONS; g++) {
+            if (contains(generations[(currentIndex - g + GENERATIONS) % GENERATIONS], h1, h2)) {
+                return;
+            }
+        }
+
+        Generation target = generations[currentIndex];
+        boolean inserted = false;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            if (!setBit(target.bits, bit)) {
+                inserted = true;
+            }
+        }
+        if (inserted) {
+            target.insertions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录批次中已持久化的数据ID，在批次写库（或进入死信主题）并确认位移后调用。
+     * 来源分区已失败的数据可能未持久化，会从提交的位移重新消费，不记录
+     */
+    void recordPersisted(SensorDataBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            PartitionOffsetTracker tracker = batch.getTracker(i);
+            if (tracker == null || !tracker.isFailed()) {
+                record(batch.getRecords().get(i).getDataId());
+            }
+        }
+    }
+
+    private boolean contains(Generation generation, long h1, long h2) {
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = (h1 + i * h2) & bitMask;
+            if ((generation.bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 置位
+     *
+     * @return 该位原本已置位时返回true
+     */
+    private static boolean setBit(AtomicLongArray bits, long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        long value = bits.get(word);
+        while ((value & mask) == 0) {
+            if (bits.compareAndSet(word, value, value | mask)) {
+                return false;
+            }
+            value = bits.get(word);
+        }
+        return true;
+    }
+
+    /**
+     * 到达时间片或当前代写满时轮转，清空最老的一代作为新的当前代
+     */
+    private void rotateIfNeeded() {
+        long now = clock.getAsLong();
+        boolean expired = now >= rotateAt;
+        boolean full = generations[current].insertions.get() >= capacityPerGeneration;
+        if ((!expired && !full) || !rotateLock.tryLock()) {
+            return;
+        }
+        try {
+            expired = now >= rotateAt;
+            full = generations[current].insertions.get() >= capacityPerGeneration;
+            if (!expired && !full) {
+                return;
+            }
+
+            int next = (current + 1) % GENERATIONS;
+            generations[next].clear();
+            current = next;
+            rotateAt = now + sliceMillis;
+
+            rotations.increment();
+            if (!expired) {
+                capacityRotations.increment();
+                log.warn("去重过滤器当前代已写满，提前轮转，实际去重窗口将小于 {}ms", windowMillis);
+            }
+        } finally {
+            rotateLock.unlock();
+        }
+    }
+
+    /**
+     * 64位FNV-1a哈希，再经过混合函数打散
+     */
+    static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    long getMemoryBytes() {
+        return (bitMask + 1) / 8 * GENERATIONS;
+    }
+
+    Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0);
+        stats.put("rotations", rotations.sum());
+        stats.put("capacityRotations", capacityRotations.sum());
+        stats.put("windowMillis", windowMillis);
+        stats.put("falsePositiveRate", falsePositiveRate);
+        stats.put("capacityPerGeneration", capacityPerGeneration);
+        stats.put("currentGenerationInsertions", generations[current].insertions.get());
+        stats.put("memoryBytes", getMemoryBytes());
+        return stats;
+    }
+}
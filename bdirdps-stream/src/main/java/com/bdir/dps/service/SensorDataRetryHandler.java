@@ -0,0 +1,220 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.mapper.MySQLMapper.StreamFencedException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+
+import java.sql.SQLTransientException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 批次写库重试处理器
+ * 瞬时故障（连接中断、锁超时等）按指数退避重试整个批次；
+ * 数据本身导致的失败对批次二分定位问题数据，正常数据照常写入，
+ * 单条仍失败的数据发送到死信主题。写入或进入死信主题的数据才确认位移
+ */
+@Slf4j
+class SensorDataRetryHandler {
+
+    /**
+     * 退避间隔上限（毫秒）
+     */
+    private static final long MAX_BACKOFF_MS = 30000;
+
+    /**
+     * 批量写库
+     */
+    interface BatchWriter {
+        void write(List<SensorData> records);
+    }
+
+    /**
+     * 按批次范围写库，可读取每条数据的来源位移
+     */
+    interface RangeWriter {
+        void write(SensorDataBatch batch, int from, int to);
+    }
+
+    /**
+     * 死信发送端，发送成功后返回
+     */
+    interface DeadLetterSink {
+        void publish(SensorData data, TopicPartition source, long offset, int attempts, Exception cause) throws Exception;
+    }
+
+    private final RangeWriter writer;
+    private final DeadLetterSink deadLetterSink;
+    private final int maxRetries;
+    private final long retryIntervalMillis;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder bisections = new LongAdder();
+    private final LongAdder deadLettered = new LongAdder();
+    private final LongAdder deadLetterFailures = new LongAdder();
+    private final LongAdder abortedBatches = new LongAdder();
+
+    SensorDataRetryHandler(BatchWriter writer, DeadLetterSink deadLetterSink, int maxRetries, long retryIntervalMillis) {
+        this((batch, from, to) -> writer.write(batch.getRecords().subList(from, to)),
+                deadLetterSink, maxRetries, retryIntervalMillis);
+    }
+
+    SensorDataRetryHandler(RangeWriter writer, DeadLetterSink deadLetterSink, int maxRetries,
+                           long retryIntervalMillis) {
+        this.writer = writer;
+        this.deadLetterSink = deadLetterSink;
+        this.maxRetries = Math.max(0, maxRetries);
+        this.retryIntervalMillis = Math.max(0, retryIntervalMillis);
+    }
+
+    /**
+     * 写入一个批次
+     *
+     * @throws DataProcessingException 瞬时故障重试耗尽，剩余数据的位移保持未提交
+     */
+    void write(SensorDataBatch batch) {
+        try {
+            writeRange(batch, 0, batch.size(), 0);
+        } catch (DataProcessingException e) {
+            abortedBatches.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * 写入批次中[from, to)范围的数据，失败时二分
+     *
+     * @param failedAttempts 包含这些数据的写入已失败的次数
+     */
+    private void writeRange(SensorDataBatch batch, int from, int to, int failedAttempts) {
+        Exception failure = writeWithRetry(batch, from, to);
+        if (failure == null) {
+            batch.acknowledge(from, to);
+            return;
+        }
+
+        if (to - from == 1) {
+            deadLetter(batch, from, failedAttempts + 1, failure);
+            return;
+        }
+
+        bisections.increment();
+        int mid = (from + to) >>> 1;
+        log.debug("批次写入失败，二分定位问题数据: [{}, {}) -> [{}, {}) + [{}, {})",
+                from, to, from, mid, mid, to);
+        writeRange(batch, from, mid, failedAttempts + 1);
+        writeRange(batch, mid, to, failedAttempts + 1);
+    }
+
+    /**
+     * 写入数据，瞬时故障时按指数退避重试
+     *
+     * @return 成功返回null，非瞬时故障返回异常
+     */
+    private Exception writeWithRetry(SensorDataBatch batch, int from, int to) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                writer.write(batch, from, to);
+                return null;
+            } catch (Exception e) {
+                if (isFenced(e)) {
+                    // 分区已被重新认领，整批放弃，由新的持有者从保存的位置重新消费
+                    throw new DataProcessingException("分区已被重新认领，放弃写入，数据量: " + (to - from), e);
+                }
+                if (!isTransient(e)) {
+                    return e;
+                }
+                if (attempt >= maxRetries) {
+                    throw new DataProcessingException("写库重试" + maxRetries + "次后仍失败，数据量: " + (to - from), e);
+                }
+
+                long backoff = backoffMillis(attempt);
+                retries.increment();
+                log.warn("写库出现瞬时故障，{}ms后第{}次重试，数据量: {}", backoff, attempt + 1, to - from, e);
+                sleep(backoff);
+            }
+        }
+    }
+
+    /**
+     * 发送单条问题数据到死信主题，成功后确认位移；发送失败时位移保持未提交，
+     * 并将来源分区标记为失败，该分区回退到已提交（精确一次模式为保存）的位置重新消费。
+     * 死信在任何模式下都是至少一次：发送死信与保存位置不在同一事务中，精确一次模式下
+     * 保存的位置之后进入死信主题的数据在回退或重平衡后重新消费时会再次发送
+     */
+    private void deadLetter(SensorDataBatch batch, int index, int attempts, Exception cause) {
+        SensorData data = batch.getRecords().get(index);
+        PartitionOffsetTracker tracker = batch.getTracker(index);
+        TopicPartition source = tracker != null ? tracker.getPartition() : null;
+        try {
+            deadLetterSink.publish(data, source, batch.getOffset(index), attempts, cause);
+            batch.acknowledge(index, index + 1);
+            deadLettered.increment();
+            log.warn("数据写库失败，已发送到死信主题: {}, 原因: {}", data.getDataId(), cause.toString());
+        } catch (Exception e) {
+            deadLetterFailures.increment();
+            if (tracker != null) {
+                tracker.fail();
+            }
+            log.error("发送死信数据失败，位移保持未提交: {}", data.getDataId(), e);
+        }
+    }
+
+    long backoffMillis(int attempt) {
+        long backoff = retryIntervalMillis << Math.min(attempt, 20);
+        return Math.min(backoff, MAX_BACKOFF_MS);
+    }
+
+    /**
+     * 判断是否因分区已被重新认领而被拒绝写入，不能重试也不能进入死信主题
+     */
+    static boolean isFenced(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof StreamFencedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 判断是否为可重试的瞬时故障
+     */
+    static boolean isTransient(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof TransientDataAccessException
+                    || cause instanceof RecoverableDataAccessException
+                    || cause instanceof DataAccessResourceFailureException
+                    || cause instanceof SQLTransientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataProcessingException("重试等待被中断", e);
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("retries", retries.sum());
+        stats.put("bisections", bisections.sum());
+        stats.put("deadLettered", deadLettered.sum());
+        stats.put("deadLetterFailures", deadLetterFailures.sum());
+        stats.put("abortedBatches", abortedBatches.sum());
+        return stats;
+    }
+}
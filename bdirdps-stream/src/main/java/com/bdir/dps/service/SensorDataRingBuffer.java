@@ -0,0 +1,153 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 传感器数据环形缓冲区
+ * 有界、预分配的多生产者单消费者队列：多个消费通道线程写入，单个刷新线程读取。
+ * 写入只需一次CAS，读取无锁且不复制整个缓冲区
+ */
+class SensorDataRingBuffer {
+
+    /**
+     * 预分配的槽位，生产者占位后写入字段，消费者读取后清空引用
+     */
+    private static final class Slot {
+        private SensorData data;
+        private PartitionOffsetTracker tracker;
+        private long offset;
+        private int nextIndex;
+        private long bufferedNanos;
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final Slot[] slots;
+
+    /**
+     * 槽位序号：等于写入位置时可写，等于写入位置+1时可读
+     */
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong tail = new AtomicLong(0);
+
+    // 仅刷新线程写入，其他线程只读
+    private volatile long head = 0;
+
+    SensorDataRingBuffer(int requestedCapacity) {
+        this.capacity = roundUpToPowerOfTwo(requestedCapacity);
+        this.mask = capacity - 1;
+        this.slots = new Slot[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * 写入一条数据，该数据是来源消息的最后一条
+     *
+     * @param tracker 来源分区的位移跟踪器，写库成功后用于确认offset
+     * @return 缓冲区已满时返回false，由调用方施加背压
+     */
+    boolean offer(SensorData data, PartitionOffsetTracker tracker, long offset) {
+        return offer(data, tracker, offset, 0);
+    }
+
+    /**
+     * 写入一条数据
+     *
+     * @param tracker   来源分区的位移跟踪器，写库成功后用于确认offset
+     * @param nextIndex 来源封包消息中下一条读数的序号，该数据是消息的最后一条时为0
+     * @return 缓冲区已满时返回false，由调用方施加背压
+     */
+    boolean offer(SensorData data, PartitionOffsetTracker tracker, long offset, int nextIndex) {
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) (position & mask);
+            long diff = sequences.get(index) - position;
+            if (diff == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                return false;
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+
+        Slot slot = slots[index];
+        slot.data = data;
+        slot.tracker = tracker;
+        slot.offset = offset;
+        slot.nextIndex = nextIndex;
+        slot.bufferedNanos = System.nanoTime();
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * 取出已发布的数据，只能由单个消费线程调用
+     *
+     * @return 本次取出的条数
+     */
+    int drainTo(SensorDataBatch target, int maxElements) {
+        long position = head;
+        int drained = 0;
+        while (drained < maxElements) {
+            int index = (int) (position & mask);
+            if (sequences.get(index) != position + 1) {
+                break;
+            }
+            Slot slot = slots[index];
+            target.add(slot.data, slot.tracker, slot.offset, slot.nextIndex, slot.bufferedNanos);
+            slot.data = null;
+            slot.tracker = null;
+            sequences.lazySet(index, position + capacity);
+            position++;
+            drained++;
+        }
+        head = position;
+        return drained;
+    }
+
+    /**
+     * 已写入（含正在写入）的位置，用于刷新屏障
+     */
+    long producerPosition() {
+        return tail.get();
+    }
+
+    /**
+     * 已取出的位置
+     */
+    long consumerPosition() {
+        return head;
+    }
+
+    int size() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        if (value <= 2) {
+            return 2;
+        }
+        return Integer.highestOneBit(value - 1) << 1;
+    }
+}
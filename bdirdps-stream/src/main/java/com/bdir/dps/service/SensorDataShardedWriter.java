@@ -0,0 +1,252 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分片并行写库器
+ * 按robot_id哈希把批次拆分到K个写库线程，每个线程独立占用连接池中的连接写入，
+ * 同一机器人的数据总在同一线程内按顺序写入。每个分片的待写批次数有上限，
+ * 写库跟不上时阻塞刷新线程，进而由环形缓冲区对消费通道施加背压。
+ * 位移由各子批次写库成功后分别确认，位移跟踪器保证乱序完成时仍只提交连续的位移。
+ * 按分区分片时同一分区的数据总在同一线程内按消费顺序写入，用于精确一次模式
+ */
+@Slf4j
+class SensorDataShardedWriter implements SensorDataBufferDrainer.BatchSink {
+
+    /**
+     * 单个子批次的写库逻辑，在写库线程内调用
+     */
+    interface ShardSink {
+        void write(SensorDataBatch batch);
+    }
+
+    /**
+     * 写库任务：子批次或刷新屏障
+     */
+    private static final class WriteTask {
+        private static final WriteTask STOP = new WriteTask(null, null);
+
+        private final SensorDataBatch batch;
+        private final CompletableFuture<Void> barrier;
+
+        private WriteTask(SensorDataBatch batch, CompletableFuture<Void> barrier) {
+            this.batch = batch;
+            this.barrier = barrier;
+        }
+    }
+
+    private final ShardSink shardSink;
+    private final Shard[] shards;
+    private final boolean partitionAffinity;
+
+    SensorDataShardedWriter(ShardSink shardSink, int writerThreads, int maxInFlightBatches) {
+        this(shardSink, writerThreads, maxInFlightBatches, false);
+    }
+
+    /**
+     * @param partitionAffinity 为true时按来源分区分片，否则按robot_id分片
+     */
+    SensorDataShardedWriter(ShardSink shardSink, int writerThreads, int maxInFlightBatches,
+                            boolean partitionAffinity) {
+        this.shardSink = shardSink;
+        this.partitionAffinity = partitionAffinity;
+        this.shards = new Shard[Math.max(1, writerThreads)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(i, Math.max(1, maxInFlightBatches));
+        }
+    }
+
+    /**
+     * 启动写库线程
+     */
+    void start() {
+        for (Shard shard : shards) {
+            shard.thread.start();
+        }
+        log.info("分片写库线程已启动，分片数: {}, 每分片最大待写批次: {}",
+                shards.length, shards[0].queue.remainingCapacity());
+    }
+
+    /**
+     * 按robot_id或来源分区拆分批次并提交到各分片，分片队列已满时阻塞。
+     * 传入的批次由刷新线程复用，这里复制到新的子批次中
+     */
+    @Override
+    public void flush(SensorDataBatch batch) {
+        int expectedPerShard = batch.size() / shards.length + 1;
+        SensorDataBatch[] shardBatches = new SensorDataBatch[shards.length];
+        List<SensorData> records = batch.getRecords();
+        for (int i = 0; i < records.size(); i++) {
+            SensorData data = records.get(i);
+            PartitionOffsetTracker tracker = batch.getTracker(i);
+            int shard = partitionAffinity && tracker != null
+                    ? shardOf(tracker.getPartition().hashCode())
+                    : shardOf(data.getRobotId());
+            if (shardBatches[shard] == null) {
+                shardBatches[shard] = new SensorDataBatch(expectedPerShard);
+            }
+            shardBatches[shard].add(data, tracker, batch.getOffset(i), batch.getNextIndex(i),
+                    batch.getBufferedNanos(i));
+        }
+
+        for (int i = 0; i < shards.length; i++) {
+            if (shardBatches[i] != null) {
+                shards[i].enqueue(new WriteTask(shardBatches[i], null));
+            }
+        }
+    }
+
+    /**
+     * 刷新屏障：此前提交的全部子批次写库结束后完成
+     */
+    CompletableFuture<Void> barrier() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            shards[i].enqueue(new WriteTask(null, future));
+            futures[i] = future;
+        }
+        return CompletableFuture.allOf(futures);
+    }
+
+    /**
+     * 停止写库线程，队列中剩余的子批次写完后退出
+     */
+    void stop(long timeoutMillis) {
+        for (Shard shard : shards) {
+            shard.enqueue(WriteTask.STOP);
+        }
+
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.info("分片写库线程已停止");
+    }
+
+    int shardOf(String robotId) {
+        if (robotId == null) {
+            return 0;
+        }
+        return shardOf(robotId.hashCode());
+    }
+
+    private int shardOf(int hash) {
+        hash ^= hash >>> 16;
+        return (hash & Integer.MAX_VALUE) % shards.length;
+    }
+
+    List<Map<String, Object>> getShardStats() {
+        List<Map<String, Object>> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(shard.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * 单个写库分片
+     */
+    private final class Shard implements Runnable {
+        private final int shardId;
+        private final BlockingQueue<WriteTask> queue;
+        private final Thread thread;
+
+        private final LongAdder batchesWritten = new LongAdder();
+        private final LongAdder rowsWritten = new LongAdder();
+        private final LongAdder writeNanos = new LongAdder();
+        private final LongAdder blockedSubmits = new LongAdder();
+        private volatile boolean busy = false;
+
+        private Shard(int shardId, int maxInFlightBatches) {
+            this.shardId = shardId;
+            this.queue = new ArrayBlockingQueue<>(maxInFlightBatches);
+            this.thread = new Thread(this, "sensor-db-writer-" + shardId);
+        }
+
+        private void enqueue(WriteTask task) {
+            if (queue.offer(task)) {
+                return;
+            }
+            blockedSubmits.increment();
+            try {
+                queue.put(task);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataProcessingException("提交写库任务被中断", e);
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                WriteTask task;
+                try {
+                    task = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                if (task == WriteTask.STOP) {
+                    break;
+                }
+                if (task.barrier != null) {
+                    task.barrier.complete(null);
+                    continue;
+                }
+
+                busy = true;
+                long startTime = System.nanoTime();
+                try {
+                    shardSink.write(task.batch);
+                } catch (Exception e) {
+                    log.error("写库分片 {} 写入失败，数据量: {}", shardId, task.batch.size(), e);
+                } finally {
+                    busy = false;
+                    batchesWritten.increment();
+                    rowsWritten.add(task.batch.size());
+                    writeNanos.add(System.nanoTime() - startTime);
+                }
+            }
+
+            // 完成退出后仍在等待的屏障
+            WriteTask task;
+            while ((task = queue.poll()) != null) {
+                if (task.barrier != null) {
+                    task.barrier.complete(null);
+                }
+            }
+        }
+
+        private Map<String, Object> getStats() {
+            long rows = rowsWritten.sum();
+            long nanos = writeNanos.sum();
+
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("shardId", shardId);
+            stats.put("queuedBatches", queue.size());
+            stats.put("busy", busy);
+            stats.put("batchesWritten", batchesWritten.sum());
+            stats.put("rowsWritten", rows);
+            stats.put("rowsPerSecond", nanos > 0 ? rows * 1_000_000_000.0 / nanos : 0);
+            stats.put("blockedSubmits", blockedSubmits.sum());
+            return stats;
+        }
+    }
+}
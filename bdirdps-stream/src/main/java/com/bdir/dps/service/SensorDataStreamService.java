@@ -1,24 +1,37 @@
 package com.bdir.dps.service;
 
+import com.bdir.dps.common.DeadLetterHeaders;
+import com.bdir.dps.config.KafkaConsumerConfig.SensorDataConsumerFactory;
+import com.bdir.dps.config.KafkaDeliveryAuditor;
+import com.bdir.dps.config.KafkaProducerMonitor;
 import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.kafka.SensorDataCodec;
+import com.bdir.dps.kafka.SensorDataDeserializer;
+import com.bdir.dps.kafka.SensorDataEnvelopeCodec;
 import com.bdir.dps.mapper.MySQLMapper;
+import com.bdir.dps.mapper.MySQLMapper.StreamOffset;
+import com.bdir.dps.validation.SensorDataRuleEngine;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
-import org.apache.kafka.clients.consumer.ConsumerRecords;
-import org.apache.kafka.clients.consumer.KafkaConsumer;
-import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PostConstruct;
-import javax.annotation.PreDestroy;
-import java.time.Duration;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 传感器数据流处理服务
@@ -29,7 +42,10 @@ import java.util.concurrent.*;
 public class SensorDataStreamService {
 
     @Autowired
-    private KafkaConsumer<String, String> kafkaConsumer;
+    private SensorDataConsumerFactory consumerFactory;
+
+    @Autowired
+    private StreamProcessingConfig processingConfig;
 
     @Autowired
     private MySQLMapper mysqlMapper;
@@ -37,21 +53,44 @@ public class SensorDataStreamService {
     @Autowired
     private ObjectMapper objectMapper;
 
-    @Value("${spring.kafka.consumer.sensor-topics:sensor-data-temperature,sensor-data-humidity,sensor-data-pressure}")
-    private String[] sensorTopics;
+    @Autowired
+    @Qualifier("reliableKafkaTemplate")
+    private KafkaTemplate<String, String> kafkaTemplate;
 
-    @Value("${stream.processing.batch-size:100}")
-    private int batchSize;
+    @Autowired
+    private KafkaProducerMonitor kafkaProducerMonitor;
 
-    @Value("${stream.processing.flush-interval:5000}")
-    private long flushInterval;
+    @Autowired
+    private KafkaDeliveryAuditor<String, String> kafkaDeliveryAuditor;
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(3);
-    private final ScheduledExecutorService scheduledExecutor = Executors.newScheduledThreadPool(1);
+    @Autowired
+    private SensorDataRuleEngine ruleEngine;
 
+    /**
+     * 管道指标的注册表，没有MeterRegistry Bean时使用全局注册表
+     */
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    /**
+     * 订阅的传感器数据主题，接入端使用单主题模式时配置为sensor-data
+     */
+    @Value("${spring.kafka.consumer.sensor-topics:sensor-data-temperature,sensor-data-humidity,sensor-data-pressure}")
+    private String[] sensorTopics;
+
+    private SensorDataConsumerEngine consumerEngine;
+
+    /**
+     * 从封包消息中展开的读数
+     */
+    private final LongAdder envelopeReadings = new LongAdder();
+    private SensorDataRingBuffer ringBuffer;
+    private SensorDataBufferDrainer bufferDrainer;
+    private SensorDataShardedWriter shardedWriter;
+    private SensorDataRetryHandler retryHandler;
+    private SensorDataDeduplicator deduplicator;
+    private StreamProcessingMonitor monitor;
     private volatile boolean running = false;
-    private final List<SensorData> dataBuffer = new ArrayList<>();
-    private final ReentrantLock bufferLock = new ReentrantLock();
 
     /**
      * 初始化服务
@@ -60,197 +99,266 @@ public class SensorDataStreamService {
     public void init() {
         log.info("初始化传感器数据流处理服务");
 
-        // 订阅主题
-        kafkaConsumer.subscribe(Arrays.asList(sensorTopics));
-        log.info("已订阅Kafka主题: {}", Arrays.toString(sensorTopics));
+        running = true;
 
-        // 启动消费线程
-        startConsumerThread();
+        // 按时间窗口去重，内存按窗口内预计数据量和误判率预算固定分配；
+        // 精确一次模式下重启不会重复写入，不需要去重
+        boolean exactlyOnce = processingConfig.isExactlyOnce();
+        if (processingConfig.isDedupEnabled() && !exactlyOnce) {
+            deduplicator = new SensorDataDeduplicator(processingConfig.getDedupWindow(),
+                    processingConfig.getDedupExpectedIds(), processingConfig.getDedupFalsePositiveRate());
+        }
 
-        // 启动定时刷新任务
-        startScheduledFlush();
+        // 写库失败时按指数退避重试，问题数据二分定位后发送到死信主题
+        SensorDataDeadLetterPublisher deadLetterPublisher =
+                new SensorDataDeadLetterPublisher(kafkaTemplate, objectMapper, processingConfig.getDeadLetterTopic());
+        if (exactlyOnce) {
+            // 数据和消费位置在同一事务中写入
+            retryHandler = new SensorDataRetryHandler(this::writeWithPositions, deadLetterPublisher,
+                    processingConfig.getMaxRetries(), processingConfig.getRetryInterval());
+        } else {
+            retryHandler = new SensorDataRetryHandler(this::writeRecords, deadLetterPublisher,
+                    processingConfig.getMaxRetries(), processingConfig.getRetryInterval());
+        }
 
-        running = true;
+        // 启动分片写库线程，按robot_id哈希并行写库；精确一次模式下按分区分片，同一分区的数据按消费顺序写入
+        shardedWriter = new SensorDataShardedWriter(this::writeBatch,
+                processingConfig.getWriterThreads(), processingConfig.getWriterMaxInFlight(), exactlyOnce);
+        shardedWriter.start();
+
+        // 启动缓冲区刷新线程，按批量大小或刷新间隔把批次交给写库线程
+        ringBuffer = new SensorDataRingBuffer(processingConfig.getBufferCapacity());
+        monitor = new StreamProcessingMonitor(meterRegistry.getIfAvailable(() -> Metrics.globalRegistry), ringBuffer);
+        bufferDrainer = new SensorDataBufferDrainer(ringBuffer, batch -> {
+            monitor.recordFlush(batch.size());
+            shardedWriter.flush(batch);
+        }, processingConfig.getBatchSize(), processingConfig.getFlushInterval());
+        bufferDrainer.start();
+        log.info("缓冲区容量: {}, 刷新间隔: {}ms", ringBuffer.capacity(), processingConfig.getFlushInterval());
+
+        // 启动分区并行消费引擎，缓冲区回落到一半以下时恢复被暂停的分区，
+        // 位移在对应数据写库成功后才提交；精确一次模式下分区分配后从MySQL中保存的位置继续
+        consumerEngine = new SensorDataConsumerEngine(consumerFactory, Arrays.asList(sensorTopics),
+                this::processRecord,
+                () -> ringBuffer.size() <= ringBuffer.capacity() / 2,
+                this::requestFlush,
+                exactlyOnce ? this::loadPositions : null);
+        consumerEngine.setLagListener(monitor);
+        consumerEngine.start(processingConfig.getConsumerThreads());
     }
 
     /**
-     * 启动Kafka消费线程
+     * 处理单条Kafka消息，在消费通道线程内执行
+     * 无效消息和窗口内的重复消息直接跳过，其位移随后续消息一起提交。
+     * 缓冲区已满被拒收的读数已经过去重检查，回退重新拉取后不再检查，以免被误判为重复
+     *
+     * @return 缓冲区已满时返回false
      */
-    private void startConsumerThread() {
-        executorService.submit(() -> {
-            log.info("Kafka消费线程已启动");
-
-            try {
-                while (running) {
-                    ConsumerRecords<String, String> records = kafkaConsumer.poll(Duration.ofMillis(100));
-
-                    for (ConsumerRecord<String, String> record : records) {
-                        try {
-                            // 解析消息
-                            SensorData sensorData = objectMapper.readValue(record.value(), SensorData.class);
-
-                            // 数据验证
-                            if (validateSensorData(sensorData)) {
-                                // 添加到缓冲区
-                                bufferData(sensorData);
-                            } else {
-                                log.warn("无效的传感器数据: {}", record.value());
-                            }
-                        } catch (Exception e) {
-                            log.error("处理Kafka消息失败: {}", record.value(), e);
-                        }
-                    }
+    private boolean processRecord(PartitionOffsetTracker tracker, ConsumerRecord<String, byte[]> record) {
+        try {
+            String contentType = SensorDataDeserializer.contentType(record.headers());
+            if (SensorDataEnvelopeCodec.isEnvelope(contentType, record.value())) {
+                return processEnvelope(tracker, record.offset(), SensorDataEnvelopeCodec.decode(record.value()));
+            }
+
+            // 解析消息
+            SensorData sensorData = decodeRecord(record, contentType);
+            boolean retried = tracker.takeResumeIndex(record.offset()) >= 0;
+
+            // 数据验证
+            if (!validateSensorData(sensorData)) {
+                monitor.recordValidationFailure();
+                log.warn("无效的传感器数据，分区: {}, 位移: {}", tracker.getPartition(), record.offset());
+            } else if (!retried && deduplicator != null && deduplicator.isDuplicate(sensorData.getDataId())) {
+                monitor.recordDuplicate();
+                log.debug("检测到重复数据: {}", sensorData.getDataId());
+            } else {
+                // 添加到缓冲区
+                if (bufferData(sensorData, tracker, record.offset(), 0)) {
+                    return true;
                 }
-            } catch (WakeupException e) {
-                // 正常关闭
-                log.info("Kafka消费线程被唤醒，准备关闭");
-            } catch (Exception e) {
-                log.error("Kafka消费线程异常", e);
-            } finally {
-                kafkaConsumer.close();
-                log.info("Kafka消费线程已关闭");
+                tracker.markPartial(record.offset(), 0);
+                return false;
             }
-        });
+        } catch (Exception e) {
+            monitor.recordParseFailure();
+            log.error("处理Kafka消息失败，分区: {}, 位移: {}", tracker.getPartition(), record.offset(), e);
+        }
+        tracker.complete(record.offset());
+        return true;
     }
 
     /**
-     * 启动定时刷新任务
+     * 展开封包消息，逐条读数进入缓冲区，所有读数共用消息的位移，全部写库后该位移才可提交。
+     * 缓冲区中途已满时记录已缓冲的条数，回退重新拉取后从被拒收的读数继续
+     *
+     * @return 缓冲区已满时返回false
      */
-    private void startScheduledFlush() {
-        scheduledExecutor.scheduleAtFixedRate(() -> {
-            try {
-                flushBuffer();
-            } catch (Exception e) {
-                log.error("定时刷新缓冲区失败", e);
+    private boolean processEnvelope(PartitionOffsetTracker tracker, long offset, List<SensorData> readings) {
+        int resumeIndex = tracker.takeResumeIndex(offset);
+        for (int i = Math.max(resumeIndex, 0); i < readings.size(); i++) {
+            SensorData sensorData = readings.get(i);
+            if (!validateSensorData(sensorData)) {
+                monitor.recordValidationFailure();
+                log.warn("无效的传感器数据，分区: {}, 位移: {}, 封包序号: {}", tracker.getPartition(), offset, i);
+                continue;
             }
-        }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+            if (i != resumeIndex && deduplicator != null && deduplicator.isDuplicate(sensorData.getDataId())) {
+                monitor.recordDuplicate();
+                log.debug("检测到重复数据: {}", sensorData.getDataId());
+                continue;
+            }
+
+            // 每条进入缓冲区的读数持有一次位移登记，写库确认时释放
+            tracker.register(offset);
+            if (!bufferData(sensorData, tracker, offset, i + 1 < readings.size() ? i + 1 : 0)) {
+                tracker.release(offset);
+                tracker.markPartial(offset, i);
+                return false;
+            }
+        }
+        envelopeReadings.add(readings.size());
 
-        log.info("定时刷新任务已启动，间隔: {}ms", flushInterval);
+        // 释放消费通道处理期间的登记
+        tracker.complete(offset);
+        return true;
+    }
+
+    /**
+     * 按内容类型头解码消息，二进制格式使用编解码器，JSON格式使用ObjectMapper
+     */
+    private SensorData decodeRecord(ConsumerRecord<String, byte[]> record, String contentType) throws IOException {
+        byte[] value = record.value();
+        if (value == null) {
+            return null;
+        }
+        if (SensorDataCodec.isBinary(contentType, value)) {
+            return SensorDataCodec.decode(value);
+        }
+        return objectMapper.readValue(value, SensorData.class);
     }
 
     /**
      * 验证传感器数据
+     * 数据ID和时间戳为流处理端写入所必需，其余字段和指标取值由接入端共用的校验规则检查
      */
     private boolean validateSensorData(SensorData data) {
-        if (data == null || data.getDataId() == null) {
+        if (data == null || data.getDataId() == null || data.getTimestamp() == null) {
             return false;
         }
+        return ruleEngine.validate(data);
+    }
 
-        // 验证必填字段
-        if (data.getRobotId() == null || data.getSensorId() == null ||
-            data.getSensorType() == null || data.getTimestamp() == null) {
+    /**
+     * 添加数据到缓冲区
+     *
+     * @param nextIndex 封包消息中下一条读数的序号，该数据是消息的最后一条时为0
+     * @return 缓冲区已满时返回false
+     */
+    private boolean bufferData(SensorData data, PartitionOffsetTracker tracker, long offset, int nextIndex) {
+        if (!ringBuffer.offer(data, tracker, offset, nextIndex)) {
             return false;
         }
-
-        // 验证数据值范围
-        Map<String, Double> metrics = data.getMetrics();
-        if (metrics != null) {
-            // 温度范围：-50到150摄氏度
-            if (metrics.containsKey("temperature")) {
-                double temp = metrics.get("temperature");
-                if (temp < -50 || temp > 150) {
-                    log.warn("温度值超出范围: {}", temp);
-                    return false;
-                }
-            }
-
-            // 湿度范围：0到100%
-            if (metrics.containsKey("humidity")) {
-                double humidity = metrics.get("humidity");
-                if (humidity < 0 || humidity > 100) {
-                    log.warn("湿度值超出范围: {}", humidity);
-                    return false;
-                }
-            }
-
-            // 气压范围：500到1500 hPa
-            if (metrics.containsKey("pressure")) {
-                double pressure = metrics.get("pressure");
-                if (pressure < 500 || pressure > 1500) {
-                    log.warn("气压值超出范围: {}", pressure);
-                    return false;
-                }
-            }
-        }
-
+        // 积累到一个批次时唤醒刷新线程
+        bufferDrainer.signal();
         return true;
     }
 
     /**
-     * 添加数据到缓冲区
+     * 请求刷新已缓冲的数据：缓冲区中的数据交给写库线程并全部写完后完成
      */
-    private void bufferData(SensorData data) {
-        bufferLock.lock();
-        try {
-            dataBuffer.add(data);
-
-            // 如果缓冲区满了，立即刷新
-            if (dataBuffer.size() >= batchSize) {
-                executorService.submit(this::flushBuffer);
-            }
-        } finally {
-            bufferLock.unlock();
-        }
+    private CompletableFuture<Void> requestFlush() {
+        return bufferDrainer.requestFlush().thenCompose(ignored -> shardedWriter.barrier());
     }
 
     /**
-     * 刷新缓冲区数据到数据库
+     * 写入一个子批次，在写库分片线程内调用
+     * 写入成功或进入死信主题的数据确认位移；重试耗尽时剩余数据的位移保持未提交，
+     * 来源分区标记为失败，由消费通道回退到已提交（精确一次模式为保存）的位置重新消费
      */
-    private void flushBuffer() {
-        if (dataBuffer.isEmpty()) {
-            return;
-        }
-
-        List<SensorData> batchData;
-        bufferLock.lock();
+    private void writeBatch(SensorDataBatch batch) {
+        long startNanos = System.nanoTime();
         try {
-            if (dataBuffer.isEmpty()) {
-                return;
+            retryHandler.write(batch);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (deduplicator != null) {
+                deduplicator.recordPersisted(batch);
             }
 
-            // 创建批处理数据的副本
-            batchData = new ArrayList<>(dataBuffer);
-            dataBuffer.clear();
-        } finally {
-            bufferLock.unlock();
-        }
-
-        // 批量写入数据库
-        try {
-            long startTime = System.currentTimeMillis();
-            int insertedCount = mysqlMapper.batchInsertSensorData(batchData);
-            long elapsedTime = System.currentTimeMillis() - startTime;
-
-            log.info("批量写入 {} 条传感器数据，耗时 {}ms", insertedCount, elapsedTime);
+            // 记录写库耗时和每条数据的处理延迟
+            monitor.recordWritten(batch, elapsedNanos);
 
-            // 记录处理指标
-            recordMetrics(batchData.size(), elapsedTime);
+            long elapsedTime = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            log.debug("批量写入 {} 条传感器数据，耗时 {}ms，{} 行/秒", batch.size(), elapsedTime,
+                    elapsedTime > 0 ? batch.size() * 1000L / elapsedTime : batch.size());
         } catch (Exception e) {
-            log.error("批量写入传感器数据失败，数据量: {}", batchData.size(), e);
-
-            // 失败时可以考虑重试或发送到错误队列
-            handleInsertFailure(batchData);
+            monitor.recordWriteFailure(batch.size());
+            log.error("批量写入传感器数据失败，数据量: {}，未写入数据的位移保持未提交", batch.size(), e);
+            // 之后的数据不能越过未写入的数据提交位移，分区回退后重新消费，否则该分区的位移提交会一直停滞
+            batch.fail();
         }
     }
 
     /**
-     * 记录处理指标
+     * 至少一次模式的写库：写入[from, to)范围的数据。
+     * 所在分区已失败的数据跳过，由回退后重新消费写入，避免重复写入
      */
-    private void recordMetrics(int batchSize, long elapsedTime) {
-        // 可以发送到监控系统
-        log.debug("处理指标 - 批量大小: {}, 处理时间: {}ms, 平均每条: {}ms",
-                batchSize, elapsedTime, (double) elapsedTime / batchSize);
+    private void writeRecords(SensorDataBatch batch, int from, int to) {
+        List<SensorData> records = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            PartitionOffsetTracker tracker = batch.getTracker(i);
+            if (tracker == null || !tracker.isFailed()) {
+                records.add(batch.getRecords().get(i));
+            }
+        }
+        if (!records.isEmpty()) {
+            mysqlMapper.batchInsertSensorData(records);
+        }
     }
 
     /**
-     * 处理插入失败的数据
+     * 精确一次模式的写库：写入[from, to)范围的数据，并在同一事务中保存各分区最后一条数据之后的位置。
+     * 所在分区已失败的数据跳过，由回退后重新消费写入
      */
-    private void handleInsertFailure(List<SensorData> failedData) {
-        // 实现重试逻辑或发送到错误队列
-        log.error("处理 {} 条失败的传感器数据", failedData.size());
+    private void writeWithPositions(SensorDataBatch batch, int from, int to) {
+        List<SensorData> records = new ArrayList<>(to - from);
+        Map<TopicPartition, Integer> lastIndexes = new HashMap<>();
+        for (int i = from; i < to; i++) {
+            PartitionOffsetTracker tracker = batch.getTracker(i);
+            if (tracker != null) {
+                if (tracker.isFailed()) {
+                    continue;
+                }
+                lastIndexes.put(tracker.getPartition(), i);
+            }
+            records.add(batch.getRecords().get(i));
+        }
+        if (records.isEmpty()) {
+            return;
+        }
 
-        // 可以发送到专门的错误处理topic
-        // kafkaTemplate.send("sensor-data-error", objectMapper.writeValueAsString(failedData));
+        List<StreamOffset> positions = new ArrayList<>(lastIndexes.size());
+        for (Map.Entry<TopicPartition, Integer> entry : lastIndexes.entrySet()) {
+            TopicPartition partition = entry.getKey();
+            int index = entry.getValue();
+            int nextIndex = batch.getNextIndex(index);
+            long offset = batch.getOffset(index);
+            positions.add(new StreamOffset(partition.topic(), partition.partition(),
+                    nextIndex == 0 ? offset + 1 : offset, nextIndex, batch.getTracker(index).getOwnerEpoch()));
+        }
+        mysqlMapper.batchInsertSensorData(records, consumerFactory.getGroupId(), positions);
+    }
+
+    /**
+     * 查询分区在MySQL中保存的消费位置
+     */
+    private Map<TopicPartition, StreamOffset> loadPositions(Collection<TopicPartition> partitions) {
+        Map<TopicPartition, StreamOffset> positions = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            positions.put(partition, mysqlMapper.claimStreamOffset(consumerFactory.getGroupId(),
+                    partition.topic(), partition.partition()));
+        }
+        return positions;
     }
 
     /**
@@ -277,18 +385,24 @@ public class SensorDataStreamService {
      */
     public Map<String, Object> getProcessingStats() {
         Map<String, Object> stats = new HashMap<>();
-
-        bufferLock.lock();
-        try {
-            stats.put("bufferSize", dataBuffer.size());
-            stats.put("isRunning", running);
-            stats.put("batchSize", batchSize);
-            stats.put("flushInterval", flushInterval);
-            stats.put("subscribedTopics", Arrays.asList(sensorTopics));
-        } finally {
-            bufferLock.unlock();
-        }
-
+        stats.put("bufferSize", ringBuffer != null ? ringBuffer.size() : 0);
+        stats.put("bufferCapacity", ringBuffer != null ? ringBuffer.capacity() : 0);
+        stats.put("isRunning", running);
+        stats.put("exactlyOnce", processingConfig.isExactlyOnce());
+        stats.put("batchSize", processingConfig.getBatchSize());
+        stats.put("flushInterval", processingConfig.getFlushInterval());
+        stats.put("subscribedTopics", Arrays.asList(sensorTopics));
+        stats.put("dedup", deduplicator != null ? deduplicator.getStats() : Collections.emptyMap());
+        stats.put("writers", shardedWriter != null ? shardedWriter.getShardStats() : Collections.emptyList());
+        stats.put("bulkInsert", mysqlMapper.getBulkInsertStats());
+        stats.put("retry", retryHandler != null ? retryHandler.getStats() : Collections.emptyMap());
+        stats.put("envelopeReadings", envelopeReadings.sum());
+        stats.put("producers", kafkaProducerMonitor.getStats());
+        stats.put("deliveryAudit", kafkaDeliveryAuditor.getStats());
+        stats.put("validation", ruleEngine.getStats());
+        stats.put("pipeline", monitor != null ? monitor.getStats() : Collections.emptyMap());
+        stats.put("consumerLanes", consumerEngine != null ? consumerEngine.getLaneStats() : Collections.emptyList());
+        stats.put("deadConsumerLanes", consumerEngine != null ? consumerEngine.getDeadLanes() : 0);
         return stats;
     }
 
@@ -296,8 +410,14 @@ public class SensorDataStreamService {
      * 手动刷新缓冲区
      */
     public void manualFlush() {
-        flushBuffer();
-        log.info("手动刷新缓冲区完成");
+        try {
+            requestFlush().get(30, TimeUnit.SECONDS);
+            log.info("手动刷新缓冲区完成");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.error("手动刷新缓冲区失败", e);
+        }
     }
 
     /**
@@ -309,30 +429,20 @@ public class SensorDataStreamService {
 
         running = false;
 
-        // 唤醒消费者线程
-        kafkaConsumer.wakeup();
-
-        // 关闭线程池
-        executorService.shutdown();
-        scheduledExecutor.shutdown();
-
-        try {
-            // 等待线程池关闭
-            if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
-                executorService.shutdownNow();
-            }
+        // 停止消费引擎，各通道等待缓冲区刷新后提交已写库数据的位移
+        if (consumerEngine != null) {
+            consumerEngine.stop(10000);
+        }
 
-            if (!scheduledExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
-                scheduledExecutor.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            executorService.shutdownNow();
-            scheduledExecutor.shutdownNow();
-            Thread.currentThread().interrupt();
+        // 停止刷新线程，退出前刷新剩余数据
+        if (bufferDrainer != null) {
+            bufferDrainer.stop(10000);
         }
 
-        // 最后刷新一次缓冲区
-        flushBuffer();
+        // 停止写库线程，退出前写完已提交的子批次
+        if (shardedWriter != null) {
+            shardedWriter.stop(10000);
+        }
 
         log.info("传感器数据流处理服务已关闭");
     }
@@ -341,13 +451,77 @@ public class SensorDataStreamService {
 /**
  * 流处理配置类
  */
+@Component
 class StreamProcessingConfig {
+    @Value("${stream.processing.batch-size:100}")
     private int batchSize = 100;
+
+    @Value("${stream.processing.flush-interval:5000}")
     private long flushInterval = 5000;
+
+    /**
+     * 环形缓冲区容量，向上取整为2的幂
+     */
+    @Value("${stream.processing.buffer-capacity:65536}")
+    private int bufferCapacity = 65536;
+
+    /**
+     * 消费通道数，小于等于0时按分区总数自动确定
+     */
+    @Value("${stream.processing.consumer-threads:3}")
     private int consumerThreads = 3;
+
+    /**
+     * 写库线程数，按robot_id哈希分片
+     */
+    @Value("${stream.processing.writer-threads:4}")
+    private int writerThreads = 4;
+
+    /**
+     * 每个写库线程最多排队的批次数
+     */
+    @Value("${stream.processing.writer-max-in-flight:2}")
+    private int writerMaxInFlight = 2;
+
+    @Value("${stream.processing.max-retries:3}")
     private int maxRetries = 3;
+
+    @Value("${stream.processing.retry-interval:1000}")
     private long retryInterval = 1000;
 
+    /**
+     * 写库失败数据的死信主题
+     */
+    @Value("${stream.processing.dead-letter-topic:" + DeadLetterHeaders.DEFAULT_TOPIC + "}")
+    private String deadLetterTopic = DeadLetterHeaders.DEFAULT_TOPIC;
+
+    /**
+     * 精确一次模式：消费位置与数据在同一事务中写入MySQL，启用时不使用去重
+     */
+    @Value("${stream.processing.exactly-once:false}")
+    private boolean exactlyOnce = false;
+
+    @Value("${stream.processing.dedup.enabled:true}")
+    private boolean dedupEnabled = true;
+
+    /**
+     * 去重时间窗口（毫秒）
+     */
+    @Value("${stream.processing.dedup.window:600000}")
+    private long dedupWindow = 600000;
+
+    /**
+     * 去重窗口内预计的数据量，用于确定过滤器大小
+     */
+    @Value("${stream.processing.dedup.expected-ids:2000000}")
+    private long dedupExpectedIds = 2000000;
+
+    /**
+     * 去重误判率预算，新数据被误判为重复而丢弃的概率
+     */
+    @Value("${stream.processing.dedup.false-positive-rate:0.001}")
+    private double dedupFalsePositiveRate = 0.001;
+
     // Getters and setters
     public int getBatchSize() { return batchSize; }
     public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
@@ -355,27 +529,41 @@ class StreamProcessingConfig {
     public long getFlushInterval() { return flushInterval; }
     public void setFlushInterval(long flushInterval) { this.flushInterval = flushInterval; }
 
+    public int getBufferCapacity() { return bufferCapacity; }
+    public void setBufferCapacity(int bufferCapacity) { this.bufferCapacity = bufferCapacity; }
+
     public int getConsumerThreads() { return consumerThreads; }
     public void setConsumerThreads(int consumerThreads) { this.consumerThreads = consumerThreads; }
 
+    public int getWriterThreads() { return writerThreads; }
+    public void setWriterThreads(int writerThreads) { this.writerThreads = writerThreads; }
+
+    public int getWriterMaxInFlight() { return writerMaxInFlight; }
+    public void setWriterMaxInFlight(int writerMaxInFlight) { this.writerMaxInFlight = writerMaxInFlight; }
+
     public int getMaxRetries() { return maxRetries; }
     public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
 
     public long getRetryInterval() { return retryInterval; }
     public void setRetryInterval(long retryInterval) { this.retryInterval = retryInterval; }
-}
 
-/**
- * 数据处理异常
- */
-class DataProcessingException extends RuntimeException {
-    public DataProcessingException(String message) {
-        super(message);
-    }
+    public String getDeadLetterTopic() { return deadLetterTopic; }
+    public void setDeadLetterTopic(String deadLetterTopic) { this.deadLetterTopic = deadLetterTopic; }
 
-    public DataProcessingException(String message, Throwable cause) {
-        super(message, cause);
-    }
+    public boolean isExactlyOnce() { return exactlyOnce; }
+    public void setExactlyOnce(boolean exactlyOnce) { this.exactlyOnce = exactlyOnce; }
+
+    public boolean isDedupEnabled() { return dedupEnabled; }
+    public void setDedupEnabled(boolean dedupEnabled) { this.dedupEnabled = dedupEnabled; }
+
+    public long getDedupWindow() { return dedupWindow; }
+    public void setDedupWindow(long dedupWindow) { this.dedupWindow = dedupWindow; }
+
+    public long getDedupExpectedIds() { return dedupExpectedIds; }
+    public void setDedupExpectedIds(long dedupExpectedIds) { this.dedupExpectedIds = dedupExpectedIds; }
+
+    public double getDedupFalsePositiveRate() { return dedupFalsePositiveRate; }
+    public void setDedupFalsePositiveRate(double dedupFalsePositiveRate) { this.dedupFalsePositiveRate = dedupFalsePositiveRate; }
 }
 
 /**
@@ -390,81 +578,3 @@ class DataValidationException extends RuntimeException {
         super(message, cause);
     }
 }
-
-/**
- * 流处理监控器
- */
-@Slf4j
-class StreamProcessingMonitor {
-    private final AtomicLong totalProcessed = new AtomicLong(0);
-    private final AtomicLong totalErrors = new AtomicLong(0);
-    private final AtomicLong lastBatchSize = new AtomicLong(0);
-    private final AtomicLong lastProcessingTime = new AtomicLong(0);
-
-    public void recordBatch(int batchSize, long processingTime, boolean success) {
-        if (success) {
-            totalProcessed.addAndGet(batchSize);
-        } else {
-            totalErrors.addAndGet(batchSize);
-        }
-
-        lastBatchSize.set(batchSize);
-        lastProcessingTime.set(processingTime);
-
-        // 每处理10000条记录输出一次统计
-        if (totalProcessed.get() % 10000 == 0) {
-            log.info("流处理统计 - 总处理: {}, 总错误: {}, 成功率: {}%",
-                    totalProcessed.get(),
-                    totalErrors.get(),
-                    (totalProcessed.get() - totalErrors.get()) * 100.0 / totalProcessed.get());
-        }
-    }
-
-    public Map<String, Long> getStats() {
-        Map<String, Long> stats = new HashMap<>();
-        stats.put("totalProcessed", totalProcessed.get());
-        stats.put("totalErrors", totalErrors.get());
-        stats.put("lastBatchSize", lastBatchSize.get());
-        stats.put("lastProcessingTime", lastProcessingTime.get());
-        return stats;
-    }
-
-    private final AtomicLong totalProcessed = new AtomicLong(0);
-    private final AtomicLong totalErrors = new AtomicLong(0);
-    private final AtomicLong lastBatchSize = new AtomicLong(0);
-    private final AtomicLong lastProcessingTime = new AtomicLong(0);
-}
-
-/**
- * 数据去重器
- */
-@Slf4j
-class DataDeduplicator {
-    private final Set<String> recentDataIds = ConcurrentHashMap.newKeySet();
-    private final int maxSize = 100000;
-
-    public boolean isDuplicate(String dataId) {
-        if (recentDataIds.contains(dataId)) {
-            log.warn("检测到重复数据: {}", dataId);
-            return true;
-        }
-
-        // 添加新ID，如果集合太大，清除一部分
-        recentDataIds.add(dataId);
-        if (recentDataIds.size() > maxSize) {
-            // 简单的清除策略：清除10%的旧数据
-            Iterator<String> iterator = recentDataIds.iterator();
-            int toRemove = maxSize / 10;
-            for (int i = 0; i < toRemove && iterator.hasNext(); i++) {
-                iterator.next();
-                iterator.remove();
-            }
-        }
-
-        return false;
-    }
-
-    public void clear() {
-        recentDataIds.clear();
-    }
-}
\ No newline at end of file
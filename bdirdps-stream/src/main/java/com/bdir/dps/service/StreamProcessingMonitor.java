@@ -0,0 +1,229 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import org.apache.kafka.common.TopicPartition;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流处理监控器
+ * 把流处理管道的指标注册到MeterRegistry：分区消费积压、拉取到写库的延迟、事件时间到写库的延迟、
+ * 缓冲区占用、每次刷新的条数分布，以及解析失败、校验失败和重复数据的计数。
+ * 两个延迟按每条数据记录，并以100ms为SLO桶，可直接计算满足处理延迟目标的比例。
+ * 计数器和直方图基于Micrometer的无锁实现，写库线程和消费通道线程可并发记录
+ */
+class StreamProcessingMonitor implements SensorDataConsumerEngine.LagListener {
+
+    /**
+     * 处理延迟目标
+     */
+    static final Duration LATENCY_SLO = Duration.ofMillis(100);
+
+    private final MeterRegistry meterRegistry;
+    private final ZoneId zone;
+
+    private final Timer pollToFlushLatency;
+    private final Timer eventToDbLatency;
+    private final Timer writeDuration;
+    private final DistributionSummary flushSize;
+    private final Counter recordsWritten;
+    private final Counter writeFailures;
+    private final Counter parseFailures;
+    private final Counter validationFailures;
+    private final Counter duplicates;
+
+    /**
+     * 各消费通道最近一次上报的分区积压
+     */
+    private final Map<Integer, Map<TopicPartition, Long>> laneLags = new ConcurrentHashMap<>();
+    private final MultiGauge consumerLag;
+
+    StreamProcessingMonitor(MeterRegistry meterRegistry, SensorDataRingBuffer ringBuffer) {
+        this(meterRegistry, ringBuffer, ZoneId.systemDefault());
+    }
+
+    /**
+     * @param zone 传感器数据时间戳所在的时区
+     */
+    StreamProcessingMonitor(MeterRegistry meterRegistry, SensorDataRingBuffer ringBuffer, ZoneId zone) {
+        this.meterRegistry = meterRegistry;
+        this.zone = zone;
+
+        pollToFlushLatency = latencyTimer("stream_poll_to_flush_latency",
+                "Time from a record entering the buffer after poll until its batch is written to MySQL");
+        eventToDbLatency = latencyTimer("stream_event_to_db_latency",
+                "Time from the sensor reading timestamp until it is written to MySQL");
+        writeDuration = Timer.builder("stream_db_write_duration")
+                .description("Duration of one sub-batch write including retries")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        flushSize = DistributionSummary.builder("stream_flush_size")
+                .description("Records handed to the writers per buffer flush")
+                .baseUnit("records")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        recordsWritten = Counter.builder("stream_records_written_total")
+                .description("Records written to MySQL")
+                .register(meterRegistry);
+        writeFailures = Counter.builder("stream_write_failures_total")
+                .description("Records whose write failed after retries")
+                .register(meterRegistry);
+        parseFailures = rejected("parse");
+        validationFailures = rejected("validation");
+        duplicates = rejected("duplicate");
+
+        Gauge.builder("stream_buffer_records", ringBuffer, SensorDataRingBuffer::size)
+                .description("Records waiting in the ring buffer")
+                .register(meterRegistry);
+        Gauge.builder("stream_buffer_occupancy_ratio", ringBuffer,
+                        buffer -> (double) buffer.size() / buffer.capacity())
+                .description("Ring buffer size divided by its capacity")
+                .register(meterRegistry);
+        consumerLag = MultiGauge.builder("stream_consumer_lag")
+                .description("Records between the consumer position and the log end offset")
+                .baseUnit("records")
+                .register(meterRegistry);
+    }
+
+    private Timer latencyTimer(String name, String description) {
+        return Timer.builder(name)
+                .description(description)
+                .publishPercentileHistogram()
+                .serviceLevelObjectives(LATENCY_SLO)
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofMinutes(5))
+                .register(meterRegistry);
+    }
+
+    private Counter rejected(String reason) {
+        return Counter.builder("stream_records_rejected_total")
+                .description("Consumed records that were not buffered for writing")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 缓冲区交给写库线程的一次刷新
+     */
+    void recordFlush(int size) {
+        flushSize.record(size);
+    }
+
+    /**
+     * 子批次写库成功，按每条数据记录两个延迟
+     */
+    void recordWritten(SensorDataBatch batch, long elapsedNanos) {
+        writeDuration.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        recordsWritten.increment(batch.size());
+
+        long nowNanos = System.nanoTime();
+        Instant now = Instant.now();
+        long nowMillis = now.toEpochMilli();
+        ZoneOffset offset = zone.getRules().getOffset(now);
+        List<SensorData> records = batch.getRecords();
+        for (int i = 0; i < records.size(); i++) {
+            pollToFlushLatency.record(Math.max(nowNanos - batch.getBufferedNanos(i), 0), TimeUnit.NANOSECONDS);
+            LocalDateTime timestamp = records.get(i).getTimestamp();
+            if (timestamp != null) {
+                long eventMillis = timestamp.toEpochSecond(offset) * 1000 + timestamp.getNano() / 1_000_000;
+                // 设备时钟超前时记为0
+                eventToDbLatency.record(Math.max(nowMillis - eventMillis, 0), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    void recordWriteFailure(int size) {
+        writeFailures.increment(size);
+    }
+
+    void recordParseFailure() {
+        parseFailures.increment();
+    }
+
+    void recordValidationFailure() {
+        validationFailures.increment();
+    }
+
+    void recordDuplicate() {
+        duplicates.increment();
+    }
+
+    /**
+     * 更新通道的分区积压，按全部通道的分区重新注册积压指标，已不属于本实例的分区被移除
+     */
+    @Override
+    public void onLag(int laneId, Map<TopicPartition, Long> lag) {
+        laneLags.put(laneId, lag);
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        for (Map<TopicPartition, Long> partitions : laneLags.values()) {
+            for (Map.Entry<TopicPartition, Long> entry : partitions.entrySet()) {
+                rows.add(MultiGauge.Row.of(Tags.of("topic", entry.getKey().topic(),
+                        "partition", String.valueOf(entry.getKey().partition())), entry.getValue()));
+            }
+        }
+        synchronized (consumerLag) {
+            consumerLag.register(rows, true);
+        }
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("recordsWritten", (long) recordsWritten.count());
+        stats.put("writeFailures", (long) writeFailures.count());
+        stats.put("parseFailures", (long) parseFailures.count());
+        stats.put("validationFailures", (long) validationFailures.count());
+        stats.put("duplicates", (long) duplicates.count());
+        stats.put("flushCount", flushSize.count());
+        stats.put("flushSizeMean", flushSize.mean());
+        stats.put("pollToFlushMeanMs", pollToFlushLatency.mean(TimeUnit.MILLISECONDS));
+        stats.put("pollToFlushMaxMs", pollToFlushLatency.max(TimeUnit.MILLISECONDS));
+        stats.put("pollToFlushWithinSlo", withinSlo(pollToFlushLatency));
+        stats.put("eventToDbMeanMs", eventToDbLatency.mean(TimeUnit.MILLISECONDS));
+        stats.put("eventToDbMaxMs", eventToDbLatency.max(TimeUnit.MILLISECONDS));
+        stats.put("eventToDbWithinSlo", withinSlo(eventToDbLatency));
+        stats.put("writeMeanMs", writeDuration.mean(TimeUnit.MILLISECONDS));
+        long totalLag = 0;
+        for (Map<TopicPartition, Long> partitions : laneLags.values()) {
+            for (Long partitionLag : partitions.values()) {
+                totalLag += partitionLag;
+            }
+        }
+        stats.put("totalLag", totalLag);
+        return stats;
+    }
+
+    /**
+     * 延迟不超过SLO的数据占比，没有数据时为1
+     */
+    private static double withinSlo(Timer timer) {
+        long count = timer.count();
+        if (count == 0) {
+            return 1;
+        }
+        double sloNanos = LATENCY_SLO.toNanos();
+        for (CountAtBucket bucket : timer.takeSnapshot().histogramCounts()) {
+            if (bucket.bucket() == sloNanos) {
+                return bucket.count() / count;
+            }
+        }
+        return Double.NaN;
+    }
+}
@@ -5,6 +5,8 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.kafka.annotation.EnableKafka;
 
+import java.util.Collections;
+
 /**
  * 流处理模块启动类
  */
@@ -14,6 +16,9 @@ import org.springframework.kafka.annotation.EnableKafka;
 public class StreamApplication {
 
     public static void main(String[] args) {
-        SpringApplication.run(StreamApplication.class, args);
+        SpringApplication application = new SpringApplication(StreamApplication.class);
+        // 流处理端校验传感器数据，默认定期重新加载校验规则
+        application.setDefaultProperties(Collections.singletonMap("app.validation.reload-enabled", "true"));
+        application.run(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package com.bdir.dps.config;
+
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kafka投递审计测试类
+ */
+class KafkaDeliveryAuditorTest {
+
+    /**
+     * 测试成功投递按每秒上限抽样，失败投递全部计数
+     */
+    @Test
+    void testSuccessSamplingAndFailureCount() {
+        AtomicLong clock = new AtomicLong(1_000L);
+        KafkaDeliveryAuditor<String, String> auditor = new KafkaDeliveryAuditor<>("default", 2, clock::get);
+        ProducerRecord<String, String> record = new ProducerRecord<>("sensor-data", "R1#S1", "v");
+        RecordMetadata metadata = new RecordMetadata(new TopicPartition("sensor-data", 0), 0, 0, 0L, 5, 1);
+
+        for (int i = 0; i < 100; i++) {
+            auditor.onSuccess(record, metadata);
+        }
+        auditor.onError(record, null, new RuntimeException("broker down"));
+
+        Map<String, Object> stats = auditor.getStats();
+        assertEquals(100L, stats.get("successes"));
+        assertEquals(1L, stats.get("failures"));
+        assertEquals(2L, stats.get("sampledSuccesses"));
+
+        // 同一秒内不再放行，进入下一秒后重新获得抽样额度
+        clock.set(1_999L);
+        auditor.onSuccess(record, metadata);
+        assertEquals(2L, auditor.getStats().get("sampledSuccesses"));
+        clock.set(2_000L);
+        for (int i = 0; i < 10; i++) {
+            auditor.onSuccess(record, metadata);
+        }
+        assertEquals(4L, auditor.getStats().get("sampledSuccesses"));
+        assertEquals(111L, auditor.getStats().get("successes"));
+    }
+
+    /**
+     * 测试抽样上限为0时不记录成功投递
+     */
+    @Test
+    void testSamplingDisabled() {
+        KafkaDeliveryAuditor<String, String> auditor = new KafkaDeliveryAuditor<>("default", 0);
+        assertFalse(auditor.trySample());
+    }
+}
@@ -0,0 +1,133 @@
+package com.bdir.dps.config;
+
+import com.bdir.dps.config.KafkaMessageSender.BatchSendException;
+import com.bdir.dps.config.KafkaMessageSender.BatchSendResult;
+import com.bdir.dps.config.KafkaMessageSender.DeliveryGuarantee;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.errors.TimeoutException;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.mock.MockProducerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Kafka消息发送工具类测试类
+ */
+class KafkaMessageSenderTest {
+
+    private final MockProducer<String, String> defaultProducer = newProducer();
+    private final MockProducer<String, String> fastProducer = newProducer();
+    private final MockProducer<String, String> reliableProducer = newProducer();
+
+    /**
+     * 测试汇总Future在全部消息完成后返回每条消息的结果
+     */
+    @Test
+    void testBatchAggregatesPerRecordResults() throws Exception {
+        KafkaMessageSender sender = newSender(1 << 20);
+        Map<String, String> messages = new LinkedHashMap<>();
+        messages.put("R1#S1", "a");
+        messages.put("R1#S2", "b");
+        messages.put("R1#S3", "c");
+
+        CompletableFuture<BatchSendResult> future = sender.sendBatch("sensor-data", messages);
+        assertEquals(3, defaultProducer.history().size());
+        // 每条消息键5字节、值1字节
+        assertEquals(18, sender.getInFlightBytes());
+
+        defaultProducer.completeNext();
+        defaultProducer.errorNext(new RuntimeException("broker down"));
+        assertFalse(future.isDone());
+        defaultProducer.completeNext();
+
+        BatchSendResult result = future.get();
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(1, result.getFailureCount());
+        assertEquals(1, result.getFailures().get(0).getIndex());
+        assertEquals("R1#S2", result.getFailures().get(0).getRecord().key());
+        assertNotNull(result.getResults().get(0).getMetadata());
+        assertEquals(0, sender.getInFlightBytes());
+    }
+
+    /**
+     * 测试快速失败模式在第一条失败后立即失败，并停止发送后续消息
+     */
+    @Test
+    void testFailFast() {
+        KafkaMessageSender sender = newSender(1 << 20);
+        List<ProducerRecord<String, String>> records = records(3);
+
+        CompletableFuture<BatchSendResult> future = sender.sendBatch(records, DeliveryGuarantee.DEFAULT, true);
+        defaultProducer.errorNext(new RuntimeException("broker down"));
+
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        BatchSendException cause = assertInstanceOf(BatchSendException.class, e.getCause());
+        assertEquals(0, cause.getIndex());
+
+        // 在途字节不足时后续消息等待超时失败，快速失败模式下不再发送
+        KafkaMessageSender small = newSender(4);
+        CompletableFuture<BatchSendResult> blocked = small.sendBatch(records(3), DeliveryGuarantee.RELIABLE, true);
+        assertTrue(blocked.isCompletedExceptionally());
+        assertInstanceOf(TimeoutException.class, assertThrows(ExecutionException.class, blocked::get)
+                .getCause().getCause());
+        assertEquals(1, reliableProducer.history().size());
+    }
+
+    /**
+     * 测试按投递保证选择生产者
+     */
+    @Test
+    void testDeliveryGuaranteeSelectsTemplate() {
+        KafkaMessageSender sender = newSender(1 << 20);
+        sender.sendBatch(records(2), DeliveryGuarantee.FAST, false);
+        sender.sendBatch(records(1), DeliveryGuarantee.RELIABLE, false);
+
+        assertEquals(0, defaultProducer.history().size());
+        assertEquals(2, fastProducer.history().size());
+        assertEquals(1, reliableProducer.history().size());
+    }
+
+    /**
+     * 测试UTF-8字节数计算
+     */
+    @Test
+    void testUtf8Length() {
+        for (String value : new String[]{"", "abc", "温度", "é", "😀x"}) {
+            assertEquals(value.getBytes(StandardCharsets.UTF_8).length,
+                    KafkaMessageSender.utf8Length(value));
+        }
+        assertEquals(0, KafkaMessageSender.utf8Length(null));
+    }
+
+    private KafkaMessageSender newSender(int maxInFlightBytes) {
+        return new KafkaMessageSender(template(defaultProducer), template(fastProducer), template(reliableProducer),
+                maxInFlightBytes, 10);
+    }
+
+    private static List<ProducerRecord<String, String>> records(int count) {
+        List<ProducerRecord<String, String>> records = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            records.add(new ProducerRecord<>("sensor-data", "R1#S" + i, "v"));
+        }
+        return records;
+    }
+
+    private static MockProducer<String, String> newProducer() {
+        return new MockProducer<>(false, new StringSerializer(), new StringSerializer());
+    }
+
+    private static KafkaTemplate<String, String> template(MockProducer<String, String> producer) {
+        return new KafkaTemplate<>(new MockProducerFactory<>(() -> producer));
+    }
+}
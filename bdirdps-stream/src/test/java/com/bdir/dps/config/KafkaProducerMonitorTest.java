@@ -0,0 +1,119 @@
+package com.bdir.dps.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.Metric;
+import org.apache.kafka.common.MetricName;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.ProducerListener;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Kafka生产者监控器测试类
+ */
+class KafkaProducerMonitorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final KafkaProducerMonitor monitor = new KafkaProducerMonitor(registry);
+
+    /**
+     * 测试按主题累计确认数、失败数和序列化字节数
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testPerTopicCounters() {
+        ProducerListener<String, String> listener = monitor.instrument("default", producerFactory(16384));
+
+        ProducerRecord<String, String> record = new ProducerRecord<>("sensor-data", "R1#S1", "value");
+        listener.onSuccess(record, metadata("sensor-data", System.currentTimeMillis() - 5, 5, 120));
+        listener.onSuccess(record, metadata("sensor-data", System.currentTimeMillis(), 5, 80));
+        listener.onError(new ProducerRecord<>("robot-control", "R1", "cmd"), null, new RuntimeException("failed"));
+
+        assertEquals(2, registry.get("kafka_producer_records_acked_total")
+                .tags("producer", "default", "topic", "sensor-data").counter().count());
+        assertEquals(210, registry.get("kafka_producer_record_bytes_total")
+                .tags("producer", "default", "topic", "sensor-data").counter().count());
+        assertEquals(1, registry.get("kafka_producer_records_failed_total")
+                .tags("producer", "default", "topic", "robot-control").counter().count());
+        assertEquals(2, registry.get("kafka_producer_ack_latency")
+                .tags("producer", "default", "topic", "sensor-data").timer().count());
+
+        Map<String, Object> topics = (Map<String, Object>) ((Map<String, Object>) monitor.getStats().get("default"))
+                .get("topics");
+        Map<String, Object> sensorStats = (Map<String, Object>) topics.get("sensor-data");
+        assertEquals(2L, sensorStats.get("messagesAcked"));
+        assertEquals(210L, sensorStats.get("bytesSent"));
+    }
+
+    /**
+     * 测试调用方指定时间戳的消息不计入确认延迟
+     */
+    @Test
+    void testExplicitTimestampNotTimed() {
+        ProducerListener<String, String> listener = monitor.instrument("reliable", producerFactory(16384));
+        ProducerRecord<String, String> record = new ProducerRecord<>("sensor-data", null, 1000L, "R1", "v");
+        listener.onSuccess(record, metadata("sensor-data", 1000L, 2, 1));
+
+        assertEquals(0, registry.get("kafka_producer_ack_latency").tag("producer", "reliable").timer().count());
+        assertEquals(1, registry.get("kafka_producer_records_acked_total").tag("producer", "reliable")
+                .counter().count());
+    }
+
+    /**
+     * 测试批次填充率和排队时间取自生产者自身的指标
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testProducerMetricsGauges() {
+        ProducerListener<String, String> listener = monitor.instrument("highPerformance", producerFactory(65536));
+        assertTrue(Double.isNaN(registry.get("kafka_producer_batch_fill_ratio").gauge().value()));
+
+        Map<MetricName, Metric> metrics = new HashMap<>();
+        metrics.put(metricName("batch-size-avg"), metric(16384.0));
+        metrics.put(metricName("record-queue-time-avg"), metric(12.5));
+        Producer<String, String> producer = mock(Producer.class);
+        when(producer.metrics()).thenReturn((Map) metrics);
+        ((ProducerFactory.Listener<String, String>) listener).producerAdded("producer-1", producer);
+
+        assertEquals(0.25, registry.get("kafka_producer_batch_fill_ratio").gauge().value(), 1e-9);
+        assertEquals(12.5, registry.get("kafka_producer_record_queue_time_avg").gauge().value(), 1e-9);
+
+        ((ProducerFactory.Listener<String, String>) listener).producerRemoved("producer-1", producer);
+        assertTrue(Double.isNaN(registry.get("kafka_producer_batch_fill_ratio").gauge().value()));
+    }
+
+    private static ProducerFactory<String, String> producerFactory(int batchSize) {
+        // 只读取配置，不创建生产者
+        return new DefaultKafkaProducerFactory<>(
+                Collections.singletonMap(ProducerConfig.BATCH_SIZE_CONFIG, batchSize),
+                new StringSerializer(), new StringSerializer());
+    }
+
+    private static RecordMetadata metadata(String topic, long timestamp, int keySize, int valueSize) {
+        return new RecordMetadata(new TopicPartition(topic, 0), 0, 0, timestamp, keySize, valueSize);
+    }
+
+    private static MetricName metricName(String name) {
+        return new MetricName(name, "producer-metrics", "", Collections.emptyMap());
+    }
+
+    private static Metric metric(double value) {
+        Metric metric = mock(Metric.class);
+        when(metric.metricValue()).thenReturn(value);
+        return metric;
+    }
+}
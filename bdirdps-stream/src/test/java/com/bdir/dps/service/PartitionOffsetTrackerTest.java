@@ -0,0 +1,153 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分区位移跟踪器测试类
+ */
+class PartitionOffsetTrackerTest {
+
+    private PartitionOffsetTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 0));
+    }
+
+    /**
+     * 测试未写库的位移阻止提交，写库确认后才可提交
+     */
+    @Test
+    void testOffsetsCommittableOnlyAfterAcknowledge() {
+        buffer(10);
+        buffer(11);
+        assertEquals(10, tracker.committableOffset());
+
+        SensorDataBatch batch = new SensorDataBatch(2);
+        batch.add(new SensorData(), tracker, 10);
+        batch.add(new SensorData(), tracker, 11);
+        batch.acknowledge();
+
+        assertEquals(12, tracker.committableOffset());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    /**
+     * 测试分配时以已提交位移为基准，没有新进度时不重复提交
+     */
+    @Test
+    void testWarmTrackerSkipsAlreadyCommittedOffset() {
+        PartitionOffsetTracker warm = new PartitionOffsetTracker(tracker.getPartition(), 100);
+        assertEquals(100, warm.getCommittedOffset());
+        assertEquals(-1, warm.nextCommitOffset());
+
+        warm.register(100);
+        warm.advance(100);
+        assertEquals(-1, warm.nextCommitOffset());
+        warm.complete(100);
+        assertEquals(101, warm.nextCommitOffset());
+    }
+
+    /**
+     * 测试乱序确认时只提交到最小的未完成位移
+     */
+    @Test
+    void testOutOfOrderCompletion() {
+        buffer(0);
+        buffer(1);
+        buffer(2);
+
+        tracker.complete(1);
+        tracker.complete(2);
+        assertEquals(0, tracker.committableOffset());
+
+        tracker.complete(0);
+        assertEquals(3, tracker.committableOffset());
+    }
+
+    /**
+     * 测试写库失败的位移保持未提交，后续跳过的消息不会越过它
+     */
+    @Test
+    void testFailedBatchBlocksCommit() {
+        buffer(5);
+        // 无效消息直接确认
+        tracker.register(6);
+        tracker.advance(6);
+        tracker.complete(6);
+
+        assertEquals(5, tracker.committableOffset());
+    }
+
+    /**
+     * 测试被拒收回退的消息不计入已处理位移
+     */
+    @Test
+    void testReleasedOffsetNotCommitted() {
+        buffer(0);
+        tracker.complete(0);
+        tracker.register(1);
+        tracker.release(1);
+
+        assertEquals(1, tracker.committableOffset());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    /**
+     * 测试封包消息的多条读数全部写库后位移才可提交
+     */
+    @Test
+    void testEnvelopeOffsetCompletesAfterAllReadings() {
+        buffer(0);
+        tracker.register(0);
+        tracker.register(0);
+        // 释放消费通道处理期间的登记
+        tracker.complete(0);
+
+        tracker.complete(0);
+        assertEquals(0, tracker.committableOffset());
+        assertEquals(1, tracker.getPendingCount());
+
+        tracker.complete(0);
+        assertEquals(1, tracker.committableOffset());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    /**
+     * 测试被拒收消息的处理进度只对同一位移取出一次
+     */
+    @Test
+    void testResumeIndex() {
+        assertEquals(-1, tracker.takeResumeIndex(3));
+        tracker.markPartial(3, 2);
+        assertEquals(-1, tracker.takeResumeIndex(4));
+        assertEquals(2, tracker.takeResumeIndex(3));
+        assertEquals(-1, tracker.takeResumeIndex(3));
+    }
+
+    /**
+     * 测试相同位移不重复提交，提交失败后可重新提交
+     */
+    @Test
+    void testNextCommitOffset() {
+        assertEquals(-1, tracker.nextCommitOffset());
+
+        buffer(0);
+        tracker.complete(0);
+        assertEquals(1, tracker.nextCommitOffset());
+        assertEquals(-1, tracker.nextCommitOffset());
+
+        tracker.commitFailed(1);
+        assertEquals(1, tracker.nextCommitOffset());
+    }
+
+    private void buffer(long offset) {
+        tracker.register(offset);
+        tracker.advance(offset);
+    }
+}
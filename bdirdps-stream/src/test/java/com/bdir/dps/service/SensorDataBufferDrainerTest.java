@@ -0,0 +1,46 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 缓冲区刷新线程测试类
+ */
+class SensorDataBufferDrainerTest {
+
+    /**
+     * 测试写入端抛出异常时批次中数据的来源分区被标记为失败，位移不会提交
+     */
+    @Test
+    void testSinkFailureFailsTrackers() throws Exception {
+        SensorDataRingBuffer ringBuffer = new SensorDataRingBuffer(16);
+        SensorDataBufferDrainer drainer = new SensorDataBufferDrainer(ringBuffer, batch -> {
+            throw new IllegalStateException("writer queue closed");
+        }, 4, 1000);
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 0));
+        PartitionOffsetTracker other = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 1));
+
+        for (int i = 0; i < 2; i++) {
+            SensorData data = new SensorData();
+            data.setDataId("D" + i);
+            tracker.register(i);
+            tracker.advance(i);
+            assertTrue(ringBuffer.offer(data, tracker, i));
+        }
+        drainer.start();
+        try {
+            drainer.requestFlush().get(5, TimeUnit.SECONDS);
+        } finally {
+            drainer.stop(5000);
+        }
+
+        assertTrue(tracker.isFailed());
+        assertFalse(other.isFailed());
+        assertTrue(ringBuffer.isEmpty());
+    }
+}
@@ -0,0 +1,115 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.config.KafkaConsumerConfig.SensorDataConsumerFactory;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.KafkaException;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 分区并行消费引擎测试类
+ */
+class SensorDataConsumerEngineTest {
+
+    private static final TopicPartition PARTITION = new TopicPartition("sensor-data-temperature", 0);
+
+    /**
+     * 测试已进入缓冲区但未写库的数据不提交位移，写库确认后才提交
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testOffsetsCommittedOnlyAfterWrite() {
+        KafkaConsumer<String, byte[]> consumer = mock(KafkaConsumer.class);
+        List<PartitionOffsetTracker> buffered = new ArrayList<>();
+        SensorDataConsumerEngine engine = new SensorDataConsumerEngine(null,
+                Collections.singletonList(PARTITION.topic()), (tracker, record) -> {
+                    // 只进入缓冲区，由下面模拟的写库线程确认
+                    buffered.add(tracker);
+                    return true;
+                }, () -> true, () -> CompletableFuture.completedFuture(null));
+        SensorDataConsumerEngine.ConsumerLane lane = engine.new ConsumerLane(0, consumer);
+        ReflectionTestUtils.setField(engine, "running", true);
+
+        AtomicInteger polls = new AtomicInteger();
+        when(consumer.poll(any(Duration.class))).thenAnswer(invocation -> {
+            switch (polls.incrementAndGet()) {
+                case 1:
+                    return records(0, 3);
+                case 2:
+                    // 前两条写库成功，第三条仍在缓冲区
+                    buffered.get(0).complete(0);
+                    buffered.get(1).complete(1);
+                    return ConsumerRecords.empty();
+                default:
+                    buffered.get(2).complete(2);
+                    ReflectionTestUtils.setField(engine, "running", false);
+                    return ConsumerRecords.empty();
+            }
+        });
+
+        lane.run();
+
+        ArgumentCaptor<Map<TopicPartition, OffsetAndMetadata>> commits = ArgumentCaptor.forClass(Map.class);
+        verify(consumer, atLeastOnce()).commitAsync(commits.capture(), any());
+        List<Long> offsets = new ArrayList<>();
+        commits.getAllValues().forEach(commit -> offsets.add(commit.get(PARTITION).offset()));
+        // 拉取后只能提交到第一条未写库的位移，全部写库后才提交到最后一条之后
+        assertEquals(Arrays.asList(0L, 2L, 3L), offsets);
+        verify(consumer, never()).commitSync(anyMap());
+        verify(consumer).close();
+    }
+
+    /**
+     * 测试消费者异常退出后通道重建消费者并重新订阅，而不是永久关闭
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void testLaneRecreatesConsumerAfterFailure() {
+        KafkaConsumer<String, byte[]> failing = mock(KafkaConsumer.class);
+        KafkaConsumer<String, byte[]> recreated = mock(KafkaConsumer.class);
+        SensorDataConsumerFactory consumerFactory = mock(SensorDataConsumerFactory.class);
+        when(consumerFactory.createConsumer("sensor-stream-lane-0")).thenReturn(recreated);
+        SensorDataConsumerEngine engine = new SensorDataConsumerEngine(consumerFactory,
+                Collections.singletonList(PARTITION.topic()), (tracker, record) -> true,
+                () -> true, () -> CompletableFuture.completedFuture(null));
+        SensorDataConsumerEngine.ConsumerLane lane = engine.new ConsumerLane(0, failing);
+        ReflectionTestUtils.setField(engine, "running", true);
+
+        when(failing.poll(any(Duration.class))).thenThrow(new KafkaException("broker unavailable"));
+        when(recreated.poll(any(Duration.class))).thenAnswer(invocation -> {
+            ReflectionTestUtils.setField(engine, "running", false);
+            return ConsumerRecords.empty();
+        });
+
+        lane.run();
+
+        verify(failing).close();
+        verify(recreated).subscribe(anyCollection(), any(SensorDataConsumerEngine.ConsumerLane.class));
+        verify(recreated).close();
+        Map<String, Object> stats = lane.getStats();
+        assertEquals(1L, stats.get("failures"));
+        assertEquals(1L, stats.get("restarts"));
+    }
+
+    private static ConsumerRecords<String, byte[]> records(long from, long to) {
+        List<ConsumerRecord<String, byte[]>> records = new ArrayList<>();
+        for (long offset = from; offset < to; offset++) {
+            records.add(new ConsumerRecord<>(PARTITION.topic(), PARTITION.partition(), offset, "R001#S001", new byte[0]));
+        }
+        return new ConsumerRecords<>(Collections.singletonMap(PARTITION, records));
+    }
+}
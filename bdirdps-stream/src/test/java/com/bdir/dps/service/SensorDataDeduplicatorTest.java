@@ -0,0 +1,163 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 时间窗口去重器测试类
+ */
+class SensorDataDeduplicatorTest {
+
+    /**
+     * 测试窗口内的重复数据被识别
+     */
+    @Test
+    void testDuplicateDetectedWithinWindow() {
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(60000, 10000, 0.001);
+
+        assertFalse(deduplicator.isDuplicate("R001-S001-1"));
+        deduplicator.record("R001-S001-1");
+        assertFalse(deduplicator.isDuplicate("R001-S001-2"));
+        deduplicator.record("R001-S001-2");
+        assertTrue(deduplicator.isDuplicate("R001-S001-1"));
+
+        assertEquals(1L, deduplicator.getStats().get("hits"));
+        assertEquals(2L, deduplicator.getStats().get("misses"));
+    }
+
+    /**
+     * 测试轮转后窗口内的数据仍可识别，超过窗口的数据被淘汰
+     */
+    @Test
+    void testOldIdsExpireAfterWindow() {
+        AtomicLong now = new AtomicLong(0);
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(3000, 10000, 0.001, now::get);
+
+        deduplicator.record("old");
+
+        // 窗口内：经过两次轮转仍然记得
+        now.set(1000);
+        deduplicator.record("a");
+        now.set(2000);
+        deduplicator.record("b");
+        now.set(2999);
+        assertTrue(deduplicator.isDuplicate("old"));
+
+        // 超过窗口后最老的一代被清空
+        now.set(3000);
+        deduplicator.record("c");
+        now.set(4000);
+        assertFalse(deduplicator.isDuplicate("old"));
+    }
+
+    /**
+     * 测试只查询不记录：缓冲区拒收或写库前的检查不会让之后的重新消费被判为重复
+     */
+    @Test
+    void testCheckDoesNotRecord() {
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(60000, 10000, 0.001);
+
+        assertFalse(deduplicator.isDuplicate("R001-S001-1"));
+        assertFalse(deduplicator.isDuplicate("R001-S001-1"));
+        assertEquals(0L, deduplicator.getStats().get("currentGenerationInsertions"));
+    }
+
+    /**
+     * 测试写库失败后重新消费的数据照常写入，写库成功后才被识别为重复
+     */
+    @Test
+    void testReplayAfterFailedWriteIsWritten() {
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(60000, 10000, 0.001);
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 0));
+        List<String> written = new ArrayList<>();
+        AtomicBoolean databaseDown = new AtomicBoolean(true);
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> {
+            if (databaseDown.get()) {
+                throw new TransientDataAccessResourceException("database down");
+            }
+            records.forEach(data -> written.add(data.getDataId()));
+        }, (data, source, offset, attempts, cause) -> { }, 0, 0);
+
+        // 首次消费：写库重试耗尽，不记录
+        assertFalse(deduplicator.isDuplicate("R001-S001-1"));
+        SensorDataBatch first = newBatch(tracker, "R001-S001-1", 5);
+        assertThrows(DataProcessingException.class, () -> handler.write(first));
+
+        // 重新消费：不是重复数据，写库成功后记录
+        databaseDown.set(false);
+        assertFalse(deduplicator.isDuplicate("R001-S001-1"));
+        SensorDataBatch replay = newBatch(tracker, "R001-S001-1", 5);
+        handler.write(replay);
+        deduplicator.recordPersisted(replay);
+
+        assertEquals(List.of("R001-S001-1"), written);
+        assertTrue(deduplicator.isDuplicate("R001-S001-1"));
+    }
+
+    /**
+     * 测试来源分区已失败的数据不记录（如死信发送失败），重新消费时照常写入
+     */
+    @Test
+    void testFailedPartitionNotRecorded() {
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(60000, 10000, 0.001);
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 0));
+        SensorDataBatch batch = newBatch(tracker, "R001-S001-1", 5);
+        tracker.fail();
+
+        deduplicator.recordPersisted(batch);
+
+        assertFalse(deduplicator.isDuplicate("R001-S001-1"));
+    }
+
+    /**
+     * 测试误判率不超过预算
+     */
+    @Test
+    void testFalsePositiveRateWithinBudget() {
+        int expected = 300000;
+        double budget = 0.01;
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(Long.MAX_VALUE / 4, expected, budget);
+
+        for (int i = 0; i < expected; i++) {
+            deduplicator.record("seen-" + i);
+        }
+
+        int probes = 200000;
+        int falsePositives = 0;
+        for (int i = 0; i < probes; i++) {
+            if (deduplicator.isDuplicate("unseen-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < probes * budget, "误判数: " + falsePositives);
+    }
+
+    /**
+     * 测试百万级数据量的内存占用
+     */
+    @Test
+    void testMemoryBoundedForMillionsOfIds() {
+        SensorDataDeduplicator deduplicator = new SensorDataDeduplicator(600000, 5000000, 0.001);
+        assertTrue(deduplicator.getMemoryBytes() <= 32L * 1024 * 1024,
+                "内存: " + deduplicator.getMemoryBytes());
+    }
+
+    private SensorDataBatch newBatch(PartitionOffsetTracker tracker, String dataId, long offset) {
+        SensorData data = new SensorData();
+        data.setDataId(dataId);
+        tracker.register(offset);
+        tracker.advance(offset);
+        SensorDataBatch batch = new SensorDataBatch(1);
+        batch.add(data, tracker, offset);
+        return batch;
+    }
+}
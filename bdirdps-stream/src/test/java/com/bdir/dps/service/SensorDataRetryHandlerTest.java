@@ -0,0 +1,161 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.mapper.MySQLMapper;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批次写库重试处理器测试类
+ */
+class SensorDataRetryHandlerTest {
+
+    private PartitionOffsetTracker tracker;
+    private List<String> written;
+    private List<String> deadLetters;
+    private int writeCalls;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 0));
+        written = new ArrayList<>();
+        deadLetters = new ArrayList<>();
+        writeCalls = 0;
+    }
+
+    /**
+     * 测试二分定位问题数据：正常数据全部写入，问题数据进入死信主题，位移全部确认
+     */
+    @Test
+    void testBisectIsolatesPoisonRecord() {
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> {
+            writeCalls++;
+            if (records.stream().anyMatch(data -> "D37".equals(data.getDataId()))) {
+                throw new DataIntegrityViolationException("bad row");
+            }
+            records.forEach(data -> written.add(data.getDataId()));
+        }, this::recordDeadLetter, 3, 0);
+
+        SensorDataBatch batch = newBatch(100);
+        handler.write(batch);
+
+        assertEquals(99, written.size());
+        assertEquals(List.of("D37"), deadLetters);
+        // 二分次数约为2*log2(100)，远少于逐条重试
+        assertTrue(writeCalls <= 16, "写入次数: " + writeCalls);
+        assertEquals(100, tracker.committableOffset());
+        assertEquals(1L, handler.getStats().get("deadLettered"));
+    }
+
+    /**
+     * 测试瞬时故障按次数重试后成功
+     */
+    @Test
+    void testTransientFailureRetried() {
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> {
+            if (++writeCalls < 3) {
+                throw new TransientDataAccessResourceException("connection reset");
+            }
+            records.forEach(data -> written.add(data.getDataId()));
+        }, this::recordDeadLetter, 3, 0);
+
+        handler.write(newBatch(10));
+
+        assertEquals(3, writeCalls);
+        assertEquals(10, written.size());
+        assertTrue(deadLetters.isEmpty());
+        assertEquals(10, tracker.committableOffset());
+    }
+
+    /**
+     * 测试瞬时故障重试耗尽时抛出异常，位移保持未提交
+     */
+    @Test
+    void testTransientFailureExhaustedLeavesOffsetsUncommitted() {
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> {
+            writeCalls++;
+            throw new TransientDataAccessResourceException("database down");
+        }, this::recordDeadLetter, 2, 0);
+
+        assertThrows(DataProcessingException.class, () -> handler.write(newBatch(10)));
+
+        assertEquals(3, writeCalls);
+        assertTrue(deadLetters.isEmpty());
+        assertEquals(0, tracker.committableOffset());
+    }
+
+    /**
+     * 测试分区已被重新认领时不重试、不进入死信主题，整批放弃
+     */
+    @Test
+    void testFencedWriteAbandoned() {
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> {
+            writeCalls++;
+            throw new MySQLMapper.StreamFencedException("partition reclaimed");
+        }, this::recordDeadLetter, 3, 0);
+
+        assertThrows(DataProcessingException.class, () -> handler.write(newBatch(10)));
+
+        assertEquals(1, writeCalls);
+        assertTrue(deadLetters.isEmpty());
+        assertEquals(0, tracker.committableOffset());
+    }
+
+    /**
+     * 测试死信发送失败时位移保持未提交
+     */
+    @Test
+    void testDeadLetterFailureLeavesOffsetUncommitted() {
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> {
+            throw new DataIntegrityViolationException("bad row");
+        }, (data, source, offset, attempts, cause) -> {
+            throw new IllegalStateException("kafka unavailable");
+        }, 3, 0);
+
+        handler.write(newBatch(1));
+
+        assertEquals(0, tracker.committableOffset());
+        assertEquals(1L, handler.getStats().get("deadLetterFailures"));
+        assertTrue(tracker.isFailed());
+    }
+
+    /**
+     * 测试指数退避间隔
+     */
+    @Test
+    void testExponentialBackoff() {
+        SensorDataRetryHandler handler = new SensorDataRetryHandler(records -> { }, this::recordDeadLetter, 3, 1000);
+
+        assertEquals(1000, handler.backoffMillis(0));
+        assertEquals(2000, handler.backoffMillis(1));
+        assertEquals(4000, handler.backoffMillis(2));
+        assertEquals(30000, handler.backoffMillis(10));
+    }
+
+    private void recordDeadLetter(SensorData data, TopicPartition source, long offset, int attempts, Exception cause) {
+        assertEquals(tracker.getPartition(), source);
+        assertEquals(Long.parseLong(data.getDataId().substring(1)), offset);
+        assertTrue(attempts > 1);
+        deadLetters.add(data.getDataId());
+    }
+
+    private SensorDataBatch newBatch(int size) {
+        SensorDataBatch batch = new SensorDataBatch(size);
+        for (int i = 0; i < size; i++) {
+            SensorData data = new SensorData();
+            data.setDataId("D" + i);
+            tracker.register(i);
+            tracker.advance(i);
+            batch.add(data, tracker, i);
+        }
+        return batch;
+    }
+}
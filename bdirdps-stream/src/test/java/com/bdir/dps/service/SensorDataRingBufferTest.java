@@ -0,0 +1,104 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 环形缓冲区测试类
+ */
+class SensorDataRingBufferTest {
+
+    /**
+     * 测试容量向上取整为2的幂
+     */
+    @Test
+    void testCapacityRoundedUpToPowerOfTwo() {
+        assertEquals(1024, new SensorDataRingBuffer(1000).capacity());
+        assertEquals(1024, new SensorDataRingBuffer(1024).capacity());
+        assertEquals(2, new SensorDataRingBuffer(1).capacity());
+    }
+
+    /**
+     * 测试缓冲区满时拒绝写入，取出后可继续写入
+     */
+    @Test
+    void testOfferRejectedWhenFull() {
+        SensorDataRingBuffer ringBuffer = new SensorDataRingBuffer(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.offer(newSensorData("R001", i), null, i));
+        }
+        assertFalse(ringBuffer.offer(newSensorData("R001", 4), null, 4));
+        assertEquals(4, ringBuffer.size());
+
+        SensorDataBatch batch = new SensorDataBatch(2);
+        assertEquals(2, ringBuffer.drainTo(batch, 2));
+        assertEquals("R001-0", batch.getRecords().get(0).getDataId());
+        assertEquals("R001-1", batch.getRecords().get(1).getDataId());
+
+        assertTrue(ringBuffer.offer(newSensorData("R001", 4), null, 4));
+        assertEquals(3, ringBuffer.size());
+    }
+
+    /**
+     * 测试多生产者并发写入：不丢失、不重复，且单个生产者内保持顺序
+     */
+    @Test
+    void testConcurrentProducersPreserveOrderPerProducer() throws Exception {
+        int producers = 4;
+        int perProducer = 50000;
+        SensorDataRingBuffer ringBuffer = new SensorDataRingBuffer(1024);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+
+        for (int p = 0; p < producers; p++) {
+            String robotId = "R00" + p;
+            executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < perProducer; i++) {
+                    SensorData data = newSensorData(robotId, i);
+                    while (!ringBuffer.offer(data, null, i)) {
+                        Thread.onSpinWait();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+
+        Map<String, Integer> lastSeen = new HashMap<>();
+        SensorDataBatch batch = new SensorDataBatch(256);
+        int total = 0;
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (total < producers * perProducer && System.currentTimeMillis() < deadline) {
+            batch.clear();
+            total += ringBuffer.drainTo(batch, 256);
+            for (SensorData data : batch.getRecords()) {
+                int sequence = Integer.parseInt(data.getDataId().substring(data.getRobotId().length() + 1));
+                int previous = lastSeen.getOrDefault(data.getRobotId(), -1);
+                assertEquals(previous + 1, sequence, "生产者内顺序被打乱: " + data.getRobotId());
+                lastSeen.put(data.getRobotId(), sequence);
+            }
+        }
+
+        executor.shutdown();
+        assertEquals(producers * perProducer, total);
+        assertTrue(ringBuffer.isEmpty());
+        lastSeen.values().forEach(last -> assertEquals(perProducer - 1, last));
+    }
+
+    private SensorData newSensorData(String robotId, int sequence) {
+        SensorData data = new SensorData();
+        data.setDataId(robotId + "-" + sequence);
+        data.setRobotId(robotId);
+        return data;
+    }
+}
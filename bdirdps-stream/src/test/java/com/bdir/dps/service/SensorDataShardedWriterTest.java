@@ -0,0 +1,133 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 分片并行写库器测试类
+ */
+class SensorDataShardedWriterTest {
+
+    /**
+     * 测试同一机器人的数据在同一分片内按顺序写入，屏障在全部写完后完成
+     */
+    @Test
+    void testRowsOfSameRobotStayOrdered() throws Exception {
+        Map<String, List<Integer>> writtenByRobot = new ConcurrentHashMap<>();
+        Set<String> robotThreads = ConcurrentHashMap.newKeySet();
+        PartitionOffsetTracker tracker = new PartitionOffsetTracker(new TopicPartition("sensor-data-temperature", 0));
+
+        SensorDataShardedWriter writer = new SensorDataShardedWriter(batch -> {
+            for (SensorData data : batch.getRecords()) {
+                writtenByRobot.computeIfAbsent(data.getRobotId(), k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(Integer.parseInt(data.getDataId()));
+                robotThreads.add(data.getRobotId() + "@" + Thread.currentThread().getName());
+            }
+            batch.acknowledge();
+        }, 4, 2);
+        writer.start();
+
+        int robots = 16;
+        int perRobot = 200;
+        long offset = 0;
+        for (int round = 0; round < perRobot / 10; round++) {
+            SensorDataBatch batch = new SensorDataBatch(robots * 10);
+            for (int i = 0; i < 10; i++) {
+                for (int r = 0; r < robots; r++) {
+                    SensorData data = new SensorData();
+                    data.setRobotId("R" + r);
+                    data.setDataId(String.valueOf(round * 10 + i));
+                    tracker.register(offset);
+                    tracker.advance(offset);
+                    batch.add(data, tracker, offset++);
+                }
+            }
+            writer.flush(batch);
+        }
+
+        writer.barrier().get(10, TimeUnit.SECONDS);
+
+        assertEquals(robots, writtenByRobot.size());
+        for (List<Integer> sequence : writtenByRobot.values()) {
+            assertEquals(perRobot, sequence.size());
+            for (int i = 0; i < perRobot; i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+        // 每个机器人只由一个写库线程写入
+        assertEquals(robots, robotThreads.size());
+        assertEquals(offset, tracker.committableOffset());
+
+        writer.stop(5000);
+    }
+
+    /**
+     * 测试按分区分片时同一分区的数据在同一线程内按消费顺序写入，续读序号随数据传递
+     */
+    @Test
+    void testPartitionAffinityKeepsConsumeOrder() throws Exception {
+        Map<TopicPartition, List<String>> written = new ConcurrentHashMap<>();
+        Set<String> partitionThreads = ConcurrentHashMap.newKeySet();
+
+        SensorDataShardedWriter writer = new SensorDataShardedWriter(batch -> {
+            for (int i = 0; i < batch.size(); i++) {
+                TopicPartition partition = batch.getTracker(i).getPartition();
+                written.computeIfAbsent(partition, k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(batch.getOffset(i) + "#" + batch.getNextIndex(i));
+                partitionThreads.add(partition + "@" + Thread.currentThread().getName());
+            }
+        }, 4, 2, true);
+        writer.start();
+
+        PartitionOffsetTracker[] trackers = new PartitionOffsetTracker[6];
+        for (int p = 0; p < trackers.length; p++) {
+            trackers[p] = new PartitionOffsetTracker(new TopicPartition("sensor-data", p));
+        }
+        // 每条消息是包含两条读数的封包，不同分区的数据来自多个机器人
+        for (long offset = 0; offset < 50; offset++) {
+            SensorDataBatch batch = new SensorDataBatch(trackers.length * 2);
+            for (int p = 0; p < trackers.length; p++) {
+                for (int reading = 0; reading < 2; reading++) {
+                    SensorData data = new SensorData();
+                    data.setRobotId("R" + (offset * 7 + p + reading));
+                    batch.add(data, trackers[p], offset, reading == 0 ? 1 : 0);
+                }
+            }
+            writer.flush(batch);
+        }
+
+        writer.barrier().get(10, TimeUnit.SECONDS);
+
+        assertEquals(trackers.length, written.size());
+        assertEquals(trackers.length, partitionThreads.size());
+        for (List<String> sequence : written.values()) {
+            assertEquals(100, sequence.size());
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i / 2 + "#" + (i % 2 == 0 ? 1 : 0), sequence.get(i));
+            }
+        }
+
+        writer.stop(5000);
+    }
+
+    /**
+     * 测试分片号在范围内且同一机器人固定
+     */
+    @Test
+    void testShardOfIsStable() {
+        SensorDataShardedWriter writer = new SensorDataShardedWriter(batch -> { }, 3, 1);
+        for (int i = 0; i < 100; i++) {
+            int shard = writer.shardOf("R" + i);
+            assertTrue(shard >= 0 && shard < 3);
+            assertEquals(shard, writer.shardOf("R" + i));
+        }
+        assertEquals(0, writer.shardOf(null));
+    }
+}
@@ -0,0 +1,103 @@
+package com.bdir.dps.service;
+
+import com.bdir.dps.entity.SensorData;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 流处理监控器测试类
+ */
+class StreamProcessingMonitorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SensorDataRingBuffer ringBuffer = new SensorDataRingBuffer(8);
+    private final StreamProcessingMonitor monitor = new StreamProcessingMonitor(registry, ringBuffer, ZoneOffset.UTC);
+
+    /**
+     * 测试写库后按每条数据记录拉取到写库和事件时间到写库的延迟
+     */
+    @Test
+    void testLatencies() {
+        SensorDataBatch batch = new SensorDataBatch(2);
+        long now = System.nanoTime();
+        batch.add(reading(LocalDateTime.now(ZoneOffset.UTC).minusSeconds(2)), null, 0, 0,
+                now - TimeUnit.MILLISECONDS.toNanos(50));
+        batch.add(reading(LocalDateTime.now(ZoneOffset.UTC).plusSeconds(5)), null, 1, 0,
+                now - TimeUnit.MILLISECONDS.toNanos(300));
+        monitor.recordWritten(batch, TimeUnit.MILLISECONDS.toNanos(20));
+
+        assertEquals(2, registry.get("stream_poll_to_flush_latency").timer().count());
+        assertTrue(registry.get("stream_poll_to_flush_latency").timer().max(TimeUnit.MILLISECONDS) >= 300);
+        // 时钟超前的读数记为0
+        assertEquals(2, registry.get("stream_event_to_db_latency").timer().count());
+        assertTrue(registry.get("stream_event_to_db_latency").timer().max(TimeUnit.MILLISECONDS) >= 2000);
+        assertEquals(2, registry.get("stream_records_written_total").counter().count());
+
+        Map<String, Object> stats = monitor.getStats();
+        assertEquals(0.5, (double) stats.get("pollToFlushWithinSlo"), 1e-9);
+        assertEquals(0.5, (double) stats.get("eventToDbWithinSlo"), 1e-9);
+    }
+
+    /**
+     * 测试缓冲区占用、刷新条数分布和拒收计数
+     */
+    @Test
+    void testBufferAndRejections() {
+        ringBuffer.offer(reading(LocalDateTime.now()), null, 0);
+        ringBuffer.offer(reading(LocalDateTime.now()), null, 1);
+        assertEquals(2, registry.get("stream_buffer_records").gauge().value());
+        assertEquals(0.25, registry.get("stream_buffer_occupancy_ratio").gauge().value(), 1e-9);
+
+        monitor.recordFlush(100);
+        monitor.recordFlush(40);
+        assertEquals(2, registry.get("stream_flush_size").summary().count());
+        assertEquals(140, registry.get("stream_flush_size").summary().totalAmount());
+
+        monitor.recordParseFailure();
+        monitor.recordValidationFailure();
+        monitor.recordValidationFailure();
+        assertEquals(1, registry.get("stream_records_rejected_total").tag("reason", "parse").counter().count());
+        assertEquals(2, registry.get("stream_records_rejected_total").tag("reason", "validation").counter().count());
+    }
+
+    /**
+     * 测试按通道上报的分区积压注册为分区指标，通道关闭后移除
+     */
+    @Test
+    void testConsumerLag() {
+        Map<TopicPartition, Long> lane0 = new HashMap<>();
+        lane0.put(new TopicPartition("sensor-data", 0), 120L);
+        lane0.put(new TopicPartition("sensor-data", 1), 30L);
+        monitor.onLag(0, lane0);
+        monitor.onLag(1, Collections.singletonMap(new TopicPartition("sensor-data", 2), 5L));
+
+        assertEquals(120, registry.get("stream_consumer_lag").tags("topic", "sensor-data", "partition", "0")
+                .gauge().value());
+        assertEquals(3, registry.get("stream_consumer_lag").gauges().size());
+        assertEquals(155L, monitor.getStats().get("totalLag"));
+
+        monitor.onLag(0, Collections.emptyMap());
+        assertEquals(1, registry.get("stream_consumer_lag").gauges().size());
+        assertEquals(5, registry.get("stream_consumer_lag").tags("partition", "2").gauge().value());
+    }
+
+    private static SensorData reading(LocalDateTime timestamp) {
+        SensorData data = new SensorData();
+        data.setDataId("D1");
+        data.setRobotId("R1");
+        data.setSensorId("S1");
+        data.setSensorType("temperature");
+        data.setTimestamp(timestamp);
+        return data;
+    }
+}
@@ -0,0 +1,231 @@
+package com.bdir.dps.config;
+
+import com.bdir.dps.config.SensorDataKafkaConfig.SensorTopicRouter;
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.kafka.PartitionSkewMonitor;
+import com.bdir.dps.kafka.SensorDataCodec;
+import com.bdir.dps.kafka.SensorDataEnvelopeCodec;
+import com.bdir.dps.kafka.SensorDataPartitioner;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.ssl.SslBundles;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 高频传感器封包发送配置
+ * app.kafka.sensor-batching.enabled为true时，同一传感器的读数在linger-ms内或达到max-readings条时
+ * 打包为一条封包消息发送，消费端按内容类型头识别并展开。
+ * 封包会给每条读数增加最多linger-ms的发送延迟，默认关闭；sensor-types指定只对这些高频传感器类型封包，
+ * 为空时对所有类型封包
+ */
+@Configuration
+public class SensorDataBatchingConfig {
+
+    @Value("${app.kafka.sensor-batching.linger-ms:20}")
+    private long lingerMs;
+
+    @Value("${app.kafka.sensor-batching.max-readings:500}")
+    private int maxReadings;
+
+    @Value("${app.kafka.sensor-batching.sensor-types:}")
+    private Set<String> sensorTypes;
+
+    @Bean
+    @ConditionalOnProperty(name = "app.kafka.sensor-batching.enabled", havingValue = "true")
+    public SensorDataBatcher sensorDataBatcher(KafkaProperties kafkaProperties, ObjectProvider<SslBundles> sslBundles,
+                                               PartitionSkewMonitor partitionSkewMonitor,
+                                               SensorTopicRouter sensorTopicRouter) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties(sslBundles.getIfAvailable());
+        props.put(SensorDataPartitioner.SKEW_MONITOR_CONFIG, partitionSkewMonitor);
+        return new SensorDataBatcher(new DefaultKafkaProducerFactory<>(props,
+                new StringSerializer(), new ByteArraySerializer()), sensorTopicRouter, lingerMs, maxReadings,
+                sensorTypes);
+    }
+
+    /**
+     * 传感器读数封包器
+     * 按robotId#sensorId分组缓存读数，封包发送后按Kafka确认结果完成组内每条读数的Future。
+     * 同一传感器的封包在持有分组锁时发送，新的分组只能在上一个分组发送后创建，因此封包之间保持顺序
+     */
+    @Slf4j
+    public static class SensorDataBatcher implements DisposableBean {
+        private static final byte[] CONTENT_TYPE =
+                SensorDataEnvelopeCodec.CONTENT_TYPE_ENVELOPE.getBytes(StandardCharsets.UTF_8);
+
+        private final DefaultKafkaProducerFactory<String, byte[]> producerFactory;
+        private final KafkaTemplate<String, byte[]> kafkaTemplate;
+        private final SensorTopicRouter topicRouter;
+        private final long lingerNanos;
+        private final int maxReadings;
+        private final Set<String> sensorTypes;
+        private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+        private final ScheduledExecutorService scheduler;
+
+        private final LongAdder envelopesSent = new LongAdder();
+        private final LongAdder readingsBatched = new LongAdder();
+
+        public SensorDataBatcher(DefaultKafkaProducerFactory<String, byte[]> producerFactory,
+                                 SensorTopicRouter topicRouter, long lingerMs, int maxReadings,
+                                 Set<String> sensorTypes) {
+            this.producerFactory = producerFactory;
+            this.kafkaTemplate = new KafkaTemplate<>(producerFactory);
+            this.topicRouter = topicRouter;
+            this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, lingerMs));
+            this.maxReadings = Math.max(1, maxReadings);
+            this.sensorTypes = sensorTypes != null ? new HashSet<>(sensorTypes) : Collections.emptySet();
+
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "sensor-data-batcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long tickMs = Math.max(1, lingerMs / 2);
+            scheduler.scheduleAtFixedRate(this::flushExpired, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 读数的传感器类型是否需要封包发送，未配置传感器类型时所有读数都封包
+         */
+        public boolean accepts(SensorData data) {
+            return sensorTypes.isEmpty() || sensorTypes.contains(data.getSensorType());
+        }
+
+        /**
+         * 加入一条读数，所在封包被Kafka确认后完成
+         */
+        public CompletableFuture<Void> add(SensorData data) {
+            String key = SensorDataPartitioner.key(data.getRobotId(), data.getSensorId());
+            CompletableFuture<Void> ack = new CompletableFuture<>();
+            while (true) {
+                Pending group = pending.computeIfAbsent(key, k -> new Pending(System.nanoTime()));
+                synchronized (group) {
+                    // 分组已被发送线程取走，重新取一个新的分组
+                    if (group.sent) {
+                        continue;
+                    }
+                    group.readings.add(data);
+                    group.acks.add(ack);
+                    if (group.readings.size() >= maxReadings) {
+                        send(key, group);
+                    }
+                    return ack;
+                }
+            }
+        }
+
+        /**
+         * 发送已超过等待时间的分组
+         */
+        private void flushExpired() {
+            long now = System.nanoTime();
+            try {
+                pending.forEach((key, group) -> {
+                    synchronized (group) {
+                        if (!group.sent && now - group.createdNanos >= lingerNanos) {
+                            send(key, group);
+                        }
+                    }
+                });
+            } catch (Exception e) {
+                log.error("发送传感器数据封包失败", e);
+            }
+        }
+
+        /**
+         * 发送分组，调用方持有分组锁
+         */
+        private void send(String key, Pending group) {
+            List<CompletableFuture<Void>> acks = group.acks;
+            try {
+                SensorData first = group.readings.get(0);
+                ProducerRecord<String, byte[]> record =
+                        topicRouter.record(first, SensorDataEnvelopeCodec.encode(group.readings));
+                record.headers().add(SensorDataCodec.CONTENT_TYPE_HEADER, CONTENT_TYPE);
+                kafkaTemplate.send(record).whenComplete((result, error) -> {
+                    for (CompletableFuture<Void> ack : acks) {
+                        if (error == null) {
+                            ack.complete(null);
+                        } else {
+                            ack.completeExceptionally(error);
+                        }
+                    }
+                });
+                envelopesSent.increment();
+                readingsBatched.add(group.readings.size());
+            } catch (Exception e) {
+                acks.forEach(ack -> ack.completeExceptionally(e));
+            } finally {
+                group.sent = true;
+                pending.remove(key, group);
+            }
+        }
+
+        public Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            long envelopes = envelopesSent.sum();
+            long readings = readingsBatched.sum();
+            stats.put("envelopesSent", envelopes);
+            stats.put("readingsBatched", readings);
+            stats.put("avgReadingsPerEnvelope", envelopes > 0 ? (double) readings / envelopes : 0);
+            stats.put("pendingGroups", pending.size());
+            stats.put("sensorTypes", sensorTypes.isEmpty() ? "*" : String.join(",", new TreeSet<>(sensorTypes)));
+            return stats;
+        }
+
+        /**
+         * 发送剩余分组后关闭生产者
+         */
+        @Override
+        public void destroy() {
+            scheduler.shutdown();
+            pending.forEach((key, group) -> {
+                synchronized (group) {
+                    if (!group.sent) {
+                        send(key, group);
+                    }
+                }
+            });
+            producerFactory.destroy();
+        }
+
+        /**
+         * 一个传感器待发送的读数
+         */
+        private static final class Pending {
+            private final long createdNanos;
+            private final List<SensorData> readings = new ArrayList<>();
+            private final List<CompletableFuture<Void>> acks = new ArrayList<>();
+            private boolean sent;
+
+            private Pending(long createdNanos) {
+                this.createdNanos = createdNanos;
+            }
+        }
+    }
+}
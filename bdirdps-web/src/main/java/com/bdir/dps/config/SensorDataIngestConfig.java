@@ -0,0 +1,137 @@
+package com.bdir.dps.config;
+
+import com.bdir.dps.utils.SensorDataStreamParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 传感器数据接入配置
+ * 按在途读数数量做准入控制，记录各接入端点的延迟直方图，并提供批量请求体的流式解析器
+ */
+@Configuration
+public class SensorDataIngestConfig {
+
+    @Value("${app.ingest.max-in-flight-readings:200000}")
+    private int maxInFlightReadings;
+
+    @Value("${app.ingest.retry-after-seconds:1}")
+    private int retryAfterSeconds;
+
+    @Value("${app.ingest.ack-timeout-ms:10000}")
+    private long ackTimeoutMs;
+
+    @Bean
+    public IngestLimiter sensorDataIngestLimiter(MeterRegistry meterRegistry) {
+        return new IngestLimiter(meterRegistry, maxInFlightReadings, retryAfterSeconds, ackTimeoutMs);
+    }
+
+    /**
+     * 批量接入请求体的流式解析器
+     */
+    @Bean
+    public SensorDataStreamParser sensorDataStreamParser(ObjectMapper objectMapper) {
+        return new SensorDataStreamParser(objectMapper);
+    }
+
+    /**
+     * 接入准入控制器
+     * 每条读数在发送前占用一个许可，Kafka确认或失败后归还；许可不足时立即拒绝，
+     * 由调用方返回429，不在请求线程上排队等待
+     */
+    public static class IngestLimiter {
+        private final MeterRegistry meterRegistry;
+        private final Semaphore permits;
+        private final int maxInFlightReadings;
+        private final int retryAfterSeconds;
+        private final long ackTimeoutMs;
+        private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+        private final Counter rejectedReadings;
+
+        public IngestLimiter(MeterRegistry meterRegistry, int maxInFlightReadings,
+                             int retryAfterSeconds, long ackTimeoutMs) {
+            this.meterRegistry = meterRegistry;
+            this.maxInFlightReadings = Math.max(1, maxInFlightReadings);
+            this.permits = new Semaphore(this.maxInFlightReadings);
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.ackTimeoutMs = ackTimeoutMs;
+
+            this.rejectedReadings = Counter.builder("sensor_ingest_rejected_readings_total")
+                    .description("Sensor readings rejected by ingest admission control")
+                    .register(meterRegistry);
+            Gauge.builder("sensor_ingest_in_flight_readings", this, IngestLimiter::getInFlightReadings)
+                    .description("Sensor readings waiting for Kafka acknowledgement")
+                    .register(meterRegistry);
+        }
+
+        /**
+         * 尝试为一批读数申请许可，超过许可池大小的批次按池大小申请，以免大批次永远无法准入
+         */
+        public boolean tryAcquire(int readings) {
+            if (permits.tryAcquire(permitsFor(readings))) {
+                return true;
+            }
+            rejectedReadings.increment(readings);
+            return false;
+        }
+
+        public void release(int readings) {
+            permits.release(permitsFor(readings));
+        }
+
+        private int permitsFor(int readings) {
+            return Math.min(Math.max(readings, 0), maxInFlightReadings);
+        }
+
+        public Timer.Sample startTimer() {
+            return Timer.start(meterRegistry);
+        }
+
+        /**
+         * 记录请求从进入到响应的耗时
+         *
+         * @param endpoint 接入端点
+         * @param outcome  accepted/rejected/failed/invalid
+         */
+        public void recordLatency(Timer.Sample sample, String endpoint, String outcome) {
+            sample.stop(timers.computeIfAbsent(endpoint + "#" + outcome, key -> Timer.builder("sensor_ingest_latency")
+                    .description("Sensor ingest request latency until Kafka acknowledgement")
+                    .tag("endpoint", endpoint)
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .serviceLevelObjectives(Duration.ofMillis(10), Duration.ofMillis(50), Duration.ofMillis(200))
+                    .register(meterRegistry)));
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public long getAckTimeoutMs() {
+            return ackTimeoutMs;
+        }
+
+        public int getInFlightReadings() {
+            return maxInFlightReadings - permits.availablePermits();
+        }
+
+        public Map<String, Object> getStats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("maxInFlightReadings", maxInFlightReadings);
+            stats.put("inFlightReadings", getInFlightReadings());
+            stats.put("rejectedReadings", (long) rejectedReadings.count());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.bdir.dps.config;
+
+import com.bdir.dps.entity.SensorData;
+import com.bdir.dps.kafka.PartitionSkewMonitor;
+import com.bdir.dps.kafka.SensorDataPartitioner;
+import com.bdir.dps.kafka.SensorDataSerializer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.DefaultKafkaProducerFactoryCustomizer;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.ssl.SslBundles;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 传感器数据Kafka发送配置
+ * app.kafka.sensor-wire-format为binary时按二进制格式发送传感器数据，
+ * 否则沿用JSON字符串发送。消费端按内容类型头协商格式，两种格式可以共存。
+ * 传感器数据按机器人分区，app.kafka.sensor-topic-mode为single时所有类型写入同一主题，
+ * 传感器类型放在消息头中
+ */
+@Configuration
+public class SensorDataKafkaConfig {
+
+    @Value("${app.kafka.sensor-topic-mode:per-type}")
+    private String sensorTopicMode;
+
+    @Value("${app.kafka.topics.sensor-data:sensor-data}")
+    private String sensorDataTopic;
+
+    @Bean
+    public PartitionSkewMonitor partitionSkewMonitor(MeterRegistry meterRegistry) {
+        PartitionSkewMonitor monitor = new PartitionSkewMonitor();
+        Gauge.builder("sensor_partition_skew", monitor, PartitionSkewMonitor::getMaxSkew)
+                .description("Max partition record count divided by the mean, across sensor topics")
+                .register(meterRegistry);
+        return monitor;
+    }
+
+    /**
+     * 把分区倾斜统计器传给自动配置的生产者，分区器通过配置项取得实例
+     */
+    @Bean
+    public DefaultKafkaProducerFactoryCustomizer partitionSkewMonitorCustomizer(PartitionSkewMonitor monitor) {
+        return producerFactory -> producerFactory.updateConfigs(
+                Collections.singletonMap(SensorDataPartitioner.SKEW_MONITOR_CONFIG, monitor));
+    }
+
+    @Bean
+    public SensorTopicRouter sensorTopicRouter() {
+        return new SensorTopicRouter("single".equalsIgnoreCase(sensorTopicMode), sensorDataTopic);
+    }
+
+    /**
+     * 二进制格式的传感器数据发送器
+     * 不注册为KafkaTemplate类型的Bean，避免覆盖自动配置的字符串KafkaTemplate
+     */
+    @Bean
+    @ConditionalOnProperty(name = "app.kafka.sensor-wire-format", havingValue = "binary")
+    public SensorDataSender sensorDataSender(KafkaProperties kafkaProperties, ObjectProvider<SslBundles> sslBundles,
+                                             PartitionSkewMonitor partitionSkewMonitor) {
+        Map<String, Object> props = kafkaProperties.buildProducerProperties(sslBundles.getIfAvailable());
+        props.put(SensorDataPartitioner.SKEW_MONITOR_CONFIG, partitionSkewMonitor);
+        return new SensorDataSender(new DefaultKafkaProducerFactory<>(props,
+                new StringSerializer(), new SensorDataSerializer()));
+    }
+
+    /**
+     * 传感器数据发送器
+     */
+    public static class SensorDataSender implements DisposableBean {
+        private final DefaultKafkaProducerFactory<String, SensorData> producerFactory;
+        private final KafkaTemplate<String, SensorData> kafkaTemplate;
+
+        public SensorDataSender(DefaultKafkaProducerFactory<String, SensorData> producerFactory) {
+            this.producerFactory = producerFactory;
+            this.kafkaTemplate = new KafkaTemplate<>(producerFactory);
+        }
+
+        public CompletableFuture<SendResult<String, SensorData>> send(String topic, String key, SensorData data) {
+            return kafkaTemplate.send(topic, key, data);
+        }
+
+        public CompletableFuture<SendResult<String, SensorData>> send(ProducerRecord<String, SensorData> record) {
+            return kafkaTemplate.send(record);
+        }
+
+        @Override
+        public void destroy() {
+            producerFactory.destroy();
+        }
+    }
+
+    /**
+     * 传感器数据主题路由
+     * 按类型拆分时主题为sensor-data-类型；单主题模式下写入同一主题，并在消息头中携带传感器类型
+     */
+    public static class SensorTopicRouter {
+        private static final String TOPIC_PREFIX = SensorDataPartitioner.TOPIC_PREFIX + "-";
+
+        private final boolean singleTopic;
+        private final String sensorDataTopic;
+
+        public SensorTopicRouter(boolean singleTopic, String sensorDataTopic) {
+            this.singleTopic = singleTopic;
+            this.sensorDataTopic = sensorDataTopic;
+        }
+
+        public <V> ProducerRecord<String, V> record(SensorData data, V value) {
+            String key = SensorDataPartitioner.key(data.getRobotId(), data.getSensorId());
+            String sensorType = data.getSensorType().toLowerCase();
+            if (!singleTopic) {
+                return new ProducerRecord<>(TOPIC_PREFIX + sensorType, key, value);
+            }
+            ProducerRecord<String, V> record = new ProducerRecord<>(sensorDataTopic, key, value);
+            record.headers().add(SensorDataPartitioner.SENSOR_TYPE_HEADER,
+                    sensorType.getBytes(StandardCharsets.UTF_8));
+            return record;
+        }
+
+        public boolean isSingleTopic() {
+            return singleTopic;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.bdir.dps.controller;
+
+import com.bdir.dps.service.DeadLetterReplayService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 死信数据控制器
+ * 流处理写库失败的数据进入死信主题，修复问题后通过该接口重放
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/dead-letter")
+public class DeadLetterController {
+
+    @Autowired
+    private DeadLetterReplayService deadLetterReplayService;
+
+    /**
+     * 重放死信数据到原始主题
+     */
+    @PostMapping("/replay")
+    public ResponseEntity<? super Map<String, Object>> replay(
+            @RequestParam(defaultValue = "1000") int maxRecords) {
+        try {
+            Map<String, Object> stats = deadLetterReplayService.replay(maxRecords);
+            if (stats == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(
+                    Map.of("success", false, "message", "已有重放任务正在执行")
+                );
+            }
+
+            Map<String, Object> result = new HashMap<>(stats);
+            result.put("success", true);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("重放死信数据失败: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("success", false, "message", e.getMessage())
+            );
+        }
+    }
+}
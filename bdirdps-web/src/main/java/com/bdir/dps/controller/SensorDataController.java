@@ -1,17 +1,37 @@
 package com.bdir.dps.controller;
 
+import com.bdir.dps.aggregate.PartialAggregate;
+import com.bdir.dps.aggregate.SensorAggregate;
+import com.bdir.dps.aggregate.TimeBucket;
+import com.bdir.dps.config.SensorDataBatchingConfig.SensorDataBatcher;
+import com.bdir.dps.config.SensorDataIngestConfig.IngestLimiter;
+import com.bdir.dps.config.SensorDataKafkaConfig.SensorDataSender;
+import com.bdir.dps.config.SensorDataKafkaConfig.SensorTopicRouter;
 import com.bdir.dps.entity.SensorData;
-import com.bdir.dps.mapper.HiveQueryRouterMapper;
+import com.bdir.dps.kafka.PartitionSkewMonitor;
+import com.bdir.dps.mapper.SensorPartialCache;
+import com.bdir.dps.mapper.SensorQueryRouter;
 import com.bdir.dps.utils.JsonUtil;
+import com.bdir.dps.utils.SensorDataStreamParser;
+import com.bdir.dps.validation.SensorDataRuleEngine;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 传感器数据控制器
@@ -22,99 +42,231 @@ import java.util.*;
 public class SensorDataController {
 
     @Autowired
-    private HiveQueryRouterMapper hiveQueryRouterMapper;
+    private SensorQueryRouter sensorQueryRouter;
+
+    @Autowired
+    private SensorPartialCache sensorPartialCache;
 
     @Autowired
     private KafkaTemplate<String, String> kafkaTemplate;
 
+    /**
+     * 二进制格式发送器，未启用二进制格式时为null
+     */
+    @Autowired(required = false)
+    private SensorDataSender sensorDataSender;
+
+    /**
+     * 高频传感器封包器，未启用封包发送时为null
+     */
+    @Autowired(required = false)
+    private SensorDataBatcher sensorDataBatcher;
+
+    @Autowired
+    private SensorTopicRouter sensorTopicRouter;
+
+    @Autowired
+    private PartitionSkewMonitor partitionSkewMonitor;
+
+    @Autowired
+    private IngestLimiter ingestLimiter;
+
+    @Autowired
+    private SensorDataStreamParser sensorDataStreamParser;
+
+    @Autowired
+    private SensorDataRuleEngine sensorDataRuleEngine;
+
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     /**
      * 接收传感器数据
+     * 异步返回：Kafka确认后才响应，请求线程不等待发送结果；在途读数超过上限时返回429
      */
     @PostMapping("/collect")
-    public ResponseEntity<? super Map<String, Object>> collectSensorData(@RequestBody SensorData sensorData) {
-        try {
-            log.debug("接收传感器数据: {}", JsonUtil.toJson(sensorData));
-
-            // 验证数据
-            if (!validateSensorData(sensorData)) {
-                return ResponseEntity.badRequest().body(
-                    Map.of("success", false, "message", "数据验证失败")
-                );
-            }
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> collectSensorData(@RequestBody SensorData sensorData) {
+        Timer.Sample sample = ingestLimiter.startTimer();
+        log.debug("接收传感器数据: {}", sensorData.getDataId());
+
+        // 验证数据
+        if (!validateSensorData(sensorData)) {
+            ingestLimiter.recordLatency(sample, "collect", "invalid");
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(
+                Map.of("success", false, "message", "数据验证失败")
+            ));
+        }
 
-            // 发送到Kafka
-            String topic = "sensor-data-" + sensorData.getSensorType().toLowerCase();
-            String key = sensorData.getRobotId() + "#" + sensorData.getSensorId();
-            String value = JsonUtil.toJson(sensorData);
+        if (!ingestLimiter.tryAcquire(1)) {
+            ingestLimiter.recordLatency(sample, "collect", "rejected");
+            return CompletableFuture.completedFuture(tooManyRequests());
+        }
 
-            kafkaTemplate.send(topic, key, value);
+        return sendToKafka(sensorData)
+                .orTimeout(ingestLimiter.getAckTimeoutMs(), TimeUnit.MILLISECONDS)
+                .handle((result, error) -> {
+                    ingestLimiter.release(1);
+                    if (error != null) {
+                        log.error("发送传感器数据到Kafka失败: {}", sensorData.getDataId(), error);
+                        ingestLimiter.recordLatency(sample, "collect", "failed");
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(
+                            Map.<String, Object>of("success", false, "message", "数据发送失败，请稍后重试")
+                        );
+                    }
 
-            // 同时发送到实时数据表
-            sendToRealtimeTable(sensorData);
+                    // 同时发送到实时数据表
+                    sendToRealtimeTable(sensorData);
 
-            Map<String, Object> result = Map.of(
-                "success", true,
-                "message", "数据接收成功",
-                "dataId", sensorData.getDataId()
-            );
-            return ResponseEntity.ok(result);
-        } catch (Exception e) {
-            log.error("接收传感器数据失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("success", false, "message", e.getMessage())
-            );
-        }
+                    ingestLimiter.recordLatency(sample, "collect", "accepted");
+                    Map<String, Object> body = new HashMap<>();
+                    body.put("success", true);
+                    body.put("message", "数据接收成功");
+                    body.put("dataId", sensorData.getDataId());
+                    return ResponseEntity.ok(body);
+                });
     }
 
     /**
      * 批量接收传感器数据
+     * 流式解析请求体（JSON数组或NDJSON，支持gzip），逐条校验并发送，不在内存中保留整批数据。
+     * 全部已发送的读数得到Kafka确认后响应；有读数发送失败时返回503，客户端可整批重试，
+     * 重复数据由流处理端去重。中途许可不足时停止读取并返回429，
+     * processedCount为已处理的读数条数，客户端可从该位置继续提交
      */
     @PostMapping("/collect/batch")
-    public ResponseEntity<? super Map<String, Object>> collectBatchSensorData(
-            @RequestBody List<SensorData> sensorDataList) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> collectBatchSensorData(HttpServletRequest request) {
+        Timer.Sample sample = ingestLimiter.startTimer();
+        BatchAcknowledgement batch = new BatchAcknowledgement();
+
+        String parseError = null;
         try {
-            log.info("批量接收传感器数据，数量: {}", sensorDataList.size());
+            boolean gzip = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+            sensorDataStreamParser.parse(request.getInputStream(), gzip, (sensorData, raw, offset, length) -> {
+                if (!validateSensorData(sensorData)) {
+                    batch.invalid++;
+                    batch.processed++;
+                    return true;
+                }
+                if (!ingestLimiter.tryAcquire(1)) {
+                    batch.rejected = true;
+                    return false;
+                }
+                batch.processed++;
+                batch.sending();
+                sendToKafka(sensorData, raw, offset, length).whenComplete((result, error) -> {
+                    ingestLimiter.release(1);
+                    if (error != null) {
+                        log.error("发送传感器数据到Kafka失败: {}", sensorData.getDataId(), error);
+                    } else {
+                        // 发送到实时数据表
+                        sendToRealtimeTable(sensorData);
+                    }
+                    batch.completed(error == null);
+                });
+                return true;
+            });
+        } catch (IOException | RuntimeException e) {
+            log.warn("批量传感器数据请求体解析失败: {}", e.getMessage());
+            parseError = e.getMessage();
+        }
 
-            int successCount = 0;
-            int failCount = 0;
+        String error = parseError;
+        return batch.finish()
+                .orTimeout(ingestLimiter.getAckTimeoutMs(), TimeUnit.MILLISECONDS)
+                .handle((ignored, timeout) -> {
+                    // 超时时未确认的读数按失败计
+                    int kafkaFailed = batch.kafkaFailed.get() + (timeout != null ? batch.pending.get() : 0);
+                    int successCount = batch.acknowledged.get();
+                    int failCount = batch.invalid + kafkaFailed;
+                    log.debug("批量接收传感器数据完成，处理: {}, 成功: {}, 失败: {}", batch.processed, successCount, failCount);
+
+                    Map<String, Object> body = new HashMap<>();
+                    body.put("successCount", successCount);
+                    body.put("failCount", failCount);
+                    body.put("kafkaFailCount", kafkaFailed);
+                    body.put("processedCount", batch.processed);
+
+                    if (error != null) {
+                        body.put("success", false);
+                        body.put("message", "请求体解析失败: " + error);
+                        ingestLimiter.recordLatency(sample, "collect_batch", "invalid");
+                        return ResponseEntity.badRequest().body(body);
+                    }
+                    if (batch.rejected) {
+                        body.put("success", false);
+                        body.put("message", "系统繁忙，请从第" + batch.processed + "条开始重新提交");
+                        ingestLimiter.recordLatency(sample, "collect_batch", "rejected");
+                        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ingestLimiter.getRetryAfterSeconds()))
+                                .body(body);
+                    }
 
-            for (SensorData sensorData : sensorDataList) {
-                try {
-                    if (validateSensorData(sensorData)) {
-                        // 发送到Kafka
-                        String topic = "sensor-data-" + sensorData.getSensorType().toLowerCase();
-                        String key = sensorData.getRobotId() + "#" + sensorData.getSensorId();
-                        String value = JsonUtil.toJson(sensorData);
+                    body.put("success", kafkaFailed == 0);
+                    body.put("message", String.format("批量处理完成，成功%d条，失败%d条", successCount, failCount));
+                    if (kafkaFailed > 0) {
+                        ingestLimiter.recordLatency(sample, "collect_batch", "failed");
+                        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(body);
+                    }
+                    ingestLimiter.recordLatency(sample, "collect_batch", "accepted");
+                    return ResponseEntity.ok(body);
+                });
+    }
 
-                        kafkaTemplate.send(topic, key, value);
+    /**
+     * 获取接入准入统计、分区倾斜统计和校验规则统计
+     */
+    @GetMapping("/collect/stats")
+    public ResponseEntity<Map<String, Object>> getIngestStats() {
+        Map<String, Object> stats = ingestLimiter.getStats();
+        stats.put("singleTopic", sensorTopicRouter.isSingleTopic());
+        stats.put("partitionSkew", partitionSkewMonitor.getStats());
+        stats.put("validation", sensorDataRuleEngine.getStats());
+        if (sensorDataBatcher != null) {
+            stats.put("batching", sensorDataBatcher.getStats());
+        }
+        return ResponseEntity.ok(stats);
+    }
 
-                        // 发送到实时数据表
-                        sendToRealtimeTable(sensorData);
+    private ResponseEntity<Map<String, Object>> tooManyRequests() {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ingestLimiter.getRetryAfterSeconds()))
+                .body(Map.of("success", false, "message", "系统繁忙，请稍后重试"));
+    }
 
-                        successCount++;
-                    } else {
-                        failCount++;
-                    }
-                } catch (Exception e) {
-                    log.error("处理单条传感器数据失败: {}", e.getMessage());
-                    failCount++;
-                }
+    /**
+     * 批量请求的确认计数，只保存计数不保存读数，内存占用与批次大小无关。
+     * 解析相关的字段只在请求线程中访问
+     */
+    private static final class BatchAcknowledgement {
+        /**
+         * 未确认的读数，初始的1代表解析尚未结束
+         */
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private final AtomicInteger acknowledged = new AtomicInteger(0);
+        private final AtomicInteger kafkaFailed = new AtomicInteger(0);
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private int processed;
+        private int invalid;
+        private boolean rejected;
+
+        private void sending() {
+            pending.incrementAndGet();
+        }
+
+        private void completed(boolean success) {
+            (success ? acknowledged : kafkaFailed).incrementAndGet();
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
             }
+        }
 
-            Map<String, Object> result = Map.of(
-                "success", true,
-                "message", String.format("批量处理完成，成功%d条，失败%d条", successCount, failCount),
-                "successCount", successCount,
-                "failCount", failCount
-            );
-            return ResponseEntity.ok(result);
-        } catch (Exception e) {
-            log.error("批量接收传感器数据失败: {}", e.getMessage(), e);
-            return ResponseEntity.internalServerError().body(
-                Map.of("success", false, "message", e.getMessage())
-            );
+        /**
+         * 解析结束，返回全部读数确认后完成的Future
+         */
+        private CompletableFuture<Void> finish() {
+            if (pending.decrementAndGet() == 0) {
+                done.complete(null);
+            }
+            return done;
         }
     }
 
@@ -139,8 +291,8 @@ public class SensorDataController {
                 metrics = Arrays.asList("temperature", "humidity", "pressure");
             }
 
-            // 使用Hive查询路由
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            // 按时间范围和代价选择查询路由
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, robotIds, sensorTypes, metrics
             );
 
@@ -183,7 +335,7 @@ public class SensorDataController {
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure", "position_x", "position_y", "position_z");
 
             // 查询最近5分钟的数据
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, robotIds, sensorTypes, metrics
             );
 
@@ -222,15 +374,13 @@ public class SensorDataController {
                 groupBy = "robot";
             }
 
-            List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-
-            // 查询统计数据
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
-                startTime, endTime, robotIds, null, metrics
+            // 按小时的部分聚合，已缓存的小时不再查询
+            List<SensorAggregate> partials = sensorPartialCache.hourly(
+                LocalDateTime.parse(startTime, FORMATTER), LocalDateTime.parse(endTime, FORMATTER), robotIds, null
             );
 
             // 计算统计信息
-            Map<String, Object> statistics = calculateStatistics(data, groupBy);
+            Map<String, Object> statistics = calculateStatistics(partials, groupBy);
 
             Map<String, Object> result = Map.of(
                 "success", true,
@@ -270,36 +420,37 @@ public class SensorDataController {
     }
 
     /**
-     * 验证传感器数据
+     * 验证传感器数据，与流处理端使用同一套校验规则
      */
     private boolean validateSensorData(SensorData sensorData) {
-        if (sensorData == null) {
-            return false;
-        }
+        return sensorDataRuleEngine.validate(sensorData);
+    }
 
-        // 验证必填字段
-        if (sensorData.getRobotId() == null || sensorData.getRobotId().isEmpty()) {
-            return false;
-        }
-        if (sensorData.getSensorId() == null || sensorData.getSensorId().isEmpty()) {
-            return false;
-        }
-        if (sensorData.getSensorType() == null || sensorData.getSensorType().isEmpty()) {
-            return false;
-        }
+    /**
+     * 发送传感器数据到Kafka，启用封包发送且传感器类型需要封包时交给封包器，启用二进制格式时使用二进制发送器，
+     * 否则发送JSON字符串。发送调用本身抛出的异常（如缓冲区已满）也转换为失败的Future
+     */
+    private CompletableFuture<?> sendToKafka(SensorData sensorData) {
+        return sendToKafka(sensorData, null, 0, 0);
+    }
 
-        // 验证数值范围
-        Map<String, Double> metrics = sensorData.getMetrics();
-        if (metrics != null) {
-            for (Map.Entry<String, Double> entry : metrics.entrySet()) {
-                Double value = entry.getValue();
-                if (value == null || Double.isNaN(value) || Double.isInfinite(value)) {
-                    return false;
-                }
+    /**
+     * 发送传感器数据到Kafka，JSON格式且有原始字节时直接转发原始字节，不重新序列化
+     */
+    private CompletableFuture<?> sendToKafka(SensorData sensorData, byte[] raw, int offset, int length) {
+        try {
+            if (sensorDataBatcher != null && sensorDataBatcher.accepts(sensorData)) {
+                return sensorDataBatcher.add(sensorData);
             }
+            if (sensorDataSender != null) {
+                return sensorDataSender.send(sensorTopicRouter.record(sensorData, sensorData));
+            }
+            String value = raw != null
+                    ? new String(raw, offset, length, StandardCharsets.UTF_8) : JsonUtil.toJson(sensorData);
+            return kafkaTemplate.send(sensorTopicRouter.record(sensorData, value));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
-
-        return true;
     }
 
     /**
@@ -313,84 +464,48 @@ public class SensorDataController {
 
     /**
      * 计算统计信息
+     * 由部分聚合合并得到，平均值按条数加权，最大值和最小值是原始数据的极值
+     *
+     * @param groupBy robot、hour或day，分组统计放在groups中
      */
-    private Map<String, Object> calculateStatistics(List<Map<String, Object>> data, String groupBy) {
+    private Map<String, Object> calculateStatistics(List<SensorAggregate> partials, String groupBy) {
         Map<String, Object> statistics = new HashMap<>();
 
-        int totalRecords = data.size();
-        double avgTemperature = 0;
-        double maxTemperature = Double.MIN_VALUE;
-        double minTemperature = Double.MAX_VALUE;
-        double avgHumidity = 0;
-        double maxHumidity = Double.MIN_VALUE;
-        double minHumidity = Double.MAX_VALUE;
-        double avgPressure = 0;
-        double maxPressure = Double.MIN_VALUE;
-        double minPressure = Double.MAX_VALUE;
-
-        int tempCount = 0;
-        int humidityCount = 0;
-        int pressureCount = 0;
-
-        for (Map<String, Object> record : data) {
-            // 温度统计
-            if (record.containsKey("avgTemperature")) {
-                double temp = (Double) record.get("avgTemperature");
-                avgTemperature += temp;
-                maxTemperature = Math.max(maxTemperature, temp);
-                minTemperature = Math.min(minTemperature, temp);
-                tempCount++;
-            }
-
-            // 湿度统计
-            if (record.containsKey("avgHumidity")) {
-                double humidity = (Double) record.get("avgHumidity");
-                avgHumidity += humidity;
-                maxHumidity = Math.max(maxHumidity, humidity);
-                minHumidity = Math.min(minHumidity, humidity);
-                humidityCount++;
-            }
-
-            // 压力统计
-            if (record.containsKey("avgPressure")) {
-                double pressure = (Double) record.get("avgPressure");
-                avgPressure += pressure;
-                maxPressure = Math.max(maxPressure, pressure);
-                minPressure = Math.min(minPressure, pressure);
-                pressureCount++;
-            }
+        SensorAggregate total = SensorAggregate.total(partials);
+        statistics.put("totalRecords", total.getDataCount());
+        for (String metric : SensorAggregate.METRICS) {
+            statistics.put(metric, total.getMetric(metric).toMap());
         }
 
-        // 计算平均值
-        if (tempCount > 0) {
-            avgTemperature /= tempCount;
-        }
-        if (humidityCount > 0) {
-            avgHumidity /= humidityCount;
+        List<SensorAggregate> groups;
+        switch (groupBy) {
+            case "robot":
+                groups = SensorAggregate.combine(partials, SensorAggregate::getRobotId, null);
+                break;
+            case "hour":
+                groups = SensorAggregate.combine(partials, null, SensorAggregate::getBucket);
+                break;
+            case "day":
+                groups = SensorAggregate.combine(partials, null, p -> TimeBucket.DAY.truncate(p.getBucket()));
+                break;
+            default:
+                throw new IllegalArgumentException("不支持的分组方式: " + groupBy);
         }
-        if (pressureCount > 0) {
-            avgPressure /= pressureCount;
+        List<Map<String, Object>> groupStatistics = new ArrayList<>(groups.size());
+        for (SensorAggregate group : groups) {
+            Map<String, Object> groupStats = new HashMap<>();
+            if ("robot".equals(groupBy)) {
+                groupStats.put("robotId", group.getRobotId());
+            } else {
+                groupStats.put("time", group.getBucket().format(FORMATTER));
+            }
+            groupStats.put("totalRecords", group.getDataCount());
+            for (String metric : SensorAggregate.METRICS) {
+                groupStats.put(metric, group.getMetric(metric).toMap());
+            }
+            groupStatistics.add(groupStats);
         }
-
-        statistics.put("totalRecords", totalRecords);
-        statistics.put("temperature", Map.of(
-            "avg", avgTemperature,
-            "max", maxTemperature == Double.MIN_VALUE ? 0 : maxTemperature,
-            "min", minTemperature == Double.MAX_VALUE ? 0 : minTemperature,
-            "count", tempCount
-        ));
-        statistics.put("humidity", Map.of(
-            "avg", avgHumidity,
-            "max", maxHumidity == Double.MIN_VALUE ? 0 : maxHumidity,
-            "min", minHumidity == Double.MAX_VALUE ? 0 : minHumidity,
-            "count", humidityCount
-        ));
-        statistics.put("pressure", Map.of(
-            "avg", avgPressure,
-            "max", maxPressure == Double.MIN_VALUE ? 0 : maxPressure,
-            "min", minPressure == Double.MAX_VALUE ? 0 : minPressure,
-            "count", pressureCount
-        ));
+        statistics.put("groups", groupStatistics);
 
         return statistics;
     }
@@ -409,7 +524,7 @@ public class SensorDataController {
 
             // 查询数据
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, robotIds, null, metrics
             );
 
@@ -569,12 +684,15 @@ public class SensorDataController {
 
             // 查询数据
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure", "data_count");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, robotIds, null, metrics
             );
+            List<SensorAggregate> partials = sensorPartialCache.hourly(
+                LocalDateTime.parse(startTime, FORMATTER), LocalDateTime.parse(endTime, FORMATTER), robotIds, null
+            );
 
             // 生成报告
-            Map<String, Object> report = generateReport(data, reportType);
+            Map<String, Object> report = generateReport(data, partials, reportType);
 
             Map<String, Object> result = Map.of(
                 "success", true,
@@ -594,19 +712,20 @@ public class SensorDataController {
     /**
      * 生成报告
      */
-    private Map<String, Object> generateReport(List<Map<String, Object>> data, String reportType) {
+    private Map<String, Object> generateReport(List<Map<String, Object>> data, List<SensorAggregate> partials,
+                                               String reportType) {
         Map<String, Object> report = new HashMap<>();
 
         if ("summary".equals(reportType)) {
             // 汇总报告
             report.put("type", "summary");
-            report.put("totalRecords", data.size());
-            report.put("statistics", calculateStatistics(data, "robot"));
+            report.put("totalRecords", SensorAggregate.total(partials).getDataCount());
+            report.put("statistics", calculateStatistics(partials, "robot"));
         } else if ("detailed".equals(reportType)) {
             // 详细报告
             report.put("type", "detailed");
             report.put("data", data);
-            report.put("summary", calculateStatistics(data, "robot"));
+            report.put("summary", calculateStatistics(partials, "robot"));
         } else if ("chart".equals(reportType)) {
             // 图表报告
             report.put("type", "chart");
@@ -678,13 +797,16 @@ public class SensorDataController {
             String adjustedStartTime = adjustTimeByInterval(startTime, interval, -10);
             String adjustedEndTime = adjustTimeByInterval(endTime, interval, 1);
 
-            List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
-                adjustedStartTime, adjustedEndTime, robotIds, null, metrics
-            );
+            // 按分钟的趋势直接查询，按小时和天的趋势由缓存的小时部分聚合合并
+            TimeBucket bucket = TimeBucket.fromInterval(interval);
+            LocalDateTime start = LocalDateTime.parse(adjustedStartTime, FORMATTER);
+            LocalDateTime end = LocalDateTime.parse(adjustedEndTime, FORMATTER);
+            List<SensorAggregate> partials = bucket == TimeBucket.MINUTE
+                    ? sensorQueryRouter.queryPartials(start, end, robotIds, null, bucket)
+                    : sensorPartialCache.hourly(start, end, robotIds, null);
 
             // 按时间间隔聚合数据
-            Map<String, Object> trendData = aggregateByInterval(data, interval);
+            Map<String, Object> trendData = aggregateByInterval(partials, bucket);
 
             Map<String, Object> result = Map.of(
                 "success", true,
@@ -719,63 +841,40 @@ public class SensorDataController {
 
     /**
      * 按时间间隔聚合数据
+     * 同一时间桶的部分聚合合并后计算平均值，各指标返回时间到平均值的映射
      */
-    private Map<String, Object> aggregateByInterval(List<Map<String, Object>> data, String interval) {
+    private Map<String, Object> aggregateByInterval(List<SensorAggregate> partials, TimeBucket bucket) {
         Map<String, Object> result = new HashMap<>();
-        Map<String, List<Double>> tempData = new HashMap<>();
-        Map<String, List<Double>> humidityData = new HashMap<>();
-        Map<String, List<Double>> pressureData = new HashMap<>();
-
-        // 按时间分组
-        for (Map<String, Object> record : data) {
-            String timeKey = formatTimeByInterval((String) record.get("time"), interval);
-
-            tempData.computeIfAbsent(timeKey, k -> new ArrayList<>())
-                    .add((Double) record.getOrDefault("avgTemperature", 0.0));
-            humidityData.computeIfAbsent(timeKey, k -> new ArrayList<>())
-                    .add((Double) record.getOrDefault("avgHumidity", 0.0));
-            pressureData.computeIfAbsent(timeKey, k -> new ArrayList<>())
-                    .add((Double) record.getOrDefault("avgPressure", 0.0));
+        List<SensorAggregate> buckets = SensorAggregate.combine(partials, null, p -> bucket.truncate(p.getBucket()));
+
+        for (String metric : SensorAggregate.METRICS) {
+            Map<String, Double> averages = new TreeMap<>();
+            for (SensorAggregate aggregate : buckets) {
+                Double mean = aggregate.getMetric(metric).getMean();
+                if (mean != null) {
+                    averages.put(formatTimeByInterval(aggregate.getBucket(), bucket), mean);
+                }
+            }
+            result.put(metric, averages);
         }
 
-        // 计算每个时间点的平均值
-        result.put("temperature", calculateAverages(tempData));
-        result.put("humidity", calculateAverages(humidityData));
-        result.put("pressure", calculateAverages(pressureData));
-
         return result;
     }
 
     /**
      * 格式化时间
      */
-    private String formatTimeByInterval(String time, String interval) {
-        LocalDateTime dateTime = LocalDateTime.parse(time, FORMATTER);
-        switch (interval) {
-            case "minute":
-                return dateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-            case "hour":
-                return dateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00"));
-            case "day":
-                return dateTime.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
+    private String formatTimeByInterval(LocalDateTime time, TimeBucket bucket) {
+        switch (bucket) {
+            case MINUTE:
+                return time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+            case HOUR:
+                return time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:00"));
+            case DAY:
+                return time.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
             default:
-                return time;
-        }
-    }
-
-    /**
-     * 计算平均值
-     */
-    private Map<String, Double> calculateAverages(Map<String, List<Double>> data) {
-        Map<String, Double> averages = new HashMap<>();
-        for (Map.Entry<String, List<Double>> entry : data.entrySet()) {
-            List<Double> values = entry.getValue();
-            if (!values.isEmpty()) {
-                double avg = values.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-                averages.put(entry.getKey(), avg);
-            }
+                return time.format(FORMATTER);
         }
-        return averages;
     }
 
     /**
@@ -791,7 +890,7 @@ public class SensorDataController {
         try {
             // 查询数据
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, robotIds, sensorTypes, metrics
             );
 
@@ -900,16 +999,15 @@ public class SensorDataController {
             String startTime = LocalDateTime.now().minusDays(1).format(FORMATTER);
             String endTime = LocalDateTime.now().format(FORMATTER);
 
-            List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
-                startTime, endTime, null, null, metrics
+            List<SensorAggregate> partials = sensorPartialCache.hourly(
+                LocalDateTime.parse(startTime, FORMATTER), LocalDateTime.parse(endTime, FORMATTER), null, null
             );
 
             Map<String, Object> overview = new HashMap<>();
-            overview.put("totalRecords", data.size());
-            overview.put("uniqueRobots", data.stream().map(d -> d.get("robotId")).distinct().count());
-            overview.put("statistics", calculateStatistics(data, "robot"));
-            overview.put("trend", aggregateByInterval(data, "hour"));
+            overview.put("totalRecords", SensorAggregate.total(partials).getDataCount());
+            overview.put("uniqueRobots", partials.stream().map(SensorAggregate::getRobotId).distinct().count());
+            overview.put("statistics", calculateStatistics(partials, "robot"));
+            overview.put("trend", aggregateByInterval(partials, TimeBucket.HOUR));
 
             Map<String, Object> result = Map.of(
                 "success", true,
@@ -935,7 +1033,7 @@ public class SensorDataController {
         try {
             // 查询数据
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure", "data_count");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, null, null, metrics
             );
 
@@ -1034,13 +1132,12 @@ public class SensorDataController {
             @RequestParam String endTime,
             @RequestParam(defaultValue = "10") int buckets) {
         try {
-            List<String> metrics = Arrays.asList(metric);
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
-                startTime, endTime, null, null, metrics
+            List<SensorAggregate> partials = sensorPartialCache.hourly(
+                LocalDateTime.parse(startTime, FORMATTER), LocalDateTime.parse(endTime, FORMATTER), null, null
             );
 
             // 计算分布
-            Map<String, Object> distribution = calculateDistribution(data, metric, buckets);
+            Map<String, Object> distribution = calculateDistribution(partials, metric, buckets);
 
             Map<String, Object> result = Map.of(
                 "success", true,
@@ -1059,70 +1156,54 @@ public class SensorDataController {
 
     /**
      * 计算数据分布
+     * 最大值、最小值、平均值和标准差由部分聚合精确计算；分桶统计的是每个机器人每小时的平均值，
+     * 按该小时的数据条数加权，桶的边界为桶宽的整数倍
      */
-    private Map<String, Object> calculateDistribution(List<Map<String, Object>> data, String metric, int buckets) {
-        Map<String, Object> distribution = new HashMap<>();
-
-        // 提取数值
-        List<Double> values = new ArrayList<>();
-        for (Map<String, Object> record : data) {
-            if (record.containsKey("avg" + capitalize(metric))) {
-                values.add((Double) record.get("avg" + capitalize(metric)));
-            }
+    private Map<String, Object> calculateDistribution(List<SensorAggregate> partials, String metric, int buckets) {
+        if (!SensorAggregate.METRICS.contains(metric)) {
+            throw new IllegalArgumentException("不支持的指标: " + metric);
         }
+        Map<String, Object> distribution = new HashMap<>();
 
-        if (values.isEmpty()) {
+        PartialAggregate total = SensorAggregate.total(partials).getMetric(metric);
+        if (total.getCount() == 0) {
             distribution.put("buckets", new ArrayList<>());
             distribution.put("min", 0);
             distribution.put("max", 0);
             return distribution;
         }
 
-        // 计算最小值和最大值
-        double min = values.stream().mapToDouble(Double::doubleValue).min().orElse(0);
-        double max = values.stream().mapToDouble(Double::doubleValue).max().orElse(0);
-        double step = (max - min) / buckets;
+        double range = total.getMax() - total.getMin();
+        PartialAggregate hourlyMeans = PartialAggregate.withSketch(range > 0 ? range / buckets : 1);
+        for (SensorAggregate partial : partials) {
+            PartialAggregate hourly = partial.getMetric(metric);
+            if (hourly.getCount() > 0) {
+                hourlyMeans.add(hourly.getMean(), hourly.getCount());
+            }
+        }
 
         // 创建桶
+        PartialAggregate.Sketch sketch = hourlyMeans.getSketch();
         List<Map<String, Object>> bucketsList = new ArrayList<>();
-        for (int i = 0; i < buckets; i++) {
-            double bucketMin = min + i * step;
-            double bucketMax = min + (i + 1) * step;
-            int count = 0;
-
-            for (Double value : values) {
-                if (value >= bucketMin && value < bucketMax) {
-                    count++;
-                }
-            }
-
+        for (Map.Entry<Double, Long> bin : sketch.getBins().entrySet()) {
             Map<String, Object> bucket = new HashMap<>();
-            bucket.put("min", bucketMin);
-            bucket.put("max", bucketMax);
-            bucket.put("count", count);
-            bucket.put("percentage", totalRecords > 0 ? (double) count / values.size() * 100 : 0);
+            bucket.put("min", bin.getKey());
+            bucket.put("max", bin.getKey() + sketch.getBinWidth());
+            bucket.put("count", bin.getValue());
+            bucket.put("percentage", (double) bin.getValue() / hourlyMeans.getCount() * 100);
             bucketsList.add(bucket);
         }
 
         distribution.put("buckets", bucketsList);
-        distribution.put("min", min);
-        distribution.put("max", max);
-        distribution.put("mean", values.stream().mapToDouble(Double::doubleValue).average().orElse(0));
-        distribution.put("stdDev", calculateStdDev(values, values.stream().mapToDouble(Double::doubleValue).average().orElse(0)));
+        distribution.put("min", total.getMin());
+        distribution.put("max", total.getMax());
+        distribution.put("mean", total.getMean());
+        distribution.put("stdDev", total.getStdDev());
+        distribution.put("count", total.getCount());
 
         return distribution;
     }
 
-    /**
-     * 首字母大写
-     */
-    private String capitalize(String str) {
-        if (str == null || str.isEmpty()) {
-            return str;
-        }
-        return str.substring(0, 1).toUpperCase() + str.substring(1).toLowerCase();
-    }
-
     /**
      * 获取数据采样
      */
@@ -1134,7 +1215,7 @@ public class SensorDataController {
             @RequestParam(defaultValue = "random") String samplingMethod) {
         try {
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, null, null, metrics
             );
 
@@ -1186,17 +1267,6 @@ public class SensorDataController {
         }
     }
 
-    /**
-     * 计算标准差
-     */
-    private double calculateStdDev(List<Double> values, double mean) {
-        double sum = 0;
-        for (double value : values) {
-            sum += Math.pow(value - mean, 2);
-        }
-        return Math.sqrt(sum / values.size());
-    }
-
     /**
      * 获取数据聚合配置
      */
@@ -1252,6 +1322,26 @@ public class SensorDataController {
         }
     }
 
+    /**
+     * 获取查询路由统计
+     */
+    @GetMapping("/query/routes")
+    public ResponseEntity<? super Map<String, Object>> getQueryRouteStats() {
+        try {
+            Map<String, Object> result = Map.of(
+                "success", true,
+                "routeStats", sensorQueryRouter.getStats(),
+                "partialCache", sensorPartialCache.getStats()
+            );
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            log.error("获取查询路由统计失败: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                Map.of("success", false, "message", e.getMessage())
+            );
+        }
+    }
+
     /**
      * 清理过期数据
      */
@@ -1482,7 +1572,7 @@ public class SensorDataController {
 
             // 查询数据
             List<String> metrics = Arrays.asList("temperature", "humidity", "pressure");
-            List<Map<String, Object>> data = hiveQueryRouterMapper.routeQuery(
+            List<Map<String, Object>> data = sensorQueryRouter.query(
                 startTime, endTime, robotIds, null, metrics
             );
 
@@ -0,0 +1,68 @@
+package com.bdir.dps.config;
+
+import com.bdir.dps.config.SensorDataIngestConfig.IngestLimiter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 接入准入控制测试类
+ */
+class SensorDataIngestConfigTest {
+
+    /**
+     * 测试许可耗尽时拒绝，归还后恢复准入
+     */
+    @Test
+    void testRejectsWhenPermitsExhausted() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IngestLimiter limiter = new IngestLimiter(registry, 100, 2, 1000);
+
+        assertTrue(limiter.tryAcquire(60));
+        assertFalse(limiter.tryAcquire(50));
+        assertEquals(60, limiter.getInFlightReadings());
+        assertEquals(50.0, registry.get("sensor_ingest_rejected_readings_total").counter().count());
+        assertEquals(60.0, registry.get("sensor_ingest_in_flight_readings").gauge().value());
+
+        limiter.release(60);
+        assertTrue(limiter.tryAcquire(50));
+        limiter.release(50);
+        assertEquals(0, limiter.getInFlightReadings());
+    }
+
+    /**
+     * 测试超过许可池大小的批次按池大小申请
+     */
+    @Test
+    void testOversizedBatchClampedToPool() {
+        IngestLimiter limiter = new IngestLimiter(new SimpleMeterRegistry(), 100, 1, 1000);
+
+        assertTrue(limiter.tryAcquire(500));
+        assertEquals(100, limiter.getInFlightReadings());
+        assertFalse(limiter.tryAcquire(1));
+        limiter.release(500);
+        assertEquals(0, limiter.getInFlightReadings());
+        assertTrue(limiter.tryAcquire(0));
+        assertEquals(0, limiter.getInFlightReadings());
+    }
+
+    /**
+     * 测试按端点和结果记录延迟直方图
+     */
+    @Test
+    void testLatencyRecordedPerEndpoint() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        IngestLimiter limiter = new IngestLimiter(registry, 100, 1, 1000);
+
+        limiter.recordLatency(limiter.startTimer(), "collect", "accepted");
+        limiter.recordLatency(limiter.startTimer(), "collect", "accepted");
+        limiter.recordLatency(limiter.startTimer(), "collect_batch", "rejected");
+
+        Timer collect = registry.get("sensor_ingest_latency")
+                .tag("endpoint", "collect").tag("outcome", "accepted").timer();
+        assertEquals(2, collect.count());
+        assertEquals(1, registry.get("sensor_ingest_latency").tag("endpoint", "collect_batch").timer().count());
+    }
+}
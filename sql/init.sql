@@ -61,6 +61,7 @@ CREATE TABLE IF NOT EXISTS dim_time (
 -- 4. 实时传感器数据表（分区表）
 CREATE TABLE IF NOT EXISTS realtime_sensor_data (
     id BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+    data_id VARCHAR(64) COMMENT '数据ID，批量写入时用于跳过重放的数据',
     event_time TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3) COMMENT '事件时间',
     robot_id VARCHAR(50) NOT NULL COMMENT '机器人ID',
     sensor_id VARCHAR(50) NOT NULL COMMENT '传感器ID',
@@ -75,8 +76,10 @@ CREATE TABLE IF NOT EXISTS realtime_sensor_data (
     INDEX idx_robot_time (robot_id, event_time),
     INDEX idx_sensor_time (sensor_id, event_time),
     INDEX idx_event_time (event_time),
-    INDEX idx_sensor_type (sensor_type)
+    INDEX idx_sensor_type (sensor_type),
+    INDEX idx_data_id (data_id)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+-- 日分区由RealtimePartitionManager每天拆分p_future提前创建（命名为p20240101），过期数据按分区删除
 PARTITION BY RANGE (TO_DAYS(event_time)) (
     PARTITION p_current VALUES LESS THAN (TO_DAYS(CURRENT_DATE)),
     PARTITION p_future VALUES LESS THAN MAXVALUE
@@ -262,6 +265,70 @@ CREATE TABLE IF NOT EXISTS sys_operation_log (
     INDEX idx_create_time (create_time)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='操作日志表';
 
+-- 16. 流处理消费位置表（精确一次模式下与实时数据在同一事务中写入）
+CREATE TABLE IF NOT EXISTS stream_consumer_offset (
+    consumer_group VARCHAR(100) NOT NULL COMMENT '消费组',
+    topic VARCHAR(200) NOT NULL COMMENT '主题',
+    partition_id INT NOT NULL COMMENT '分区',
+    next_offset BIGINT NOT NULL COMMENT '下一条待消费消息的位移，-1表示已认领但尚未保存过位置',
+    next_index INT NOT NULL DEFAULT 0 COMMENT '封包消息中下一条待写入读数的序号，0表示从消息开头处理',
+    owner_epoch BIGINT NOT NULL DEFAULT 0 COMMENT '所有权版本，每次认领分区时加一，写入时核对以拒绝已失去分区的持有者',
+    update_time TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '更新时间',
+    PRIMARY KEY (consumer_group, topic, partition_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='流处理消费位置表';
+
+-- 17. 传感器数据分钟汇总表（写入实时数据时在同一事务中累加，过期的汇总行随实时表分区删除）
+CREATE TABLE IF NOT EXISTS sensor_rollup_minute (
+    bucket_time DATETIME NOT NULL COMMENT '分钟开始时间',
+    robot_id VARCHAR(50) NOT NULL COMMENT '机器人ID',
+    sensor_type VARCHAR(50) NOT NULL COMMENT '传感器类型',
+    data_count BIGINT NOT NULL DEFAULT 0 COMMENT '数据条数',
+    temperature_count BIGINT NOT NULL DEFAULT 0 COMMENT '温度非空值条数',
+    temperature_sum DOUBLE NOT NULL DEFAULT 0 COMMENT '温度之和',
+    temperature_sum_sq DOUBLE NOT NULL DEFAULT 0 COMMENT '温度平方和',
+    temperature_min DOUBLE COMMENT '温度最小值',
+    temperature_max DOUBLE COMMENT '温度最大值',
+    humidity_count BIGINT NOT NULL DEFAULT 0 COMMENT '湿度非空值条数',
+    humidity_sum DOUBLE NOT NULL DEFAULT 0 COMMENT '湿度之和',
+    humidity_sum_sq DOUBLE NOT NULL DEFAULT 0 COMMENT '湿度平方和',
+    humidity_min DOUBLE COMMENT '湿度最小值',
+    humidity_max DOUBLE COMMENT '湿度最大值',
+    pressure_count BIGINT NOT NULL DEFAULT 0 COMMENT '压力非空值条数',
+    pressure_sum DOUBLE NOT NULL DEFAULT 0 COMMENT '压力之和',
+    pressure_sum_sq DOUBLE NOT NULL DEFAULT 0 COMMENT '压力平方和',
+    pressure_min DOUBLE COMMENT '压力最小值',
+    pressure_max DOUBLE COMMENT '压力最大值',
+    update_time TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '更新时间',
+    PRIMARY KEY (bucket_time, robot_id, sensor_type),
+    INDEX idx_robot_time (robot_id, bucket_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='传感器数据分钟汇总表';
+
+-- 18. 传感器数据小时汇总表（写入实时数据时在同一事务中累加，过期的汇总行随实时表分区删除）
+CREATE TABLE IF NOT EXISTS sensor_rollup_hour (
+    bucket_time DATETIME NOT NULL COMMENT '小时开始时间',
+    robot_id VARCHAR(50) NOT NULL COMMENT '机器人ID',
+    sensor_type VARCHAR(50) NOT NULL COMMENT '传感器类型',
+    data_count BIGINT NOT NULL DEFAULT 0 COMMENT '数据条数',
+    temperature_count BIGINT NOT NULL DEFAULT 0 COMMENT '温度非空值条数',
+    temperature_sum DOUBLE NOT NULL DEFAULT 0 COMMENT '温度之和',
+    temperature_sum_sq DOUBLE NOT NULL DEFAULT 0 COMMENT '温度平方和',
+    temperature_min DOUBLE COMMENT '温度最小值',
+    temperature_max DOUBLE COMMENT '温度最大值',
+    humidity_count BIGINT NOT NULL DEFAULT 0 COMMENT '湿度非空值条数',
+    humidity_sum DOUBLE NOT NULL DEFAULT 0 COMMENT '湿度之和',
+    humidity_sum_sq DOUBLE NOT NULL DEFAULT 0 COMMENT '湿度平方和',
+    humidity_min DOUBLE COMMENT '湿度最小值',
+    humidity_max DOUBLE COMMENT '湿度最大值',
+    pressure_count BIGINT NOT NULL DEFAULT 0 COMMENT '压力非空值条数',
+    pressure_sum DOUBLE NOT NULL DEFAULT 0 COMMENT '压力之和',
+    pressure_sum_sq DOUBLE NOT NULL DEFAULT 0 COMMENT '压力平方和',
+    pressure_min DOUBLE COMMENT '压力最小值',
+    pressure_max DOUBLE COMMENT '压力最大值',
+    update_time TIMESTAMP(3) DEFAULT CURRENT_TIMESTAMP(3) ON UPDATE CURRENT_TIMESTAMP(3) COMMENT '更新时间',
+    PRIMARY KEY (bucket_time, robot_id, sensor_type),
+    INDEX idx_robot_time (robot_id, bucket_time)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='传感器数据小时汇总表';
+
 -- 插入初始数据
 
 -- 插入机器人维度数据
@@ -319,6 +386,15 @@ INSERT INTO alert_rule (rule_id, rule_name, rule_type, description, conditions,
  '{"type": "email", "recipients": ["admin@company.com"]}',
  'CRITICAL');
 
+-- 插入传感器数据校验规则，接入端和流处理端定期加载，sensorType为*时适用于所有传感器类型
+INSERT INTO alert_rule (rule_id, rule_name, rule_type, description, conditions, severity) VALUES
+('VALID001', '温度取值范围', 'VALIDATION', '温度读数必须在-50到150摄氏度之间',
+ '{"sensorType": "*", "check": "range", "metric": "temperature", "min": -50, "max": 150}', 'MEDIUM'),
+('VALID002', '湿度取值范围', 'VALIDATION', '湿度读数必须在0到100%之间',
+ '{"sensorType": "*", "check": "range", "metric": "humidity", "min": 0, "max": 100}', 'MEDIUM'),
+('VALID003', '气压取值范围', 'VALIDATION', '气压读数必须在500到1500 hPa之间',
+ '{"sensorType": "*", "check": "range", "metric": "pressure", "min": 500, "max": 1500}', 'MEDIUM');
+
 -- 插入用户数据
 INSERT INTO sys_user (user_id, username, password, real_name, email, phone, dept_id, status) VALUES
 ('U001', 'admin', '$2a$10$7JB720yubVSOfvK5j6s0oOjGHGz7l9UjEg3FQJb7g3F3o8JzUoJ9C', '系统管理员', 'admin@company.com', '13800138000', 'DEPT001', 1),
@@ -403,6 +479,36 @@ PARTITIONED BY (dt STRING)
 CLUSTERED BY (robot_id) INTO 16 BUCKETS
 STORED AS ORC
 TBLPROPERTIES ("orc.compress"="SNAPPY");
+
+-- 创建小时级物化视图：保存各指标的条数、和、平方和、最小值、最大值，
+-- 按小时的结果可以合并为任意粒度的平均值和标准差
+CREATE MATERIALIZED VIEW IF NOT EXISTS sensor_hourly_mv
+PARTITIONED ON (dt)
+STORED AS ORC
+AS
+SELECT
+    hr,
+    robot_id,
+    sensor_type,
+    COUNT(*) AS record_count,
+    COUNT(temperature) AS temperature_count,
+    SUM(temperature) AS temperature_sum,
+    SUM(temperature * temperature) AS temperature_sum_sq,
+    MIN(temperature) AS temperature_min,
+    MAX(temperature) AS temperature_max,
+    COUNT(humidity) AS humidity_count,
+    SUM(humidity) AS humidity_sum,
+    SUM(humidity * humidity) AS humidity_sum_sq,
+    MIN(humidity) AS humidity_min,
+    MAX(humidity) AS humidity_max,
+    COUNT(pressure) AS pressure_count,
+    SUM(pressure) AS pressure_sum,
+    SUM(pressure * pressure) AS pressure_sum_sq,
+    MIN(pressure) AS pressure_min,
+    MAX(pressure) AS pressure_max,
+    dt
+FROM sensor_fact_orc
+GROUP BY dt, hr, robot_id, sensor_type;
 */
 
 -- 插入机器人状态数据